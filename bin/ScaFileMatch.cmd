@@ -0,0 +1,23 @@
+@echo off
+rem ScaFileMatch - launcher for short, frequent runs (such as CI jobs on small modules).
+rem
+rem Starts ScaFileMatch.jar with a class data sharing (AppCDS) archive of the classes a run
+rem loads, and with the resolved file extension mapping kept in a cache (--fast-start). The
+rem first run creates the archive, ScaFileMatch-<user>.jsa in the temporary directory; delete
+rem it after replacing the jar. Extra JVM options can be passed in SCAFILEMATCH_JAVA_OPTS, and
+rem another archive location in SCAFILEMATCH_JSA.
+rem
+rem Usage: ScaFileMatch.cmd [options] <root directory>
+setlocal
+set "JAR=%~dp0ScaFileMatch.jar"
+set "JSA=%SCAFILEMATCH_JSA%"
+if "%JSA%"=="" set "JSA=%TEMP%\ScaFileMatch-%USERNAME%.jsa"
+set "JAVA=java"
+if not "%JAVA_HOME%"=="" set "JAVA=%JAVA_HOME%\bin\java"
+
+rem Use the archive, or create it at the end of this run
+if exist "%JSA%" (
+	"%JAVA%" -XX:SharedArchiveFile="%JSA%" -Xshare:auto %SCAFILEMATCH_JAVA_OPTS% -jar "%JAR%" --fast-start %*
+) else (
+	"%JAVA%" -XX:ArchiveClassesAtExit="%JSA%" %SCAFILEMATCH_JAVA_OPTS% -jar "%JAR%" --fast-start %*
+)
@@ -0,0 +1,26 @@
+#!/bin/sh
+# ScaFileMatch - launcher for short, frequent runs (such as CI jobs on small modules).
+#
+# Starts ScaFileMatch.jar with a class data sharing (AppCDS) archive of the classes a run
+# loads, and with the resolved file extension mapping kept in a cache (--fast-start). The
+# first run creates the archive, ScaFileMatch-<user>.jsa in the temporary directory; it is
+# created again whenever the jar is newer than the archive. Extra JVM options can be passed
+# in SCAFILEMATCH_JAVA_OPTS, and another archive location in SCAFILEMATCH_JSA.
+#
+# Usage: ScaFileMatch.sh [options] <root directory>
+
+BIN_DIR=$(cd "$(dirname "$0")" && pwd)
+JAR="$BIN_DIR/ScaFileMatch.jar"
+JSA="${SCAFILEMATCH_JSA:-${TMPDIR:-/tmp}/ScaFileMatch-$(id -un).jsa}"
+if [ -n "$JAVA_HOME" ]; then
+	JAVA="$JAVA_HOME/bin/java"
+else
+	JAVA=java
+fi
+
+# Use the archive, or create it at the end of this run
+if [ -f "$JSA" ] && [ ! "$JAR" -nt "$JSA" ]; then
+	exec "$JAVA" -XX:SharedArchiveFile="$JSA" -Xshare:auto $SCAFILEMATCH_JAVA_OPTS -jar "$JAR" --fast-start "$@"
+else
+	exec "$JAVA" -XX:ArchiveClassesAtExit="$JSA" $SCAFILEMATCH_JAVA_OPTS -jar "$JAR" --fast-start "$@"
+fi
@@ -0,0 +1,130 @@
+package com.fortify.ps;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * ScaArchiveScanner
+ *
+ * Looks inside jar, war, ear and zip archives. The entries are classified by their file
+ *   extension and the lines of the configured entries are counted while the archive is
+ *   streamed, without extracting anything to disk. Archives inside archives are scanned
+ *   down to a maximum depth. Only one entry is held in the read buffer at a time, so the
+ *   memory used does not depend on the size of the archive. An instance may be shared by
+ *   multiple threads.
+ */
+public class ScaArchiveScanner {
+
+	// File extensions of the archives to look into
+	private static final String ARCHIVE_EXTENSIONS[] = { "ear", "jar", "war", "zip" };
+	// Size of the read buffer in front of an archive file
+	private static final int ARCHIVE_BUFFER_SIZE = 64 * 1024;
+
+	// Classifier of the entry names
+	private final ScaExtensionClassifier classifier;
+	// Statistics of the entries in archives
+	private final ScaStatistics statistics;
+	// Maximum depth of archives inside archives (1 is only the archive itself)
+	private final int maxDepth;
+
+	// Stream that leaves the underlying stream open when it is closed
+	private static class unclosableInputStream extends FilterInputStream {
+		// Default constructor
+		unclosableInputStream( InputStream input ) {
+			super( input );
+		}
+		@Override
+		public void close() {
+			// Leave the underlying stream open
+		}
+	}
+
+	// Default constructor
+	public ScaArchiveScanner( ScaExtensionClassifier extensionClassifier, ScaStatistics archiveStatistics, int maxArchiveDepth ) {
+		classifier = extensionClassifier;
+		statistics = archiveStatistics;
+		maxDepth = maxArchiveDepth;
+	}
+
+	/**
+	 * isArchive
+	 *
+	 * Checks whether a lower case file extension is one of the archives to look into.
+	 *
+	 * @return Whether or not it is an archive.
+	 */
+	public static boolean isArchive( String fileExtension ) {
+		for ( String archiveExtension : ARCHIVE_EXTENSIONS ) {
+			if ( archiveExtension.equals( fileExtension )) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * scan
+	 *
+	 * Scans an archive file, counting the lines of its entries with the line counter of the
+	 *   calling thread.
+	 *
+	 * @return Whether or not the archive could be read.
+	 */
+	public boolean scan( Path archive, ScaLineCounter counter ) {
+		// Set the default result
+		boolean scanned = false;
+		try ( ZipInputStream input = new ZipInputStream( new BufferedInputStream( Files.newInputStream( archive ), ARCHIVE_BUFFER_SIZE ))) {
+			scanEntries( input, 1, counter );
+			scanned = true;
+		}
+		catch ( IOException | IllegalArgumentException e ) {
+			System.out.println("Could not read archive \"" + archive + "\" (" + e.getMessage() + ").");
+		}
+		// Return the result
+		return scanned;
+	}
+
+	// Scan the entries of an archive stream
+	private void scanEntries( ZipInputStream input, int depth, ScaLineCounter counter ) throws IOException {
+		ZipEntry entry;
+		while (( entry = input.getNextEntry()) != null ) {
+			// Skip the directories
+			if ( entry.isDirectory()) {
+				continue;
+			}
+			// Get the file name of the entry
+			String entryName = entry.getName();
+			String fileName = entryName.substring( entryName.lastIndexOf( '/' ) + 1 );
+			// Classify the entry by its file extension
+			int extensionId = classifier.classify( fileName );
+			if ( extensionId >= 0 ) {
+				// Count the lines while streaming the entry
+				long lines = counter.countLines( input );
+				statistics.addConfigured( extensionId, lines, counter.getStreamBytes());
+			}
+			else if ( extensionId == ScaExtensionClassifier.NOT_CONFIGURED ) {
+				String fileExtension = fileName.substring( ScaExtensionClassifier.extensionStart( fileName ), ScaExtensionClassifier.extensionEnd( fileName )).toLowerCase();
+				// Look into an archive inside the archive?
+				if (( depth < maxDepth ) && isArchive( fileExtension )) {
+					ZipInputStream nested = new ZipInputStream( new unclosableInputStream( input ));
+					try {
+						scanEntries( nested, depth + 1, counter );
+					}
+					finally {
+						// Release the inflater, leaving the outer archive open
+						nested.close();
+					}
+				}
+				// Skip the rest of the entry, which makes its size known
+				input.closeEntry();
+				statistics.addNonConfigured( fileExtension, Math.max( entry.getSize(), 0 ));
+			}
+		}
+	}
+}
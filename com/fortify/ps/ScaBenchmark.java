@@ -0,0 +1,488 @@
+package com.fortify.ps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * ScaBenchmark
+ *
+ * Measures the scanning code on a synthetic tree built by ScaTreeGenerator: directory
+ *   enumeration, file extension classification, line counting (many small files, a huge
+ *   file, CRLF line ends, long lines), the end-to-end scan, sequential and parallel, and
+ *   the startup of a run on a small module in a new JVM, plain and in the fast startup mode.
+ *   Every benchmark runs a number of warmup iterations, then a number of measured
+ *   iterations of a fixed duration, and reports the average time per operation with its
+ *   99.9% confidence interval, the way JMH does in its "avgt" mode. The results are written
+ *   as JSON in the JMH result format, so they can be tracked across versions with the
+ *   usual JMH tooling.
+ *
+ *   java -cp ScaFileMatch.jar com.fortify.ps.ScaBenchmark [options]
+ */
+public class ScaBenchmark {
+
+	// Number of small files of the line counting benchmark
+	private static final int SMALL_FILES = 1000;
+	// Number of files of the module of the startup benchmark
+	private static final int MODULE_FILES = 50;
+	// Student's t quantiles (99.9% two sided) for 1 to 30 degrees of freedom
+	private static final double T_QUANTILES[] = { 636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+		4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850, 3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646 };
+
+	// Number of warmup iterations
+	private int warmupIterations = 3;
+	// Number of measured iterations
+	private int measurementIterations = 5;
+	// Duration of an iteration in milliseconds
+	private long iterationMillis = 1000;
+	// Directory of the generated files
+	private Path workDir = Paths.get( System.getProperty( "java.io.tmpdir" ), "ScaBenchmark" );
+	// Only run the benchmarks matching this pattern
+	private Pattern filter = Pattern.compile( ".*" );
+	// File of the JSON results
+	private String resultFile = "ScaBenchmark.json";
+	// Label of the results, such as a version
+	private String label = null;
+	// Size of the huge file in bytes
+	private long hugeSize = 64L * 1024 * 1024;
+	// Number of threads of the parallel scan
+	private int scanThreads = Runtime.getRuntime().availableProcessors();
+	// Generator of the synthetic tree
+	private final ScaTreeGenerator generator = new ScaTreeGenerator();
+	// Sink of the benchmark results, so no work is optimized away
+	private volatile long sink = 0;
+
+	/**
+	 * operation
+	 *
+	 * A single operation of a benchmark.
+	 */
+	private interface operation {
+		// Run the operation once, returning a value that depends on all work done
+		long run() throws IOException;
+	}
+
+	// The measurements of a benchmark
+	private static class result {
+		// Name of the benchmark
+		private final String name;
+		// Parameters of the benchmark
+		private final Map <String, String> parameters;
+		// Average time per operation of every measured iteration, in milliseconds
+		private final double samples[];
+		// Default constructor
+		result( String resultName, Map <String, String> resultParameters, double resultSamples[] ) {
+			name = resultName;
+			parameters = resultParameters;
+			samples = resultSamples;
+		}
+		// Retrieve the mean time per operation
+		double getScore() {
+			double sum = 0;
+			for ( double sample : samples ) {
+				sum += sample;
+			}
+			return sum / samples.length;
+		}
+		// Retrieve the half width of the 99.9% confidence interval
+		double getError() {
+			if ( samples.length < 2 ) {
+				return Double.NaN;
+			}
+			double mean = getScore();
+			double squares = 0;
+			for ( double sample : samples ) {
+				squares += ( sample - mean ) * ( sample - mean );
+			}
+			int freedom = samples.length - 1;
+			double quantile = ( freedom <= T_QUANTILES.length ) ? T_QUANTILES[ freedom - 1 ] : 3.291;
+			return quantile * Math.sqrt( squares / freedom ) / Math.sqrt( samples.length );
+		}
+	}
+
+	/**
+	 * run
+	 *
+	 * Builds the benchmark files, runs the benchmarks and writes the results.
+	 */
+	public void run() throws IOException {
+		// Build the synthetic tree and the line counting files
+		Path tree = workDir.resolve( "tree" );
+		Path lines = workDir.resolve( "lines" );
+		deleteTree( tree );
+		deleteTree( lines );
+		System.out.println( "Generating the benchmark tree (" + generator + ") in \"" + tree + "\"." );
+		generator.generate( tree );
+		Files.createDirectories( lines );
+		final Path smallFiles[] = new Path[ SMALL_FILES ];
+		for ( int index = 0; index < SMALL_FILES; index++ ) {
+			smallFiles[index] = lines.resolve( "small" + index + ".java" );
+			ScaTreeGenerator.writeFile( smallFiles[index], 1024 + ( index % 4 ) * 1024, 40, false );
+		}
+		final Path hugeFile = lines.resolve( "huge.java" );
+		ScaTreeGenerator.writeFile( hugeFile, hugeSize, 60, false );
+		final Path crlfFile = lines.resolve( "crlf.java" );
+		ScaTreeGenerator.writeFile( crlfFile, 16L * 1024 * 1024, 60, true );
+		final Path longLinesFile = lines.resolve( "longlines.java" );
+		ScaTreeGenerator.writeFile( longLinesFile, 16L * 1024 * 1024, 64 * 1024, false );
+
+		// Load the file extension mapping the way a scan does
+		final ScaFileMatch configuration = new ScaFileMatch( tree.toString());
+		if ( !configuration.loadExtensionMapping()) {
+			System.out.println( "Could not load the file extension mapping." );
+			return;
+		}
+		final ScaExtensionClassifier classifier = configuration.getExtensionClassifier();
+		// Collect the file names of the tree
+		final ArrayList <String> names = new ArrayList <String> ();
+		new ScaDirectoryWalker( true ).walk( tree, new ScaDirectoryWalker.fileVisitor() {
+			public void visitFile( Path file, BasicFileAttributes attributes ) {
+				names.add( file.getFileName().toString());
+			}
+		});
+		final String nameArray[] = names.toArray( new String[ names.size() ] );
+		final ScaLineCounter counter = new ScaLineCounter();
+		final Path treeRoot = tree;
+		final Path reportFile = workDir.resolve( "ScaFileMatch.txt" );
+
+		// Run the benchmarks
+		ArrayList <result> results = new ArrayList <result> ();
+		Map <String, String> treeParameters = generator.getParameters();
+		measure( results, "enumerate", treeParameters, new operation() {
+			public long run() {
+				final long found[] = { 0 };
+				new ScaDirectoryWalker( true ).walk( treeRoot, new ScaDirectoryWalker.fileVisitor() {
+					public void visitFile( Path file, BasicFileAttributes attributes ) {
+						found[0] += attributes.size();
+					}
+				});
+				return found[0];
+			}
+		});
+		measure( results, "classify", parameters( "names", String.valueOf( nameArray.length )), new operation() {
+			public long run() {
+				long sum = 0;
+				for ( int index = 0; index < nameArray.length; index++ ) {
+					sum += classifier.classify( nameArray[index] );
+				}
+				return sum;
+			}
+		});
+		measure( results, "lineCount.smallFiles", parameters( "files", String.valueOf( SMALL_FILES )), new operation() {
+			public long run() throws IOException {
+				long sum = 0;
+				for ( int index = 0; index < smallFiles.length; index++ ) {
+					sum += counter.countLines( smallFiles[index] );
+				}
+				return sum;
+			}
+		});
+		measure( results, "lineCount.hugeFile", parameters( "bytes", String.valueOf( hugeSize )), new operation() {
+			public long run() throws IOException {
+				return counter.countLines( hugeFile );
+			}
+		});
+		measure( results, "lineCount.hugeFileSloc", parameters( "bytes", String.valueOf( hugeSize )), new operation() {
+			public long run() throws IOException {
+				return counter.countLines( hugeFile, ScaLineCounter.SYNTAX_C );
+			}
+		});
+		measure( results, "lineCount.crlf", parameters( "bytes", String.valueOf( Files.size( crlfFile ))), new operation() {
+			public long run() throws IOException {
+				return counter.countLines( crlfFile );
+			}
+		});
+		measure( results, "lineCount.longLines", parameters( "lineLength", String.valueOf( 64 * 1024 )), new operation() {
+			public long run() throws IOException {
+				return counter.countLines( longLinesFile );
+			}
+		});
+		for ( final int threads : new int[] { 1, scanThreads } ) {
+			Map <String, String> scanParameters = new LinkedHashMap <String, String> ( treeParameters );
+			scanParameters.put( "threads", String.valueOf( threads ));
+			measure( results, "scan.endToEnd", scanParameters, new operation() {
+				public long run() {
+					ScaFileMatch project = configuration.createProject( treeRoot.toString(), reportFile.toString());
+					project.setScanThreads( threads );
+					if ( project.init()) {
+						project.run();
+						project.done();
+					}
+					return project.hashCode();
+				}
+			});
+			if ( scanThreads == 1 ) {
+				break;
+			}
+		}
+
+		// Measure the startup of a run on a small module in a new JVM
+		if ( filter.matcher( "startup" ).find()) {
+			measureStartup( results );
+		}
+
+		// Report the results
+		System.out.println();
+		System.out.println( String.format( "%-28s %-24s %5s %5s %12s    %10s  %s", "Benchmark", "(params)", "Mode", "Cnt", "Score", "Error", "Units" ));
+		for ( result measured : results ) {
+			System.out.println( String.format( "%-28s %-24s %5s %5d %12.3f +- %10.3f  %s", measured.name, describe( measured.parameters ), "avgt", measured.samples.length, measured.getScore(), measured.getError(), "ms/op" ));
+		}
+		writeResults( results );
+		System.out.println( "Results written to \"" + resultFile + "\"." );
+	}
+
+	/**
+	 * measureStartup
+	 *
+	 * Measures a whole run of ScaFileMatch on a small module, the way a CI job calls it: in
+	 *   a new JVM, without JIT warmup. The runs use the class path of the benchmark, plain,
+	 *   with the mapping cache (--mapping-cache) and with a class data sharing archive as
+	 *   well, which a first run creates. The archive only holds the application classes
+	 *   when they are loaded from a jar.
+	 */
+	private void measureStartup( List <result> results ) throws IOException {
+		// Build the module
+		final Path module = workDir.resolve( "module" );
+		final Path startupDir = workDir.resolve( "startup" );
+		deleteTree( module );
+		deleteTree( startupDir );
+		ScaTreeGenerator moduleGenerator = new ScaTreeGenerator();
+		moduleGenerator.setFiles( MODULE_FILES );
+		moduleGenerator.generate( module );
+		Files.createDirectories( startupDir );
+		// Create the class data sharing archive
+		Path archive = startupDir.resolve( "ScaFileMatch.jsa" );
+		String mappingCache = startupDir.resolve( "ScaFileMatch.mapping" ).toString();
+		launch( startupDir, module, new String[] { "-XX:ArchiveClassesAtExit=" + archive }, new String[] { "--mapping-cache", mappingCache });
+		// Run the modes
+		final String modes[][][] = {
+			{ { "plain" }, {}, {} },
+			{ { "fastStart" }, {}, { "--mapping-cache", mappingCache } },
+			{ { "fastStartCds" }, { "-XX:SharedArchiveFile=" + archive, "-Xshare:auto" }, { "--mapping-cache", mappingCache } }
+		};
+		for ( final String mode[][] : modes ) {
+			Map <String, String> startupParameters = parameters( "mode", mode[0][0] );
+			startupParameters.put( "files", String.valueOf( MODULE_FILES ));
+			measure( results, "startup", startupParameters, new operation() {
+				public long run() throws IOException {
+					return launch( startupDir, module, mode[1], mode[2] );
+				}
+			});
+		}
+	}
+
+	// Run ScaFileMatch on a project in a new JVM, with the class path of the benchmark, returning its exit code
+	private static int launch( Path directory, Path project, String javaOptions[], String options[] ) throws IOException {
+		ArrayList <String> command = new ArrayList <String> ();
+		command.add( Paths.get( System.getProperty( "java.home" ), "bin", "java" ).toString());
+		command.addAll( Arrays.asList( javaOptions ));
+		command.add( "-cp" );
+		command.add( System.getProperty( "java.class.path" ));
+		command.add( ScaFileMatch.class.getName());
+		command.addAll( Arrays.asList( options ));
+		command.add( project.toString());
+		Process process = new ProcessBuilder( command ).directory( directory.toFile()).redirectOutput( ProcessBuilder.Redirect.DISCARD ).redirectErrorStream( true ).start();
+		try {
+			return process.waitFor();
+		}
+		catch ( InterruptedException e ) {
+			process.destroy();
+			throw new IOException( "Interrupted while waiting for the run" );
+		}
+	}
+
+	// Run a benchmark matching the filter, and keep its result
+	private void measure( List <result> results, String name, Map <String, String> parameters, operation benchmark ) throws IOException {
+		if ( !filter.matcher( name ).find()) {
+			return;
+		}
+		if ( label != null ) {
+			parameters = new LinkedHashMap <String, String> ( parameters );
+			parameters.put( "label", label );
+		}
+		System.out.println( "# Benchmark: " + name + " " + describe( parameters ));
+		for ( int iteration = 1; iteration <= warmupIterations; iteration++ ) {
+			System.out.println( String.format( "# Warmup Iteration %3d: %.3f ms/op", iteration, iterate( benchmark )));
+		}
+		double samples[] = new double[ measurementIterations ];
+		for ( int iteration = 1; iteration <= measurementIterations; iteration++ ) {
+			samples[ iteration - 1 ] = iterate( benchmark );
+			System.out.println( String.format( "Iteration %3d: %.3f ms/op", iteration, samples[ iteration - 1 ] ));
+		}
+		results.add( new result( name, parameters, samples ));
+	}
+
+	// Run the operation of a benchmark for one iteration, returning the average time per operation in milliseconds
+	private double iterate( operation benchmark ) throws IOException {
+		long operations = 0;
+		long start = System.nanoTime();
+		long end = start + iterationMillis * 1000000L;
+		long now;
+		do {
+			sink += benchmark.run();
+			operations++;
+			now = System.nanoTime();
+		}
+		while ( now < end );
+		return ( now - start ) / 1e6 / operations;
+	}
+
+	// Write the results in the JMH JSON result format
+	private void writeResults( List <result> results ) throws IOException {
+		try ( PrintWriter output = new PrintWriter( Files.newBufferedWriter( Paths.get( resultFile ), StandardCharsets.UTF_8 ))) {
+			output.println( "[" );
+			for ( int index = 0; index < results.size(); index++ ) {
+				result measured = results.get( index );
+				double error = measured.getError();
+				output.println( "    {" );
+				output.println( "        \"benchmark\" : " + ScaServer.jsonString( ScaBenchmark.class.getName() + "." + measured.name ) + "," );
+				output.println( "        \"mode\" : \"avgt\"," );
+				output.println( "        \"threads\" : 1," );
+				output.println( "        \"forks\" : 0," );
+				output.println( "        \"jvm\" : " + ScaServer.jsonString( System.getProperty( "java.home" )) + "," );
+				output.println( "        \"jdkVersion\" : " + ScaServer.jsonString( System.getProperty( "java.version" )) + "," );
+				output.println( "        \"warmupIterations\" : " + warmupIterations + "," );
+				output.println( "        \"warmupTime\" : \"" + iterationMillis + " ms\"," );
+				output.println( "        \"measurementIterations\" : " + measurementIterations + "," );
+				output.println( "        \"measurementTime\" : \"" + iterationMillis + " ms\"," );
+				output.print( "        \"params\" : {" );
+				String separator = "";
+				for ( Map.Entry <String, String> parameter : measured.parameters.entrySet()) {
+					output.print( separator + " " + ScaServer.jsonString( parameter.getKey()) + " : " + ScaServer.jsonString( parameter.getValue()));
+					separator = ",";
+				}
+				output.println( " }," );
+				output.println( "        \"primaryMetric\" : {" );
+				output.println( "            \"score\" : " + measured.getScore() + "," );
+				output.println( "            \"scoreError\" : " + ( Double.isNaN( error ) ? "\"NaN\"" : String.valueOf( error )) + "," );
+				output.println( "            \"scoreConfidence\" : [ " + ( Double.isNaN( error ) ? "\"NaN\", \"NaN\"" : ( measured.getScore() - error ) + ", " + ( measured.getScore() + error )) + " ]," );
+				output.println( "            \"scoreUnit\" : \"ms/op\"," );
+				output.print( "            \"rawData\" : [ [" );
+				for ( int sample = 0; sample < measured.samples.length; sample++ ) {
+					output.print(( sample > 0 ? ", " : " " ) + measured.samples[sample] );
+				}
+				output.println( " ] ]" );
+				output.println( "        }," );
+				output.println( "        \"secondaryMetrics\" : {}" );
+				output.println( "    }" + ( index < results.size() - 1 ? "," : "" ));
+			}
+			output.println( "]" );
+		}
+	}
+
+	// Create a map with a single parameter
+	private static Map <String, String> parameters( String name, String value ) {
+		LinkedHashMap <String, String> parameters = new LinkedHashMap <String, String> ();
+		parameters.put( name, value );
+		return parameters;
+	}
+
+	// Describe the parameters of a benchmark
+	private static String describe( Map <String, String> parameters ) {
+		StringBuilder description = new StringBuilder();
+		for ( Map.Entry <String, String> parameter : parameters.entrySet()) {
+			description.append( description.length() > 0 ? "," : "" ).append( parameter.getKey()).append( "=" ).append( parameter.getValue());
+		}
+		return description.toString();
+	}
+
+	// Delete a directory tree of generated files
+	private static void deleteTree( Path directory ) throws IOException {
+		if ( !Files.isDirectory( directory )) {
+			return;
+		}
+		try ( Stream <Path> paths = Files.walk( directory )) {
+			for ( Path path : ( Iterable <Path> ) paths.sorted( Comparator.reverseOrder())::iterator ) {
+				Files.delete( path );
+			}
+		}
+	}
+
+	public static void main( String args[] ) {
+		ScaBenchmark benchmark = new ScaBenchmark();
+		int index = 0;
+		try {
+			// Process the options
+			while ( index < args.length ) {
+				int used = benchmark.generator.parseOption( args, index );
+				if ( used > 0 ) {
+					index += used;
+				}
+				else if ( args[index].equals( "--warmup" ) && ( index + 1 < args.length )) {
+					benchmark.warmupIterations = Math.max( Integer.parseInt( args[ index + 1 ] ), 0 );
+					index += 2;
+				}
+				else if ( args[index].equals( "--iterations" ) && ( index + 1 < args.length )) {
+					benchmark.measurementIterations = Math.max( Integer.parseInt( args[ index + 1 ] ), 1 );
+					index += 2;
+				}
+				else if ( args[index].equals( "--time" ) && ( index + 1 < args.length )) {
+					benchmark.iterationMillis = Math.max( Long.parseLong( args[ index + 1 ] ), 1 );
+					index += 2;
+				}
+				else if ( args[index].equals( "--threads" ) && ( index + 1 < args.length )) {
+					benchmark.scanThreads = Math.max( Integer.parseInt( args[ index + 1 ] ), 1 );
+					index += 2;
+				}
+				else if ( args[index].equals( "--huge-size" ) && ( index + 1 < args.length )) {
+					benchmark.hugeSize = Math.max( Long.parseLong( args[ index + 1 ] ), 1 );
+					index += 2;
+				}
+				else if ( args[index].equals( "--work-dir" ) && ( index + 1 < args.length )) {
+					benchmark.workDir = Paths.get( args[ index + 1 ] );
+					index += 2;
+				}
+				else if ( args[index].equals( "--filter" ) && ( index + 1 < args.length )) {
+					benchmark.filter = Pattern.compile( args[ index + 1 ] );
+					index += 2;
+				}
+				else if ( args[index].equals( "--result" ) && ( index + 1 < args.length )) {
+					benchmark.resultFile = args[ index + 1 ];
+					index += 2;
+				}
+				else if ( args[index].equals( "--label" ) && ( index + 1 < args.length )) {
+					benchmark.label = args[ index + 1 ];
+					index += 2;
+				}
+				else {
+					System.out.println("ScaBenchmark - Measures the scanning code on a synthetic source tree.");
+					System.out.println("Usage:   java -cp ScaFileMatch.jar com.fortify.ps.ScaBenchmark [options]");
+					System.out.println("Options: --warmup <n>               Warmup iterations per benchmark (default 3).");
+					System.out.println("         --iterations <n>           Measured iterations per benchmark (default 5).");
+					System.out.println("         --time <ms>                Duration of an iteration (default 1000).");
+					System.out.println("         --threads <n>              Threads of the parallel end-to-end scan (default: processors).");
+					System.out.println("         --huge-size <bytes>        Size of the huge file (default 67108864).");
+					System.out.println("         --work-dir <directory>     Directory of the generated files (default <tmp>/ScaBenchmark).");
+					System.out.println("         --filter <regex>           Only run the benchmarks matching <regex>.");
+					System.out.println("         --result <file>            JSON results, in the JMH format (default ScaBenchmark.json).");
+					System.out.println("         --label <text>             Add a \"label\" parameter, such as the version, to every result.");
+					System.out.println("         Options of ScaTreeGenerator (--files, --depth, --fan-out, --mix, --min-size, --max-size, --crlf, --line-length, --seed) shape the tree.");
+					return;
+				}
+			}
+		}
+		catch ( NumberFormatException e ) {
+			System.out.println( "Invalid value for option \"" + args[index] + "\"" );
+			return;
+		}
+		try {
+			benchmark.run();
+		}
+		catch ( IOException e ) {
+			System.out.println( "The benchmark failed (" + e.getMessage() + ")." );
+		}
+	}
+}
@@ -0,0 +1,558 @@
+package com.fortify.ps;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * ScaBuildScope
+ *
+ * Finds the source roots of a Maven or Gradle project from its local build descriptors,
+ *   without resolving anything, so only the directories a build compiles are counted:
+ *   - Maven: the pom.xml of the root directory and of its modules, recursively. Every
+ *     module contributes its source and test source directory, its resource and test
+ *     resource directories, the sources added by the build-helper-maven-plugin, and the
+ *     generated-sources and generated-test-sources of its build directory. The defaults
+ *     of Maven apply to what a pom.xml leaves out; ${...} references to the base
+ *     directory, the build directory and the properties of the pom.xml (and of the
+ *     modules above it) are resolved, other references are skipped. Settings inherited
+ *     from a parent pom.xml are not applied;
+ *   - Gradle: the root project and the projects included by settings.gradle(.kts).
+ *     Every project contributes the directories of the source set conventions,
+ *     src/<set>/<language>, the srcDir and srcDirs strings of its sourceSets block, and
+ *     its build/generated directory.
+ *   A source root is main, test (source sets and directories whose name holds "test") or
+ *   generated (below a build directory). Only existing directories are kept, and a root
+ *   inside another root is counted with that root.
+ */
+public class ScaBuildScope {
+
+	// Kinds of the source roots
+	public static final int MAIN = 0;
+	public static final int TEST = 1;
+	public static final int GENERATED = 2;
+	// Names of the kinds of the source roots
+	private static final String KIND_NAMES[] = { "main", "test", "generated" };
+	// Languages of the Gradle source set conventions
+	private static final String GRADLE_LANGUAGES[] = { "java", "kotlin", "groovy", "scala", "resources", "antlr", "proto" };
+	// Include statements of a Gradle settings file
+	private static final Pattern GRADLE_INCLUDE = Pattern.compile( "(?m)^\\s*include\\s*\\(?([^\\n]*)" );
+	// Project directories set in a Gradle settings file
+	private static final Pattern GRADLE_PROJECT_DIR = Pattern.compile( "project\\s*\\(\\s*['\"]([^'\"]+)['\"]\\s*\\)\\s*\\.projectDir\\s*=\\s*(?:file|new\\s+File)\\s*\\(\\s*(?:[^,()]+,\\s*)?['\"]([^'\"]+)['\"]" );
+	// Source sets of a Gradle build file
+	private static final Pattern GRADLE_SOURCE_SET = Pattern.compile( "(?:(\\w+)|(?:named|getByName|create|register|maybeCreate)\\s*\\(\\s*['\"](\\w+)['\"]\\s*\\))\\s*\\{" );
+	// Source directories of a Gradle source set
+	private static final Pattern GRADLE_SOURCE_DIRS = Pattern.compile( "(?:srcDirs?|setSrcDirs)\\b([^\\n]*)" );
+	// Quoted strings
+	private static final Pattern QUOTED = Pattern.compile( "['\"]([^'\"$]+)['\"]" );
+	// References to properties
+	private static final Pattern PROPERTY = Pattern.compile( "\\$\\{([^}]+)\\}" );
+
+	// Root directory of the project
+	private final Path root;
+	// Candidate source roots, in the order found
+	private final ArrayList <sourceRoot> candidates = new ArrayList <sourceRoot> ();
+	// Source roots kept
+	private final ArrayList <sourceRoot> roots = new ArrayList <sourceRoot> ();
+	// Module directories read so far
+	private final HashSet <Path> modules = new HashSet <Path> ();
+	// Number of Maven modules and Gradle projects read
+	private int mavenModules = 0;
+	private int gradleProjects = 0;
+	// Number of source roots inside another root
+	private int nestedRoots = 0;
+
+	/**
+	 * sourceRoot
+	 *
+	 * A directory of source files of a module.
+	 */
+	public static class sourceRoot {
+		// Directory of the source files
+		private final Path path;
+		// Kind of the source files
+		private final int kind;
+		// Directory of the module, relative to the project root
+		private final String module;
+		// Default constructor
+		sourceRoot( Path rootPath, int rootKind, String rootModule ) {
+			path = rootPath;
+			kind = rootKind;
+			module = rootModule;
+		}
+		// Retrieve the directory of the source files
+		public Path getPath() {
+			return path;
+		}
+		// Retrieve the kind of the source files
+		public int getKind() {
+			return kind;
+		}
+		// Retrieve the directory of the module, relative to the project root
+		public String getModule() {
+			return module;
+		}
+	}
+
+	// Default constructor
+	public ScaBuildScope( Path projectRoot ) {
+		root = projectRoot.toAbsolutePath().normalize();
+	}
+
+	// Retrieve the name of a kind of source roots
+	public static String getKindName( int kind ) {
+		return KIND_NAMES[ kind ];
+	}
+
+	// Retrieve the number of kinds of source roots
+	public static int getKindCount() {
+		return KIND_NAMES.length;
+	}
+
+	/**
+	 * read
+	 *
+	 * Reads the build descriptors of the project and keeps its source roots.
+	 *
+	 * @return Whether or not a Maven or Gradle build descriptor was found.
+	 */
+	public boolean read() {
+		// Read the Maven modules
+		if ( Files.isRegularFile( root.resolve( "pom.xml" ))) {
+			readPom( root.resolve( "pom.xml" ), new HashMap <String, String> ());
+		}
+		// Read the Gradle projects
+		Path settings = firstExisting( root, "settings.gradle", "settings.gradle.kts" );
+		if (( settings != null ) || ( firstExisting( root, "build.gradle", "build.gradle.kts" ) != null )) {
+			readGradleProject( root );
+			if ( settings != null ) {
+				readGradleSettings( settings );
+			}
+		}
+		// Keep the existing directories, dropping the roots inside other roots
+		keepRoots();
+		return ( mavenModules + gradleProjects ) > 0;
+	}
+
+	// Read a pom.xml and the pom.xml files of its modules
+	private void readPom( Path pom, HashMap <String, String> inheritedProperties ) {
+		Path moduleDir = pom.getParent();
+		if ( !modules.add( pom )) {
+			return;
+		}
+		// Parse the pom.xml, without any DTD or external entity
+		Element project;
+		try {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setFeature( "http://apache.org/xml/features/disallow-doctype-decl", true );
+			factory.setAttribute( XMLConstants.ACCESS_EXTERNAL_DTD, "" );
+			factory.setAttribute( XMLConstants.ACCESS_EXTERNAL_SCHEMA, "" );
+			factory.setExpandEntityReferences( false );
+			DocumentBuilder builder = factory.newDocumentBuilder();
+			builder.setErrorHandler( new DefaultHandler());
+			project = builder.parse( pom.toFile()).getDocumentElement();
+		}
+		catch ( IOException | SAXException | ParserConfigurationException | IllegalArgumentException e ) {
+			System.out.println("Could not read the build descriptor \"" + pom + "\" (" + e.getMessage() + ").");
+			return;
+		}
+		mavenModules++;
+		String module = describeModule( moduleDir );
+		// Get the properties
+		HashMap <String, String> properties = new HashMap <String, String> ( inheritedProperties );
+		for ( Element property : children( child( project, "properties" ))) {
+			properties.put( property.getTagName(), property.getTextContent().trim());
+		}
+		properties.put( "basedir", moduleDir.toString());
+		properties.put( "project.basedir", moduleDir.toString());
+		// Get the build directory
+		Element build = child( project, "build" );
+		Path buildDir = resolve( moduleDir, text( build, "directory", "target" ), properties );
+		if ( buildDir != null ) {
+			properties.put( "project.build.directory", buildDir.toString());
+		}
+		// Add the source and resource directories
+		addRoot( resolve( moduleDir, text( build, "sourceDirectory", "src/main/java" ), properties ), MAIN, module, buildDir );
+		addRoot( resolve( moduleDir, text( build, "testSourceDirectory", "src/test/java" ), properties ), TEST, module, buildDir );
+		addResources( moduleDir, child( build, "resources" ), "resource", "src/main/resources", MAIN, module, buildDir, properties );
+		addResources( moduleDir, child( build, "testResources" ), "testResource", "src/test/resources", TEST, module, buildDir, properties );
+		// Add the sources of the build-helper-maven-plugin
+		for ( Element plugin : children( child( build, "plugins" ))) {
+			if ( !"build-helper-maven-plugin".equals( text( plugin, "artifactId", null ))) {
+				continue;
+			}
+			for ( Element execution : children( child( plugin, "executions" ))) {
+				int kind = text( child( execution, "goals" ), "goal", "" ).contains( "test" ) ? TEST : MAIN;
+				for ( Element source : children( child( child( execution, "configuration" ), "sources" ))) {
+					addRoot( resolve( moduleDir, source.getTextContent().trim(), properties ), kind, module, buildDir );
+				}
+			}
+		}
+		// Add the generated sources
+		if ( buildDir != null ) {
+			addRoot( buildDir.resolve( "generated-sources" ), GENERATED, module, buildDir );
+			addRoot( buildDir.resolve( "generated-test-sources" ), GENERATED, module, buildDir );
+		}
+		// Read the modules
+		for ( Element child : children( child( project, "modules" ))) {
+			String name = child.getTextContent().trim();
+			try {
+				Path modulePath = moduleDir.resolve( name ).normalize();
+				readPom( Files.isDirectory( modulePath ) ? modulePath.resolve( "pom.xml" ) : modulePath, properties );
+			}
+			catch ( InvalidPathException e ) {
+				System.out.println("Invalid module \"" + name + "\" in \"" + pom + "\".");
+			}
+		}
+	}
+
+	// Add the resource directories of a module, or the default one when none is declared
+	private void addResources( Path moduleDir, Element resources, String name, String defaultDirectory, int kind, String module, Path buildDir, HashMap <String, String> properties ) {
+		if ( resources == null ) {
+			addRoot( resolve( moduleDir, defaultDirectory, properties ), kind, module, buildDir );
+			return;
+		}
+		for ( Element resource : children( resources )) {
+			if ( resource.getTagName().equals( name )) {
+				addRoot( resolve( moduleDir, text( resource, "directory", defaultDirectory ), properties ), kind, module, buildDir );
+			}
+		}
+	}
+
+	// Read the included projects of a Gradle settings file
+	private void readGradleSettings( Path settings ) {
+		String text = readText( settings );
+		if ( text == null ) {
+			return;
+		}
+		text = stripComments( text );
+		// Get the project directories set explicitly
+		HashMap <String, String> projectDirs = new HashMap <String, String> ();
+		Matcher projectDir = GRADLE_PROJECT_DIR.matcher( text );
+		while ( projectDir.find()) {
+			projectDirs.put( projectDir.group( 1 ).replaceFirst( "^:", "" ), projectDir.group( 2 ));
+		}
+		// Read the included projects
+		Matcher include = GRADLE_INCLUDE.matcher( text );
+		while ( include.find()) {
+			Matcher quoted = QUOTED.matcher( include.group( 1 ));
+			while ( quoted.find()) {
+				String name = quoted.group( 1 ).replaceFirst( "^:", "" );
+				String directory = projectDirs.containsKey( name ) ? projectDirs.get( name ) : name.replace( ':', '/' );
+				try {
+					Path projectPath = root.resolve( directory ).normalize();
+					if ( Files.isDirectory( projectPath )) {
+						readGradleProject( projectPath );
+					}
+				}
+				catch ( InvalidPathException e ) {
+					System.out.println("Invalid project \"" + name + "\" in \"" + settings + "\".");
+				}
+			}
+		}
+	}
+
+	// Add the source roots of a Gradle project
+	private void readGradleProject( Path projectDir ) {
+		if ( !modules.add( projectDir )) {
+			return;
+		}
+		gradleProjects++;
+		String module = describeModule( projectDir );
+		Path buildDir = projectDir.resolve( "build" );
+		// Add the source set conventions
+		try ( DirectoryStream <Path> sourceSets = Files.newDirectoryStream( projectDir.resolve( "src" ))) {
+			for ( Path sourceSet : sourceSets ) {
+				int kind = kindOfName( sourceSet.getFileName().toString());
+				for ( String language : GRADLE_LANGUAGES ) {
+					addRoot( sourceSet.resolve( language ), kind, module, buildDir );
+				}
+			}
+		}
+		catch ( IOException e ) {
+			// No src directory
+		}
+		// Add the source directories of the sourceSets block
+		Path buildFile = firstExisting( projectDir, "build.gradle", "build.gradle.kts" );
+		String text = ( buildFile != null ) ? readText( buildFile ) : null;
+		if ( text != null ) {
+			text = stripComments( text );
+			int start = text.indexOf( "sourceSets" );
+			while ( start >= 0 ) {
+				int open = text.indexOf( '{', start );
+				if (( open >= 0 ) && text.substring( start + "sourceSets".length(), open ).trim().isEmpty()) {
+					addGradleSourceSets( projectDir, text.substring( open + 1, blockEnd( text, open )), module, buildDir );
+				}
+				start = text.indexOf( "sourceSets", start + 1 );
+			}
+		}
+		// Add the generated sources
+		addRoot( buildDir.resolve( "generated" ), GENERATED, module, buildDir );
+	}
+
+	// Add the source directories of the source sets of a sourceSets block
+	private void addGradleSourceSets( Path projectDir, String block, String module, Path buildDir ) {
+		Matcher sourceSet = GRADLE_SOURCE_SET.matcher( block );
+		int position = 0;
+		while ( sourceSet.find( position )) {
+			// Only take the source sets at the top of the block
+			if ( depthAt( block, sourceSet.start()) != 0 ) {
+				position = sourceSet.end();
+				continue;
+			}
+			String name = ( sourceSet.group( 1 ) != null ) ? sourceSet.group( 1 ) : sourceSet.group( 2 );
+			int end = blockEnd( block, sourceSet.end() - 1 );
+			Matcher sourceDirs = GRADLE_SOURCE_DIRS.matcher( block.substring( sourceSet.end(), end ));
+			while ( sourceDirs.find()) {
+				Matcher quoted = QUOTED.matcher( sourceDirs.group( 1 ));
+				while ( quoted.find()) {
+					try {
+						addRoot( projectDir.resolve( quoted.group( 1 )).normalize(), kindOfName( name ), module, buildDir );
+					}
+					catch ( InvalidPathException e ) {
+						System.out.println("Invalid source directory \"" + quoted.group( 1 ) + "\" in \"" + projectDir + "\".");
+					}
+				}
+			}
+			position = Math.min( end + 1, block.length());
+		}
+	}
+
+	// Add a candidate source root, generated when it is below the build directory
+	private void addRoot( Path path, int kind, String module, Path buildDir ) {
+		if ( path != null ) {
+			boolean generated = ( buildDir != null ) && path.startsWith( buildDir );
+			candidates.add( new sourceRoot( path, generated ? GENERATED : kind, module ));
+		}
+	}
+
+	// Keep the existing candidate directories, dropping those inside another root
+	private void keepRoots() {
+		ArrayList <sourceRoot> sorted = new ArrayList <sourceRoot> ();
+		for ( sourceRoot candidate : candidates ) {
+			if ( Files.isDirectory( candidate.path )) {
+				sorted.add( candidate );
+			}
+		}
+		// Outer directories first, then in the order found
+		Collections.sort( sorted, new Comparator <sourceRoot> () {
+			public int compare( sourceRoot first, sourceRoot second ) {
+				return Integer.compare( first.path.getNameCount(), second.path.getNameCount());
+			}
+		});
+		for ( sourceRoot candidate : sorted ) {
+			boolean nested = false;
+			for ( sourceRoot kept : roots ) {
+				if ( candidate.path.startsWith( kept.path )) {
+					nested = true;
+					if ( !candidate.path.equals( kept.path ) || ( candidate.kind != kept.kind )) {
+						nestedRoots++;
+					}
+					break;
+				}
+			}
+			if ( !nested ) {
+				roots.add( candidate );
+			}
+		}
+		// Report in the order of the paths
+		Collections.sort( roots, new Comparator <sourceRoot> () {
+			public int compare( sourceRoot first, sourceRoot second ) {
+				return first.path.compareTo( second.path );
+			}
+		});
+	}
+
+	// Resolve a directory of a pom.xml, or null when it refers to an unknown property
+	private static Path resolve( Path moduleDir, String directory, HashMap <String, String> properties ) {
+		StringBuffer resolved = new StringBuffer();
+		Matcher property = PROPERTY.matcher( directory );
+		while ( property.find()) {
+			String value = properties.get( property.group( 1 ));
+			if (( value == null ) || value.contains( "${" )) {
+				return null;
+			}
+			property.appendReplacement( resolved, Matcher.quoteReplacement( value ));
+		}
+		property.appendTail( resolved );
+		try {
+			return moduleDir.resolve( resolved.toString()).normalize();
+		}
+		catch ( InvalidPathException e ) {
+			return null;
+		}
+	}
+
+	// Get the kind of a source set or directory by its name
+	private static int kindOfName( String name ) {
+		return name.toLowerCase().contains( "test" ) ? TEST : MAIN;
+	}
+
+	// Describe a module by its directory relative to the project root
+	private String describeModule( Path moduleDir ) {
+		String relative = root.relativize( moduleDir ).toString();
+		return relative.isEmpty() ? "." : relative;
+	}
+
+	// Get the first existing file of a directory
+	private static Path firstExisting( Path directory, String first, String second ) {
+		if ( Files.isRegularFile( directory.resolve( first ))) {
+			return directory.resolve( first );
+		}
+		if ( Files.isRegularFile( directory.resolve( second ))) {
+			return directory.resolve( second );
+		}
+		return null;
+	}
+
+	// Read a text file, or null when it could not be read
+	private static String readText( Path file ) {
+		try {
+			return new String( Files.readAllBytes( file ), StandardCharsets.UTF_8 );
+		}
+		catch ( IOException e ) {
+			System.out.println("Could not read the build descriptor \"" + file + "\" (" + e.getMessage() + ").");
+			return null;
+		}
+	}
+
+	// Blank out the // and /* */ comments of a Gradle script, keeping the positions
+	private static String stripComments( String text ) {
+		StringBuilder stripped = new StringBuilder( text );
+		char quote = 0;
+		for ( int index = 0; index < stripped.length(); index++ ) {
+			char character = stripped.charAt( index );
+			if ( quote != 0 ) {
+				if ( character == '\\' ) {
+					index++;
+				}
+				else if ( character == quote ) {
+					quote = 0;
+				}
+			}
+			else if (( character == '"' ) || ( character == '\'' )) {
+				quote = character;
+			}
+			else if (( character == '/' ) && ( index + 1 < stripped.length()) && ( stripped.charAt( index + 1 ) == '/' )) {
+				while (( index < stripped.length()) && ( stripped.charAt( index ) != '\n' )) {
+					stripped.setCharAt( index++, ' ' );
+				}
+			}
+			else if (( character == '/' ) && ( index + 1 < stripped.length()) && ( stripped.charAt( index + 1 ) == '*' )) {
+				int end = stripped.indexOf( "*/", index + 2 );
+				end = ( end < 0 ) ? stripped.length() : end + 2;
+				while ( index < end ) {
+					if ( stripped.charAt( index ) != '\n' ) {
+						stripped.setCharAt( index, ' ' );
+					}
+					index++;
+				}
+				index--;
+			}
+		}
+		return stripped.toString();
+	}
+
+	// Find the end of the block opened by the brace at a position, or the end of the text
+	private static int blockEnd( String text, int open ) {
+		int depth = 0;
+		for ( int index = open; index < text.length(); index++ ) {
+			char character = text.charAt( index );
+			if ( character == '{' ) {
+				depth++;
+			}
+			else if (( character == '}' ) && ( --depth == 0 )) {
+				return index;
+			}
+		}
+		return text.length();
+	}
+
+	// Get the depth of the braces at a position
+	private static int depthAt( String text, int position ) {
+		int depth = 0;
+		for ( int index = 0; index < position; index++ ) {
+			char character = text.charAt( index );
+			if ( character == '{' ) {
+				depth++;
+			}
+			else if ( character == '}' ) {
+				depth--;
+			}
+		}
+		return depth;
+	}
+
+	// Get the first child element of an element by its name, or null
+	private static Element child( Element parent, String name ) {
+		if ( parent != null ) {
+			for ( Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+				if (( node instanceof Element ) && (( Element ) node ).getTagName().equals( name )) {
+					return ( Element ) node;
+				}
+			}
+		}
+		return null;
+	}
+
+	// Get the child elements of an element, none for null
+	private static List <Element> children( Element parent ) {
+		ArrayList <Element> elements = new ArrayList <Element> ();
+		if ( parent != null ) {
+			for ( Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+				if ( node instanceof Element ) {
+					elements.add(( Element ) node );
+				}
+			}
+		}
+		return elements;
+	}
+
+	// Get the text of a child element, or a default value when it is missing or empty
+	private static String text( Element parent, String name, String defaultValue ) {
+		Element element = child( parent, name );
+		String value = ( element != null ) ? element.getTextContent().trim() : "";
+		return value.isEmpty() ? defaultValue : value;
+	}
+
+	// Retrieve the source roots, in the order of their paths
+	public List <sourceRoot> getRoots() {
+		return roots;
+	}
+
+	// Retrieve the project root directory
+	public Path getRoot() {
+		return root;
+	}
+
+	// Describe the build scope for humans
+	public String getSummary() {
+		int counts[] = new int[ KIND_NAMES.length ];
+		for ( sourceRoot kept : roots ) {
+			counts[ kept.kind ]++;
+		}
+		return "Build scope: " + mavenModules + " Maven modules, " + gradleProjects + " Gradle projects; " + roots.size() + " source roots (" + counts[ MAIN ] + " main, " + counts[ TEST ] + " test, " + counts[ GENERATED ] + " generated)" + (( nestedRoots > 0 ) ? ", " + nestedRoots + " roots counted with the root they are in." : "." );
+	}
+}
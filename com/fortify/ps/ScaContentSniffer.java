@@ -0,0 +1,272 @@
+package com.fortify.ps;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ScaContentSniffer
+ *
+ * Classifies files without a configured file extension by their first bytes: shebang
+ *   lines, XML prologs, PHP and JSP open tags and HTML documents, and by a few well known
+ *   file names (Dockerfile). Binary files are recognized by their magic number or by a
+ *   NUL byte and are never classified. A file type is returned as the file extension it
+ *   usually has, so the Fortify SCA type comes from the same mapping as the file
+ *   extensions. At most PREFIX_SIZE bytes are read per file, into a buffer reused by the
+ *   thread, and sniffing stops once the byte budget of the scan is spent. An instance may
+ *   be shared by multiple threads.
+ */
+public class ScaContentSniffer {
+
+	// Number of bytes read from the start of a file
+	public static final int PREFIX_SIZE = 512;
+	// File extensions of binary files, which are not read
+	private static final String BINARY_EXTENSIONS[] = { "7z", "bin", "bmp", "class", "dll", "ear", "exe", "gif", "gz", "ico", "jar", "jpeg", "jpg", "mp3", "mp4", "o", "pdf", "png", "so", "tar", "tgz", "war", "woff", "woff2", "zip" };
+	// File types found by the content or the name, besides the interpreters
+	private static final String TYPES[] = { "php", "xml", "jsp", "html", "dockerfile" };
+	// UTF-8 byte order mark
+	private static final byte UTF8_BOM[] = { ( byte ) 0xEF, ( byte ) 0xBB, ( byte ) 0xBF };
+	// Magic numbers of binary files: ELF, zip, class, PNG, JPEG, gzip, GIF, PDF
+	private static final byte BINARY_MAGIC[][] = {
+		{ 0x7F, 'E', 'L', 'F' }, { 'P', 'K', 3, 4 }, { ( byte ) 0xCA, ( byte ) 0xFE, ( byte ) 0xBA, ( byte ) 0xBE },
+		{ ( byte ) 0x89, 'P', 'N', 'G' }, { ( byte ) 0xFF, ( byte ) 0xD8, ( byte ) 0xFF }, { 0x1F, ( byte ) 0x8B },
+		{ 'G', 'I', 'F', '8' }, { '%', 'P', 'D', 'F' }
+	};
+	// File extensions of the interpreters of shebang lines
+	private static final String INTERPRETERS[][] = {
+		{ "python", "py" }, { "node", "js" }, { "nodejs", "js" }, { "php", "php" }, { "ruby", "rb" }, { "perl", "pl" },
+		{ "sh", "sh" }, { "bash", "sh" }, { "zsh", "sh" }, { "ksh", "sh" }, { "dash", "sh" }, { "ash", "sh" },
+		{ "groovy", "groovy" }, { "pwsh", "ps1" }, { "lua", "lua" }, { "tclsh", "tcl" }
+	};
+
+	// Classifier of the file extensions
+	private final ScaExtensionClassifier classifier;
+	// File extensions of binary files
+	private final HashSet <String> binaryExtensions = new HashSet <String> ();
+	// File extensions by interpreter name
+	private final HashMap <String, String> interpreters = new HashMap <String, String> ();
+	// Ids of the configured file extensions of the types, or NOT_CONFIGURED
+	private final HashMap <String, Integer> typeIds = new HashMap <String, Integer> ();
+	// Bytes left in the budget
+	private final AtomicLong budget;
+	// Number of files read
+	private final LongAdder filesSniffed = new LongAdder();
+	// Number of files classified by their content
+	private final LongAdder filesClassified = new LongAdder();
+	// Number of files not read because the budget was spent
+	private final LongAdder filesSkipped = new LongAdder();
+	// Prefix buffers not in use, so there are only as many as files sniffed at once, on platform and virtual threads alike
+	private final ConcurrentLinkedQueue <ByteBuffer> prefixBuffers = new ConcurrentLinkedQueue <ByteBuffer> ();
+
+	// Default constructor
+	public ScaContentSniffer( ScaExtensionClassifier extensionClassifier, long budgetBytes ) {
+		classifier = extensionClassifier;
+		budget = new AtomicLong( budgetBytes );
+		for ( String extension : BINARY_EXTENSIONS ) {
+			binaryExtensions.add( extension );
+		}
+		for ( String interpreter[] : INTERPRETERS ) {
+			interpreters.put( interpreter[0], interpreter[1] );
+			typeIds.put( interpreter[1], classifier.classify( "." + interpreter[1] ));
+		}
+		for ( String type : TYPES ) {
+			typeIds.put( type, classifier.classify( "." + type ));
+		}
+	}
+
+	/**
+	 * sniff
+	 *
+	 * Classifies a file by its name and its first bytes. A file with a file extension that
+	 *   is not configured is only classified when its content shows a configured type.
+	 *
+	 * @return The file extension of the type found, or null.
+	 */
+	public String sniff( Path path, String fileName, String fileExtension ) {
+		// Is it a well known file name?
+		String type = sniffName( fileName );
+		if (( type == null ) && (( fileExtension == null ) || !binaryExtensions.contains( fileExtension ))) {
+			// Is the budget spent?
+			if ( budget.get() <= 0 ) {
+				filesSkipped.increment();
+				return null;
+			}
+			// Read the first bytes into a pooled buffer
+			ByteBuffer buffer = prefixBuffers.poll();
+			if ( buffer == null ) {
+				buffer = ByteBuffer.allocate( PREFIX_SIZE );
+			}
+			buffer.clear();
+			try {
+				try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.READ )) {
+					while (( buffer.hasRemaining()) && ( channel.read( buffer ) > 0 )) {
+					}
+				}
+				catch ( IOException e ) {
+					return null;
+				}
+				budget.addAndGet( -buffer.position());
+				filesSniffed.increment();
+				type = sniffContent( buffer.array(), buffer.position());
+			}
+			finally {
+				prefixBuffers.offer( buffer );
+			}
+		}
+		// Only a configured type corrects a file extension
+		if (( type != null ) && ( fileExtension != null ) && ( getExtensionId( type ) < 0 )) {
+			type = null;
+		}
+		if ( type != null ) {
+			filesClassified.increment();
+		}
+		return type;
+	}
+
+	// Get the id of the configured file extension of a type, or NOT_CONFIGURED
+	public int getExtensionId( String type ) {
+		return typeIds.get( type );
+	}
+
+	// Classify a file by its name
+	private static String sniffName( String fileName ) {
+		if ( fileName.equalsIgnoreCase( "Dockerfile" ) || fileName.regionMatches( true, 0, "Dockerfile.", 0, 11 )) {
+			return "dockerfile";
+		}
+		return null;
+	}
+
+	/**
+	 * sniffContent
+	 *
+	 * Classifies the first bytes of a file.
+	 *
+	 * @return The file extension of the type found, or null for binary and unknown content.
+	 */
+	private String sniffContent( byte prefix[], int length ) {
+		int start = 0;
+		// Skip a UTF-8 byte order mark
+		if ( startsWith( prefix, length, 0, UTF8_BOM )) {
+			start = 3;
+		}
+		// Is it binary?
+		if ( isBinary( prefix, length )) {
+			return null;
+		}
+		// Is it a shebang line?
+		if ( startsWith( prefix, length, start, "#!" )) {
+			return sniffShebang( prefix, length, start + 2 );
+		}
+		// Skip the leading white space
+		while (( start < length ) && Character.isWhitespace( prefix[start] )) {
+			start++;
+		}
+		// Is it a tag?
+		if ( startsWith( prefix, length, start, "<?php" ) || startsWith( prefix, length, start, "<?=" )) {
+			return "php";
+		}
+		if ( startsWith( prefix, length, start, "<?xml" )) {
+			return "xml";
+		}
+		if ( startsWith( prefix, length, start, "<%@" )) {
+			return "jsp";
+		}
+		if ( startsWith( prefix, length, start, "<!doctype html" ) || startsWith( prefix, length, start, "<html" )) {
+			return "html";
+		}
+		return null;
+	}
+
+	// Get the file extension of the interpreter of a shebang line
+	private String sniffShebang( byte prefix[], int length, int start ) {
+		// Get the words of the line
+		int end = start;
+		while (( end < length ) && ( prefix[end] != '\n' ) && ( prefix[end] != '\r' )) {
+			end++;
+		}
+		String words[] = new String( prefix, start, end - start, StandardCharsets.ISO_8859_1 ).trim().split( "\\s+" );
+		// Get the interpreter, skipping "env" with its options and variables
+		int word = 0;
+		if ( words[0].endsWith( "/env" ) || words[0].equals( "env" )) {
+			word++;
+			while (( word < words.length ) && ( words[word].startsWith( "-" ) || ( words[word].indexOf( '=' ) >= 0 ))) {
+				word++;
+			}
+		}
+		if (( word >= words.length ) || ( words[word].length() == 0 )) {
+			return null;
+		}
+		String interpreter = words[word].substring( words[word].lastIndexOf( '/' ) + 1 );
+		// Drop a version, as in "python3.11"
+		int versionStart = interpreter.length();
+		while (( versionStart > 0 ) && ( Character.isDigit( interpreter.charAt( versionStart - 1 )) || ( interpreter.charAt( versionStart - 1 ) == '.' ))) {
+			versionStart--;
+		}
+		return interpreters.get( interpreter.substring( 0, versionStart ));
+	}
+
+	// Does the content start with a magic number of a binary file or hold a NUL byte?
+	private static boolean isBinary( byte prefix[], int length ) {
+		for ( byte magic[] : BINARY_MAGIC ) {
+			if ( startsWith( prefix, length, 0, magic )) {
+				return true;
+			}
+		}
+		for ( int index = 0; index < length; index++ ) {
+			if ( prefix[index] == 0 ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Does the content hold the bytes at a position?
+	private static boolean startsWith( byte prefix[], int length, int start, byte expected[] ) {
+		if ( start + expected.length > length ) {
+			return false;
+		}
+		for ( int index = 0; index < expected.length; index++ ) {
+			if ( prefix[ start + index ] != expected[index] ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Does the content hold the text at a position, ignoring case?
+	private static boolean startsWith( byte prefix[], int length, int start, String expected ) {
+		if ( start + expected.length() > length ) {
+			return false;
+		}
+		for ( int index = 0; index < expected.length(); index++ ) {
+			if ( Character.toLowerCase(( char ) ( prefix[ start + index ] & 0xFF )) != expected.charAt( index )) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Retrieve the number of files read
+	public long getFilesSniffed() {
+		return filesSniffed.sum();
+	}
+
+	// Retrieve the number of files classified by their content
+	public long getFilesClassified() {
+		return filesClassified.sum();
+	}
+
+	// Retrieve the number of files not read because the budget was spent
+	public long getFilesSkipped() {
+		return filesSkipped.sum();
+	}
+}
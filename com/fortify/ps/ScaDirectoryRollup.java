@@ -0,0 +1,383 @@
+package com.fortify.ps;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import java.nio.file.Path;
+
+/**
+ * ScaDirectoryRollup
+ *
+ * Rolls the configured files, lines and bytes up per directory while the project is
+ *   scanned, and keeps the largest files and directories by line count. The memory used
+ *   does not grow with the number of files:
+ *   - the tree only has a node per directory down to the reporting depth; the files
+ *     below a directory at that depth are counted in it, so its node stands for the
+ *     collapsed sub tree;
+ *   - the largest files and directories are kept in min-heaps of a fixed size; a file or
+ *     directory below the smallest entry kept is rejected without taking the lock;
+ *   - the files directly in a directory are summed while the directory is open: the
+ *     walker opens it with the number of files it listed, and it is closed, and offered
+ *     to the largest directories, once all of them are counted. Directories never opened
+ *     (the files of the git index) stay open until the end of the scan.
+ *   Every file visited must be passed to addFile or skipFile exactly once. May be shared
+ *   by multiple threads.
+ */
+public class ScaDirectoryRollup {
+
+	// Root directory of the project
+	private final Path root;
+	// Reporting depth, 0 for the root directory only
+	private final int depth;
+	// Number of largest files and directories kept
+	private final int topSize;
+	// Root node of the tree
+	private final node rootNode;
+	// Directories whose files are still being counted
+	private final ConcurrentHashMap <Path, directory> openDirectories = new ConcurrentHashMap <Path, directory> ();
+	// Largest files by line count
+	private final topHeap largestFiles;
+	// Largest directories by the line count of the files directly in them
+	private final topHeap largestDirectories;
+
+	/**
+	 * node
+	 *
+	 * A directory of the tree, down to the reporting depth, with the totals of the
+	 *   configured files below it.
+	 */
+	public static class node {
+		// Name of the directory, empty for the root directory
+		private final String name;
+		// Sub directories, by name
+		private final ConcurrentHashMap <String, node> children = new ConcurrentHashMap <String, node> ();
+		// Number of files, lines and bytes below the directory
+		private final LongAdder files = new LongAdder();
+		private final LongAdder lines = new LongAdder();
+		private final LongAdder bytes = new LongAdder();
+		// Default constructor
+		node( String nodeName ) {
+			name = nodeName;
+		}
+		// Get a sub directory, adding it when it is new
+		private node child( String childName ) {
+			node child = children.get( childName );
+			if ( child == null ) {
+				node added = new node( childName );
+				child = children.putIfAbsent( childName, added );
+				if ( child == null ) {
+					child = added;
+				}
+			}
+			return child;
+		}
+		// Retrieve the name of the directory, empty for the root directory
+		public String getName() {
+			return name;
+		}
+		// Retrieve the sub directories with configured files, the most lines first
+		public List <node> getChildren() {
+			ArrayList <node> sorted = new ArrayList <node> ();
+			for ( node child : children.values()) {
+				if ( child.getFiles() > 0 ) {
+					sorted.add( child );
+				}
+			}
+			Collections.sort( sorted, new Comparator <node> () {
+				public int compare( node first, node second ) {
+					int order = Long.compare( second.getLines(), first.getLines());
+					return ( order != 0 ) ? order : first.name.compareTo( second.name );
+				}
+			});
+			return sorted;
+		}
+		// Retrieve the number of files below the directory
+		public long getFiles() {
+			return files.sum();
+		}
+		// Retrieve the number of lines below the directory
+		public long getLines() {
+			return lines.sum();
+		}
+		// Retrieve the number of bytes below the directory
+		public long getBytes() {
+			return bytes.sum();
+		}
+	}
+
+	/**
+	 * entry
+	 *
+	 * A file or directory kept as one of the largest.
+	 */
+	public static class entry {
+		// Path of the file or directory
+		private final String path;
+		// Number of files, lines and bytes
+		private final long files;
+		private final long lines;
+		private final long bytes;
+		// Default constructor
+		entry( String entryPath, long entryFiles, long entryLines, long entryBytes ) {
+			path = entryPath;
+			files = entryFiles;
+			lines = entryLines;
+			bytes = entryBytes;
+		}
+		// Retrieve the path of the file or directory
+		public String getPath() {
+			return path;
+		}
+		// Retrieve the number of files, 1 for a file
+		public long getFiles() {
+			return files;
+		}
+		// Retrieve the number of lines
+		public long getLines() {
+			return lines;
+		}
+		// Retrieve the number of bytes
+		public long getBytes() {
+			return bytes;
+		}
+	}
+
+	// Sorts the entries by line count, then by bytes, the largest first, then by path
+	private static final Comparator <entry> LARGEST_FIRST = new Comparator <entry> () {
+		public int compare( entry first, entry second ) {
+			int order = Long.compare( second.lines, first.lines );
+			if ( order == 0 ) {
+				order = Long.compare( second.bytes, first.bytes );
+			}
+			return ( order != 0 ) ? order : first.path.compareTo( second.path );
+		}
+	};
+
+	/**
+	 * topHeap
+	 *
+	 * Keeps the largest entries offered, in a min-heap of a fixed size, for any number of
+	 *   threads. The order is total, so the entries kept do not depend on the order they
+	 *   are offered in.
+	 */
+	private static class topHeap {
+		// Maximum number of entries kept
+		private final int size;
+		// The entries kept, the smallest on top
+		private final PriorityQueue <entry> heap;
+		// Line count of the smallest entry kept, once the heap is full
+		private volatile long floor = Long.MIN_VALUE;
+		// Default constructor
+		topHeap( int heapSize ) {
+			size = heapSize;
+			heap = new PriorityQueue <entry> ( Math.max( heapSize, 1 ), Collections.reverseOrder( LARGEST_FIRST ));
+		}
+		// Offer an entry, whose path is only taken when the entry is kept
+		void offer( Object path, long files, long lines, long bytes ) {
+			if (( size == 0 ) || ( lines < floor )) {
+				return;
+			}
+			synchronized ( this ) {
+				entry offered = new entry( path.toString(), files, lines, bytes );
+				// Replace the smallest entry once the heap is full
+				if ( heap.size() >= size ) {
+					if ( LARGEST_FIRST.compare( offered, heap.peek()) >= 0 ) {
+						return;
+					}
+					heap.poll();
+				}
+				heap.add( offered );
+				if ( heap.size() >= size ) {
+					floor = heap.peek().lines;
+				}
+			}
+		}
+		// Retrieve the entries, the largest first
+		synchronized List <entry> getEntries() {
+			ArrayList <entry> sorted = new ArrayList <entry> ( heap );
+			Collections.sort( sorted, LARGEST_FIRST );
+			return sorted;
+		}
+	}
+
+	/**
+	 * directory
+	 *
+	 * A directory whose files are still being counted.
+	 */
+	private class directory {
+		// Path of the directory
+		private final Path path;
+		// Number of files still to be counted, or -1 when not known
+		private int remaining;
+		// Number of configured files, lines and bytes directly in the directory
+		private long files = 0;
+		private long lines = 0;
+		private long bytes = 0;
+		// Nodes of the tree the configured files are counted in, or null before the first one
+		private node nodes[] = null;
+		// Default constructor
+		directory( Path directoryPath, int directoryFiles ) {
+			path = directoryPath;
+			remaining = directoryFiles;
+		}
+		// Count a file, returning whether or not it was the last one
+		synchronized boolean count( boolean configured, long fileLines, long fileBytes ) {
+			if ( configured ) {
+				if ( nodes == null ) {
+					nodes = findNodes( path );
+				}
+				for ( node ancestor : nodes ) {
+					ancestor.files.increment();
+					ancestor.lines.add( fileLines );
+					ancestor.bytes.add( fileBytes );
+				}
+				files++;
+				lines += fileLines;
+				bytes += fileBytes;
+			}
+			return ( remaining > 0 ) && ( --remaining == 0 );
+		}
+	}
+
+	/**
+	 * ScaDirectoryRollup
+	 *
+	 * Creates the rollup of a project, with a node per directory down to the reporting
+	 *   depth and the given number of largest files and directories.
+	 */
+	public ScaDirectoryRollup( Path projectRoot, int reportingDepth, int largestSize ) {
+		root = projectRoot;
+		depth = Math.max( reportingDepth, 0 );
+		topSize = Math.max( largestSize, 0 );
+		rootNode = new node( "" );
+		largestFiles = new topHeap( topSize );
+		largestDirectories = new topHeap( topSize );
+	}
+
+	// Find the nodes of a directory and its ancestors, down to the reporting depth
+	private node[] findNodes( Path path ) {
+		// Get the path below the root
+		Path relative = null;
+		try {
+			relative = path.equals( root ) ? null : root.relativize( path );
+		}
+		catch ( IllegalArgumentException e ) {
+			relative = null;
+		}
+		int levels = ( relative != null ) ? Math.min( depth, relative.getNameCount()) : 0;
+		// Walk down the tree
+		node nodes[] = new node[ levels + 1 ];
+		nodes[0] = rootNode;
+		for ( int level = 1; level <= levels; level++ ) {
+			nodes[ level ] = nodes[ level - 1 ].child( relative.getName( level - 1 ).toString());
+		}
+		return nodes;
+	}
+
+	/**
+	 * openDirectory
+	 *
+	 * Opens a directory with the number of files listed in it, before any of them is
+	 *   counted.
+	 */
+	public void openDirectory( Path path, int files ) {
+		if ( files > 0 ) {
+			openDirectories.put( path, new directory( path, files ));
+		}
+	}
+
+	/**
+	 * addFile
+	 *
+	 * Counts a configured file in its directory and in the tree, and offers it to the
+	 *   largest files.
+	 */
+	public void addFile( Path path, long lines, long bytes ) {
+		largestFiles.offer( path, 1, lines, bytes );
+		count( path, true, lines, bytes );
+	}
+
+	/**
+	 * skipFile
+	 *
+	 * Counts a file that is not a configured file out of its directory.
+	 */
+	public void skipFile( Path path ) {
+		count( path, false, 0, 0 );
+	}
+
+	// Count a file in its directory, closing the directory after its last file
+	private void count( Path path, boolean configured, long lines, long bytes ) {
+		Path parent = path.getParent();
+		if ( parent == null ) {
+			parent = root;
+		}
+		directory open = openDirectories.get( parent );
+		if ( open == null ) {
+			// Was the directory not opened by the walker?
+			if ( !configured ) {
+				return;
+			}
+			directory added = new directory( parent, -1 );
+			open = openDirectories.putIfAbsent( parent, added );
+			if ( open == null ) {
+				open = added;
+			}
+		}
+		if ( open.count( configured, lines, bytes )) {
+			close( open );
+		}
+	}
+
+	// Close a directory and offer it to the largest directories
+	private void close( directory closed ) {
+		openDirectories.remove( closed.path, closed );
+		synchronized ( closed ) {
+			if ( closed.files > 0 ) {
+				largestDirectories.offer( closed.path, closed.files, closed.lines, closed.bytes );
+			}
+		}
+	}
+
+	/**
+	 * finish
+	 *
+	 * Closes the directories still open. Call it once, after the scan.
+	 */
+	public void finish() {
+		for ( directory open : openDirectories.values()) {
+			close( open );
+		}
+	}
+
+	// Retrieve the reporting depth
+	public int getDepth() {
+		return depth;
+	}
+
+	// Retrieve the number of largest files and directories kept
+	public int getTopSize() {
+		return topSize;
+	}
+
+	// Retrieve the root node of the tree
+	public node getRoot() {
+		return rootNode;
+	}
+
+	// Retrieve the largest files, the most lines first
+	public List <entry> getLargestFiles() {
+		return largestFiles.getEntries();
+	}
+
+	// Retrieve the largest directories, the most lines directly in them first
+	public List <entry> getLargestDirectories() {
+		return largestDirectories.getEntries();
+	}
+}
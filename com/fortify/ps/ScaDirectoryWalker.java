@@ -0,0 +1,451 @@
+package com.fortify.ps;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * ScaDirectoryWalker
+ *
+ * Walks a directory tree using java.nio.file. The type and size of every entry are taken
+ *   from a single attribute read, the tree is walked iteratively (no recursion on the Java
+ *   stack), and every directory is identified by its file key: a sub directory with the
+ *   file key of one of its ancestors closes a symbolic link (or hard link) cycle and is
+ *   skipped, as Files.walkFileTree does. A directory reached through several paths outside
+ *   of a cycle is walked once per path, so the counts do not depend on the order of the
+ *   walk or on the number of threads. Entries excluded by the exclusion matcher are
+ *   dropped while a directory is listed, so an excluded directory is never listed itself.
+ *   In a shard of a tree, the entries of the root directory that belong to other shards
+ *   are dropped the same way. The walker may be shared by multiple threads.
+ */
+public class ScaDirectoryWalker {
+
+	// Link options when symbolic links are followed
+	private static final LinkOption FOLLOW_LINKS[] = new LinkOption[0];
+	// Link options when symbolic links are not followed
+	private static final LinkOption NO_FOLLOW_LINKS[] = { LinkOption.NOFOLLOW_LINKS };
+	// Follow symbolic links?
+	private final boolean followLinks;
+	// Ancestor chains of the directories still to be listed
+	private final ConcurrentHashMap <Path, ancestor> ancestorChains = new ConcurrentHashMap <Path, ancestor> ();
+	// Matcher of the excluded entries, or null
+	private ScaExclusionMatcher exclusionMatcher = null;
+	// Exclusion contexts of the directories still to be listed
+	private final ConcurrentHashMap <Path, ScaExclusionMatcher.context> exclusionContexts = new ConcurrentHashMap <Path, ScaExclusionMatcher.context> ();
+	// Metrics of the scan, or null
+	private ScaScanMetrics metrics = null;
+	// Governor of the I/O operations, or null
+	private ScaIoGovernor ioGovernor = null;
+	// Rollup of the configured files per directory, or null
+	private ScaDirectoryRollup rollup = null;
+	// Scan cache told about the skipped entries, or null
+	private ScaScanCache scanCache = null;
+	// Root directory of the shard, or null to walk the whole tree
+	private Path shardRoot = null;
+	// Shard number, from 1 to the number of shards
+	private int shard = 1;
+	// Number of shards
+	private int shardCount = 1;
+
+	/**
+	 * fileVisitor
+	 *
+	 * Receives every file found by the walker.
+	 */
+	public interface fileVisitor {
+		// Visit a file, together with the attributes already read for it
+		void visitFile( Path file, BasicFileAttributes attributes );
+	}
+
+	// A directory on the path from the root to the directory being listed
+	private static class ancestor {
+		// File key of the directory
+		private final Object key;
+		// Parent directory, or null at the start of the walk
+		private final ancestor parent;
+		// Default constructor
+		ancestor( Object ancestorKey, ancestor ancestorParent ) {
+			key = ancestorKey;
+			parent = ancestorParent;
+		}
+		// Is the file key that of this directory or one of its ancestors?
+		boolean contains( Object directoryKey ) {
+			for ( ancestor current = this; current != null; current = current.parent ) {
+				if ( current.key.equals( directoryKey )) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * fileEntry
+	 *
+	 * A file found in a directory, together with the attributes already read for it.
+	 */
+	public static class fileEntry {
+		// Path of the file
+		private final Path path;
+		// Attributes of the file
+		private final BasicFileAttributes attributes;
+		// Default constructor
+		fileEntry( Path entryPath, BasicFileAttributes entryAttributes ) {
+			path = entryPath;
+			attributes = entryAttributes;
+		}
+		// Retrieve the path of the file
+		public Path getPath() {
+			return path;
+		}
+		// Retrieve the attributes of the file
+		public BasicFileAttributes getAttributes() {
+			return attributes;
+		}
+	}
+
+	// Default constructor
+	public ScaDirectoryWalker( boolean followSymbolicLinks ) {
+		followLinks = followSymbolicLinks;
+	}
+
+	// Set the matcher of the excluded entries, before the walk
+	public void setExclusionMatcher( ScaExclusionMatcher matcher ) {
+		exclusionMatcher = matcher;
+	}
+
+	// Set the metrics of the scan, before the walk
+	public void setMetrics( ScaScanMetrics scanMetrics ) {
+		metrics = scanMetrics;
+	}
+
+	// Set the governor of the I/O operations, or null, before the walk
+	public void setIoGovernor( ScaIoGovernor governor ) {
+		ioGovernor = governor;
+	}
+
+	// Set the rollup of the configured files per directory, or null, before the walk
+	public void setRollup( ScaDirectoryRollup directoryRollup ) {
+		rollup = directoryRollup;
+	}
+
+	// Set the scan cache that keeps the entries of the skipped directories and files, or null, before the walk
+	public void setScanCache( ScaScanCache cache ) {
+		scanCache = cache;
+	}
+
+	// Only walk the entries of the root directory belonging to a shard, from 1 to the number of shards, before the walk
+	public void setShard( Path root, int shardNumber, int numberOfShards ) {
+		shardRoot = root;
+		shard = shardNumber;
+		shardCount = numberOfShards;
+	}
+
+	/**
+	 * isInShard
+	 *
+	 * Decides whether an entry of the root directory belongs to a shard, from 1 to the
+	 *   number of shards, by a FNV-1a hash of its UTF-8 name. The decision only depends on
+	 *   the name, so every process and machine splits a tree the same way.
+	 *
+	 * @return Whether or not the entry belongs to the shard.
+	 */
+	public static boolean isInShard( String name, int shardNumber, int numberOfShards ) {
+		int hash = 0x811c9dc5;
+		for ( byte value : name.getBytes( StandardCharsets.UTF_8 )) {
+			hash = ( hash ^ ( value & 0xff )) * 0x01000193;
+		}
+		return Integer.remainderUnsigned( hash, numberOfShards ) == shardNumber - 1;
+	}
+
+	// Does the walker follow symbolic links?
+	public boolean isFollowLinks() {
+		return followLinks;
+	}
+
+	/**
+	 * enterRoot
+	 *
+	 * Starts a walk at the root directory.
+	 *
+	 * @return Whether or not the root directory can be walked.
+	 */
+	public boolean enterRoot( Path root ) {
+		return enterSubtree( root, root );
+	}
+
+	/**
+	 * enterSubtree
+	 *
+	 * Starts a walk at a directory below the root of a tree, to walk only that part of the
+	 *   tree. The exclusion rules of the root and of the directories in between apply, and
+	 *   the directories in between count as its ancestors.
+	 *
+	 * @return Whether or not the directory can be walked.
+	 */
+	public boolean enterSubtree( Path root, Path directory ) {
+		// Set the default result
+		boolean entered = false;
+		try {
+			// Read the attributes of the directory, always following a link
+			BasicFileAttributes attributes = Files.readAttributes( directory, BasicFileAttributes.class );
+			// Is it a directory?
+			if ( attributes.isDirectory()) {
+				// Get the ancestors of the directory
+				ancestor chain = null;
+				if ( !directory.equals( root ) && directory.startsWith( root )) {
+					Path current = root;
+					chain = new ancestor( getKey( current, Files.readAttributes( current, BasicFileAttributes.class )), null );
+					for ( Path name : root.relativize( directory.getParent())) {
+						current = current.resolve( name );
+						chain = new ancestor( getKey( current, Files.readAttributes( current, BasicFileAttributes.class )), chain );
+					}
+				}
+				entered = enterDirectory( directory, attributes, chain );
+				// Get the exclusion rules of the directory
+				if ( entered && ( exclusionMatcher != null )) {
+					exclusionContexts.put( directory, exclusionMatcher.subtreeContext( root, directory ));
+				}
+			}
+			else {
+				System.out.println("Not a directory: \"" + directory + "\".");
+			}
+		}
+		catch ( IOException e ) {
+			System.out.println("Could not read from the directory: \"" + directory + "\" (you probably don\'t have read access).");
+		}
+		// Return the result
+		return entered;
+	}
+
+	/**
+	 * enterDirectory
+	 *
+	 * Registers a directory to be listed, together with its ancestors, unless it is one of
+	 *   its own ancestors (a cycle).
+	 *
+	 * @return Whether or not the directory is not one of its ancestors.
+	 */
+	private boolean enterDirectory( Path directory, BasicFileAttributes attributes, ancestor parent ) {
+		// Get the unique identification of the directory
+		Object key = getKey( directory, attributes );
+		// Does it close a cycle?
+		if (( parent != null ) && parent.contains( key )) {
+			return false;
+		}
+		ancestorChains.put( directory, new ancestor( key, parent ));
+		return true;
+	}
+
+	// Get the unique identification of a directory, its file key, or its real path on platforms without file keys
+	private static Object getKey( Path directory, BasicFileAttributes attributes ) {
+		Object key = attributes.fileKey();
+		if ( key == null ) {
+			try {
+				key = directory.toRealPath().toString();
+			}
+			catch ( IOException e ) {
+				key = directory.toAbsolutePath().normalize().toString();
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * readAttributes
+	 *
+	 * Reads the attributes of a single file, using the link policy of the walker.
+	 *
+	 * @return The attributes, or null if they could not be read.
+	 */
+	public BasicFileAttributes readAttributes( Path file ) {
+		try {
+			return Files.readAttributes( file, BasicFileAttributes.class, followLinks ? FOLLOW_LINKS : NO_FOLLOW_LINKS );
+		}
+		catch ( IOException e ) {
+			return null;
+		}
+	}
+
+	/**
+	 * listDirectory
+	 *
+	 * Lists a single directory. Sub directories that are not one of its ancestors are added
+	 *   to the list of directories, all other entries are added to the list of files. Special
+	 *   files (devices, pipes, sockets) are skipped, as are symbolic links when links are not
+	 *   followed, and excluded entries. Under an I/O governor the listing waits for a permit.
+	 *
+	 * @return Whether or not the directory could be listed.
+	 */
+	public boolean listDirectory( Path directory, ArrayList <Path> directories, ArrayList <fileEntry> files ) {
+		// List the directory directly?
+		if ( ioGovernor == null ) {
+			return listEntries( directory, directories, files );
+		}
+		// Wait for the I/O governor
+		ioGovernor.acquire( 0 );
+		long start = System.nanoTime();
+		try {
+			return listEntries( directory, directories, files );
+		}
+		finally {
+			// Let the I/O governor start the next operation
+			ioGovernor.release( 0, System.nanoTime() - start );
+		}
+	}
+
+	// List a single directory
+	private boolean listEntries( Path directory, ArrayList <Path> directories, ArrayList <fileEntry> files ) {
+		// Set the default result
+		boolean listed = false;
+		// Time the listing for the flight recorder, once it is initialized, and the metrics
+		ScaScanEvents.directoryListEvent event = ScaScanEvents.isEnabled() ? new ScaScanEvents.directoryListEvent() : null;
+		if ( event != null ) {
+			event.begin();
+		}
+		long start = ( metrics != null ) ? System.nanoTime() : 0;
+		long attributeNanos = 0;
+		int entries = 0;
+		int firstFile = files.size();
+		// Get the link options
+		LinkOption linkOptions[] = followLinks ? FOLLOW_LINKS : NO_FOLLOW_LINKS;
+		// Get the exclusion rules of the directory
+		ScaExclusionMatcher.context exclusionContext = ( exclusionMatcher != null ) ? exclusionContexts.remove( directory ) : null;
+		// Get the ancestors of the sub directories
+		ancestor chain = ancestorChains.remove( directory );
+		// Is it the root directory of a shard?
+		boolean sharded = ( shardRoot != null ) && directory.equals( shardRoot );
+		// Open the directory
+		try ( DirectoryStream <Path> stream = Files.newDirectoryStream( directory )) {
+			// Loop through the entries
+			for ( Path entry : stream ) {
+				entries++;
+				// Does it belong to another shard?
+				if ( sharded && !isInShard( entry.getFileName().toString(), shard, shardCount )) {
+					if ( scanCache != null ) {
+						scanCache.keepSkipped( entry.toAbsolutePath().toString());
+					}
+					continue;
+				}
+				try {
+					// Read the attributes once
+					BasicFileAttributes attributes;
+					if ( metrics != null ) {
+						long attributeStart = System.nanoTime();
+						attributes = Files.readAttributes( entry, BasicFileAttributes.class, linkOptions );
+						attributeNanos += System.nanoTime() - attributeStart;
+					}
+					else {
+						attributes = Files.readAttributes( entry, BasicFileAttributes.class, linkOptions );
+					}
+					// Is it excluded?
+					String name = null;
+					if ( exclusionContext != null ) {
+						name = entry.getFileName().toString();
+						if ( exclusionMatcher.isExcluded( exclusionContext, name, attributes.isDirectory())) {
+							if ( scanCache != null ) {
+								scanCache.keepSkipped( entry.toAbsolutePath().toString());
+							}
+							continue;
+						}
+					}
+					// Is it a directory?
+					if ( attributes.isDirectory()) {
+						// Is it not one of its own ancestors?
+						if ( enterDirectory( entry, attributes, chain )) {
+							// Keep the exclusion rules of the sub directory
+							if ( exclusionContext != null ) {
+								exclusionContexts.put( entry, exclusionMatcher.enterDirectory( exclusionContext, entry, name ));
+							}
+							directories.add( entry );
+						}
+					}
+					// Is it a regular file?
+					else if ( attributes.isRegularFile()) {
+						files.add( new fileEntry( entry, attributes ));
+					}
+				}
+				catch ( IOException e ) {
+					System.out.println("Could not read the attributes of: \"" + entry + "\" (maybe it is a broken link).");
+				}
+			}
+			// The directory was listed
+			listed = true;
+		}
+		catch ( AccessDeniedException e ) {
+			System.out.println("Could not read from the directory: \"" + directory + "\" (you probably don\'t have read access).");
+		}
+		catch ( IOException e ) {
+			System.out.println("Could not list the directory: \"" + directory + "\".");
+		}
+		// Record the listing
+		if ( listed ) {
+			if ( rollup != null ) {
+				rollup.openDirectory( directory, files.size() - firstFile );
+			}
+			if ( metrics != null ) {
+				metrics.addDirectory( directory, entries, System.nanoTime() - start, attributeNanos );
+			}
+			if ( event != null ) {
+				event.end();
+			}
+			if (( event != null ) && event.shouldCommit()) {
+				event.directory = directory.toString();
+				event.entries = entries;
+				event.commit();
+			}
+		}
+		// Return the result
+		return listed;
+	}
+
+	/**
+	 * walk
+	 *
+	 * Walks the directory tree below the root iteratively and passes every file to the visitor.
+	 *
+	 * @return Whether or not the root directory could be walked.
+	 */
+	public boolean walk( Path root, fileVisitor visitor ) {
+		// Can the root be entered?
+		boolean entered = enterRoot( root );
+		if ( entered ) {
+			// Directories still to be listed
+			ArrayDeque <Path> pending = new ArrayDeque <Path> ();
+			pending.push( root );
+			// Reused lists for the entries of a directory
+			ArrayList <Path> directories = new ArrayList <Path> ();
+			ArrayList <fileEntry> files = new ArrayList <fileEntry> ();
+			// Walk until all directories are listed
+			while ( !pending.isEmpty()) {
+				// Get the next directory
+				Path directory = pending.pop();
+				directories.clear();
+				files.clear();
+				// List the directory
+				if ( listDirectory( directory, directories, files )) {
+					// Visit the files
+					for ( int index = 0; index < files.size(); index++ ) {
+						fileEntry file = files.get( index );
+						visitor.visitFile( file.getPath(), file.getAttributes());
+					}
+					// Schedule the sub directories
+					for ( int index = directories.size() - 1; index >= 0; index-- ) {
+						pending.push( directories.get( index ));
+					}
+				}
+			}
+		}
+		// Return the result
+		return entered;
+	}
+}
@@ -0,0 +1,318 @@
+package com.fortify.ps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * ScaDuplicateFinder
+ *
+ * Finds the configured files with identical content, so the file and line counts can be
+ *   reported without the copies. The scanning threads add every configured file with its
+ *   size, its line count and, when the line counter read it, the SHA-256 digest of its
+ *   first PREFIX_SIZE bytes, taken in the same pass. After the scan the candidates are
+ *   narrowed down in three steps, each only for the files the previous step could not
+ *   tell apart:
+ *   - the files are grouped by configured file extension and size, and files of a unique
+ *     extension and size are dropped, so a file is never a copy of a file of another
+ *     extension or Fortify type;
+ *   - the files are grouped by prefix digest; the prefix of a file served from the scan
+ *     cache is read now. Files no larger than the prefix are identical when their
+ *     prefixes are;
+ *   - the larger files are read once more and grouped by the digest of their full content.
+ *   Of every group of identical files the first path, in sort order, is taken as the
+ *   original and the others as copies. Empty files are never duplicates.
+ */
+public class ScaDuplicateFinder {
+
+	// Number of bytes of the prefix digest
+	public static final int PREFIX_SIZE = 4096;
+	// Size of the read buffer of the full digests
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// Classifier assigning the ids of the configured file extensions
+	private final ScaExtensionClassifier classifier;
+	// Files added by the scanning threads
+	private final ConcurrentLinkedQueue <candidate> candidates = new ConcurrentLinkedQueue <candidate> ();
+	// Groups of identical files, the most redundant lines first
+	private final ArrayList <group> groups = new ArrayList <group> ();
+	// Files and lines of the copies, per configured file extension
+	private final HashMap <String, long[]> copies = new HashMap <String, long[]> ();
+	// Number of files sharing their extension and size with another file
+	private long sizeCollisions = 0;
+	// Number of prefixes read after the scan
+	private long prefixReads = 0;
+	// Number of files and bytes read for a full digest
+	private long fullReads = 0;
+	private long fullBytes = 0;
+	// Number of copies and their lines
+	private long copyFiles = 0;
+	private long copyLines = 0;
+
+	/**
+	 * candidate
+	 *
+	 * A configured file that may have copies.
+	 */
+	private static class candidate {
+		// Path of the file
+		private final Path path;
+		// Id of the configured file extension
+		private final int extensionId;
+		// Size of the file
+		private final long size;
+		// Number of lines
+		private final long lines;
+		// Digest of the prefix, or null when not read yet
+		private byte prefix[];
+		// Default constructor
+		candidate( Path candidatePath, int candidateExtensionId, long candidateSize, long candidateLines, byte candidatePrefix[] ) {
+			path = candidatePath;
+			extensionId = candidateExtensionId;
+			size = candidateSize;
+			lines = candidateLines;
+			prefix = candidatePrefix;
+		}
+	}
+
+	/**
+	 * group
+	 *
+	 * Files with identical content.
+	 */
+	public static class group {
+		// Size of every file
+		private final long size;
+		// Number of lines of every file
+		private final long lines;
+		// Paths of the files, the original first
+		private final ArrayList <Path> paths = new ArrayList <Path> ();
+		// Default constructor
+		group( long groupSize, long groupLines ) {
+			size = groupSize;
+			lines = groupLines;
+		}
+		// Retrieve the size of every file
+		public long getSize() {
+			return size;
+		}
+		// Retrieve the number of lines of every file
+		public long getLines() {
+			return lines;
+		}
+		// Retrieve the paths of the files, the original first
+		public List <Path> getPaths() {
+			return paths;
+		}
+		// Retrieve the number of lines of the copies
+		public long getRedundantLines() {
+			return lines * ( paths.size() - 1 );
+		}
+	}
+
+	// Sorts the groups by their redundant lines, then by their redundant bytes, the largest first
+	private static final Comparator <group> MOST_REDUNDANT_FIRST = new Comparator <group> () {
+		public int compare( group first, group second ) {
+			int order = Long.compare( second.getRedundantLines(), first.getRedundantLines());
+			if ( order == 0 ) {
+				order = Long.compare( second.size * ( second.paths.size() - 1 ), first.size * ( first.paths.size() - 1 ));
+			}
+			return ( order != 0 ) ? order : first.paths.get( 0 ).compareTo( second.paths.get( 0 ));
+		}
+	};
+
+	// Default constructor
+	public ScaDuplicateFinder( ScaExtensionClassifier extensionClassifier ) {
+		classifier = extensionClassifier;
+	}
+
+	/**
+	 * add
+	 *
+	 * Adds a configured file, with the digest of its first PREFIX_SIZE bytes when it was
+	 *   read, or null. May be called by many threads at once.
+	 */
+	public void add( Path path, int extensionId, long size, long lines, byte prefix[] ) {
+		if ( size > 0 ) {
+			candidates.add( new candidate( path, extensionId, size, lines, prefix ));
+		}
+	}
+
+	/**
+	 * find
+	 *
+	 * Groups the files added so far by their content and counts the copies. Call it once,
+	 *   after the scan.
+	 */
+	public void find() {
+		// Group the files by configured file extension and size
+		HashMap <String, ArrayList <candidate>> bySize = new HashMap <String, ArrayList <candidate>> ();
+		for ( candidate file : candidates ) {
+			addTo( bySize, file.extensionId + ":" + file.size, file );
+		}
+		candidates.clear();
+		for ( ArrayList <candidate> sameSize : bySize.values()) {
+			if ( sameSize.size() < 2 ) {
+				continue;
+			}
+			sizeCollisions += sameSize.size();
+			// Group the files of the same extension and size by prefix
+			HashMap <String, ArrayList <candidate>> byPrefix = new HashMap <String, ArrayList <candidate>> ();
+			for ( candidate file : sameSize ) {
+				if ( file.prefix == null ) {
+					file.prefix = digest( file.path, PREFIX_SIZE );
+					prefixReads++;
+				}
+				if ( file.prefix != null ) {
+					addTo( byPrefix, toHex( file.prefix ), file );
+				}
+			}
+			for ( ArrayList <candidate> samePrefix : byPrefix.values()) {
+				if ( samePrefix.size() < 2 ) {
+					continue;
+				}
+				// Is the prefix the whole file?
+				if ( samePrefix.get( 0 ).size <= PREFIX_SIZE ) {
+					addGroup( samePrefix );
+					continue;
+				}
+				// Group the files of the same prefix by their full content
+				HashMap <String, ArrayList <candidate>> byContent = new HashMap <String, ArrayList <candidate>> ();
+				for ( candidate file : samePrefix ) {
+					byte content[] = digest( file.path, Long.MAX_VALUE );
+					fullReads++;
+					if ( content != null ) {
+						fullBytes += file.size;
+						addTo( byContent, toHex( content ), file );
+					}
+				}
+				for ( ArrayList <candidate> sameContent : byContent.values()) {
+					if ( sameContent.size() > 1 ) {
+						addGroup( sameContent );
+					}
+				}
+			}
+		}
+		// Put the most redundant groups first
+		Collections.sort( groups, MOST_REDUNDANT_FIRST );
+	}
+
+	// Add a file to the list of its key
+	private static void addTo( HashMap <String, ArrayList <candidate>> lists, String key, candidate file ) {
+		ArrayList <candidate> list = lists.get( key );
+		if ( list == null ) {
+			list = new ArrayList <candidate> ( 2 );
+			lists.put( key, list );
+		}
+		list.add( file );
+	}
+
+	// Add a group of identical files, counting all but the first as copies
+	private void addGroup( ArrayList <candidate> files ) {
+		candidate sorted[] = files.toArray( new candidate[ files.size() ] );
+		Arrays.sort( sorted, new Comparator <candidate> () {
+			public int compare( candidate first, candidate second ) {
+				return first.path.compareTo( second.path );
+			}
+		});
+		group identical = new group( sorted[0].size, sorted[0].lines );
+		for ( int index = 0; index < sorted.length; index++ ) {
+			identical.paths.add( sorted[ index ].path );
+			if ( index > 0 ) {
+				String extension = classifier.getExtension( sorted[ index ].extensionId );
+				long counts[] = copies.get( extension );
+				if ( counts == null ) {
+					counts = new long[2];
+					copies.put( extension, counts );
+				}
+				counts[0]++;
+				counts[1] += sorted[ index ].lines;
+				copyFiles++;
+				copyLines += sorted[ index ].lines;
+			}
+		}
+		groups.add( identical );
+	}
+
+	// Take the SHA-256 digest of at most the given number of bytes of a file, or null when it could not be read
+	private static byte[] digest( Path path, long maxBytes ) {
+		try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.READ )) {
+			MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
+			ByteBuffer buffer = ByteBuffer.allocate(( int ) Math.min( BUFFER_SIZE, maxBytes ));
+			long remaining = maxBytes;
+			int read;
+			while (( remaining > 0 ) && (( read = channel.read( buffer )) >= 0 )) {
+				buffer.flip();
+				if ( read > remaining ) {
+					buffer.limit(( int ) remaining );
+				}
+				remaining -= buffer.remaining();
+				digest.update( buffer );
+				buffer.clear();
+			}
+			return digest.digest();
+		}
+		catch ( IOException e ) {
+			System.out.println("Could not read file \"" + path + "\" (maybe you do not have read access).");
+			return null;
+		}
+		catch ( NoSuchAlgorithmException e ) {
+			// Every Java runtime has SHA-256
+			throw new IllegalStateException( e );
+		}
+	}
+
+	// Write a digest as hexadecimal text
+	private static String toHex( byte digest[] ) {
+		StringBuilder text = new StringBuilder( digest.length * 2 );
+		for ( byte value : digest ) {
+			text.append( Character.forDigit(( value >> 4 ) & 0xF, 16 ));
+			text.append( Character.forDigit( value & 0xF, 16 ));
+		}
+		return text.toString();
+	}
+
+	// Retrieve the number of copies of a configured file extension
+	public long getCopyFiles( String extension ) {
+		long counts[] = copies.get( extension );
+		return ( counts != null ) ? counts[0] : 0;
+	}
+
+	// Retrieve the number of lines of the copies of a configured file extension
+	public long getCopyLines( String extension ) {
+		long counts[] = copies.get( extension );
+		return ( counts != null ) ? counts[1] : 0;
+	}
+
+	// Retrieve the number of copies
+	public long getCopyFiles() {
+		return copyFiles;
+	}
+
+	// Retrieve the number of lines of the copies
+	public long getCopyLines() {
+		return copyLines;
+	}
+
+	// Retrieve the groups of identical files, the most redundant lines first
+	public List <group> getGroups() {
+		return groups;
+	}
+
+	// Describe the work done for humans
+	public String getSummary() {
+		return "Duplicates: " + sizeCollisions + " files share their extension and size with another file, " + prefixReads + " prefixes read again, " + fullReads + " files read in full (" + fullBytes + " bytes); " + groups.size() + " groups of identical files, " + copyFiles + " copies with " + copyLines + " lines.";
+	}
+}
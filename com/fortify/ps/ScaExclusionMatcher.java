@@ -0,0 +1,472 @@
+package com.fortify.ps;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * ScaExclusionMatcher
+ *
+ * Decides which directories and files are excluded from a scan. The rules are glob
+ *   patterns with the semantics of .gitignore files: "*" and "?" match within a path
+ *   segment, "**" matches any number of segments, "[...]" matches a character class, a
+ *   trailing "/" only matches directories, a pattern holding a "/" is anchored at the
+ *   directory of its rule set, and "!" includes again what an earlier rule excluded.
+ *   Patterns are compiled once; plain names and "*.ext" patterns are looked up in hash
+ *   sets, so testing a path is cheap. The rules from the command line and the exclude
+ *   file apply from the root of the scan, and optionally the .gitignore files of the
+ *   directories walked apply as well, the deepest file taking precedence. An excluded
+ *   directory is pruned before it is listed. The matcher may be shared by multiple threads.
+ */
+public class ScaExclusionMatcher {
+
+	// No rule matched
+	private static final int NO_MATCH = 0;
+	// A rule excluded the path
+	private static final int MATCH_EXCLUDED = 1;
+	// A negated rule included the path again
+	private static final int MATCH_INCLUDED = 2;
+	// Name of the git ignore files
+	public static final String GIT_IGNORE_FILE = ".gitignore";
+
+	// Rules from the command line and the exclude file
+	private final ruleSet globalRules;
+	// Honor the .gitignore files?
+	private final boolean useGitIgnore;
+	// Number of directories pruned
+	private final LongAdder prunedDirectories = new LongAdder();
+	// Number of files excluded
+	private final LongAdder prunedFiles = new LongAdder();
+
+	// A compiled pattern
+	private static class rule {
+		// Does the rule include the path again?
+		private final boolean negated;
+		// Does the rule only match directories?
+		private final boolean directoryOnly;
+		// Does the rule match the path relative to the rule set (instead of the name)?
+		private final boolean anchored;
+		// The pattern
+		private final String pattern;
+		// Default constructor
+		rule( boolean ruleNegated, boolean ruleDirectoryOnly, boolean ruleAnchored, String rulePattern ) {
+			negated = ruleNegated;
+			directoryOnly = ruleDirectoryOnly;
+			anchored = ruleAnchored;
+			pattern = rulePattern;
+		}
+		// Does the rule match?
+		boolean matches( String name, String relativePath, boolean isDirectory ) {
+			if ( directoryOnly && !isDirectory ) {
+				return false;
+			}
+			return glob( pattern, 0, anchored ? relativePath : name, 0 );
+		}
+	}
+
+	// The rules of a single source, applying to a directory and everything below it
+	private static class ruleSet {
+		// Path of the directory of the rules, relative to the root, ending with "/" (or empty)
+		private final String base;
+		// All rules, in order
+		private final ArrayList <rule> rules = new ArrayList <rule> ();
+		// Are there negated rules (which make the order significant)?
+		private boolean hasNegations = false;
+		// Plain names matching files and directories (without negations only)
+		private final HashSet <String> names = new HashSet <String> ();
+		// Plain names matching directories only (without negations only)
+		private final HashSet <String> directoryNames = new HashSet <String> ();
+		// File extensions of "*.ext" patterns (without negations only)
+		private final HashSet <String> extensions = new HashSet <String> ();
+		// Rules not handled by the hash sets (without negations only)
+		private final ArrayList <rule> otherRules = new ArrayList <rule> ();
+		// Default constructor
+		ruleSet( String ruleBase ) {
+			base = ruleBase;
+		}
+		// Add a pattern
+		void add( String line ) {
+			// Skip empty lines and comments
+			String pattern = stripTrailingSpaces( line );
+			if (( pattern.length() == 0 ) || pattern.startsWith( "#" )) {
+				return;
+			}
+			// Negation
+			boolean negated = pattern.startsWith( "!" );
+			if ( negated ) {
+				pattern = pattern.substring( 1 );
+				hasNegations = true;
+			}
+			else if ( pattern.startsWith( "\\" )) {
+				pattern = pattern.substring( 1 );
+			}
+			// Directories only
+			boolean directoryOnly = pattern.endsWith( "/" );
+			if ( directoryOnly ) {
+				pattern = pattern.substring( 0, pattern.length() - 1 );
+			}
+			// Anchored
+			boolean anchored = pattern.indexOf( '/' ) >= 0;
+			if ( pattern.startsWith( "/" )) {
+				pattern = pattern.substring( 1 );
+			}
+			if ( pattern.length() > 0 ) {
+				rules.add( new rule( negated, directoryOnly, anchored, pattern ));
+			}
+		}
+		// Build the hash sets, once all patterns are added
+		void compile() {
+			if ( hasNegations ) {
+				return;
+			}
+			for ( rule compiled : rules ) {
+				if ( !compiled.anchored && !hasWildcard( compiled.pattern, 0 )) {
+					( compiled.directoryOnly ? directoryNames : names ).add( compiled.pattern );
+				}
+				else if ( !compiled.anchored && !compiled.directoryOnly && compiled.pattern.startsWith( "*." ) && !hasWildcard( compiled.pattern, 1 )) {
+					extensions.add( compiled.pattern.substring( 2 ));
+				}
+				else {
+					otherRules.add( compiled );
+				}
+			}
+		}
+		// Evaluate the rules for a path relative to the root
+		int evaluate( String name, String relativePath, boolean isDirectory ) {
+			// Get the path relative to the rule set
+			String path = ( relativePath != null ) ? relativePath.substring( base.length()) : null;
+			if ( !hasNegations ) {
+				// Any match excludes
+				if ( names.contains( name ) || ( isDirectory && directoryNames.contains( name ))) {
+					return MATCH_EXCLUDED;
+				}
+				if ( !extensions.isEmpty()) {
+					int dot = name.lastIndexOf( '.' );
+					if (( dot >= 0 ) && extensions.contains( name.substring( dot + 1 ))) {
+						return MATCH_EXCLUDED;
+					}
+				}
+				for ( int index = 0; index < otherRules.size(); index++ ) {
+					if ( otherRules.get( index ).matches( name, path, isDirectory )) {
+						return MATCH_EXCLUDED;
+					}
+				}
+				return NO_MATCH;
+			}
+			// The last matching rule decides
+			for ( int index = rules.size() - 1; index >= 0; index-- ) {
+				rule compiled = rules.get( index );
+				if ( compiled.matches( name, path, isDirectory )) {
+					return compiled.negated ? MATCH_INCLUDED : MATCH_EXCLUDED;
+				}
+			}
+			return NO_MATCH;
+		}
+		// Are there no rules?
+		boolean isEmpty() {
+			return rules.isEmpty();
+		}
+	}
+
+	/**
+	 * context
+	 *
+	 * The rules applying to the entries of a directory: the rule sets of the .gitignore
+	 *   files of the directory and its parents, deepest first.
+	 */
+	public static class context {
+		// Context of the parent directory
+		private final context parent;
+		// Rules of the .gitignore file of the directory, or null
+		private final ruleSet rules;
+		// Path of the directory, relative to the root, ending with "/" (or empty)
+		private final String relativeDirectory;
+		// Default constructor
+		context( context parentContext, ruleSet directoryRules, String directory ) {
+			parent = parentContext;
+			rules = directoryRules;
+			relativeDirectory = directory;
+		}
+	}
+
+	// Default constructor
+	public ScaExclusionMatcher( List <String> patterns, boolean honorGitIgnore ) {
+		globalRules = new ruleSet( "" );
+		for ( String pattern : patterns ) {
+			globalRules.add( pattern );
+		}
+		globalRules.compile();
+		useGitIgnore = honorGitIgnore;
+	}
+
+	/**
+	 * readPatterns
+	 *
+	 * Reads the patterns of an exclude file, one pattern per line.
+	 *
+	 * @return The lines of the file.
+	 */
+	public static List <String> readPatterns( Path file ) throws IOException {
+		return Files.readAllLines( file, StandardCharsets.UTF_8 );
+	}
+
+	// Retrieve the number of directories pruned
+	public long getPrunedDirectories() {
+		return prunedDirectories.sum();
+	}
+
+	// Retrieve the number of files excluded
+	public long getPrunedFiles() {
+		return prunedFiles.sum();
+	}
+
+	/**
+	 * rootContext
+	 *
+	 * Creates the context of the root directory of a scan.
+	 *
+	 * @return The context.
+	 */
+	public context rootContext( Path root ) {
+		return createContext( null, root, "" );
+	}
+
+	/**
+	 * subtreeContext
+	 *
+	 * Creates the context of a directory below the root of a scan, entering every directory
+	 *   in between.
+	 *
+	 * @return The context.
+	 */
+	public context subtreeContext( Path root, Path directory ) {
+		context current = rootContext( root );
+		Path currentDirectory = root;
+		for ( Path name : root.relativize( directory )) {
+			if ( name.toString().length() > 0 ) {
+				currentDirectory = currentDirectory.resolve( name );
+				current = enterDirectory( current, currentDirectory, name.toString());
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * enterDirectory
+	 *
+	 * Creates the context of a sub directory, reading its .gitignore file when git ignore
+	 *   files are honored.
+	 *
+	 * @return The context.
+	 */
+	public context enterDirectory( context parent, Path directory, String name ) {
+		return createContext( parent, directory, parent.relativeDirectory + name + "/" );
+	}
+
+	// Create the context of a directory
+	private context createContext( context parent, Path directory, String relativeDirectory ) {
+		ruleSet rules = null;
+		if ( useGitIgnore ) {
+			Path gitIgnore = directory.resolve( GIT_IGNORE_FILE );
+			if ( Files.isRegularFile( gitIgnore )) {
+				try {
+					rules = new ruleSet( relativeDirectory );
+					for ( String line : Files.readAllLines( gitIgnore, StandardCharsets.UTF_8 )) {
+						rules.add( line );
+					}
+					rules.compile();
+					if ( rules.isEmpty()) {
+						rules = null;
+					}
+				}
+				catch ( IOException e ) {
+					System.out.println("Could not read file \"" + gitIgnore + "\" (maybe you do not have read access).");
+					rules = null;
+				}
+			}
+		}
+		// Share the rules of the parent when there is no .gitignore file
+		if (( rules == null ) && ( parent != null )) {
+			return new context( parent.parent, parent.rules, relativeDirectory );
+		}
+		return new context( parent, rules, relativeDirectory );
+	}
+
+	/**
+	 * isExcluded
+	 *
+	 * Checks whether an entry of a directory is excluded, and counts it when it is.
+	 *
+	 * @return Whether or not the entry is excluded.
+	 */
+	public boolean isExcluded( context directoryContext, String name, boolean isDirectory ) {
+		boolean excluded = evaluate( directoryContext, name, isDirectory );
+		if ( excluded ) {
+			( isDirectory ? prunedDirectories : prunedFiles ).increment();
+		}
+		return excluded;
+	}
+
+	/**
+	 * isExcludedPath
+	 *
+	 * Checks whether a path relative to the root ("/" separated) is excluded by the rules of
+	 *   the command line and the exclude file, including through any of its parent directories.
+	 *   Used for paths not found by walking, such as the files in the git index.
+	 *
+	 * @return Whether or not the path is excluded.
+	 */
+	public boolean isExcludedPath( String relativePath ) {
+		int start = 0;
+		while ( true ) {
+			int end = relativePath.indexOf( '/', start );
+			boolean isDirectory = end >= 0;
+			String prefix = isDirectory ? relativePath.substring( 0, end ) : relativePath;
+			String name = prefix.substring( start );
+			if ( globalRules.evaluate( name, prefix, isDirectory ) == MATCH_EXCLUDED ) {
+				( isDirectory ? prunedDirectories : prunedFiles ).increment();
+				return true;
+			}
+			if ( !isDirectory ) {
+				return false;
+			}
+			start = end + 1;
+		}
+	}
+
+	// Evaluate all rule sets for an entry of a directory
+	private boolean evaluate( context directoryContext, String name, boolean isDirectory ) {
+		// Get the path relative to the root
+		String relativePath = directoryContext.relativeDirectory + name;
+		// The rules of the command line and the exclude file come first
+		if ( globalRules.evaluate( name, relativePath, isDirectory ) == MATCH_EXCLUDED ) {
+			return true;
+		}
+		// The deepest .gitignore file with a matching rule decides
+		for ( context current = directoryContext; current != null; current = current.parent ) {
+			if ( current.rules != null ) {
+				int match = current.rules.evaluate( name, relativePath, isDirectory );
+				if ( match != NO_MATCH ) {
+					return match == MATCH_EXCLUDED;
+				}
+			}
+		}
+		return false;
+	}
+
+	// Does a pattern hold a wildcard, from an index on?
+	private static boolean hasWildcard( String pattern, int from ) {
+		for ( int index = from; index < pattern.length(); index++ ) {
+			char character = pattern.charAt( index );
+			if (( character == '*' ) || ( character == '?' ) || ( character == '[' ) || ( character == '\\' )) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Strip trailing spaces, unless escaped
+	private static String stripTrailingSpaces( String line ) {
+		int end = line.length();
+		while (( end > 0 ) && ( line.charAt( end - 1 ) == ' ' ) && !(( end > 1 ) && ( line.charAt( end - 2 ) == '\\' ))) {
+			end--;
+		}
+		return line.substring( 0, end );
+	}
+
+	/**
+	 * glob
+	 *
+	 * Matches a glob pattern against a text, both from an index on.
+	 *
+	 * @return Whether or not the rest of the text matches the rest of the pattern.
+	 */
+	static boolean glob( String pattern, int patternIndex, String text, int textIndex ) {
+		while ( patternIndex < pattern.length()) {
+			char character = pattern.charAt( patternIndex );
+			if ( character == '*' ) {
+				// Is it "**"?
+				if (( patternIndex + 1 < pattern.length()) && ( pattern.charAt( patternIndex + 1 ) == '*' )) {
+					int next = patternIndex + 2;
+					// "**/" also matches no directory at all
+					if (( next < pattern.length()) && ( pattern.charAt( next ) == '/' )) {
+						if ( glob( pattern, next + 1, text, textIndex )) {
+							return true;
+						}
+					}
+					// Match any number of characters, including "/"
+					for ( int index = textIndex; index <= text.length(); index++ ) {
+						if ( glob( pattern, next, text, index )) {
+							return true;
+						}
+					}
+					return false;
+				}
+				// Match any number of characters within the segment
+				for ( int index = textIndex; index <= text.length(); index++ ) {
+					if ( glob( pattern, patternIndex + 1, text, index )) {
+						return true;
+					}
+					if (( index < text.length()) && ( text.charAt( index ) == '/' )) {
+						break;
+					}
+				}
+				return false;
+			}
+			if ( textIndex >= text.length()) {
+				return false;
+			}
+			char textCharacter = text.charAt( textIndex );
+			if ( character == '?' ) {
+				if ( textCharacter == '/' ) {
+					return false;
+				}
+			}
+			else if ( character == '[' ) {
+				// Match a character class
+				int index = patternIndex + 1;
+				boolean negate = ( index < pattern.length()) && (( pattern.charAt( index ) == '!' ) || ( pattern.charAt( index ) == '^' ));
+				if ( negate ) {
+					index++;
+				}
+				boolean found = false;
+				boolean first = true;
+				while (( index < pattern.length()) && ( first || ( pattern.charAt( index ) != ']' ))) {
+					char low = pattern.charAt( index );
+					char high = low;
+					if (( index + 2 < pattern.length()) && ( pattern.charAt( index + 1 ) == '-' ) && ( pattern.charAt( index + 2 ) != ']' )) {
+						high = pattern.charAt( index + 2 );
+						index += 2;
+					}
+					if (( textCharacter >= low ) && ( textCharacter <= high )) {
+						found = true;
+					}
+					index++;
+					first = false;
+				}
+				if (( found == negate ) || ( textCharacter == '/' )) {
+					return false;
+				}
+				patternIndex = index;
+			}
+			else {
+				// Escaped character
+				if (( character == '\\' ) && ( patternIndex + 1 < pattern.length())) {
+					character = pattern.charAt( ++patternIndex );
+				}
+				if ( character != textCharacter ) {
+					return false;
+				}
+			}
+			patternIndex++;
+			textIndex++;
+		}
+		return textIndex == text.length();
+	}
+}
@@ -0,0 +1,163 @@
+package com.fortify.ps;
+
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * ScaExtensionClassifier
+ *
+ * Classifies file names by their file extension, using a table precompiled from the
+ *   Fortify SCA file extension mapping. Every configured file extension gets a small
+ *   integer id, in sorted order of the extensions, so counters can be kept in arrays
+ *   indexed by the id. Classifying a file name does not allocate: the last "." is found
+ *   by scanning, and the extension is hashed and compared ignoring case, in place.
+ *   The rules match splitting the file name on ".": only the last extension counts,
+ *   trailing "." characters are ignored and names without a "." have no extension.
+ *   An instance is immutable and may be shared by multiple threads.
+ */
+public class ScaExtensionClassifier {
+
+	// The file name has no file extension
+	public static final int NO_EXTENSION = -1;
+	// The file extension is not configured
+	public static final int NOT_CONFIGURED = -2;
+
+	// Configured file extensions, by id
+	private final String extensions[];
+	// Fortify SCA interpretations, by id
+	private final String interpretations[];
+	// Hash table slots holding an id + 1 (0 is an empty slot)
+	private final int slots[];
+	// Mask to get a slot from a hash code
+	private final int slotMask;
+
+	// Default constructor
+	public ScaExtensionClassifier( Map <String, String> extensionMapping ) {
+		// Sort the configured file extensions
+		SortedSet <String> sortedExtensions = new TreeSet <String> ();
+		for ( String extension : extensionMapping.keySet()) {
+			sortedExtensions.add( extension.toLowerCase());
+		}
+		// Assign the ids
+		extensions = sortedExtensions.toArray( new String[ sortedExtensions.size() ] );
+		interpretations = new String[ extensions.length ];
+		// Size the hash table to at most half full
+		int size = 16;
+		while ( size < extensions.length * 2 ) {
+			size <<= 1;
+		}
+		slots = new int[ size ];
+		slotMask = size - 1;
+		// Fill the hash table
+		for ( int id = 0; id < extensions.length; id++ ) {
+			interpretations[id] = extensionMapping.get( extensions[id] );
+			int slot = hash( extensions[id], 0, extensions[id].length()) & slotMask;
+			while ( slots[slot] != 0 ) {
+				slot = ( slot + 1 ) & slotMask;
+			}
+			slots[slot] = id + 1;
+		}
+	}
+
+	// Retrieve the number of configured file extensions
+	public int getExtensionCount() {
+		return extensions.length;
+	}
+
+	// Retrieve the configured file extension of an id
+	public String getExtension( int id ) {
+		return extensions[id];
+	}
+
+	// Retrieve the Fortify SCA interpretation of an id
+	public String getInterpretation( int id ) {
+		return interpretations[id];
+	}
+
+	/**
+	 * extensionStart
+	 *
+	 * Finds the start of the file extension of a file name.
+	 *
+	 * @return The index of the first character of the extension, or NO_EXTENSION.
+	 */
+	public static int extensionStart( String fileName ) {
+		// Skip trailing "." characters
+		int end = extensionEnd( fileName );
+		// Find the last "." before them
+		for ( int index = end - 1; index >= 0; index-- ) {
+			if ( fileName.charAt( index ) == '.' ) {
+				return index + 1;
+			}
+		}
+		// There is no file extension
+		return NO_EXTENSION;
+	}
+
+	/**
+	 * extensionEnd
+	 *
+	 * Finds the end of the file extension of a file name, which is before any trailing "."
+	 *   characters.
+	 *
+	 * @return The index after the last character of the extension.
+	 */
+	public static int extensionEnd( String fileName ) {
+		int end = fileName.length();
+		while (( end > 0 ) && ( fileName.charAt( end - 1 ) == '.' )) {
+			end--;
+		}
+		return end;
+	}
+
+	/**
+	 * classify
+	 *
+	 * Classifies a file name by its file extension.
+	 *
+	 * @return The id of the configured file extension, NO_EXTENSION or NOT_CONFIGURED.
+	 */
+	public int classify( String fileName ) {
+		// Find the file extension
+		int start = extensionStart( fileName );
+		if ( start == NO_EXTENSION ) {
+			return NO_EXTENSION;
+		}
+		int end = extensionEnd( fileName );
+		// Look it up in the hash table
+		int slot = hash( fileName, start, end ) & slotMask;
+		int entry;
+		while (( entry = slots[slot] ) != 0 ) {
+			if ( matches( extensions[entry - 1], fileName, start, end )) {
+				return entry - 1;
+			}
+			slot = ( slot + 1 ) & slotMask;
+		}
+		// The file extension is not configured
+		return NOT_CONFIGURED;
+	}
+
+	// Hash a part of a string, ignoring case
+	private static int hash( String text, int start, int end ) {
+		int hash = 0;
+		for ( int index = start; index < end; index++ ) {
+			hash = 31 * hash + Character.toLowerCase( text.charAt( index ));
+		}
+		// Spread the bits over the low slots
+		return hash ^ ( hash >>> 16 );
+	}
+
+	// Does a part of a string match a lower case extension, ignoring case?
+	private static boolean matches( String extension, String text, int start, int end ) {
+		if ( extension.length() != end - start ) {
+			return false;
+		}
+		for ( int index = start; index < end; index++ ) {
+			if ( Character.toLowerCase( text.charAt( index )) != extension.charAt( index - start )) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
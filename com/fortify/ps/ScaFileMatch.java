@@ -1,20 +1,39 @@
 package com.fortify.ps;
 
-import java.util.Iterator;
 import java.util.HashMap;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.PrintWriter;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
-import java.io.LineNumberReader;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
 
 
 public class ScaFileMatch {
@@ -23,10 +42,32 @@ public class ScaFileMatch {
 	private static final String SCA_PROPERTIES_FILE = "fortify-sca.properties"; 
 	// Fortify SCA properties file
 	private static final String SCA_PROPERTIES_EXTENSION_FILE = "ScaFileMatch.properties";
+	// Default scan cache file
+	private static final String SCAN_CACHE_FILE = "ScaFileMatch.cache";
 	// Maximum file counter length
 	private static final int MAX_FILE_COUNTER_LEN = 6;
 	// Maximum line counter length
 	private static final int MAX_LINE_COUNTER_LEN = 7;
+	// Default byte budget of the content sniffing, in megabytes
+	private static final int SNIFF_BUDGET = 64;
+	// Default hard cap of the I/O operations in flight with the adaptive I/O governor
+	private static final int IO_MAX_IN_FLIGHT = 16;
+	// Initial limit of the I/O operations in flight with the adaptive I/O governor
+	private static final int IO_INITIAL_IN_FLIGHT = 2;
+	// Default number of groups of identical files listed
+	private static final int DUPLICATE_GROUPS = 20;
+	// Default depth of the rollup of the configured files per directory
+	private static final int ROLLUP_DEPTH = 2;
+	// Default number of largest files and directories listed with the rollup
+	private static final int ROLLUP_TOP = 20;
+	// Default maximum number of files open at once in the virtual thread scan
+	private static final int MAX_OPEN_FILES = 256;
+	// Maximum number of file tasks of the virtual thread scan started and not finished
+	private static final int MAX_FILE_TASKS = 256 * 1024;
+	// Number of platform threads of the virtual thread scan on a Java runtime without virtual threads
+	private static final int PLATFORM_SCAN_THREADS = 64;
+	// Maximum number of files counted by a single parallel task before it is split
+	private static final int FILE_TASK_THRESHOLD = 64;
 	// Root location of the project
 	private String projectRootDir = null;
 	// Location of the Fortify SCA properties file
@@ -35,12 +76,145 @@ public class ScaFileMatch {
 	private String fortifyScaMatchPropertiesFilePath = null;
 	// Fortify SCA file extension mapping
 	private HashMap <String, String> fortifyScaFileExtensionMapping = null;
-	// Counts of supported file extensions
-	private HashMap <String, fileStatisticCounter> countConfiguredFileExtensions = null;
-	// Counts of non Java related file extensions
-	private HashMap <String, Integer> countNonConfiguredFileExtensions = null;
+	// Counts of supported and non Java related file extensions
+	private ScaStatistics scanStatistics = null;
 	// Output text file
 	private PrintWriter outputFile = null;
+	// Number of threads used to scan the project (1 is sequential)
+	private int scanThreads = 1;
+	// Follow symbolic links while walking the project
+	private boolean followLinks = true;
+	// Classifier of file names by their Fortify SCA file extension
+	private ScaExtensionClassifier extensionClassifier = null;
+	// Walker of the project directory tree
+	private ScaDirectoryWalker directoryWalker = null;
+	// Keep the line counts in the scan cache
+	private boolean useScanCache = false;
+	// Location of the scan cache file
+	private String scanCacheFilePath = SCAN_CACHE_FILE;
+	// Cache of the line counts of the previous runs
+	private ScaScanCache scanCache = null;
+	// Enumerate the files tracked in the git index instead of walking the project
+	private boolean useGitIndex = false;
+	// Only count the files changed since this git revision
+	private String sinceRevision = null;
+	// Object id of the commit of the git revision
+	private String sinceCommitId = null;
+	// Number of tracked files changed since the git revision
+	private final LongAdder changedSinceCount = new LongAdder();
+	// Number of files deleted since the git revision
+	private long deletedSinceCount = 0;
+	// Look inside archives
+	private boolean scanArchives = false;
+	// Maximum depth of archives inside archives
+	private int maxArchiveDepth = 3;
+	// Counts of the file extensions inside archives
+	private ScaStatistics archiveStatistics = null;
+	// Scanner of the archives
+	private ScaArchiveScanner archiveScanner = null;
+	// Glob patterns of the excluded directories and files
+	private List <String> excludePatterns = new ArrayList <String> ();
+	// Honor the .gitignore files of the project
+	private boolean useGitIgnore = false;
+	// Matcher of the excluded directories and files, or null
+	private ScaExclusionMatcher exclusionMatcher = null;
+	// Worker pool shared by the projects of a batch, or null
+	private ForkJoinPool sharedPool = null;
+	// Name of the output text file, or null for the default name
+	private String outputFileName = null;
+	// Write the output to the console as well?
+	private boolean outputToConsole = true;
+	// Counts of the last run, or null
+	private ScaStatistics.snapshot scanSnapshot = null;
+	// Maximum number of scans the server runs at once
+	private int maxServerScans = 2;
+	// Maximum number of directories in the result cache of the server
+	private int maxServerCachedDirectories = ScaServer.MAX_CACHED_DIRECTORIES;
+	// Keep the counts current by watching the project?
+	private boolean watchMode = false;
+	// Interval of the refreshed reports in watch mode, in seconds
+	private int watchInterval = 10;
+	// Collect the metrics of the scan?
+	private boolean collectMetrics = false;
+	// Metrics of the scan, or null
+	private ScaScanMetrics metrics = null;
+	// Location of the manifest file, or null
+	private String manifestFilePath = null;
+	// Format of the manifest, or null to follow the file name
+	private String manifestFormat = null;
+	// Writer of the manifest, or null
+	private ScaManifestWriter manifestWriter = null;
+	// Did writing the manifest fail?
+	private volatile boolean manifestFailed = false;
+	// Classify files without a configured file extension by their content?
+	private boolean sniffContent = false;
+	// Byte budget of the content sniffing, in megabytes
+	private long sniffBudget = SNIFF_BUDGET;
+	// Classifier of the files by their content, or null
+	private ScaContentSniffer contentSniffer = null;
+	// Find the configured files with identical content?
+	private boolean findDuplicates = false;
+	// Number of groups of identical files listed
+	private int duplicateGroups = DUPLICATE_GROUPS;
+	// Finder of the configured files with identical content, or null
+	private ScaDuplicateFinder duplicateFinder = null;
+	// Roll the configured files up per directory?
+	private boolean rollupDirectories = false;
+	// Depth of the rollup, 0 for the project root directory only
+	private int rollupDepth = ROLLUP_DEPTH;
+	// Number of largest files and directories listed
+	private int rollupTop = ROLLUP_TOP;
+	// Rollup of the configured files per directory, or null
+	private ScaDirectoryRollup directoryRollup = null;
+	// Only walk the source roots of the Maven and Gradle build descriptors?
+	private boolean useBuildScope = false;
+	// Source roots of the build descriptors, or null
+	private ScaBuildScope buildScope = null;
+	// Counts per kind of source root, or null
+	private ScaStatistics scopeStatistics[] = null;
+	// Counts of the kind of the source root being walked, or null
+	private ScaStatistics rootStatistics = null;
+	// Estimate the resources of a Fortify SCA scan?
+	private boolean estimateResources = false;
+	// Location of the cost model properties file, or null to look for it
+	private String estimateModelFilePath = null;
+	// Estimator of the resources of a Fortify SCA scan, or null
+	private ScaResourceEstimator resourceEstimator = null;
+	// Shard of the project scanned, from 1 to the number of shards
+	private int shard = 0;
+	// Number of shards of the project, or 0 to scan the whole project
+	private int shardCount = 0;
+	// Counts of the files classified by their content
+	private ScaStatistics sniffedStatistics = null;
+	// Split the lines in code, comment and blank lines?
+	private boolean countLineKinds = false;
+	// Comment syntax per configured file extension id, or null
+	private int lineSyntaxes[] = null;
+	// Location of the mapping cache file, or null when the mapping is resolved every run
+	private String mappingCacheFilePath = null;
+	// Adjust the number of I/O operations in flight to the latency?
+	private boolean ioAdaptive = false;
+	// Hard cap of the I/O operations in flight, or 0 for the number of threads
+	private int ioMaxInFlight = 0;
+	// Maximum megabytes read per second, or 0 without a limit
+	private double ioRate = 0;
+	// Governor of the I/O operations, or null
+	private ScaIoGovernor ioGovernor = null;
+	// Scan with a thread per directory listing and per file?
+	private boolean virtualThreads = false;
+	// Maximum number of files open at once in the virtual thread scan
+	private int maxOpenFiles = MAX_OPEN_FILES;
+	// Open file descriptors left in the virtual thread scan, or null
+	private Semaphore openFiles = null;
+	// Line counters of the virtual thread scan, which are too large to keep one per thread, or null
+	private ConcurrentLinkedQueue <ScaLineCounter> lineCounterPool = null;
+	// Line counter of every scanning thread
+	private final ThreadLocal <ScaLineCounter> lineCounter = new ThreadLocal <ScaLineCounter> () {
+		@Override
+		protected ScaLineCounter initialValue() {
+			return new ScaLineCounter();
+		}
+	};
 	
 	ScaFileMatch( String projectRootDirectory )
 	{
@@ -55,62 +229,132 @@ public class ScaFileMatch {
 		projectRootDir = projectRootDirectory;
 	}
 	
-	private class fileStatisticCounter {
-		// Keep track of the number of files
-		private int fileCounter = 0;
-		// Keep track of the number of text lines in the files
-		private int lineCounter = 0;
-		// Default constructor
-		fileStatisticCounter( int initFileCounter, int initLineCounter ) {
-			// Initialize the file counter
-			setFileCounter( initFileCounter );
-			// Initialize the line counter
-			setLineCounter( initLineCounter );
-		}
-		// Set the file counter
-		public void setFileCounter( int newFileCounter ) {
-			fileCounter = newFileCounter;
-		}
-		// Set the line counter
-		public void setLineCounter( int newLineCounter ) {
-			lineCounter = newLineCounter;
-		}
-		// Retrieve the file counter
-		public int getFileCounter() {
-			return fileCounter;
-		}
-		// Retrieve the line counter
-		public int getLineCounter() {
-			return lineCounter;
-		}
-		// Add a number of files
-		public int addFileCounter( int addFiles ) {
-			return fileCounter += addFiles;
-		}
-		// Add a number of lines
-		public int addLineCounter( int addLines ) {
-			return lineCounter += addLines;
-		}
-		// Get the string representation of the file counter
-		public String getFileCounterStr( int len ) {
-			Integer theInt = new Integer( fileCounter );
-			String fileCounterStr = theInt.toString();
-			while ( fileCounterStr.length() < len ) {
-				fileCounterStr = " " + fileCounterStr;
-			}
-			return fileCounterStr;
+	// Set the number of threads used to scan the project
+	public void setScanThreads( int newScanThreads ) {
+		scanThreads = ( newScanThreads > 0 ) ? newScanThreads : 1;
+	}
+	
+	// Set whether or not the line counts are kept in the scan cache, and its location
+	public void setScanCache( boolean newUseScanCache, String newScanCacheFilePath ) {
+		useScanCache = newUseScanCache;
+		if ( newScanCacheFilePath != null ) {
+			scanCacheFilePath = newScanCacheFilePath;
 		}
-		// Get the string representation of the line counter
-		public String getLineCounterStr( int len ) {
-			Integer theInt = new Integer( lineCounter );
-			String lineCounterStr = theInt.toString();
-			while ( lineCounterStr.length() < len ) {
-				lineCounterStr = " " + lineCounterStr;
-			}
-			return lineCounterStr;
+	}
+	
+	// Set whether or not the files tracked in the git index are enumerated, optionally only the files changed since a git revision
+	public void setGitIndex( boolean newUseGitIndex, String newSinceRevision ) {
+		useGitIndex = newUseGitIndex || ( newSinceRevision != null );
+		sinceRevision = newSinceRevision;
+	}
+	
+	// Set whether or not to look inside archives, and how deep archives inside archives are scanned
+	public void setScanArchives( boolean newScanArchives, int newMaxArchiveDepth ) {
+		scanArchives = newScanArchives;
+		maxArchiveDepth = ( newMaxArchiveDepth > 0 ) ? newMaxArchiveDepth : 1;
+	}
+	
+	// Set the glob patterns of the excluded directories and files, and whether or not the .gitignore files are honored
+	public void setExclusions( List <String> newExcludePatterns, boolean newUseGitIgnore ) {
+		excludePatterns = newExcludePatterns;
+		useGitIgnore = newUseGitIgnore;
+	}
+	
+	// Set the maximum number of scans the server runs at once
+	public void setMaxServerScans( int newMaxServerScans ) {
+		maxServerScans = ( newMaxServerScans > 0 ) ? newMaxServerScans : 1;
+	}
+	
+	// Set the maximum number of directories in the result cache of the server
+	public void setMaxServerCachedDirectories( int newMaxServerCachedDirectories ) {
+		maxServerCachedDirectories = ( newMaxServerCachedDirectories > 0 ) ? newMaxServerCachedDirectories : 1;
+	}
+	
+	// Set whether or not the project is watched, and the interval of the refreshed reports in seconds
+	public void setWatch( boolean newWatchMode, int newWatchInterval ) {
+		watchMode = newWatchMode;
+		watchInterval = ( newWatchInterval > 0 ) ? newWatchInterval : 1;
+	}
+	
+	// Set the location and the format of the manifest of the files counted
+	public void setManifest( String newManifestFilePath, String newManifestFormat ) {
+		manifestFilePath = newManifestFilePath;
+		manifestFormat = newManifestFormat;
+	}
+	
+	// Set whether or not files without a configured file extension are classified by their content, and the byte budget in megabytes
+	public void setSniffContent( boolean newSniffContent, long newSniffBudget ) {
+		sniffContent = newSniffContent;
+		sniffBudget = ( newSniffBudget > 0 ) ? newSniffBudget : 1;
+	}
+	
+	// Set whether or not the configured files with identical content are found, and the number of groups of identical files listed
+	public void setFindDuplicates( boolean newFindDuplicates, int newDuplicateGroups ) {
+		findDuplicates = newFindDuplicates;
+		duplicateGroups = Math.max( newDuplicateGroups, 0 );
+	}
+	
+	// Set whether or not only the source roots of the Maven and Gradle build descriptors are walked
+	public void setBuildScope( boolean newUseBuildScope ) {
+		useBuildScope = newUseBuildScope;
+	}
+	
+	// Set whether or not the configured files are rolled up per directory, the depth of the rollup and the number of largest files and directories listed
+	public void setRollup( boolean newRollupDirectories, int newRollupDepth, int newRollupTop ) {
+		rollupDirectories = newRollupDirectories;
+		rollupDepth = Math.max( newRollupDepth, 0 );
+		rollupTop = Math.max( newRollupTop, 0 );
+	}
+	
+	// Set whether or not the resources of a Fortify SCA scan are estimated, and the location of the cost model properties file, or null to look for it
+	public void setEstimate( boolean newEstimateResources, String newEstimateModelFilePath ) {
+		estimateResources = newEstimateResources;
+		estimateModelFilePath = newEstimateModelFilePath;
+	}
+	
+	// Only scan a shard of the project, from 1 to the number of shards, writing a partial result instead of the tables
+	public void setShard( int newShard, int newShardCount ) {
+		shard = newShard;
+		shardCount = newShardCount;
+		// Keep the reports of the shards apart
+		if (( shardCount > 0 ) && ( outputFileName == null )) {
+			outputFileName = "ScaFileMatch-shard-" + shard + "-of-" + shardCount + ".txt";
 		}
 	}
 	
+	// Set whether or not the lines are split in code, comment and blank lines
+	public void setCountLineKinds( boolean newCountLineKinds ) {
+		countLineKinds = newCountLineKinds;
+	}
+	
+	// Set the location of the mapping cache file, or null to resolve the file extension mapping every run
+	public void setMappingCache( String newMappingCacheFilePath ) {
+		mappingCacheFilePath = newMappingCacheFilePath;
+	}
+	
+	// Set the I/O governor: adaptive or not, the hard cap of the operations in flight (0 for the number of threads) and the megabytes read per second (0 without a limit)
+	public void setIoGovernor( boolean newIoAdaptive, int newIoMaxInFlight, double newIoRate ) {
+		ioAdaptive = newIoAdaptive;
+		ioMaxInFlight = Math.max( newIoMaxInFlight, 0 );
+		ioRate = Math.max( newIoRate, 0 );
+	}
+	
+	// Set whether or not the project is scanned with a thread per directory listing and per file, and the maximum number of files open at once
+	public void setVirtualThreads( boolean newVirtualThreads, int newMaxOpenFiles ) {
+		virtualThreads = newVirtualThreads;
+		maxOpenFiles = ( newMaxOpenFiles > 0 ) ? newMaxOpenFiles : MAX_OPEN_FILES;
+	}
+	
+	// Set whether or not the metrics of the scan are collected
+	public void setMetrics( boolean newCollectMetrics ) {
+		collectMetrics = newCollectMetrics;
+	}
+	
+	// Set whether or not symbolic links are followed while walking the project
+	public void setFollowLinks( boolean newFollowLinks ) {
+		followLinks = newFollowLinks;
+	}
+	
 	/**
 	 * findFortifyScaPropertiesFilePath
 	 * 
@@ -229,7 +473,7 @@ public class ScaFileMatch {
 						// Do we have some text?
 						if ( line.length() > 0 ) {
 							// Is it a Fortify SCA file extension mapping?
-							if ( line.toLowerCase().indexOf("com.fortify.sca.fileextensions") != -1 ) {
+							if ( containsIgnoreCase( line, "com.fortify.sca.fileextensions" )) {
 								// Split the string based on the "=" character
 								String parts[] = line.split("=");
 								// Do we have two parts?
@@ -271,6 +515,17 @@ public class ScaFileMatch {
 		
 	}
 	
+	// Does the line hold the text, ignoring case, without copying the line?
+	private static boolean containsIgnoreCase( String line, String text )
+	{
+		for ( int index = 0; index + text.length() <= line.length(); index++ ) {
+			if ( line.regionMatches( true, index, text, 0, text.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	private boolean seedScaFileExtensionMapping()
 	{
 		// Set the initial result
@@ -323,13 +578,13 @@ public class ScaFileMatch {
 		String[] parts = fileName.split("\\.");
 		if (( parts != null ) && ( parts.length > 0 )) {
 			// The last part is the actual class name
-			fileName = parts[ parts.length - 1 ] + ".txt"; 
+			fileName = ( outputFileName != null ) ? outputFileName : parts[ parts.length - 1 ] + ".txt"; 
 			// Try to create the file
 			try {
 				// Create the file writer
 				FileWriter fileWriter = new FileWriter( fileName );
 				// Create the print writer
-				outputFile = new PrintWriter(fileWriter);
+				outputFile = new PrintWriter( new BufferedWriter( fileWriter, 64 * 1024 ));
 				// The file was successfully created
 				created = true;
 			}
@@ -345,10 +600,53 @@ public class ScaFileMatch {
 	public boolean init() {
 		// Set the initial result
 		boolean initialized = true;
-		// Initialize the counted supported file extensions
-		countConfiguredFileExtensions = new HashMap <String, fileStatisticCounter> ();
-		// Initialize the counted non Java related file extensions
-		countNonConfiguredFileExtensions = new HashMap <String, Integer> ();
+		// Is the file extension mapping not loaded yet?
+		if ( extensionClassifier == null ) {
+			initialized = loadExtensionMapping();
+		}
+		// Initialization was successful?
+		if ( initialized ) {
+			// Initialize the counted file extensions
+			scanStatistics = new ScaStatistics( extensionClassifier );
+			// Create the output text file
+			initialized = createOutputTextFile();
+		}
+		//return the result
+		return initialized;
+	}
+	
+	/**
+	 * loadExtensionMapping
+	 * 
+	 * Finds and reads the Fortify SCA file extension mapping and precompiles it. In batch mode
+	 *   this is done once, for all projects. With a mapping cache the mapping resolved by a
+	 *   previous run is used, as long as the properties files it was read from are unchanged.
+	 * 
+	 * @return Whether or not the file extension mapping could be loaded.
+	 */
+	boolean loadExtensionMapping() {
+		// Is the mapping resolved by a previous run still valid?
+		ScaMappingCache mappingCache = null;
+		if ( mappingCacheFilePath != null ) {
+			mappingCache = new ScaMappingCache( Paths.get( mappingCacheFilePath ));
+			if ( mappingCache.load()) {
+				fortifyScaPropertiesFilePath = mappingCache.getPropertiesFilePath();
+				fortifyScaMatchPropertiesFilePath = mappingCache.getMatchPropertiesFilePath();
+				fortifyScaFileExtensionMapping = mappingCache.getMapping();
+				// Report the missing properties files, as when they are searched for
+				if ( fortifyScaPropertiesFilePath == null ) {
+					System.out.println("Could not find \"" + SCA_PROPERTIES_FILE + "\" (use internal list).");
+				}
+				if ( fortifyScaMatchPropertiesFilePath == null ) {
+					System.out.println("Could not find \"" + SCA_PROPERTIES_EXTENSION_FILE + "\" (use internal list).");
+				}
+				// Precompile the file extension mapping
+				extensionClassifier = new ScaExtensionClassifier( fortifyScaFileExtensionMapping );
+				return true;
+			}
+		}
+		// Set the initial result
+		boolean initialized = true;
 		// See if the location of the Fortify SCA properties file can be found
 		if ( findFortifyScaPropertiesFilePath()) {
 			// Create the hash map to hold the mapping
@@ -374,313 +672,2257 @@ public class ScaFileMatch {
 				// Report it to the user
 				System.out.println("Could not find \"" + SCA_PROPERTIES_EXTENSION_FILE + "\" (use internal list).");
 			}
-			// Create the output text file
-			initialized = createOutputTextFile();
+			// Precompile the file extension mapping
+			extensionClassifier = new ScaExtensionClassifier( fortifyScaFileExtensionMapping );
+			// Keep the resolved mapping for the next run
+			if ( mappingCache != null ) {
+				mappingCache.save( fortifyScaPropertiesFilePath, fortifyScaMatchPropertiesFilePath, fortifyScaFileExtensionMapping );
+			}
 		}
 		//return the result
 		return initialized;
 	}
 	
-	private int getlineCount( String directory, String fileName ) {
+	private long getlineCount( Path path, BasicFileAttributes attributes, int extensionId, ScaStatistics statistics, ScaDuplicateFinder duplicates ) {
 		// Set the default return value
-		int lineCount = 0;
-		// Get the file separator
-		String fileSeparator = System.getProperty("file.separator");
-		// Compose the file path
-		String path = directory + fileSeparator + fileName;
+		long lineCount = 0;
+		// Start timing the line count
+		long start = ( metrics != null ) ? System.nanoTime() : 0;
+		// Is the line count of the unchanged file in the cache?
+		String cacheKey = null;
+		if ( scanCache != null ) {
+			cacheKey = path.toAbsolutePath().toString();
+			long lineKinds[] = ( lineSyntaxes != null ) ? new long[3] : null;
+			long cachedLineCount = scanCache.getLines( cacheKey, attributes.size(), attributes.lastModifiedTime().toMillis(), lineKinds );
+			if ( cachedLineCount >= 0 ) {
+				// Count the code, comment and blank lines
+				if ( lineKinds != null ) {
+					statistics.addLineKinds( extensionId, lineKinds[0], lineKinds[1], lineKinds[2] );
+				}
+				if ( metrics != null ) {
+					metrics.addLineCount( attributes.size(), false, System.nanoTime() - start );
+				}
+				// Add it to the duplicate candidates, without a prefix digest
+				if ( duplicates != null ) {
+					duplicates.add( path, extensionId, attributes.size(), cachedLineCount, null );
+				}
+				return cachedLineCount;
+			}
+		}
+		// Take a file descriptor of the virtual thread scan
+		if ( openFiles != null ) {
+			openFiles.acquireUninterruptibly();
+		}
+		// Wait for the I/O governor
+		long ioStart = 0;
+		if ( ioGovernor != null ) {
+			ioGovernor.acquire( attributes.size());
+			ioStart = System.nanoTime();
+		}
+		// Get the line counter of this thread, or a pooled one on virtual threads
+		ScaLineCounter counter = ( lineCounterPool != null ) ? takeLineCounter() : lineCounter.get();
+		// Take the prefix digest of the duplicate candidates in the same pass
+		counter.setPrefixSize(( duplicates != null ) ? ScaDuplicateFinder.PREFIX_SIZE : 0 );
 		// Try to read the file
 		try {
-			// Create a new line reader
-			LineNumberReader lineCounter = new LineNumberReader( new InputStreamReader(new FileInputStream( path )));
-			// Read the file, line by line
-			while (lineCounter.readLine() != null) {}
-			// Copy the line counter
-			lineCount = lineCounter.getLineNumber();
+			// Count the lines
+			if ( lineSyntaxes != null ) {
+				// Split them in code, comment and blank lines in the same pass
+				lineCount = counter.countLines( path, lineSyntaxes[ extensionId ] );
+				statistics.addLineKinds( extensionId, counter.getCodeLines(), counter.getCommentLines(), counter.getBlankLines());
+				// Save the line counts in the cache
+				if ( cacheKey != null ) {
+					scanCache.putLines( cacheKey, attributes.size(), attributes.lastModifiedTime().toMillis(), lineCount, counter.getCodeLines(), counter.getCommentLines(), counter.getBlankLines());
+				}
+			}
+			else {
+				lineCount = counter.countLines( path );
+				// Save the line count in the cache
+				if ( cacheKey != null ) {
+					scanCache.putLines( cacheKey, attributes.size(), attributes.lastModifiedTime().toMillis(), lineCount );
+				}
+			}
+			// Add it to the duplicate candidates
+			if ( duplicates != null ) {
+				duplicates.add( path, extensionId, attributes.size(), lineCount, counter.getPrefixDigest());
+			}
 		} 
-		catch (FileNotFoundException e) {
+		catch (NoSuchFileException e) {
 			System.out.println("Could not find file \"" + path + "\" (maybe you do not have read access).");
 		}
 		catch (IOException e ) {
 			System.out.println("Could not read file \"" + path + "\" (maybe you do not have read access).");
 		}
-		
+		finally {
+			// Let the I/O governor start the next operation
+			if ( ioGovernor != null ) {
+				ioGovernor.release( attributes.size(), System.nanoTime() - ioStart );
+			}
+			// Return the line counter and the file descriptor of the virtual thread scan
+			if ( lineCounterPool != null ) {
+				lineCounterPool.offer( counter );
+			}
+			if ( openFiles != null ) {
+				openFiles.release();
+			}
+		}
+		// Count the time spent
+		if ( metrics != null ) {
+			metrics.addLineCount( attributes.size(), true, System.nanoTime() - start );
+		}
 		// Return the result
 		return lineCount;
 	}
 	
-	private void countFile( String directory, String fileName )
+	private void countFile( Path path, BasicFileAttributes attributes )
 	{
+		// Get the file name
+		String fileName = path.getFileName().toString();
 		// Do we have a valid file name?
-		if (( fileName != null ) && ( fileName.length() > 0 ) && ( !fileName.equals(".")) & ( !fileName.equals("..") ))
+		if (( fileName.length() > 0 ) && ( !fileName.equals(".")) & ( !fileName.equals("..") ))
 		{
-			// Split the file name by the "." character
-			String fileParts[] = fileName.split("\\.");
-			// Do we at least have two parts?
-			if ( fileParts.length > 1 ) {
+			// Count the file visited
+			if ( metrics != null ) {
+				metrics.addFile( path, attributes.size());
+			}
+			// Classify the file by its file extension
+			int extensionId = extensionClassifier.classify( fileName );
+			// Count a file without a configured file extension out of its directory
+			if (( directoryRollup != null ) && ( extensionId < 0 )) {
+				directoryRollup.skipFile( path );
+			}
+			// Is it one of the SCA supported file extensions?
+			if ( extensionId >= 0 ) {
+				// Count the file, its lines and its bytes
+				long lineCount = getlineCount( path, attributes, extensionId, scanStatistics, duplicateFinder );
+				scanStatistics.addConfigured( extensionId, lineCount, attributes.size());
+				if ( rootStatistics != null ) {
+					rootStatistics.addConfigured( extensionId, lineCount, attributes.size());
+				}
+				// Roll it up into its directory
+				if ( directoryRollup != null ) {
+					directoryRollup.addFile( path, lineCount, attributes.size());
+				}
+				// Add it to the manifest
+				if ( manifestWriter != null ) {
+					writeManifest( path, extensionClassifier.getExtension( extensionId ), extensionClassifier.getInterpretation( extensionId ), attributes.size(), lineCount );
+				}
+			}
+			// Does it have a file extension at all?
+			else if ( extensionId == ScaExtensionClassifier.NOT_CONFIGURED ) {
 				// Get the file extension
-				String fileExtension = fileParts[ fileParts.length - 1 ].toLowerCase();
-				// Is it one of the SCA supported file extensions?
-				if ( fortifyScaFileExtensionMapping.containsKey( fileExtension ) ) {
-					// Is the file extension already counted?
-					if ( countConfiguredFileExtensions.containsKey( fileExtension ) ) {
-						// Yes, get the file statistic counter
-						fileStatisticCounter counter = ( fileStatisticCounter )( countConfiguredFileExtensions.remove( fileExtension ));
-						// Increase the file counter
-						counter.addFileCounter( 1 );
-						// Increase the line counter
-						counter.addLineCounter( getlineCount( directory, fileName ));
-						// Put it back in
-						countConfiguredFileExtensions.put( fileExtension , counter );
-					}
-					else {
-						// No, initialize the counter
-						countConfiguredFileExtensions.put( fileExtension , new fileStatisticCounter( 1, getlineCount( directory, fileName ) ));
+				String fileExtension = fileName.substring( ScaExtensionClassifier.extensionStart( fileName ), ScaExtensionClassifier.extensionEnd( fileName )).toLowerCase();
+				// Does its content show a configured file type?
+				if ( contentSniffer != null ) {
+					String sniffedType = sniff( path, fileName, fileExtension );
+					if ( sniffedType != null ) {
+						countSniffedFile( path, attributes, fileExtension, sniffedType );
+						return;
 					}
 				}
-				else {
-					// Is the file extension already counted?
-					if ( countNonConfiguredFileExtensions.containsKey( fileExtension ) ) {
-						// Yes, get the counter
-						Integer counter = ( Integer )( countNonConfiguredFileExtensions.remove( fileExtension ));
-						// Increase the counter
-						counter += 1;
-						// Put it back in
-						countNonConfiguredFileExtensions.put( fileExtension , counter );
-					}
-					else {
-						// No, initialize the counter
-						countNonConfiguredFileExtensions.put( fileExtension , new Integer( 1 ));
-					}
+				// Count the file and its bytes
+				scanStatistics.addNonConfigured( fileExtension, attributes.size());
+				if ( rootStatistics != null ) {
+					rootStatistics.addNonConfigured( fileExtension, attributes.size());
+				}
+				// Add it to the manifest
+				if ( manifestWriter != null ) {
+					writeManifest( path, fileExtension, null, attributes.size(), -1 );
+				}
+				// Look inside the archive?
+				if (( archiveScanner != null ) && ScaArchiveScanner.isArchive( fileExtension )) {
+					scanArchive( path );
+				}
+			}
+			// Does its name or content show a file type?
+			else if ( contentSniffer != null ) {
+				String sniffedType = sniff( path, fileName, null );
+				if ( sniffedType != null ) {
+					countSniffedFile( path, attributes, "", sniffedType );
 				}
 			}
 		}
 	}
 	
-	private void countConfiguredFiles( String directory )
+	// Classify a file by its content, holding a file descriptor of the virtual thread scan
+	private String sniff( Path path, String fileName, String fileExtension )
 	{
-		// Get the file separator
-		String fileSeparator = System.getProperty("file.separator");
-		// Get the files in the directory
-		File dirHandle = new File( directory );
-		// We a directory handle?
-		if ( dirHandle != null) {
-			// Get the list of files in
-			File fileList[] = dirHandle.listFiles();
-			// Loop through the list of files
-			for ( int index = 0; index < fileList.length; index++ ) {
-				// Is it a directory?
-				if ( fileList[index].isDirectory()) {
-					
-					// Can we read from that directory?
-					if ( fileList[index].canRead()) {
-						// List the files in the new directory name
-						countConfiguredFiles( directory + fileSeparator + fileList[index].getName());
-					}
-					else
-					{
-						System.out.println("Could not read from the directory: \"" + fileList[index].getName() + "\" (you probably don\'t have read access).");
-					}
-				}
-				else
-				{
-					// It must be a file
-					countFile( directory, fileList[index].getName());
-				}
-			}
+		if ( openFiles == null ) {
+			return contentSniffer.sniff( path, fileName, fileExtension );
+		}
+		openFiles.acquireUninterruptibly();
+		try {
+			return contentSniffer.sniff( path, fileName, fileExtension );
+		}
+		finally {
+			openFiles.release();
 		}
 	}
 	
-	private void writeOut( String msg )
+	// Look inside an archive, holding a file descriptor and a pooled line counter of the virtual thread scan
+	private void scanArchive( Path path )
 	{
-		// Write the message to the output
-		System.out.println( msg );
-		// Write the message to the text file
-		outputFile.println( msg );
+		if ( openFiles == null ) {
+			archiveScanner.scan( path, lineCounter.get());
+			return;
+		}
+		openFiles.acquireUninterruptibly();
+		ScaLineCounter counter = takeLineCounter();
+		try {
+			archiveScanner.scan( path, counter );
+		}
+		finally {
+			lineCounterPool.offer( counter );
+			openFiles.release();
+		}
 	}
 	
-	private void listConfiguredFiles() {
-		// Display the header
-		writeOut("======================================================");
-		writeOut("List of Fortify SCA configured file extensions:");
-		writeOut("======================================================");
-		// Convert the keys of the hash map to an array
-		Object keys[] = countConfiguredFileExtensions.keySet().toArray();
-		// Maximum file extension length
-		int maxFileExtLen = 0;
-		// Walk through the list of found supported file extensions
-		for ( int index = 0; index < keys.length; index++) {
-	    	// Get the file extension
-	    	String fileExtension = (String)(keys[index]);
-	    	// Is this file extension longer?
-	    	if ( fileExtension.length() > maxFileExtLen ) {
-	    		// Copy the new length
-	    		maxFileExtLen = fileExtension.length();
-	    	}
-		}
-		// Sort by file name extension
-	    SortedSet<String> sortedset= new TreeSet<String>(countConfiguredFileExtensions.keySet());
-	    // Count the number of files
-	    int totFileCount = 0;
-	    // Count the number of lines
-	    int totLineCount = 0;
-		// Walk through the list of found supported file extensions
-	    Iterator<String> iterator = sortedset.iterator();
-	    while (iterator.hasNext()) {
-	    	// Get the file extension
-	    	String fileExtension = ( String )( iterator.next());
-	        // Get the file statistic counter
-	    	fileStatisticCounter counter = ( fileStatisticCounter )( countConfiguredFileExtensions.get( fileExtension ));
-	    	// Get the interpretation
-	    	String interpretation = ( String )( fortifyScaFileExtensionMapping.get( fileExtension ) );
-	    	// Stretch the file extension
-	    	fileExtension = stretchStr( fileExtension, " ", false, maxFileExtLen );
-	    	// Stretch the file counter
-	    	String strFileCounter = counter.getFileCounterStr( MAX_FILE_COUNTER_LEN );
-	    	// Stretch the line counter
-	    	String strLineCounter = counter.getLineCounterStr( MAX_LINE_COUNTER_LEN );
-	    	// Display the results
-	    	writeOut( fileExtension + "|" + strFileCounter + " files |" + strLineCounter + " lines | " + interpretation );	    	
-	    	// Count the files
-	    	totFileCount += counter.getFileCounter();
-	    	// Count the lines
-	    	totLineCount += counter.getLineCounter();
-	    }
-	    // Create a separator
-	    String separator = stretchStr( "---", "-", false, maxFileExtLen ) + "+" + stretchStr( "---", "-", false, MAX_FILE_COUNTER_LEN ) + "-------+" + stretchStr( "---", "-", false, MAX_LINE_COUNTER_LEN ) + "-------+---------------";
-	    // Display the separator
-    	writeOut( separator );
-	    // Stretch the title
-	    String totFileStr = stretchStr( "Tot", " ", false, maxFileExtLen );
-    	// Stretch the file counter
-	    String totFileCntStr = stretchInt( totFileCount, " ", true, MAX_FILE_COUNTER_LEN );
-    	// Stretch the line counter
-	    String totLineCntStr = stretchInt( totLineCount, " ", true, MAX_LINE_COUNTER_LEN );
-    	// Display the totals
-    	writeOut( totFileStr + "|" + totFileCntStr + " files |" + totLineCntStr + " lines |" );	    	
-    	// Display an empty line
-	    writeOut("");
+	// Take a line counter from the pool of the virtual thread scan, creating one when the pool is empty
+	private ScaLineCounter takeLineCounter()
+	{
+		ScaLineCounter counter = lineCounterPool.poll();
+		return ( counter != null ) ? counter : new ScaLineCounter();
 	}
 	
-	private String stretchStr( String theStr, String filler, boolean atFront, int len ) {
-		while ( theStr.length()< len ) {
-			if ( atFront ) {
-				theStr = filler + theStr;
+	// Count a file classified by its content, apart from the files classified by their file extension
+	private void countSniffedFile( Path path, BasicFileAttributes attributes, String fileExtension, String sniffedType )
+	{
+		// Is the file type configured?
+		int extensionId = contentSniffer.getExtensionId( sniffedType );
+		if ( extensionId >= 0 ) {
+			// Count the file, its lines and its bytes
+			long lineCount = getlineCount( path, attributes, extensionId, sniffedStatistics, null );
+			sniffedStatistics.addConfigured( extensionId, lineCount, attributes.size());
+			// Add it to the manifest
+			if ( manifestWriter != null ) {
+				writeManifest( path, fileExtension, extensionClassifier.getInterpretation( extensionId ), attributes.size(), lineCount );
 			}
-			else {
-				theStr += filler;
+		}
+		else {
+			// Count the file and its bytes
+			sniffedStatistics.addNonConfigured( sniffedType, attributes.size());
+			// Add it to the manifest
+			if ( manifestWriter != null ) {
+				writeManifest( path, fileExtension, null, attributes.size(), -1 );
 			}
 		}
-		return theStr;
 	}
 	
-	private String stretchInt( int theInt, String filler, boolean atFront, int len ) {
-		Integer theInteger = new Integer( theInt );
-		return stretchStr( theInteger.toString(), filler, atFront, len );
+	// Write the record of a file to the manifest, reporting only the first failure
+	private void writeManifest( Path path, String extension, String type, long bytes, long lines )
+	{
+		if ( !manifestFailed ) {
+			try {
+				manifestWriter.writeFile( path, extension, type, bytes, lines );
+			}
+			catch ( IOException e ) {
+				manifestFailed = true;
+				System.out.println("Could not write the manifest \"" + manifestFilePath + "\" (" + e.getMessage() + ").");
+			}
+		}
 	}
 	
-	private void listNonConfiguredFiles() {
-		// Display the header
-		writeOut("======================================================");
-		writeOut("List of Fortify SCA non configured file extensions:");
-		writeOut("======================================================");
-		// Convert the keys of the hash map to an array
-		Object keys[] = countNonConfiguredFileExtensions.keySet().toArray();
-		// Maximum file extension length
-		int maxFileExtLen = 0;
-		// Walk through the list of found supported file extensions
-		for ( int index = 0; index < keys.length; index++) {
-	    	// Get the file extension
-	    	String fileExtension = (String)(keys[index]);
-	    	// Is this file extension longer?
-	    	if ( fileExtension.length() > maxFileExtLen ) {
-	    		// Copy the new length
-	    		maxFileExtLen = fileExtension.length();
-	    	}
+	// Create the manifest file
+	private boolean openManifest()
+	{
+		try {
+			manifestWriter = new ScaManifestWriter( Paths.get( manifestFilePath ), manifestFormat );
+			return true;
+		}
+		catch ( IOException e ) {
+			System.out.println("Could not create the file \"" + manifestFilePath + "\" (maybe you have no write access).");
+			return false;
 		}
-		// Sort by file name extension
-	    SortedSet<String> sortedset= new TreeSet<String>(countNonConfiguredFileExtensions.keySet());
-		// Walk through the list of found supported file extensions
-	    Iterator<String> iterator = sortedset.iterator();
-	    // Count the number of files
-	    int totFileCount = 0;
-		// Walk through the list of found supported file extensions
-	    while (iterator.hasNext()) {
-	    	// Get the file extension
-	    	String fileExtension = ( String )( iterator.next());
-	        // Get the counter
-	    	Integer counter = ( Integer )( countNonConfiguredFileExtensions.get( fileExtension ));
-	    	// Stretch the file extension
-	    	fileExtension = stretchStr( fileExtension, " ", false, maxFileExtLen );
-	    	// Stretch the counter
-	    	String strCount = stretchStr( counter.toString(), " ", true, MAX_FILE_COUNTER_LEN );
-	    	// Display the results
-	    	writeOut( fileExtension + "|" + strCount + " files");
-	    	// Count the files
-	    	totFileCount += counter.intValue();
-	    }
-	    // Create a separator
-	    String separator = stretchStr( "---", "-", false, maxFileExtLen ) + "+" + stretchStr( "---", "-", false, MAX_FILE_COUNTER_LEN ) + "------";
-	    // Display the separator
-    	writeOut( separator );
-	    // Stretch the title
-	    String totFileStr = stretchStr( "Tot", " ", false, maxFileExtLen );
-    	// Stretch the file counter
-	    String totFileCntStr = stretchInt( totFileCount, " ", true, MAX_FILE_COUNTER_LEN );
-	    // Display the totals
-    	writeOut( totFileStr + "|" + totFileCntStr + " files");
 	}
 	
-	public void run() {
-		//Is there a project root directory?
-		if (( projectRootDir != null ) && ( projectRootDir.length() > 0 )) {
-			// Examine all files in that directory and sub directories
-			countConfiguredFiles( projectRootDir );
-			// For all supported file extensions, list all extensions, counter, and interpretation
-			listConfiguredFiles();
-			// For all non Java related file extensions, list all extensions and counter
-			listNonConfiguredFiles();
+	// Close the manifest file
+	private void closeManifest()
+	{
+		try {
+			manifestWriter.close();
+			if ( !manifestFailed ) {
+				System.out.println("Manifest: " + manifestWriter.getRecords() + " files written to \"" + manifestFilePath + "\".");
+			}
+		}
+		catch ( IOException e ) {
+			System.out.println("Could not write the manifest \"" + manifestFilePath + "\" (" + e.getMessage() + ").");
 		}
 	}
 	
-	public void done() {
-		// Was the output text file created?
-		if ( outputFile != null) {
-			// Flush the output
-			outputFile.flush();
-			// Close the file
-			outputFile.close();
-			// Reset the file
-			outputFile = null;
+	// Order of the files under the I/O governor: the largest first
+	private static final Comparator <ScaDirectoryWalker.fileEntry> LARGEST_FILE_FIRST = new Comparator <ScaDirectoryWalker.fileEntry> () {
+		public int compare( ScaDirectoryWalker.fileEntry first, ScaDirectoryWalker.fileEntry second ) {
+			return Long.compare( second.getAttributes().size(), first.getAttributes().size());
 		}
-	}
+	};
 	
-	public static void main(String[] args) {
-		// Is a path specified?
-		if (( args != null ) && ( args.length > 0 )) {
-			// Create the project root directory
-			String projectRootDir = "";
-			for ( int index = 0; index < args.length; index++ )
-			{
-				// Is there already something in there?
-				if ( projectRootDir.length() > 0 ) {
-					// Add a space before adding the next part
-					projectRootDir += " " + args[index];
+	/**
+	 * directoryScanTask
+	 * 
+	 * Scans a single directory as part of a parallel scan. Every sub directory is forked as a
+	 *   new task and large lists of files are split over file scan tasks, so idle worker threads
+	 *   can steal the work. The counts are added to the shared statistics, which keep a
+	 *   separate cell per thread and merge them when a snapshot is taken.
+	 */
+	private class directoryScanTask extends RecursiveAction {
+		// Serialization version
+		private static final long serialVersionUID = 1L;
+		// Directory to scan
+		private final Path directory;
+		// Default constructor
+		directoryScanTask( Path scanDirectory ) {
+			directory = scanDirectory;
+		}
+		@Override
+		protected void compute() {
+			// The sub directories in this directory
+			ArrayList <Path> directories = new ArrayList <Path> ();
+			// The files in this directory
+			ArrayList <ScaDirectoryWalker.fileEntry> files = new ArrayList <ScaDirectoryWalker.fileEntry> ();
+			// Could the directory be listed?
+			if ( directoryWalker.listDirectory( directory, directories, files )) {
+				// Keep track of the forked tasks
+				ArrayList <RecursiveAction> tasks = new ArrayList <RecursiveAction> ();
+				// Fork a task for every sub directory
+				for ( Path subDirectory : directories ) {
+					tasks.add( new directoryScanTask( subDirectory ));
 				}
-				else
-				{
-					// Just initialize with the first part
-					projectRootDir = args[index];
+				// Count the files in this directory, the largest first under the I/O governor, so no large file is left for the end
+				ScaDirectoryWalker.fileEntry fileArray[] = files.toArray( new ScaDirectoryWalker.fileEntry[ files.size() ] );
+				if ( ioGovernor != null ) {
+					Arrays.sort( fileArray, LARGEST_FILE_FIRST );
 				}
+				tasks.add( new fileScanTask( fileArray, 0, fileArray.length ));
+				// Run the tasks and wait for them
+				invokeAll( tasks );
 			}
-			// Create the object
-			ScaFileMatch scaFileMatch = new ScaFileMatch( projectRootDir );
-			// Object created?
+		}
+	}
+	
+	/**
+	 * fileScanTask
+	 * 
+	 * Counts a range of files of a single directory as part of a parallel scan. Ranges
+	 *   larger than FILE_TASK_THRESHOLD are split in two halves.
+	 */
+	private class fileScanTask extends RecursiveAction {
+		// Serialization version
+		private static final long serialVersionUID = 1L;
+		// Files in the directory
+		private final ScaDirectoryWalker.fileEntry files[];
+		// First file to count
+		private final int from;
+		// File after the last file to count
+		private final int to;
+		// Default constructor
+		fileScanTask( ScaDirectoryWalker.fileEntry scanFiles[], int scanFrom, int scanTo ) {
+			files = scanFiles;
+			from = scanFrom;
+			to = scanTo;
+		}
+		@Override
+		protected void compute() {
+			// Is the range small enough to count it directly?
+			if (( to - from ) <= FILE_TASK_THRESHOLD ) {
+				for ( int index = from; index < to; index++ ) {
+					countFile( files[index].getPath(), files[index].getAttributes());
+				}
+			}
+			else {
+				// Split the range in two halves
+				int middle = ( from + to ) >>> 1;
+				invokeAll( new fileScanTask( files, from, middle ), new fileScanTask( files, middle, to ));
+			}
+		}
+	}
+	
+	// Are the I/O operations governed?
+	private boolean isIoGoverned()
+	{
+		return ioAdaptive || ( ioMaxInFlight > 0 ) || ( ioRate > 0 );
+	}
+	
+	// Add a project root directory to the scan cache, as walked completely unless only part of its files is visited (the git index, the source roots)
+	private void addScanCacheRoot( String rootDir )
+	{
+		String root = Paths.get( rootDir ).toAbsolutePath().toString() + System.getProperty("file.separator");
+		if ( useGitIndex || useBuildScope ) {
+			scanCache.addPartialScanRoot( root );
+		}
+		else {
+			scanCache.addScanRoot( root );
+		}
+	}
+	
+	// Create the I/O governor of the options
+	private ScaIoGovernor createIoGovernor()
+	{
+		int hardCap = ( ioMaxInFlight > 0 ) ? ioMaxInFlight : scanThreads;
+		return new ScaIoGovernor( ioAdaptive, IO_INITIAL_IN_FLIGHT, hardCap, ( long ) ( ioRate * 1024 * 1024 ));
+	}
+	
+	// Run a scan task on the shared worker pool, or on a work stealing pool of its own
+	private void invokeTask( RecursiveAction task )
+	{
+		// Is there a shared worker pool?
+		if ( sharedPool != null ) {
+			// Already running on one of its workers?
+			if ( ForkJoinTask.inForkJoinPool()) {
+				task.invoke();
+			}
+			else {
+				sharedPool.invoke( task );
+			}
+		}
+		else {
+			// Create the work stealing pool
+			ForkJoinPool pool = new ForkJoinPool( scanThreads );
+			try {
+				pool.invoke( task );
+			}
+			finally {
+				// Release the worker threads
+				pool.shutdown();
+			}
+		}
+	}
+	
+	private boolean countConfiguredFilesParallel( String directory )
+	{
+		// Get the root of the directory tree
+		Path root = Paths.get( directory );
+		// Can the root be walked?
+		boolean entered = directoryWalker.enterRoot( root );
+		if ( entered ) {
+			// Scan the directory tree
+			invokeTask( new directoryScanTask( root ));
+		}
+		return entered;
+	}
+	
+	/**
+	 * trackedFileScanTask
+	 * 
+	 * Counts a range of the files tracked in the git index as part of a parallel scan. Ranges
+	 *   larger than FILE_TASK_THRESHOLD are split in two halves.
+	 */
+	private class trackedFileScanTask extends RecursiveAction {
+		// Serialization version
+		private static final long serialVersionUID = 1L;
+		// Root of the work tree
+		private final Path root;
+		// Tracked files
+		private final ScaGitIndex.indexEntry files[];
+		// Files of the git revision, or null
+		private final HashMap <String, String> sinceFiles;
+		// First file to count
+		private final int from;
+		// File after the last file to count
+		private final int to;
+		// Default constructor
+		trackedFileScanTask( Path scanRoot, ScaGitIndex.indexEntry scanFiles[], HashMap <String, String> scanSinceFiles, int scanFrom, int scanTo ) {
+			root = scanRoot;
+			files = scanFiles;
+			sinceFiles = scanSinceFiles;
+			from = scanFrom;
+			to = scanTo;
+		}
+		@Override
+		protected void compute() {
+			// Is the range small enough to count it directly?
+			if (( to - from ) <= FILE_TASK_THRESHOLD ) {
+				for ( int index = from; index < to; index++ ) {
+					countTrackedFile( root, files[index], sinceFiles );
+				}
+			}
+			else {
+				// Split the range in two halves
+				int middle = ( from + to ) >>> 1;
+				invokeAll( new trackedFileScanTask( root, files, sinceFiles, from, middle ), new trackedFileScanTask( root, files, sinceFiles, middle, to ));
+			}
+		}
+	}
+	
+	private void countTrackedFile( Path root, ScaGitIndex.indexEntry entry, HashMap <String, String> sinceFiles )
+	{
+		// Is the file excluded?
+		if (( exclusionMatcher != null ) && exclusionMatcher.isExcludedPath( entry.getPath())) {
+			return;
+		}
+		// Get the file in the work tree
+		Path path = root.resolve( entry.getPath());
+		// Read its attributes
+		BasicFileAttributes attributes = directoryWalker.readAttributes( path );
+		// Is it still there?
+		if (( attributes == null ) || !attributes.isRegularFile()) {
+			return;
+		}
+		// Only count the files changed since the git revision?
+		if ( sinceFiles != null ) {
+			try {
+				// Is the file unchanged in the index and in the work tree?
+				if ( entry.getObjectId().equals( sinceFiles.get( entry.getPath())) && !ScaGitIndex.isModified( entry, path, attributes )) {
+					return;
+				}
+			}
+			catch ( IOException e ) {
+				System.out.println("Could not read file \"" + path + "\" (maybe you do not have read access).");
+				return;
+			}
+			changedSinceCount.increment();
+		}
+		// Count the file
+		countFile( path, attributes );
+	}
+	
+	private boolean countTrackedFiles( String directory )
+	{
+		// Get the root of the work tree
+		Path root = Paths.get( directory );
+		// Read the git index
+		ScaGitIndex index = null;
+		try {
+			index = ScaGitIndex.read( root );
+		}
+		catch ( IOException e ) {
+			System.out.println("Could not read the git index of \"" + directory + "\" (" + e.getMessage() + ").");
+			return false;
+		}
+		if ( index == null ) {
+			System.out.println("Not a git work tree: \"" + directory + "\".");
+			return false;
+		}
+		// Get the files of the git revision
+		HashMap <String, String> sinceFiles = null;
+		List <ScaGitIndex.indexEntry> entries = index.getEntries();
+		// Only keep the files below the top level entries of the shard
+		if ( shardCount > 0 ) {
+			ArrayList <ScaGitIndex.indexEntry> shardEntries = new ArrayList <ScaGitIndex.indexEntry> ();
+			for ( ScaGitIndex.indexEntry entry : entries ) {
+				if ( isInShard( entry.getPath())) {
+					shardEntries.add( entry );
+				}
+			}
+			entries = shardEntries;
+		}
+		if ( sinceRevision != null ) {
+			try {
+				ScaGitObjects objects = new ScaGitObjects( index.getGitDir(), index.getCommonDir());
+				sinceCommitId = objects.resolve( sinceRevision );
+				sinceFiles = objects.readCommitFiles( sinceCommitId );
+			}
+			catch ( IOException e ) {
+				System.out.println("Could not read the git revision \"" + sinceRevision + "\" (" + e.getMessage() + ").");
+				return false;
+			}
+			// Count the files deleted since the git revision
+			HashSet <String> trackedPaths = new HashSet <String> ();
+			for ( ScaGitIndex.indexEntry entry : entries ) {
+				trackedPaths.add( entry.getPath());
+			}
+			for ( String path : sinceFiles.keySet()) {
+				if ( !trackedPaths.contains( path ) && (( shardCount == 0 ) || isInShard( path ))) {
+					deletedSinceCount++;
+				}
+			}
+		}
+		// Count the tracked files
+		ScaGitIndex.indexEntry files[] = entries.toArray( new ScaGitIndex.indexEntry[ entries.size() ] );
+		if ( scanThreads > 1 ) {
+			// Count the largest files first under the I/O governor, by their size in the index
+			if ( ioGovernor != null ) {
+				Arrays.sort( files, new Comparator <ScaGitIndex.indexEntry> () {
+					public int compare( ScaGitIndex.indexEntry first, ScaGitIndex.indexEntry second ) {
+						return Long.compare( second.getSize(), first.getSize());
+					}
+				});
+			}
+			invokeTask( new trackedFileScanTask( root, files, sinceFiles, 0, files.length ));
+		}
+		else {
+			for ( int fileIndex = 0; fileIndex < files.length; fileIndex++ ) {
+				countTrackedFile( root, files[fileIndex], sinceFiles );
+			}
+		}
+		return true;
+	}
+	
+	// Does a path of the git index, relative to the work tree, belong to the shard by its top level entry?
+	private boolean isInShard( String path )
+	{
+		int slash = path.indexOf( '/' );
+		return ScaDirectoryWalker.isInShard(( slash >= 0 ) ? path.substring( 0, slash ) : path, shard, shardCount );
+	}
+	
+	/**
+	 * virtualScan
+	 * 
+	 * Scans a project with a task per directory listing and per file, every task on a
+	 *   virtual thread of its own when the Java runtime has them (Java 21 and later), and on a
+	 *   pool of PLATFORM_SCAN_THREADS platform threads otherwise. The tasks use blocking file
+	 *   I/O and never wait for each other: every task counts itself out when it is done and
+	 *   the scan ends when no task is left. Two semaphores keep the resources bounded: one
+	 *   limits the files and directories open at once, the other the file tasks started and
+	 *   not finished, so the memory used stays bounded however many files wait for the file
+	 *   server. A directory task never waits for a file task: once no file task may start it
+	 *   counts the files itself. The line counters, with their large buffers, are pooled
+	 *   instead of kept per thread.
+	 */
+	private class virtualScan {
+		// Executor of the tasks
+		private final ExecutorService executor;
+		// File tasks that may still be started
+		private final Semaphore fileTasks = new Semaphore( MAX_FILE_TASKS );
+		// Number of tasks started and not finished, plus one for the scan itself
+		private final AtomicLong pending = new AtomicLong( 1 );
+		// Opened when no task is left
+		private final CountDownLatch finished = new CountDownLatch( 1 );
+		// First failure of a task, or null
+		private final AtomicReference <Throwable> failure = new AtomicReference <Throwable> ();
+		// Default constructor
+		virtualScan( ExecutorService scanExecutor ) {
+			executor = scanExecutor;
+		}
+		// Run a task, counting it in and out
+		void submit( final Runnable task ) {
+			pending.incrementAndGet();
+			executor.execute( new Runnable() {
+				public void run() {
+					try {
+						task.run();
+					}
+					catch ( Throwable e ) {
+						failure.compareAndSet( null, e );
+					}
+					finally {
+						finish();
+					}
+				}
+			});
+		}
+		// Count a task out
+		void finish() {
+			if ( pending.decrementAndGet() == 0 ) {
+				finished.countDown();
+			}
+		}
+		// List a directory, counting its files and scanning its sub directories in tasks of their own
+		void scanDirectory( final Path directory ) {
+			ArrayList <Path> directories = new ArrayList <Path> ();
+			ArrayList <ScaDirectoryWalker.fileEntry> files = new ArrayList <ScaDirectoryWalker.fileEntry> ();
+			// List the directory, holding a file descriptor
+			openFiles.acquireUninterruptibly();
+			boolean listed;
+			try {
+				listed = directoryWalker.listDirectory( directory, directories, files );
+			}
+			finally {
+				openFiles.release();
+			}
+			if ( !listed ) {
+				return;
+			}
+			for ( final Path subDirectory : directories ) {
+				submit( new Runnable() {
+					public void run() {
+						scanDirectory( subDirectory );
+					}
+				});
+			}
+			for ( final ScaDirectoryWalker.fileEntry file : files ) {
+				// Count the file here when no file task may start: waiting for a permit could
+				// block every thread of the platform thread pool, which runs the file tasks
+				if ( !fileTasks.tryAcquire()) {
+					countFile( file.getPath(), file.getAttributes());
+					continue;
+				}
+				submit( new Runnable() {
+					public void run() {
+						try {
+							countFile( file.getPath(), file.getAttributes());
+						}
+						finally {
+							fileTasks.release();
+						}
+					}
+				});
+			}
+		}
+		// Scan the tree below the root and wait for all tasks
+		void scan( Path root ) {
+			submit( new Runnable() {
+				public void run() {
+					scanDirectory( root );
+				}
+			});
+			finish();
+			boolean interrupted = false;
+			while ( finished.getCount() > 0 ) {
+				try {
+					finished.await();
+				}
+				catch ( InterruptedException e ) {
+					interrupted = true;
+				}
+			}
+			if ( interrupted ) {
+				Thread.currentThread().interrupt();
+			}
+			// Pass on the first failure, as the parallel scan does
+			Throwable firstFailure = failure.get();
+			if ( firstFailure instanceof RuntimeException ) {
+				throw ( RuntimeException ) firstFailure;
+			}
+			if ( firstFailure instanceof Error ) {
+				throw ( Error ) firstFailure;
+			}
+		}
+	}
+	
+	// Create an executor starting a virtual thread per task, or null when the Java runtime has no virtual threads
+	private static ExecutorService createVirtualThreadExecutor()
+	{
+		try {
+			// Java 21 and later
+			Method factory = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+			return ( ExecutorService ) factory.invoke( null );
+		}
+		catch ( ReflectiveOperationException | RuntimeException e ) {
+			return null;
+		}
+	}
+	
+	private boolean countConfiguredFilesVirtual( String directory )
+	{
+		// Get the root of the directory tree
+		Path root = Paths.get( directory );
+		// Can the root be walked?
+		boolean entered = directoryWalker.enterRoot( root );
+		if ( entered ) {
+			// Get the executor
+			ExecutorService executor = createVirtualThreadExecutor();
+			if ( executor == null ) {
+				System.out.println("No virtual threads in Java " + System.getProperty("java.version") + " (Java 21 or later has them), scanning with " + PLATFORM_SCAN_THREADS + " platform threads.");
+				executor = Executors.newFixedThreadPool( PLATFORM_SCAN_THREADS );
+			}
+			// Bound the open files and pool the line counters
+			openFiles = new Semaphore( maxOpenFiles );
+			lineCounterPool = new ConcurrentLinkedQueue <ScaLineCounter> ();
+			try {
+				// Scan the directory tree
+				new virtualScan( executor ).scan( root );
+			}
+			finally {
+				// Release the threads and the line counters
+				executor.shutdown();
+				openFiles = null;
+				lineCounterPool = null;
+			}
+		}
+		return entered;
+	}
+	
+	private boolean countDirectoryTree( String directory )
+	{
+		// Scan with a thread per directory listing and per file?
+		if ( virtualThreads ) {
+			return countConfiguredFilesVirtual( directory );
+		}
+		// Scan in parallel?
+		else if ( scanThreads > 1 ) {
+			// Examine all files in that directory and sub directories, using multiple threads
+			return countConfiguredFilesParallel( directory );
+		}
+		else {
+			// Examine all files in that directory and sub directories
+			return countConfiguredFiles( directory );
+		}
+	}
+	
+	private boolean countSourceRoots( String directory )
+	{
+		// Find the source roots in the build descriptors
+		buildScope = new ScaBuildScope( Paths.get( directory ));
+		if ( !buildScope.read()) {
+			System.out.println("No pom.xml, build.gradle or settings.gradle in \"" + directory + "\", counting the whole directory tree.");
+			buildScope = null;
+			return countDirectoryTree( directory );
+		}
+		// Keep separate counts per kind of source root
+		scopeStatistics = new ScaStatistics[ ScaBuildScope.getKindCount() ];
+		for ( int kind = 0; kind < scopeStatistics.length; kind++ ) {
+			scopeStatistics[kind] = new ScaStatistics( extensionClassifier );
+		}
+		// Walk the source roots one after the other
+		boolean scanned = true;
+		for ( ScaBuildScope.sourceRoot sourceRoot : buildScope.getRoots()) {
+			rootStatistics = scopeStatistics[ sourceRoot.getKind() ];
+			if ( !countDirectoryTree( getSourceRootDir( sourceRoot ))) {
+				scanned = false;
+			}
+		}
+		rootStatistics = null;
+		return scanned;
+	}
+	
+	// Get the directory of a source root, in the form of the project root directory
+	private String getSourceRootDir( ScaBuildScope.sourceRoot sourceRoot )
+	{
+		return Paths.get( projectRootDir ).resolve( buildScope.getRoot().relativize( sourceRoot.getPath())).normalize().toString();
+	}
+	
+	private boolean countConfiguredFiles( String directory )
+	{
+		// Walk the directory tree and count every file
+		return directoryWalker.walk( Paths.get( directory ), new ScaDirectoryWalker.fileVisitor() {
+			public void visitFile( Path file, BasicFileAttributes attributes ) {
+				countFile( file, attributes );
+			}
+		});
+	}
+	
+	private void writeOut( String msg )
+	{
+		// Write the message to the output
+		if ( outputToConsole ) {
+			System.out.println( msg );
+		}
+		// Write the message to the text file
+		outputFile.println( msg );
+	}
+	
+	private void listConfiguredFiles( ScaStatistics.snapshot statistics ) {
+		listConfiguredFiles( statistics, "List of Fortify SCA configured file extensions:" );
+	}
+	
+	private void listConfiguredFiles( ScaStatistics.snapshot statistics, String title ) {
+		listConfiguredFiles( statistics, title, countLineKinds );
+	}
+	
+	private void listConfiguredFiles( ScaStatistics.snapshot statistics, String title, boolean showLineKinds ) {
+		listConfiguredFiles( statistics, title, showLineKinds, null );
+	}
+	
+	private void listConfiguredFiles( ScaStatistics.snapshot statistics, String title, boolean showLineKinds, ScaDuplicateFinder duplicates ) {
+		// Display the header
+		writeOut("======================================================");
+		writeOut( title );
+		writeOut("======================================================");
+		// Maximum file extension length
+		int maxFileExtLen = 0;
+		// Walk through the list of found supported file extensions
+		for ( String fileExtension : statistics.getConfigured().keySet()) {
+	    	// Is this file extension longer?
+	    	if ( fileExtension.length() > maxFileExtLen ) {
+	    		// Copy the new length
+	    		maxFileExtLen = fileExtension.length();
+	    	}
+		}
+	    // Count the number of files
+	    long totFileCount = 0;
+	    // Count the number of lines
+	    long totLineCount = 0;
+	    // Count the code, comment and blank lines
+	    ScaStatistics.totals totLineKinds = ScaStatistics.snapshot.sum( statistics.getConfigured());
+		// Walk through the list of found supported file extensions, sorted by file name extension
+	    for ( Map.Entry <String, ScaStatistics.totals> entry : statistics.getConfigured().entrySet()) {
+	        // Get the totals
+	    	ScaStatistics.totals counter = entry.getValue();
+	    	// Get the interpretation
+	    	String interpretation = statistics.getInterpretation( entry.getKey());
+	    	// Stretch the file extension
+	    	String fileExtension = stretchStr( entry.getKey(), " ", false, maxFileExtLen );
+	    	// Stretch the file counter
+	    	String strFileCounter = stretchLong( counter.getFiles(), " ", true, MAX_FILE_COUNTER_LEN );
+	    	// Stretch the line counter
+	    	String strLineCounter = stretchLong( counter.getLines(), " ", true, MAX_LINE_COUNTER_LEN );
+	    	// Stretch the code, comment and blank line counters
+	    	String strLineKinds = showLineKinds ? stretchLong( counter.getCode(), " ", true, MAX_LINE_COUNTER_LEN ) + " code |" + stretchLong( counter.getComment(), " ", true, MAX_LINE_COUNTER_LEN ) + " comment |" + stretchLong( counter.getBlank(), " ", true, MAX_LINE_COUNTER_LEN ) + " blank |" : "";
+	    	// Stretch the file and line counters without the copies
+	    	String strUnique = ( duplicates != null ) ? stretchLong( counter.getFiles() - duplicates.getCopyFiles( entry.getKey()), " ", true, MAX_FILE_COUNTER_LEN ) + " unique files |" + stretchLong( counter.getLines() - duplicates.getCopyLines( entry.getKey()), " ", true, MAX_LINE_COUNTER_LEN ) + " unique lines |" : "";
+	    	// Display the results
+	    	writeOut( fileExtension + "|" + strFileCounter + " files |" + strLineCounter + " lines |" + strUnique + strLineKinds + " " + interpretation );	    	
+	    	// Count the files
+	    	totFileCount += counter.getFiles();
+	    	// Count the lines
+	    	totLineCount += counter.getLines();
+	    }
+	    // Create a separator
+	    String separator = stretchStr( "---", "-", false, maxFileExtLen ) + "+" + stretchStr( "---", "-", false, MAX_FILE_COUNTER_LEN ) + "-------+" + stretchStr( "---", "-", false, MAX_LINE_COUNTER_LEN ) + "-------+" + (( duplicates != null ) ? stretchStr( "---", "-", false, MAX_FILE_COUNTER_LEN ) + "--------------+" + stretchStr( "---", "-", false, MAX_LINE_COUNTER_LEN ) + "--------------+" : "" ) + ( showLineKinds ? stretchStr( "---", "-", false, MAX_LINE_COUNTER_LEN ) + "------+" + stretchStr( "---", "-", false, MAX_LINE_COUNTER_LEN ) + "---------+" + stretchStr( "---", "-", false, MAX_LINE_COUNTER_LEN ) + "-------+" : "" ) + "---------------";
+	    // Display the separator
+    	writeOut( separator );
+	    // Stretch the title
+	    String totFileStr = stretchStr( "Tot", " ", false, maxFileExtLen );
+    	// Stretch the file counter
+	    String totFileCntStr = stretchLong( totFileCount, " ", true, MAX_FILE_COUNTER_LEN );
+    	// Stretch the line counter
+	    String totLineCntStr = stretchLong( totLineCount, " ", true, MAX_LINE_COUNTER_LEN );
+    	// Stretch the code, comment and blank line counters
+	    String totLineKindsStr = showLineKinds ? stretchLong( totLineKinds.getCode(), " ", true, MAX_LINE_COUNTER_LEN ) + " code |" + stretchLong( totLineKinds.getComment(), " ", true, MAX_LINE_COUNTER_LEN ) + " comment |" + stretchLong( totLineKinds.getBlank(), " ", true, MAX_LINE_COUNTER_LEN ) + " blank |" : "";
+    	// Stretch the file and line counters without the copies
+	    String totUniqueStr = ( duplicates != null ) ? stretchLong( totFileCount - duplicates.getCopyFiles(), " ", true, MAX_FILE_COUNTER_LEN ) + " unique files |" + stretchLong( totLineCount - duplicates.getCopyLines(), " ", true, MAX_LINE_COUNTER_LEN ) + " unique lines |" : "";
+    	// Display the totals
+    	writeOut( totFileStr + "|" + totFileCntStr + " files |" + totLineCntStr + " lines |" + totUniqueStr + totLineKindsStr );	    	
+    	// Display an empty line
+	    writeOut("");
+	}
+	
+	private void listDuplicateGroups() {
+		// Display the header
+		writeOut("======================================================");
+		writeOut("List of the largest groups of Fortify SCA configured files with identical content:");
+		writeOut("======================================================");
+		// Walk through the groups, the most redundant lines first
+		List <ScaDuplicateFinder.group> groups = duplicateFinder.getGroups();
+		for ( int index = 0; ( index < groups.size()) && ( index < duplicateGroups ); index++ ) {
+			ScaDuplicateFinder.group identical = groups.get( index );
+			// Display the group
+			writeOut( stretchLong( identical.getPaths().size(), " ", true, MAX_FILE_COUNTER_LEN ) + " files |" + stretchLong( identical.getLines(), " ", true, MAX_LINE_COUNTER_LEN ) + " lines each |" + stretchLong( identical.getRedundantLines(), " ", true, MAX_LINE_COUNTER_LEN ) + " redundant lines |" + stretchLong( identical.getSize(), " ", true, MAX_LINE_COUNTER_LEN + 3 ) + " bytes each" );
+			// Display the files, the original first
+			for ( Path file : identical.getPaths()) {
+				writeOut( "    " + file );
+			}
+		}
+		// Were groups left out?
+		if ( groups.size() > duplicateGroups ) {
+			writeOut( "... " + ( groups.size() - duplicateGroups ) + " more groups." );
+		}
+		// Display an empty line
+		writeOut("");
+	}
+	
+	private void listRollup() {
+		// Display the header
+		writeOut("======================================================");
+		writeOut("Fortify SCA configured files per directory, down to a depth of " + directoryRollup.getDepth() + " (deeper directories are counted in their ancestor):");
+		writeOut("======================================================");
+		// Walk through the tree, the most lines first
+		listRollupNode( directoryRollup.getRoot(), projectRootDir, 0 );
+		// Display an empty line
+		writeOut("");
+		// Display the largest files
+		writeOut("======================================================");
+		writeOut("List of the " + directoryRollup.getTopSize() + " largest Fortify SCA configured files by lines:");
+		writeOut("======================================================");
+		for ( ScaDirectoryRollup.entry file : directoryRollup.getLargestFiles()) {
+			writeOut( stretchLong( file.getLines(), " ", true, MAX_LINE_COUNTER_LEN ) + " lines |" + stretchLong( file.getBytes(), " ", true, MAX_LINE_COUNTER_LEN + 3 ) + " bytes | " + file.getPath());
+		}
+		// Display an empty line
+		writeOut("");
+		// Display the largest directories
+		writeOut("======================================================");
+		writeOut("List of the " + directoryRollup.getTopSize() + " largest directories by the lines of the Fortify SCA configured files directly in them:");
+		writeOut("======================================================");
+		for ( ScaDirectoryRollup.entry directory : directoryRollup.getLargestDirectories()) {
+			writeOut( stretchLong( directory.getFiles(), " ", true, MAX_FILE_COUNTER_LEN ) + " files |" + stretchLong( directory.getLines(), " ", true, MAX_LINE_COUNTER_LEN ) + " lines |" + stretchLong( directory.getBytes(), " ", true, MAX_LINE_COUNTER_LEN + 3 ) + " bytes | " + directory.getPath());
+		}
+		// Display an empty line
+		writeOut("");
+	}
+	
+	// Display a directory of the rollup and its sub directories, indented by their level
+	private void listRollupNode( ScaDirectoryRollup.node directory, String name, int level ) {
+		writeOut( stretchLong( directory.getFiles(), " ", true, MAX_FILE_COUNTER_LEN ) + " files |" + stretchLong( directory.getLines(), " ", true, MAX_LINE_COUNTER_LEN ) + " lines |" + stretchLong( directory.getBytes(), " ", true, MAX_LINE_COUNTER_LEN + 3 ) + " bytes | " + stretchStr( "", "  ", false, level * 2 ) + name );
+		for ( ScaDirectoryRollup.node child : directory.getChildren()) {
+			listRollupNode( child, child.getName(), level + 1 );
+		}
+	}
+	
+	private String stretchStr( String theStr, String filler, boolean atFront, int len ) {
+		while ( theStr.length()< len ) {
+			if ( atFront ) {
+				theStr = filler + theStr;
+			}
+			else {
+				theStr += filler;
+			}
+		}
+		return theStr;
+	}
+	
+	private String stretchLong( long theLong, String filler, boolean atFront, int len ) {
+		return stretchStr( Long.toString( theLong ), filler, atFront, len );
+	}
+	
+	private void listNonConfiguredFiles( ScaStatistics.snapshot statistics ) {
+		listNonConfiguredFiles( statistics, "List of Fortify SCA non configured file extensions:" );
+	}
+	
+	private void listNonConfiguredFiles( ScaStatistics.snapshot statistics, String title ) {
+		// Display the header
+		writeOut("======================================================");
+		writeOut( title );
+		writeOut("======================================================");
+		// Maximum file extension length
+		int maxFileExtLen = 0;
+		// Walk through the list of found non configured file extensions
+		for ( String fileExtension : statistics.getNonConfigured().keySet()) {
+	    	// Is this file extension longer?
+	    	if ( fileExtension.length() > maxFileExtLen ) {
+	    		// Copy the new length
+	    		maxFileExtLen = fileExtension.length();
+	    	}
+		}
+	    // Count the number of files
+	    long totFileCount = 0;
+		// Walk through the list of found non configured file extensions, sorted by file name extension
+	    for ( Map.Entry <String, ScaStatistics.totals> entry : statistics.getNonConfigured().entrySet()) {
+	        // Get the counter
+	    	long counter = entry.getValue().getFiles();
+	    	// Stretch the file extension
+	    	String fileExtension = stretchStr( entry.getKey(), " ", false, maxFileExtLen );
+	    	// Stretch the counter
+	    	String strCount = stretchLong( counter, " ", true, MAX_FILE_COUNTER_LEN );
+	    	// Display the results
+	    	writeOut( fileExtension + "|" + strCount + " files");
+	    	// Count the files
+	    	totFileCount += counter;
+	    }
+	    // Create a separator
+	    String separator = stretchStr( "---", "-", false, maxFileExtLen ) + "+" + stretchStr( "---", "-", false, MAX_FILE_COUNTER_LEN ) + "------";
+	    // Display the separator
+    	writeOut( separator );
+	    // Stretch the title
+	    String totFileStr = stretchStr( "Tot", " ", false, maxFileExtLen );
+    	// Stretch the file counter
+	    String totFileCntStr = stretchLong( totFileCount, " ", true, MAX_FILE_COUNTER_LEN );
+	    // Display the totals
+    	writeOut( totFileStr + "|" + totFileCntStr + " files");
+	}
+	
+	public void run() {
+		//Is there a project root directory?
+		if (( projectRootDir != null ) && ( projectRootDir.length() > 0 )) {
+			// Create the directory walker
+			directoryWalker = new ScaDirectoryWalker( followLinks );
+			// Only walk the top level entries of the shard
+			if ( shardCount > 0 ) {
+				directoryWalker.setShard( Paths.get( projectRootDir ), shard, shardCount );
+			}
+			// Create the exclusion matcher
+			if ( !excludePatterns.isEmpty() || useGitIgnore ) {
+				exclusionMatcher = new ScaExclusionMatcher( excludePatterns, useGitIgnore );
+				directoryWalker.setExclusionMatcher( exclusionMatcher );
+			}
+			// Create the archive scanner
+			if ( scanArchives ) {
+				archiveStatistics = new ScaStatistics( extensionClassifier );
+				archiveScanner = new ScaArchiveScanner( extensionClassifier, archiveStatistics, maxArchiveDepth );
+			}
+			// Get the comment syntax of every configured file extension
+			if ( countLineKinds ) {
+				lineSyntaxes = new int[ extensionClassifier.getExtensionCount() ];
+				for ( int id = 0; id < lineSyntaxes.length; id++ ) {
+					lineSyntaxes[id] = ScaLineCounter.syntaxOf( extensionClassifier.getInterpretation( id ));
+				}
+			}
+			// Create the content sniffer
+			if ( sniffContent ) {
+				sniffedStatistics = new ScaStatistics( extensionClassifier );
+				contentSniffer = new ScaContentSniffer( extensionClassifier, sniffBudget * 1024 * 1024 );
+			}
+			// Create the duplicate finder
+			if ( findDuplicates ) {
+				duplicateFinder = new ScaDuplicateFinder( extensionClassifier );
+			}
+			// Create the rollup per directory, which a shard does not report
+			if ( rollupDirectories && ( shardCount == 0 )) {
+				directoryRollup = new ScaDirectoryRollup( Paths.get( projectRootDir ), rollupDepth, rollupTop );
+				directoryWalker.setRollup( directoryRollup );
+			}
+			// Collect the metrics of the scan
+			if ( collectMetrics ) {
+				metrics = new ScaScanMetrics();
+				directoryWalker.setMetrics( metrics );
+			}
+			// Load the cost model, unless it is shared by the projects of a batch
+			if (( resourceEstimator == null ) && estimateResources ) {
+				resourceEstimator = createResourceEstimator();
+			}
+			// Create the I/O governor, unless it is shared by the projects of a batch
+			if (( ioGovernor == null ) && isIoGoverned()) {
+				ioGovernor = createIoGovernor();
+			}
+			directoryWalker.setIoGovernor( ioGovernor );
+			// Load the scan cache, unless it is shared by the projects of a batch
+			boolean ownScanCache = useScanCache && ( scanCache == null );
+			if ( ownScanCache ) {
+				startPhase( "cacheLoad" );
+				scanCache = new ScaScanCache( Paths.get( scanCacheFilePath ), fortifyScaFileExtensionMapping );
+				addScanCacheRoot( projectRootDir );
+				scanCache.load();
+			}
+			directoryWalker.setScanCache( scanCache );
+			// Create the manifest, unless it is shared by the projects of a batch
+			boolean ownManifest = ( manifestFilePath != null ) && ( manifestWriter == null );
+			if ( ownManifest && !openManifest()) {
+				return;
+			}
+			// Could the project be scanned?
+			boolean scanned = true;
+			startPhase( "scan" );
+			// Enumerate the files in the git index?
+			if ( useGitIndex ) {
+				// Examine all tracked files
+				if ( !countTrackedFiles( projectRootDir )) {
+					if ( ownManifest ) {
+						closeManifest();
+					}
+					return;
+				}
+			}
+			// Only walk the source roots of the build descriptors?
+			else if ( useBuildScope ) {
+				scanned = countSourceRoots( projectRootDir );
+			}
+			else {
+				scanned = countDirectoryTree( projectRootDir );
+			}
+			// Save the scan cache
+			if ( ownScanCache ) {
+				startPhase( "cacheSave" );
+				scanCache.save();
+				System.out.println("Scan cache: " + scanCache.getHits() + " unchanged files, " + scanCache.getMisses() + " files read.");
+			}
+			// Close the manifest
+			if ( ownManifest ) {
+				closeManifest();
+			}
+			// Find the files with identical content
+			if ( duplicateFinder != null ) {
+				startPhase( "duplicates" );
+				duplicateFinder.find();
+			}
+			// Close the directories still open in the rollup
+			if ( directoryRollup != null ) {
+				directoryRollup.finish();
+			}
+			// Take a snapshot of the counts
+			startPhase( "report" );
+			ScaStatistics.snapshot statistics = scanStatistics.takeSnapshot();
+			scanSnapshot = scanned ? statistics : null;
+			// Only the files changed since a git revision were counted?
+			if ( sinceCommitId != null ) {
+				writeOut("Files changed since \"" + sinceRevision + "\" (" + sinceCommitId + "): " + changedSinceCount.sum() + " changed, " + deletedSinceCount + " deleted.");
+				writeOut("");
+			}
+			// Were directories or files excluded?
+			if ( exclusionMatcher != null ) {
+				writeOut("Excluded: " + exclusionMatcher.getPrunedDirectories() + " directories pruned, " + exclusionMatcher.getPrunedFiles() + " files skipped.");
+				writeOut("");
+			}
+			// Were the I/O operations governed?
+			if ( ioGovernor != null ) {
+				for ( String line : ioGovernor.getSummary()) {
+					writeOut( line );
+				}
+				writeOut("");
+			}
+			// Were files classified by their content?
+			if ( contentSniffer != null ) {
+				writeOut("Content sniffing: " + contentSniffer.getFilesSniffed() + " files read, " + contentSniffer.getFilesClassified() + " files classified by their content" + (( contentSniffer.getFilesSkipped() > 0 ) ? ", " + contentSniffer.getFilesSkipped() + " files not read (budget of " + sniffBudget + " MB spent)." : "." ));
+				writeOut("");
+			}
+			// Were only the source roots of the build descriptors walked?
+			if ( buildScope != null ) {
+				writeOut( buildScope.getSummary());
+				for ( ScaBuildScope.sourceRoot sourceRoot : buildScope.getRoots()) {
+					writeOut( "  " + stretchStr( ScaBuildScope.getKindName( sourceRoot.getKind()), " ", false, 10 ) + getSourceRootDir( sourceRoot ));
+				}
+				writeOut("");
+			}
+			// Is it a shard of the project? Write its partial result instead of the tables
+			if ( shardCount > 0 ) {
+				if ( scanned ) {
+					writePartialResult( statistics );
+				}
+			}
+			else {
+				// Were files with identical content searched?
+				if ( duplicateFinder != null ) {
+					writeOut( duplicateFinder.getSummary());
+					writeOut("");
+				}
+				// For all supported file extensions, list all extensions, counter, and interpretation
+				listConfiguredFiles( statistics, "List of Fortify SCA configured file extensions:", countLineKinds, duplicateFinder );
+				// List the largest groups of identical files
+				if ( duplicateFinder != null ) {
+					listDuplicateGroups();
+				}
+				// For all non Java related file extensions, list all extensions and counter
+				listNonConfiguredFiles( statistics );
+				// Were the source roots of the build descriptors counted?
+				if ( scopeStatistics != null ) {
+					// Display an empty line
+					writeOut("");
+					for ( int kind = 0; kind < scopeStatistics.length; kind++ ) {
+						// List the file extensions of the kind of source root
+						listConfiguredFiles( scopeStatistics[kind].takeSnapshot(), "List of Fortify SCA configured file extensions in the " + ScaBuildScope.getKindName( kind ) + " source roots:", false );
+					}
+				}
+				// Were files classified by their content?
+				if ( sniffedStatistics != null ) {
+					// Take a snapshot of the counts of the files classified by their content
+					ScaStatistics.snapshot sniffedSnapshot = sniffedStatistics.takeSnapshot();
+					// Display an empty line
+					writeOut("");
+					// List the file types found by content
+					listConfiguredFiles( sniffedSnapshot, "List of Fortify SCA configured file types detected by content:" );
+					listNonConfiguredFiles( sniffedSnapshot, "List of Fortify SCA non configured file types detected by content:" );
+				}
+				// Were archives scanned?
+				if ( archiveStatistics != null ) {
+					// Take a snapshot of the counts inside archives
+					ScaStatistics.snapshot archiveSnapshot = archiveStatistics.takeSnapshot();
+					// Display an empty line
+					writeOut("");
+					// List the file extensions inside archives
+					listConfiguredFiles( archiveSnapshot, "List of Fortify SCA configured file extensions inside archives:", false );
+					listNonConfiguredFiles( archiveSnapshot, "List of Fortify SCA non configured file extensions inside archives:" );
+				}
+				// Were the configured files rolled up per directory?
+				if ( directoryRollup != null ) {
+					writeOut("");
+					listRollup();
+				}
+				// Estimate the resources of a Fortify SCA scan of the project
+				if (( resourceEstimator != null ) && scanned ) {
+					ScaResourceEstimator.estimate estimate = resourceEstimator.estimate( statistics );
+					writeOut("");
+					listEstimate( estimate, "Fortify SCA resource estimate:" );
+					writeEstimate( estimate );
+				}
+			}
+			// Report the metrics
+			if ( metrics != null ) {
+				outputFile.flush();
+				writeMetrics();
+			}
+		}
+	}
+	
+	// Start timing the next phase of the run, when the metrics are collected
+	private void startPhase( String name ) {
+		if ( metrics != null ) {
+			metrics.startPhase( name );
+		}
+	}
+	
+	// Write the counts of the shard to a partial result file next to the output text file
+	private void writePartialResult( ScaStatistics.snapshot statistics ) {
+		String fileName = getReportFileName( ".partial" );
+		try {
+			new ScaPartialResult( Paths.get( projectRootDir ).toAbsolutePath().normalize().toString(), shard, shardCount, countLineKinds, statistics ).write( Paths.get( fileName ));
+			ScaStatistics.totals configured = ScaStatistics.snapshot.sum( statistics.getConfigured());
+			writeOut("Shard " + shard + "/" + shardCount + ": " + configured.getFiles() + " configured files, " + configured.getLines() + " lines, " + ScaStatistics.snapshot.sum( statistics.getNonConfigured()).getFiles() + " non configured files; partial result written to \"" + fileName + "\".");
+		}
+		catch ( IOException e ) {
+			System.out.println( "Could not create the file \"" + fileName + "\" (maybe you have no write access)." );
+		}
+	}
+	
+	/**
+	 * runMerge
+	 * 
+	 * Merges the partial results of the shards of a project into the report of a full scan.
+	 *   Every shard may only be merged once, and all shards must have been cut the same
+	 *   way from the same project root directory; a missing shard is reported, and the
+	 *   others are still merged into an incomplete report.
+	 * 
+	 * @return Whether or not all shards of the project were merged.
+	 */
+	private boolean runMerge( List <String> partialFilePaths )
+	{
+		// Read the partial results
+		ScaStatistics.snapshot statistics = new ScaStatistics.snapshot();
+		HashSet <Integer> shards = new HashSet <Integer> ();
+		String mergedRoot = null;
+		int mergedShardCount = 0;
+		boolean lineKinds = true;
+		for ( String partialFilePath : partialFilePaths ) {
+			ScaPartialResult partial;
+			try {
+				partial = ScaPartialResult.read( Paths.get( partialFilePath ));
+			}
+			catch ( IOException e ) {
+				System.out.println( "Could not read the partial result \"" + partialFilePath + "\" (" + e.getMessage() + ")." );
+				return false;
+			}
+			// Were the shards cut from the same project?
+			if (( mergedRoot != null ) && !partial.getRoot().equals( mergedRoot )) {
+				System.out.println( "The partial result \"" + partialFilePath + "\" is a shard of \"" + partial.getRoot() + "\", not of \"" + mergedRoot + "\"." );
+				return false;
+			}
+			mergedRoot = partial.getRoot();
+			// Were the shards cut the same way?
+			if (( mergedShardCount != 0 ) && ( partial.getShardCount() != mergedShardCount )) {
+				System.out.println( "The partial result \"" + partialFilePath + "\" is one of " + partial.getShardCount() + " shards, not of " + mergedShardCount + "." );
+				return false;
+			}
+			mergedShardCount = partial.getShardCount();
+			// Was the shard merged before?
+			if ( !shards.add( partial.getShard())) {
+				System.out.println( "The partial result \"" + partialFilePath + "\" holds shard " + partial.getShard() + " again." );
+				return false;
+			}
+			lineKinds &= partial.hasLineKinds();
+			statistics.merge( partial.getStatistics());
+		}
+		// Are shards missing?
+		boolean complete = ( shards.size() == mergedShardCount );
+		if ( !complete ) {
+			StringBuilder missing = new StringBuilder();
+			for ( int number = 1; number <= mergedShardCount; number++ ) {
+				if ( !shards.contains( number )) {
+					missing.append(( missing.length() > 0 ) ? ", " : "" ).append( number );
+				}
+			}
+			System.out.println( "Missing shards of " + mergedShardCount + ": " + missing + " (the counts are incomplete)." );
+		}
+		// Write the report
+		if ( !createOutputTextFile()) {
+			return false;
+		}
+		listConfiguredFiles( statistics, "List of Fortify SCA configured file extensions:", lineKinds );
+		listNonConfiguredFiles( statistics );
+		// Estimate the resources of a Fortify SCA scan of the whole project
+		if ( estimateResources ) {
+			ScaResourceEstimator.estimate estimate = createResourceEstimator().estimate( statistics );
+			writeOut("");
+			listEstimate( estimate, "Fortify SCA resource estimate:" );
+			writeEstimate( estimate );
+		}
+		done();
+		return complete;
+	}
+	
+	// Get the name of a file next to the output text file, ending in the given suffix
+	private String getReportFileName( String suffix ) {
+		String fileName = this.getClass().getSimpleName() + ".txt";
+		if ( outputFileName != null ) {
+			fileName = outputFileName;
+		}
+		return ( fileName.endsWith( ".txt" ) ? fileName.substring( 0, fileName.length() - 4 ) : fileName ) + suffix;
+	}
+	
+	// Print the summary of the metrics and write them as JSON next to the output text file
+	private void writeMetrics() {
+		metrics.endPhase();
+		// Get the name of the metrics file
+		String fileName = getReportFileName( "-metrics.json" );
+		// Write the file
+		boolean written = metrics.write( fileName, projectRootDir, ( sharedPool != null ) ? sharedPool.getParallelism() : scanThreads );
+		// Print the summary
+		if ( outputToConsole ) {
+			for ( String line : metrics.getSummary()) {
+				System.out.println( line );
+			}
+			if ( written ) {
+				System.out.println("Metrics written to \"" + fileName + "\".");
+			}
+		}
+	}
+	
+	/**
+	 * createResourceEstimator
+	 * 
+	 * Creates the estimator of the resources of a Fortify SCA scan. The cost model is read
+	 *   from the given properties file or, without one, from the file next to the Fortify SCA
+	 *   match properties file, or else from the current directory. Without a properties
+	 *   file the internal model is used.
+	 * 
+	 * @return The estimator.
+	 */
+	private ScaResourceEstimator createResourceEstimator() {
+		ScaResourceEstimator estimator = new ScaResourceEstimator();
+		// Find the cost model properties file
+		String modelFilePath = estimateModelFilePath;
+		if ( modelFilePath == null ) {
+			Path directory = ( fortifyScaMatchPropertiesFilePath != null ) ? Paths.get( fortifyScaMatchPropertiesFilePath ).toAbsolutePath().getParent() : Paths.get( "." );
+			Path modelFile = ( directory != null ) ? directory.resolve( ScaResourceEstimator.MODEL_FILE ) : Paths.get( ScaResourceEstimator.MODEL_FILE );
+			if ( Files.isRegularFile( modelFile )) {
+				modelFilePath = modelFile.toString();
+			}
+		}
+		// Read it over the internal model
+		if ( modelFilePath != null ) {
+			estimator.load( modelFilePath );
+		}
+		else {
+			System.out.println("Could not find \"" + ScaResourceEstimator.MODEL_FILE + "\" (use internal model).");
+		}
+		return estimator;
+	}
+	
+	private void listEstimate( ScaResourceEstimator.estimate estimate, String title ) {
+		// Display the header
+		writeOut("======================================================");
+		writeOut( title );
+		writeOut("======================================================");
+		// Display the estimate
+		for ( String line : estimate.getReport()) {
+			writeOut( line );
+		}
+		// Display an empty line
+		writeOut("");
+	}
+	
+	// Write the estimate as JSON next to the output text file
+	private void writeEstimate( ScaResourceEstimator.estimate estimate ) {
+		String fileName = getReportFileName( "-estimate.json" );
+		try ( PrintWriter writer = new PrintWriter( new FileWriter( fileName ))) {
+			writer.println( "{\"project\":" + ScaServer.jsonString( projectRootDir ) + ",\"estimate\":" + estimate.toJson() + "}" );
+		}
+		catch ( IOException e ) {
+			System.out.println( "Could not create the file \"" + fileName + "\" (maybe you have no write access)." );
+		}
+	}
+	
+	/**
+	 * runWatch
+	 * 
+	 * Scans the project once, then keeps the counts current from the file system events and
+	 *   writes a refreshed report at every interval in which the counts changed. Runs until
+	 *   the process is stopped.
+	 */
+	public void runWatch() {
+		//Is there a project root directory?
+		if (( projectRootDir != null ) && ( projectRootDir.length() > 0 )) {
+			// Create the exclusion matcher
+			if ( !excludePatterns.isEmpty() || useGitIgnore ) {
+				exclusionMatcher = new ScaExclusionMatcher( excludePatterns, useGitIgnore );
+			}
+			// Scan the project once
+			final ScaWatcher watcher = new ScaWatcher( Paths.get( projectRootDir ), extensionClassifier, scanStatistics, followLinks, exclusionMatcher );
+			if ( !watcher.seed()) {
+				return;
+			}
+			writeWatchReport( scanStatistics.takeSnapshot(), watcher );
+			System.out.println("Watching \"" + projectRootDir + "\", refreshing the report every " + watchInterval + " seconds when the counts change.");
+			// Follow the changes
+			try {
+				watcher.watch( watchInterval * 1000L, new ScaWatcher.reportWriter() {
+					public void writeReport( ScaStatistics.snapshot statistics ) {
+						writeWatchReport( statistics, watcher );
+					}
+				});
+			}
+			catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	// Write a refreshed report in watch mode, replacing the output text file
+	private void writeWatchReport( ScaStatistics.snapshot statistics, ScaWatcher watcher ) {
+		// Start a new output text file
+		done();
+		if ( createOutputTextFile()) {
+			writeOut("Updated: " + LocalDateTime.now().withNano( 0 ) + " (" + watcher.getFilesRead() + " files read and " + watcher.getRescans() + " directories scanned again since the full scan).");
+			writeOut("");
+			listConfiguredFiles( statistics, "List of Fortify SCA configured file extensions:", false );
+			listNonConfiguredFiles( statistics );
+			outputFile.flush();
+		}
+	}
+	
+	public void done() {
+		// Was the output text file created?
+		if ( outputFile != null) {
+			// Flush the output
+			outputFile.flush();
+			// Close the file
+			outputFile.close();
+			// Reset the file
+			outputFile = null;
+		}
+	}
+	
+	// Take over the loaded file extension mapping and the options of the batch
+	private void copyConfiguration( ScaFileMatch configuration )
+	{
+		fortifyScaFileExtensionMapping = configuration.fortifyScaFileExtensionMapping;
+		extensionClassifier = configuration.extensionClassifier;
+		scanThreads = configuration.scanThreads;
+		followLinks = configuration.followLinks;
+		useScanCache = configuration.useScanCache;
+		scanCache = configuration.scanCache;
+		useGitIndex = configuration.useGitIndex;
+		sinceRevision = configuration.sinceRevision;
+		scanArchives = configuration.scanArchives;
+		maxArchiveDepth = configuration.maxArchiveDepth;
+		excludePatterns = configuration.excludePatterns;
+		useGitIgnore = configuration.useGitIgnore;
+		sharedPool = configuration.sharedPool;
+		collectMetrics = configuration.collectMetrics;
+		manifestFilePath = configuration.manifestFilePath;
+		manifestFormat = configuration.manifestFormat;
+		sniffContent = configuration.sniffContent;
+		findDuplicates = configuration.findDuplicates;
+		duplicateGroups = configuration.duplicateGroups;
+		rollupDirectories = configuration.rollupDirectories;
+		useBuildScope = configuration.useBuildScope;
+		rollupDepth = configuration.rollupDepth;
+		rollupTop = configuration.rollupTop;
+		sniffBudget = configuration.sniffBudget;
+		countLineKinds = configuration.countLineKinds;
+		manifestWriter = configuration.manifestWriter;
+		ioAdaptive = configuration.ioAdaptive;
+		ioMaxInFlight = configuration.ioMaxInFlight;
+		ioRate = configuration.ioRate;
+		ioGovernor = configuration.ioGovernor;
+		virtualThreads = configuration.virtualThreads;
+		maxOpenFiles = configuration.maxOpenFiles;
+		estimateResources = configuration.estimateResources;
+		resourceEstimator = configuration.resourceEstimator;
+	}
+	
+	// Retrieve the precompiled file extension mapping, once loaded
+	ScaExtensionClassifier getExtensionClassifier()
+	{
+		return extensionClassifier;
+	}
+	
+	// Create a project with the loaded file extension mapping and the options of this object, writing its report to a file only
+	ScaFileMatch createProject( String projectRootDir, String reportFileName )
+	{
+		ScaFileMatch project = new ScaFileMatch( projectRootDir );
+		project.copyConfiguration( this );
+		project.outputFileName = reportFileName;
+		project.outputToConsole = false;
+		return project;
+	}
+	
+	/**
+	 * projectScanTask
+	 * 
+	 * Scans a single project of a batch on the shared worker pool, writing its own report.
+	 */
+	private static class projectScanTask extends RecursiveAction {
+		// Serialization version
+		private static final long serialVersionUID = 1L;
+		// The project
+		private final ScaFileMatch project;
+		// Default constructor
+		projectScanTask( ScaFileMatch scanProject ) {
+			project = scanProject;
+		}
+		@Override
+		protected void compute() {
+			// Object initialized?
+			if ( project.init()) {
+				// Search for files
+				project.run();
+				// Terminate the object
+				project.done();
+			}
+		}
+	}
+	
+	/**
+	 * runBatch
+	 * 
+	 * Scans a list of projects in one run. The file extension mapping is loaded once, the
+	 *   projects are scanned concurrently on one shared worker pool (and share the scan
+	 *   cache), every project gets its own report file, and a summary over all projects is
+	 *   written to the console and to a summary file.
+	 */
+	private void runBatch( List <String> projectRootDirs )
+	{
+		// Load the file extension mapping once
+		if ( !loadExtensionMapping()) {
+			return;
+		}
+		// Create the shared worker pool
+		sharedPool = new ForkJoinPool( scanThreads );
+		// Load the shared scan cache
+		if ( useScanCache ) {
+			scanCache = new ScaScanCache( Paths.get( scanCacheFilePath ), fortifyScaFileExtensionMapping );
+			for ( String projectRootDir : projectRootDirs ) {
+				addScanCacheRoot( projectRootDir );
+			}
+			scanCache.load();
+		}
+		// Create the shared I/O governor
+		if ( isIoGoverned()) {
+			ioGovernor = createIoGovernor();
+		}
+		// Load the shared cost model
+		if ( estimateResources ) {
+			resourceEstimator = createResourceEstimator();
+		}
+		// Create the shared manifest
+		if (( manifestFilePath != null ) && !openManifest()) {
+			sharedPool.shutdown();
+			return;
+		}
+		// Create the projects
+		ArrayList <ScaFileMatch> projects = new ArrayList <ScaFileMatch> ();
+		ArrayList <RecursiveAction> tasks = new ArrayList <RecursiveAction> ();
+		for ( int index = 0; index < projectRootDirs.size(); index++ ) {
+			ScaFileMatch project = createProject( projectRootDirs.get( index ), getBatchOutputFileName( index + 1, projectRootDirs.get( index )));
+			projects.add( project );
+			tasks.add( new projectScanTask( project ));
+		}
+		try {
+			// Scan the projects
+			System.out.println("Scanning " + projects.size() + " projects with " + scanThreads + " threads.");
+			sharedPool.invoke( new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected void compute() {
+					invokeAll( tasks );
+				}
+			});
+		}
+		finally {
+			// Release the worker threads
+			sharedPool.shutdown();
+		}
+		// Save the shared scan cache
+		if ( scanCache != null ) {
+			scanCache.save();
+			System.out.println("Scan cache: " + scanCache.getHits() + " unchanged files, " + scanCache.getMisses() + " files read.");
+		}
+		// Close the shared manifest
+		if ( manifestWriter != null ) {
+			closeManifest();
+		}
+		// Report the shared I/O governor
+		if ( ioGovernor != null ) {
+			for ( String line : ioGovernor.getSummary()) {
+				System.out.println( line );
+			}
+		}
+		// Write the summary
+		outputFileName = getBatchOutputFileName( 0, "summary" );
+		if ( createOutputTextFile()) {
+			listProjects( projects );
+			done();
+		}
+	}
+	
+	// Get the name of the report file of a project of a batch
+	private static String getBatchOutputFileName( int number, String projectRootDir )
+	{
+		// Get the last part of the project root directory
+		Path projectName = Paths.get( projectRootDir ).toAbsolutePath().normalize().getFileName();
+		// Keep it a safe file name
+		String name = ( projectName != null ) ? projectName.toString().replaceAll( "[^A-Za-z0-9._-]", "_" ) : "root";
+		// Number the projects, so the names are unique
+		return ( number > 0 ) ? String.format( "ScaFileMatch-%03d-%s.txt", number, name ) : "ScaFileMatch-" + name + ".txt";
+	}
+	
+	private void listProjects( List <ScaFileMatch> projects ) {
+		// Display the header
+		writeOut("======================================================");
+		writeOut("Summary of " + projects.size() + " projects:");
+		writeOut("======================================================");
+		// Maximum project root directory length
+		int maxProjectLen = 3;
+		for ( ScaFileMatch project : projects ) {
+			if ( project.projectRootDir.length() > maxProjectLen ) {
+				maxProjectLen = project.projectRootDir.length();
+			}
+		}
+		// The counts over all projects
+		ScaStatistics.snapshot allStatistics = new ScaStatistics.snapshot();
+		// Walk through the projects, in the order given
+		for ( ScaFileMatch project : projects ) {
+			// Stretch the project root directory
+			String projectStr = stretchStr( project.projectRootDir, " ", false, maxProjectLen );
+			// Was the project scanned?
+			if ( project.scanSnapshot == null ) {
+				writeOut( projectStr + "| not scanned" );
+				continue;
+			}
+			// Get the totals
+			ScaStatistics.totals configured = ScaStatistics.snapshot.sum( project.scanSnapshot.getConfigured());
+			ScaStatistics.totals nonConfigured = ScaStatistics.snapshot.sum( project.scanSnapshot.getNonConfigured());
+			// Display the results
+			writeOut( projectStr + "|" + stretchLong( configured.getFiles(), " ", true, MAX_FILE_COUNTER_LEN ) + " files |" + stretchLong( configured.getLines(), " ", true, MAX_LINE_COUNTER_LEN ) + " lines |" + stretchLong( nonConfigured.getFiles(), " ", true, MAX_FILE_COUNTER_LEN ) + " non configured files | " + project.outputFileName );
+			// Add the counts
+			allStatistics.merge( project.scanSnapshot );
+		}
+		// Display an empty line
+		writeOut("");
+		// List the file extensions over all projects
+		listConfiguredFiles( allStatistics, "List of Fortify SCA configured file extensions over all projects:" );
+		listNonConfiguredFiles( allStatistics, "List of Fortify SCA non configured file extensions over all projects:" );
+		// Estimate the resources of a single scan of all projects
+		if ( resourceEstimator != null ) {
+			writeOut("");
+			listEstimate( resourceEstimator.estimate( allStatistics ), "Fortify SCA resource estimate of a single scan of all projects:" );
+		}
+	}
+	
+	/**
+	 * runServer
+	 * 
+	 * Loads the file extension mapping and starts answering scan requests over HTTP on the
+	 *   loopback address. The server keeps running after this method returns.
+	 * 
+	 * @return Whether or not the server was started.
+	 */
+	private boolean runServer( int port )
+	{
+		// Load the file extension mapping once
+		if ( !loadExtensionMapping()) {
+			return false;
+		}
+		// Start the server
+		ScaServer server = new ScaServer( extensionClassifier, followLinks, excludePatterns, useGitIgnore, scanThreads, maxServerScans );
+		server.setMaxCachedDirectories( maxServerCachedDirectories );
+		if ( estimateResources ) {
+			server.setResourceEstimator( createResourceEstimator());
+		}
+		return server.start( port );
+	}
+	
+	public static void main(String[] args) {
+		// Number of threads used to scan the project
+		int scanThreads = 1;
+		// Follow symbolic links while walking the project
+		boolean followLinks = true;
+		// Keep the line counts in the scan cache
+		boolean useScanCache = false;
+		// Location of the scan cache file
+		String scanCacheFilePath = null;
+		// Enumerate the files tracked in the git index
+		boolean useGitIndex = false;
+		// Only count the files changed since this git revision
+		String sinceRevision = null;
+		// Look inside archives
+		boolean scanArchives = false;
+		// Maximum depth of archives inside archives
+		int maxArchiveDepth = 3;
+		// Glob patterns of the excluded directories and files
+		ArrayList <String> excludePatterns = new ArrayList <String> ();
+		// Honor the .gitignore files
+		boolean useGitIgnore = false;
+		// Scan a list of projects
+		boolean batchMode = false;
+		// Project root directories of the batch
+		ArrayList <String> batchRootDirs = new ArrayList <String> ();
+		// Port of the server, or -1 when not running as a server
+		int serverPort = -1;
+		// Maximum number of scans the server runs at once
+		int maxServerScans = 2;
+		// Maximum number of directories in the result cache of the server
+		int maxServerCachedDirectories = ScaServer.MAX_CACHED_DIRECTORIES;
+		// Keep the counts current by watching the project
+		boolean watchMode = false;
+		// Interval of the refreshed reports in watch mode, in seconds
+		int watchInterval = 10;
+		// Collect the metrics of the scan
+		boolean collectMetrics = false;
+		// Location of the manifest file
+		String manifestFilePath = null;
+		// Format of the manifest
+		String manifestFormat = null;
+		// Classify files by their content
+		boolean sniffContent = false;
+		// Byte budget of the content sniffing, in megabytes
+		long sniffBudget = SNIFF_BUDGET;
+		// Estimate the resources of a Fortify SCA scan
+		boolean estimateResources = false;
+		// Location of the cost model properties file
+		String estimateModelFilePath = null;
+		// Find the configured files with identical content
+		boolean findDuplicates = false;
+		// Number of groups of identical files listed
+		int duplicateGroups = DUPLICATE_GROUPS;
+		// Only walk the source roots of the Maven and Gradle build descriptors
+		boolean useBuildScope = false;
+		// Roll the configured files up per directory
+		boolean rollupDirectories = false;
+		// Depth of the rollup
+		int rollupDepth = ROLLUP_DEPTH;
+		// Number of largest files and directories listed
+		int rollupTop = ROLLUP_TOP;
+		// Split the lines in code, comment and blank lines
+		boolean countLineKinds = false;
+		// Location of the mapping cache file
+		String mappingCacheFilePath = null;
+		// Adjust the number of I/O operations in flight to the latency
+		boolean ioAdaptive = false;
+		// Hard cap of the I/O operations in flight
+		int ioMaxInFlight = 0;
+		// Maximum megabytes read per second
+		double ioRate = 0;
+		// Scan with a thread per directory listing and per file
+		boolean virtualThreads = false;
+		// Maximum number of files open at once in the virtual thread scan
+		int maxOpenFiles = MAX_OPEN_FILES;
+		// Shard of the project scanned, and the number of shards, or 0 to scan the whole project
+		int shard = 0;
+		int shardCount = 0;
+		// Merge partial results
+		boolean mergeMode = false;
+		// Index of the first argument after the options
+		int firstArg = 0;
+		// Process the options
+		while (( args != null ) && ( firstArg < args.length ) && ( args[firstArg].startsWith( "--" ))) {
+			// Number of threads?
+			if ( args[firstArg].equals( "--threads" ) && ( firstArg + 1 < args.length )) {
+				try {
+					scanThreads = Integer.parseInt( args[firstArg + 1] );
+				}
+				catch ( NumberFormatException e ) {
+					System.out.println( "Invalid number of threads: \"" + args[firstArg + 1] + "\"" );
+					return;
+				}
+				firstArg += 2;
+			}
+			// Follow symbolic links?
+			else if ( args[firstArg].equals( "--follow-links" ) && ( firstArg + 1 < args.length )) {
+				// Is it a known policy?
+				if ( args[firstArg + 1].equalsIgnoreCase( "always" )) {
+					followLinks = true;
+				}
+				else if ( args[firstArg + 1].equalsIgnoreCase( "never" )) {
+					followLinks = false;
+				}
+				else {
+					System.out.println( "Invalid link policy: \"" + args[firstArg + 1] + "\" (use \"always\" or \"never\")" );
+					return;
+				}
+				firstArg += 2;
+			}
+			// Use the scan cache?
+			else if ( args[firstArg].equals( "--cache" )) {
+				useScanCache = true;
+				firstArg += 1;
+			}
+			// Location of the scan cache?
+			else if ( args[firstArg].equals( "--cache-file" ) && ( firstArg + 1 < args.length )) {
+				useScanCache = true;
+				scanCacheFilePath = args[firstArg + 1];
+				firstArg += 2;
+			}
+			// Enumerate the files in the git index?
+			else if ( args[firstArg].equals( "--git-index" )) {
+				useGitIndex = true;
+				firstArg += 1;
+			}
+			// Only count the files changed since a git revision?
+			else if ( args[firstArg].equals( "--since" ) && ( firstArg + 1 < args.length )) {
+				sinceRevision = args[firstArg + 1];
+				firstArg += 2;
+			}
+			// Look inside archives?
+			else if ( args[firstArg].equals( "--archives" )) {
+				scanArchives = true;
+				firstArg += 1;
+			}
+			// Maximum depth of archives inside archives?
+			else if ( args[firstArg].equals( "--archive-depth" ) && ( firstArg + 1 < args.length )) {
+				try {
+					maxArchiveDepth = Integer.parseInt( args[firstArg + 1] );
+				}
+				catch ( NumberFormatException e ) {
+					System.out.println( "Invalid archive depth: \"" + args[firstArg + 1] + "\"" );
+					return;
+				}
+				scanArchives = true;
+				firstArg += 2;
+			}
+			// Exclude a glob pattern?
+			else if ( args[firstArg].equals( "--exclude" ) && ( firstArg + 1 < args.length )) {
+				excludePatterns.add( args[firstArg + 1] );
+				firstArg += 2;
+			}
+			// Exclude the glob patterns of a file?
+			else if ( args[firstArg].equals( "--exclude-file" ) && ( firstArg + 1 < args.length )) {
+				try {
+					excludePatterns.addAll( ScaExclusionMatcher.readPatterns( Paths.get( args[firstArg + 1] )));
+				}
+				catch ( IOException e ) {
+					System.out.println( "Could not read the exclude file: \"" + args[firstArg + 1] + "\"" );
+					return;
+				}
+				firstArg += 2;
+			}
+			// Honor the .gitignore files?
+			else if ( args[firstArg].equals( "--gitignore" )) {
+				useGitIgnore = true;
+				firstArg += 1;
+			}
+			// Scan a list of projects?
+			else if ( args[firstArg].equals( "--batch" )) {
+				batchMode = true;
+				firstArg += 1;
+			}
+			// Scan the projects listed in a file?
+			else if ( args[firstArg].equals( "--batch-file" ) && ( firstArg + 1 < args.length )) {
+				try {
+					// One project root directory per line, skipping empty lines and comments
+					for ( String line : Files.readAllLines( Paths.get( args[firstArg + 1] ))) {
+						if (( line.trim().length() > 0 ) && !line.trim().startsWith( "#" )) {
+							batchRootDirs.add( line.trim());
+						}
+					}
+				}
+				catch ( IOException e ) {
+					System.out.println( "Could not read the batch file: \"" + args[firstArg + 1] + "\"" );
+					return;
+				}
+				batchMode = true;
+				firstArg += 2;
+			}
+			// Run as a server?
+			else if ( args[firstArg].equals( "--serve" ) && ( firstArg + 1 < args.length )) {
+				try {
+					serverPort = Integer.parseInt( args[firstArg + 1] );
+				}
+				catch ( NumberFormatException e ) {
+					System.out.println( "Invalid port: \"" + args[firstArg + 1] + "\"" );
+					return;
+				}
+				firstArg += 2;
+			}
+			// Watch the project?
+			else if ( args[firstArg].equals( "--watch" )) {
+				watchMode = true;
+				firstArg += 1;
+			}
+			// Interval of the refreshed reports in watch mode?
+			else if ( args[firstArg].equals( "--watch-interval" ) && ( firstArg + 1 < args.length )) {
+				try {
+					watchInterval = Integer.parseInt( args[firstArg + 1] );
+				}
+				catch ( NumberFormatException e ) {
+					System.out.println( "Invalid interval: \"" + args[firstArg + 1] + "\"" );
+					return;
+				}
+				watchMode = true;
+				firstArg += 2;
+			}
+			// Maximum number of scans the server runs at once?
+			else if ( args[firstArg].equals( "--max-scans" ) && ( firstArg + 1 < args.length )) {
+				try {
+					maxServerScans = Integer.parseInt( args[firstArg + 1] );
+				}
+				catch ( NumberFormatException e ) {
+					System.out.println( "Invalid number of scans: \"" + args[firstArg + 1] + "\"" );
+					return;
+				}
+				firstArg += 2;
+			}
+			// Maximum number of directories in the result cache of the server?
+			else if ( args[firstArg].equals( "--server-cache" ) && ( firstArg + 1 < args.length )) {
+				try {
+					maxServerCachedDirectories = Integer.parseInt( args[firstArg + 1] );
+				}
+				catch ( NumberFormatException e ) {
+					System.out.println( "Invalid number of directories: \"" + args[firstArg + 1] + "\"" );
+					return;
+				}
+				firstArg += 2;
+			}
+			// Collect the metrics of the scan?
+			else if ( args[firstArg].equals( "--metrics" )) {
+				collectMetrics = true;
+				firstArg += 1;
+			}
+			// Write a manifest of the files counted?
+			else if ( args[firstArg].equals( "--manifest" ) && ( firstArg + 1 < args.length )) {
+				manifestFilePath = args[firstArg + 1];
+				firstArg += 2;
+			}
+			// Format of the manifest?
+			else if ( args[firstArg].equals( "--manifest-format" ) && ( firstArg + 1 < args.length )) {
+				manifestFormat = args[firstArg + 1].toLowerCase();
+				if ( !ScaManifestWriter.isFormat( manifestFormat )) {
+					System.out.println( "Invalid manifest format: \"" + args[firstArg + 1] + "\" (use \"jsonl\", \"csv\" or \"text\")" );
+					return;
+				}
+				firstArg += 2;
+			}
+			// Classify files by their content?
+			else if ( args[firstArg].equals( "--sniff" )) {
+				sniffContent = true;
+				firstArg += 1;
+			}
+			// Byte budget of the content sniffing?
+			else if ( args[firstArg].equals( "--sniff-budget" ) && ( firstArg + 1 < args.length )) {
+				try {
+					sniffBudget = Long.parseLong( args[firstArg + 1] );
+				}
+				catch ( NumberFormatException e ) {
+					System.out.println( "Invalid sniff budget: \"" + args[firstArg + 1] + "\"" );
+					return;
+				}
+				sniffContent = true;
+				firstArg += 2;
+			}
+			// Split the lines in code, comment and blank lines?
+			else if ( args[firstArg].equals( "--sloc" )) {
+				countLineKinds = true;
+				firstArg += 1;
+			}
+			// Keep the resolved file extension mapping in the default mapping cache?
+			else if ( args[firstArg].equals( "--fast-start" )) {
+				if ( mappingCacheFilePath == null ) {
+					mappingCacheFilePath = ScaMappingCache.getDefaultFilePath();
+				}
+				firstArg += 1;
+			}
+			// Location of the mapping cache?
+			else if ( args[firstArg].equals( "--mapping-cache" ) && ( firstArg + 1 < args.length )) {
+				mappingCacheFilePath = args[firstArg + 1];
+				firstArg += 2;
+			}
+			// Adjust the number of I/O operations in flight to the latency?
+			else if ( args[firstArg].equals( "--io-adaptive" )) {
+				ioAdaptive = true;
+				firstArg += 1;
+			}
+			// Hard cap of the I/O operations in flight?
+			else if ( args[firstArg].equals( "--io-max" ) && ( firstArg + 1 < args.length )) {
+				try {
+					ioMaxInFlight = Integer.parseInt( args[firstArg + 1] );
+				}
+				catch ( NumberFormatException e ) {
+					System.out.println( "Invalid number of I/O operations: \"" + args[firstArg + 1] + "\"" );
+					return;
+				}
+				firstArg += 2;
+			}
+			// Maximum megabytes read per second?
+			else if ( args[firstArg].equals( "--io-rate" ) && ( firstArg + 1 < args.length )) {
+				try {
+					ioRate = Double.parseDouble( args[firstArg + 1] );
+				}
+				catch ( NumberFormatException e ) {
+					System.out.println( "Invalid I/O rate: \"" + args[firstArg + 1] + "\"" );
+					return;
+				}
+				firstArg += 2;
+			}
+			// Only scan a shard of the project?
+			else if ( args[firstArg].equals( "--shard" ) && ( firstArg + 1 < args.length )) {
+				String parts[] = args[firstArg + 1].split( "/" );
+				try {
+					shard = Integer.parseInt( parts[0].trim());
+					shardCount = ( parts.length == 2 ) ? Integer.parseInt( parts[1].trim()) : 0;
+				}
+				catch ( NumberFormatException e ) {
+					shardCount = 0;
+				}
+				if (( shardCount < 1 ) || ( shard < 1 ) || ( shard > shardCount )) {
+					System.out.println( "Invalid shard: \"" + args[firstArg + 1] + "\" (use <i>/<n>, with i from 1 to n)" );
+					return;
+				}
+				firstArg += 2;
+			}
+			// Merge partial results?
+			else if ( args[firstArg].equals( "--merge" )) {
+				mergeMode = true;
+				firstArg += 1;
+			}
+			// Estimate the resources of a Fortify SCA scan?
+			else if ( args[firstArg].equals( "--estimate" )) {
+				estimateResources = true;
+				firstArg += 1;
+			}
+			// Location of the cost model properties file?
+			else if ( args[firstArg].equals( "--estimate-model" ) && ( firstArg + 1 < args.length )) {
+				estimateModelFilePath = args[firstArg + 1];
+				estimateResources = true;
+				firstArg += 2;
+			}
+			// Find the configured files with identical content?
+			else if ( args[firstArg].equals( "--duplicates" )) {
+				findDuplicates = true;
+				firstArg += 1;
+			}
+			// Number of groups of identical files listed?
+			else if ( args[firstArg].equals( "--duplicate-groups" ) && ( firstArg + 1 < args.length )) {
+				try {
+					duplicateGroups = Integer.parseInt( args[firstArg + 1] );
+				}
+				catch ( NumberFormatException e ) {
+					System.out.println( "Invalid number of duplicate groups: \"" + args[firstArg + 1] + "\"" );
+					return;
+				}
+				findDuplicates = true;
+				firstArg += 2;
+			}
+			// Only walk the source roots of the build descriptors?
+			else if ( args[firstArg].equals( "--build-scope" )) {
+				useBuildScope = true;
+				firstArg += 1;
+			}
+			// Roll the configured files up per directory, down to a depth?
+			else if ( args[firstArg].equals( "--rollup" ) && ( firstArg + 1 < args.length )) {
+				try {
+					rollupDepth = Integer.parseInt( args[firstArg + 1] );
+				}
+				catch ( NumberFormatException e ) {
+					System.out.println( "Invalid rollup depth: \"" + args[firstArg + 1] + "\"" );
+					return;
+				}
+				rollupDirectories = true;
+				firstArg += 2;
+			}
+			// Number of largest files and directories listed?
+			else if ( args[firstArg].equals( "--top" ) && ( firstArg + 1 < args.length )) {
+				try {
+					rollupTop = Integer.parseInt( args[firstArg + 1] );
+				}
+				catch ( NumberFormatException e ) {
+					System.out.println( "Invalid number of largest files and directories: \"" + args[firstArg + 1] + "\"" );
+					return;
+				}
+				rollupDirectories = true;
+				firstArg += 2;
+			}
+			// Scan with a thread per directory listing and per file?
+			else if ( args[firstArg].equals( "--virtual-threads" )) {
+				virtualThreads = true;
+				firstArg += 1;
+			}
+			// Maximum number of files open at once?
+			else if ( args[firstArg].equals( "--max-open-files" ) && ( firstArg + 1 < args.length )) {
+				try {
+					maxOpenFiles = Integer.parseInt( args[firstArg + 1] );
+				}
+				catch ( NumberFormatException e ) {
+					System.out.println( "Invalid number of open files: \"" + args[firstArg + 1] + "\"" );
+					return;
+				}
+				virtualThreads = true;
+				firstArg += 2;
+			}
+			else {
+				System.out.println( "Unknown option: \"" + args[firstArg] + "\"" );
+				return;
+			}
+		}
+		// Give the I/O governor the threads to reach its hard cap
+		if ( ioAdaptive && ( ioMaxInFlight <= 0 )) {
+			ioMaxInFlight = IO_MAX_IN_FLIGHT;
+		}
+		if ( ioMaxInFlight > scanThreads ) {
+			scanThreads = ioMaxInFlight;
+		}
+		// In batch mode every argument is a project root directory of its own
+		if ( batchMode && ( args != null )) {
+			for ( int index = firstArg; index < args.length; index++ ) {
+				batchRootDirs.add( args[index] );
+			}
+		}
+		// Can the project be sharded?
+		if (( shardCount > 0 ) && ( batchMode || watchMode || mergeMode || ( serverPort >= 0 ))) {
+			System.out.println( "The option \"--shard\" cannot be combined with \"--batch\", \"--watch\", \"--merge\" or \"--serve\"." );
+			return;
+		}
+		// Can the build descriptors scope the scan?
+		if ( useBuildScope && ( useGitIndex || ( sinceRevision != null ) || ( shardCount > 0 ) || watchMode || mergeMode || ( serverPort >= 0 ))) {
+			System.out.println( "The option \"--build-scope\" cannot be combined with \"--git-index\", \"--since\", \"--shard\", \"--watch\", \"--merge\" or \"--serve\"." );
+			return;
+		}
+		// Merge partial results?
+		if ( mergeMode && ( args.length > firstArg )) {
+			// Create the object, which only holds the options of the report
+			ScaFileMatch scaFileMatch = new ScaFileMatch( "." );
+			scaFileMatch.setEstimate( estimateResources, estimateModelFilePath );
+			// Fail when the partial results could not be merged or shards are missing
+			if ( !scaFileMatch.runMerge( Arrays.asList( args ).subList( firstArg, args.length ))) {
+				System.exit( 1 );
+			}
+		}
+		// Run as a server?
+		else if ( serverPort >= 0 ) {
+			// Create the object, which only holds the options of the scans
+			ScaFileMatch scaFileMatch = new ScaFileMatch( "." );
+			scaFileMatch.setScanThreads( scanThreads );
+			scaFileMatch.setFollowLinks( followLinks );
+			scaFileMatch.setExclusions( excludePatterns, useGitIgnore );
+			scaFileMatch.setMaxServerScans( maxServerScans );
+			scaFileMatch.setMaxServerCachedDirectories( maxServerCachedDirectories );
+			scaFileMatch.setMappingCache( mappingCacheFilePath );
+			scaFileMatch.setEstimate( estimateResources, estimateModelFilePath );
+			scaFileMatch.runServer( serverPort );
+		}
+		// Is a path specified?
+		else if ( batchMode ? !batchRootDirs.isEmpty() : (( args != null ) && ( args.length > firstArg ))) {
+			// Create the project root directory
+			String projectRootDir = "";
+			for ( int index = firstArg; index < args.length; index++ )
+			{
+				// Is there already something in there?
+				if ( projectRootDir.length() > 0 ) {
+					// Add a space before adding the next part
+					projectRootDir += " " + args[index];
+				}
+				else
+				{
+					// Just initialize with the first part
+					projectRootDir = args[index];
+				}
+			}
+			// In batch mode the object only holds the options of the projects
+			if ( batchMode ) {
+				projectRootDir = batchRootDirs.get( 0 );
+			}
+			// Create the object
+			ScaFileMatch scaFileMatch = new ScaFileMatch( projectRootDir );
+			// Object created?
 			if ( scaFileMatch != null )
 			{
+				// Set the number of scan threads
+				scaFileMatch.setScanThreads( scanThreads );
+				// Set the symbolic link policy
+				scaFileMatch.setFollowLinks( followLinks );
+				// Set the scan cache
+				scaFileMatch.setScanCache( useScanCache, scanCacheFilePath );
+				// Set the git index enumeration
+				scaFileMatch.setGitIndex( useGitIndex, sinceRevision );
+				// Set the archive scanning
+				scaFileMatch.setScanArchives( scanArchives, maxArchiveDepth );
+				// Set the exclusions
+				scaFileMatch.setExclusions( excludePatterns, useGitIgnore );
+				// Set the watch mode
+				scaFileMatch.setWatch( watchMode, watchInterval );
+				// Set the metrics
+				scaFileMatch.setMetrics( collectMetrics );
+				// Set the manifest
+				scaFileMatch.setManifest( manifestFilePath, manifestFormat );
+				// Set the content sniffing
+				scaFileMatch.setSniffContent( sniffContent, sniffBudget );
+				// Set the duplicate detection
+				scaFileMatch.setFindDuplicates( findDuplicates, duplicateGroups );
+				// Set the rollup per directory
+				scaFileMatch.setRollup( rollupDirectories, rollupDepth, rollupTop );
+				// Set the build scope
+				scaFileMatch.setBuildScope( useBuildScope );
+				// Set the resource estimate
+				scaFileMatch.setEstimate( estimateResources, estimateModelFilePath );
+				// Set the code, comment and blank line counting
+				scaFileMatch.setCountLineKinds( countLineKinds );
+				// Set the mapping cache
+				scaFileMatch.setMappingCache( mappingCacheFilePath );
+				// Set the I/O governor
+				scaFileMatch.setIoGovernor( ioAdaptive, ioMaxInFlight, ioRate );
+				// Set the virtual thread scan
+				scaFileMatch.setVirtualThreads( virtualThreads, maxOpenFiles );
+				// Set the shard
+				scaFileMatch.setShard( shard, shardCount );
+				// Scan a list of projects?
+				if ( batchMode ) {
+					scaFileMatch.runBatch( batchRootDirs );
+				}
 				// Object initialized?
-				if ( scaFileMatch.init()) {
+				else if ( scaFileMatch.init()) {
 					// Search for files
-					scaFileMatch.run();
+					if ( watchMode ) {
+						scaFileMatch.runWatch();
+					}
+					else {
+						scaFileMatch.run();
+					}
 					// Terminate the object
 					scaFileMatch.done();
 				}
@@ -689,7 +2931,50 @@ public class ScaFileMatch {
 		else
 		{
 			System.out.println("ScaFileMatch - Creates an overview of Fortify SCA configured and non-configured file extensions.");
-			System.out.println("Usage:   java ScaFileMatch <project source root directory>");
+			System.out.println("Usage:   java ScaFileMatch [options] <project source root directory>");
+			System.out.println("         java ScaFileMatch [options] --batch <project source root directory> ...");
+			System.out.println("         java ScaFileMatch [options] --serve <port>");
+			System.out.println("         java ScaFileMatch [options] --merge <partial result file> ...");
+			System.out.println("Options: --threads <n>                  Scan the project with <n> threads (default 1, sequential).");
+			System.out.println("         --follow-links <always|never>  Follow symbolic links while scanning (default always).");
+			System.out.println("         --cache                        Keep the line counts in \"" + SCAN_CACHE_FILE + "\", and only read changed files.");
+			System.out.println("         --cache-file <file>            Keep the line counts in <file>.");
+			System.out.println("         --git-index                    Only count the files tracked in the git index of the project.");
+			System.out.println("         --since <revision>             Only count the tracked files changed since the git <revision>.");
+			System.out.println("         --archives                     Also count the files inside jar, war, ear and zip archives.");
+			System.out.println("         --archive-depth <n>            Look inside archives inside archives, up to <n> levels (default 3).");
+			System.out.println("         --exclude <glob>               Skip the directories and files matching <glob> (repeatable, .gitignore syntax).");
+			System.out.println("         --exclude-file <file>          Skip the directories and files matching the globs in <file>, one per line.");
+			System.out.println("         --gitignore                    Skip the directories and files ignored by the .gitignore files of the project.");
+			System.out.println("         --batch                        Scan every argument as a project of its own, writing a report per project and a summary.");
+			System.out.println("         --batch-file <file>            Scan the projects listed in <file>, one root directory per line.");
+			System.out.println("         --serve <port>                 Answer scan requests on http://127.0.0.1:<port>/scan?path=<directory> with JSON.");
+			System.out.println("         --max-scans <n>                Let the server run up to <n> scans at once (default 2).");
+			System.out.println("         --server-cache <directories>   Let the server cache the counts of up to <directories> (default " + ScaServer.MAX_CACHED_DIRECTORIES + ").");
+			System.out.println("         --watch                        Keep the counts current by watching the project, until stopped.");
+			System.out.println("         --watch-interval <seconds>     Refresh the report in watch mode every <seconds> (default 10).");
+			System.out.println("         --metrics                      Print the timings and throughput of the scan, and write them to \"ScaFileMatch-metrics.json\".");
+			System.out.println("         --manifest <file>              Write the path, extension, type, bytes and lines of every file counted to <file> (.gz to compress).");
+			System.out.println("         --manifest-format <format>     Format of the manifest: jsonl, csv or text (default from the file name, else jsonl).");
+			System.out.println("         --sniff                        Classify files without a configured file extension by their first " + ScaContentSniffer.PREFIX_SIZE + " bytes.");
+			System.out.println("         --sniff-budget <MB>            Stop sniffing after reading <MB> megabytes (default " + SNIFF_BUDGET + ").");
+			System.out.println("         --sloc                         Also count the code, comment and blank lines, by the comment syntax of the Fortify SCA type.");
+			System.out.println("         --fast-start                   Keep the resolved file extension mapping in a cache in the temporary directory (see bin/ScaFileMatch.sh).");
+			System.out.println("         --mapping-cache <file>         Keep the resolved file extension mapping in <file>.");
+			System.out.println("         --io-adaptive                  Adjust the I/O operations in flight to their latency, for network file systems (up to --io-max, default " + IO_MAX_IN_FLIGHT + ").");
+			System.out.println("         --io-max <n>                   Allow at most <n> I/O operations in flight, running at least <n> threads.");
+			System.out.println("         --io-rate <MB/s>               Read at most <MB/s> megabytes per second.");
+			System.out.println("         --virtual-threads              Scan with a virtual thread per directory listing and per file (Java 21 or later), for high latency storage.");
+			System.out.println("         --max-open-files <n>           Keep at most <n> files open at once in the virtual thread scan (default " + MAX_OPEN_FILES + ").");
+			System.out.println("         --duplicates                   Find the configured files with identical content and report the counts without the copies.");
+			System.out.println("         --duplicate-groups <n>         List the <n> largest groups of identical files (default " + DUPLICATE_GROUPS + "); implies --duplicates.");
+			System.out.println("         --rollup <depth>               Roll the configured files, lines and bytes up per directory, down to <depth> (default " + ROLLUP_DEPTH + "), with the largest files and directories.");
+			System.out.println("         --top <n>                      List the <n> largest files and directories by lines (default " + ROLLUP_TOP + "); implies --rollup.");
+			System.out.println("         --build-scope                  Only count the source roots of the Maven (pom.xml) and Gradle build descriptors, main, test and generated apart.");
+			System.out.println("         --estimate                     Estimate the heap, translation and scan time of a Fortify SCA scan, and whether to split it.");
+			System.out.println("         --estimate-model <file>        Read the cost model of the estimate from <file> (default \"" + ScaResourceEstimator.MODEL_FILE + "\" next to \"" + SCA_PROPERTIES_EXTENSION_FILE + "\"); implies --estimate.");
+			System.out.println("         --shard <i>/<n>                Only scan shard <i> of <n> of the top level entries, writing \"ScaFileMatch-shard-<i>-of-<n>.partial\".");
+			System.out.println("         --merge                        Merge the partial results given as arguments into the report of the whole project.");
 			System.out.println("Example: java ScaFileMatch C:\\Program Files\\Fortify Software\\Fortify 360 v2.6.5\\Samples\\advanced\\webgoat");
 			System.out.println("Note:    1) It is expected to directory to the SCA bin directory is in the environment variable PATH.");
 			System.out.println("         2) It is expected the application can at least read the project source root directory.");
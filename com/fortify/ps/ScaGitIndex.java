@@ -0,0 +1,284 @@
+package com.fortify.ps;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * ScaGitIndex
+ *
+ * Reads the list of tracked files from the index (".git/index") of a local git work tree,
+ *   without running git. Index versions 2, 3 and 4 are supported. Only regular files and
+ *   symbolic links at stage 0 (or the first stage of a conflict) are listed; submodules
+ *   and sparse directory entries are skipped.
+ */
+public class ScaGitIndex {
+
+	// Signature of an index file
+	private static final int INDEX_SIGNATURE = 0x44495243;
+	// Object type bits of a file mode
+	private static final int MODE_TYPE_MASK = 0170000;
+	// Object type of a regular file
+	private static final int MODE_REGULAR_FILE = 0100000;
+	// Object type of a symbolic link
+	private static final int MODE_SYMBOLIC_LINK = 0120000;
+	// Entry flag: extended flags follow (version 3 and up)
+	private static final int FLAG_EXTENDED = 0x4000;
+	// Entry flags: merge stage
+	private static final int FLAG_STAGE_MASK = 0x3000;
+
+	// Root of the work tree
+	private final Path workTree;
+	// The git directory of the work tree
+	private final Path gitDir;
+	// The git directory holding the objects and references
+	private final Path commonDir;
+	// The tracked files
+	private final ArrayList <indexEntry> entries = new ArrayList <indexEntry> ();
+
+	/**
+	 * indexEntry
+	 *
+	 * A tracked file, as recorded in the index.
+	 */
+	public static class indexEntry {
+		// Path of the file, relative to the work tree, using "/"
+		private final String path;
+		// Object id of the staged content, in hex
+		private final String objectId;
+		// Modification time in seconds, as recorded in the index
+		private final int modifiedSeconds;
+		// Size in bytes, truncated to 32 bits, as recorded in the index
+		private final int size;
+		// Default constructor
+		indexEntry( String entryPath, String entryObjectId, int entryModifiedSeconds, int entrySize ) {
+			path = entryPath;
+			objectId = entryObjectId;
+			modifiedSeconds = entryModifiedSeconds;
+			size = entrySize;
+		}
+		// Retrieve the path of the file
+		public String getPath() {
+			return path;
+		}
+		// Retrieve the object id of the staged content
+		public String getObjectId() {
+			return objectId;
+		}
+		// Retrieve the size in bytes as recorded in the index, truncated to 32 bits and read as unsigned
+		public long getSize() {
+			return size & 0xFFFFFFFFL;
+		}
+	}
+
+	// Default constructor
+	private ScaGitIndex( Path workTreeRoot, Path workTreeGitDir, Path workTreeCommonDir ) {
+		workTree = workTreeRoot;
+		gitDir = workTreeGitDir;
+		commonDir = workTreeCommonDir;
+	}
+
+	// Retrieve the root of the work tree
+	public Path getWorkTree() {
+		return workTree;
+	}
+
+	// Retrieve the git directory holding the objects and references
+	public Path getCommonDir() {
+		return commonDir;
+	}
+
+	// Retrieve the git directory of the work tree
+	public Path getGitDir() {
+		return gitDir;
+	}
+
+	// Retrieve the tracked files
+	public List <indexEntry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * read
+	 *
+	 * Reads the index of the git work tree at the given root. The ".git" entry may be a
+	 *   directory, or a file pointing to the git directory (linked work trees, submodules).
+	 *
+	 * @return The index, or null if the root is not a git work tree.
+	 */
+	public static ScaGitIndex read( Path root ) throws IOException {
+		// Find the git directory
+		Path dotGit = root.resolve( ".git" );
+		Path gitDir = null;
+		if ( Files.isDirectory( dotGit )) {
+			gitDir = dotGit;
+		}
+		else if ( Files.isRegularFile( dotGit )) {
+			String content = new String( Files.readAllBytes( dotGit ), StandardCharsets.UTF_8 ).trim();
+			if ( content.startsWith( "gitdir:" )) {
+				gitDir = root.resolve( content.substring( 7 ).trim()).normalize();
+			}
+		}
+		if (( gitDir == null ) || !Files.isRegularFile( gitDir.resolve( "index" ))) {
+			return null;
+		}
+		// Find the directory holding the objects and references
+		Path commonDir = gitDir;
+		Path commonDirFile = gitDir.resolve( "commondir" );
+		if ( Files.isRegularFile( commonDirFile )) {
+			commonDir = gitDir.resolve( new String( Files.readAllBytes( commonDirFile ), StandardCharsets.UTF_8 ).trim()).normalize();
+		}
+		// Read the index
+		ScaGitIndex index = new ScaGitIndex( root, gitDir, commonDir );
+		index.parse( ByteBuffer.wrap( Files.readAllBytes( gitDir.resolve( "index" ))));
+		return index;
+	}
+
+	// Parse the index file
+	private void parse( ByteBuffer buffer ) throws IOException {
+		// Check the header
+		if (( buffer.remaining() < 12 ) || ( buffer.getInt() != INDEX_SIGNATURE )) {
+			throw new IOException( "Not a git index file" );
+		}
+		int version = buffer.getInt();
+		if (( version < 2 ) || ( version > 4 )) {
+			throw new IOException( "Unsupported git index version " + version );
+		}
+		int count = buffer.getInt();
+		// Previous path, for the prefix compression of version 4
+		byte previous[] = new byte[0];
+		int previousLength = 0;
+		// Path of the last entry added, to skip the other stages of a conflict
+		String lastPath = null;
+		// Read the entries
+		for ( int index = 0; index < count; index++ ) {
+			int entryStart = buffer.position();
+			// Skip ctime (seconds, nanoseconds)
+			buffer.position( entryStart + 8 );
+			int modifiedSeconds = buffer.getInt();
+			// Skip mtime nanoseconds, dev and ino
+			buffer.position( entryStart + 24 );
+			int mode = buffer.getInt();
+			// Skip uid and gid
+			buffer.position( entryStart + 36 );
+			int size = buffer.getInt();
+			byte objectId[] = new byte[20];
+			buffer.get( objectId );
+			int flags = buffer.getShort() & 0xFFFF;
+			if (( version >= 3 ) && (( flags & FLAG_EXTENDED ) != 0 )) {
+				buffer.getShort();
+			}
+			// Read the path
+			byte path[];
+			int pathLength;
+			if ( version == 4 ) {
+				// Strip a number of bytes from the previous path, then add the suffix
+				int strip = readOffset( buffer );
+				int keep = previousLength - strip;
+				int suffixStart = buffer.position();
+				while ( buffer.get() != 0 ) {
+					// Find the end of the suffix
+				}
+				int suffixLength = buffer.position() - 1 - suffixStart;
+				pathLength = keep + suffixLength;
+				path = new byte[ pathLength ];
+				System.arraycopy( previous, 0, path, 0, keep );
+				for ( int offset = 0; offset < suffixLength; offset++ ) {
+					path[ keep + offset ] = buffer.get( suffixStart + offset );
+				}
+			}
+			else {
+				int pathStart = buffer.position();
+				while ( buffer.get() != 0 ) {
+					// Find the end of the path
+				}
+				pathLength = buffer.position() - 1 - pathStart;
+				path = new byte[ pathLength ];
+				for ( int offset = 0; offset < pathLength; offset++ ) {
+					path[offset] = buffer.get( pathStart + offset );
+				}
+				// Entries are padded with NUL bytes to a multiple of eight bytes
+				int entryLength = buffer.position() - entryStart;
+				buffer.position( entryStart + (( entryLength + 7 ) & ~7 ));
+			}
+			previous = path;
+			previousLength = pathLength;
+			// Is it a tracked file at the first stage?
+			int type = mode & MODE_TYPE_MASK;
+			if (( type == MODE_REGULAR_FILE ) || ( type == MODE_SYMBOLIC_LINK )) {
+				String pathName = new String( path, 0, pathLength, StandardCharsets.UTF_8 );
+				if ((( flags & FLAG_STAGE_MASK ) == 0 ) || !pathName.equals( lastPath )) {
+					entries.add( new indexEntry( pathName, toHex( objectId ), modifiedSeconds, size ));
+					lastPath = pathName;
+				}
+			}
+		}
+	}
+
+	// Read a variable length offset, as used by index version 4
+	private static int readOffset( ByteBuffer buffer ) {
+		int value = buffer.get() & 0xFF;
+		int result = value & 0x7F;
+		while (( value & 0x80 ) != 0 ) {
+			value = buffer.get() & 0xFF;
+			result = (( result + 1 ) << 7 ) | ( value & 0x7F );
+		}
+		return result;
+	}
+
+	/**
+	 * isModified
+	 *
+	 * Checks whether the file in the work tree differs from the staged content. When the
+	 *   size and modification time match the index the file is taken as unchanged, just
+	 *   like git does; otherwise the content is hashed and compared.
+	 *
+	 * @return Whether or not the file in the work tree was modified.
+	 */
+	public static boolean isModified( indexEntry entry, Path file, BasicFileAttributes attributes ) throws IOException {
+		// Do the size and modification time match the index?
+		if (( entry.size == ( int )( attributes.size())) && ( entry.modifiedSeconds == ( int )( attributes.lastModifiedTime().toMillis() / 1000 ))) {
+			return false;
+		}
+		// Hash the content the way git does
+		MessageDigest digest = newSha1();
+		digest.update(( "blob " + attributes.size() + "\0" ).getBytes( StandardCharsets.US_ASCII ));
+		byte buffer[] = new byte[ 64 * 1024 ];
+		try ( InputStream input = Files.newInputStream( file )) {
+			int read;
+			while (( read = input.read( buffer )) > 0 ) {
+				digest.update( buffer, 0, read );
+			}
+		}
+		return !toHex( digest.digest()).equals( entry.objectId );
+	}
+
+	// Create a SHA-1 message digest
+	static MessageDigest newSha1() {
+		try {
+			return MessageDigest.getInstance( "SHA-1" );
+		}
+		catch ( NoSuchAlgorithmException e ) {
+			throw new IllegalStateException( "SHA-1 is not available", e );
+		}
+	}
+
+	// Convert bytes to hex
+	static String toHex( byte bytes[] ) {
+		char hex[] = new char[ bytes.length * 2 ];
+		for ( int index = 0; index < bytes.length; index++ ) {
+			hex[ index * 2 ] = Character.forDigit(( bytes[index] >> 4 ) & 0xF, 16 );
+			hex[ index * 2 + 1 ] = Character.forDigit( bytes[index] & 0xF, 16 );
+		}
+		return new String( hex );
+	}
+}
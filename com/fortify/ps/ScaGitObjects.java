@@ -0,0 +1,615 @@
+package com.fortify.ps;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * ScaGitObjects
+ *
+ * Reads commits and trees from the object database of a local git repository, without
+ *   running git and without any network access. Loose objects and pack files (index
+ *   version 2, including offset and reference deltas) are supported. Revisions are
+ *   resolved from object ids (full or abbreviated), HEAD, branches, tags and remote
+ *   branches (loose or packed), optionally followed by "^", "^<n>" and "~<n>".
+ */
+public class ScaGitObjects {
+
+	// Object type: commit
+	private static final int OBJ_COMMIT = 1;
+	// Object type: tree
+	private static final int OBJ_TREE = 2;
+	// Object type: blob
+	private static final int OBJ_BLOB = 3;
+	// Object type: annotated tag
+	private static final int OBJ_TAG = 4;
+	// Object type: delta against an object at an offset in the same pack
+	private static final int OBJ_OFS_DELTA = 6;
+	// Object type: delta against an object with an object id
+	private static final int OBJ_REF_DELTA = 7;
+	// Signature of a pack index file, version 2 and up
+	private static final int PACK_INDEX_SIGNATURE = 0xFF744F63;
+	// Object type bits of a tree entry mode
+	private static final int MODE_TYPE_MASK = 0170000;
+	// Object type of a sub tree
+	private static final int MODE_TREE = 0040000;
+	// Object type of a submodule
+	private static final int MODE_GITLINK = 0160000;
+
+	// The git directory holding the objects and references
+	private final Path commonDir;
+	// The git directory of the work tree (holding HEAD)
+	private final Path gitDir;
+	// The pack files, loaded on first use
+	private ArrayList <packFile> packs = null;
+
+	// A git object
+	private static class gitObject {
+		// Type of the object
+		private final int type;
+		// Content of the object
+		private final byte data[];
+		// Default constructor
+		gitObject( int objectType, byte objectData[] ) {
+			type = objectType;
+			data = objectData;
+		}
+	}
+
+	// A pack file with its index
+	private static class packFile {
+		// The pack file
+		private final Path pack;
+		// The memory mapped pack index
+		private final MappedByteBuffer index;
+		// Number of objects in the pack
+		private final int count;
+		// Default constructor
+		packFile( Path packPath, MappedByteBuffer packIndex ) {
+			pack = packPath;
+			index = packIndex;
+			count = index.getInt( 8 + 255 * 4 );
+		}
+		// Position of the first object id in the index
+		private int idsStart() {
+			return 8 + 256 * 4;
+		}
+		// Compare the object id at a position in the index with an object id
+		private int compare( int position, byte objectId[], int length ) {
+			int start = idsStart() + position * 20;
+			for ( int offset = 0; offset < length; offset++ ) {
+				int difference = ( index.get( start + offset ) & 0xFF ) - ( objectId[offset] & 0xFF );
+				if ( difference != 0 ) {
+					return difference;
+				}
+			}
+			return 0;
+		}
+		// Find the position of the first object id at or after an object id prefix
+		private int lowerBound( byte objectId[], int length ) {
+			int first = objectId[0] & 0xFF;
+			int low = ( first == 0 ) ? 0 : index.getInt( 8 + ( first - 1 ) * 4 );
+			int high = index.getInt( 8 + first * 4 );
+			while ( low < high ) {
+				int middle = ( low + high ) >>> 1;
+				if ( compare( middle, objectId, length ) < 0 ) {
+					low = middle + 1;
+				}
+				else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+		// Retrieve the object id at a position
+		private byte[] objectIdAt( int position ) {
+			byte objectId[] = new byte[20];
+			for ( int offset = 0; offset < 20; offset++ ) {
+				objectId[offset] = index.get( idsStart() + position * 20 + offset );
+			}
+			return objectId;
+		}
+		// Retrieve the pack offset of the object at a position
+		private long offsetAt( int position ) {
+			int offsetsStart = idsStart() + count * 20 + count * 4;
+			int offset = index.getInt( offsetsStart + position * 4 );
+			if ( offset >= 0 ) {
+				return offset;
+			}
+			// The offset is in the table of large offsets
+			int largeOffsetsStart = offsetsStart + count * 4;
+			return index.getLong( largeOffsetsStart + ( offset & 0x7FFFFFFF ) * 8 );
+		}
+		// Find the pack offset of an object, or -1
+		long find( byte objectId[] ) {
+			int position = lowerBound( objectId, 20 );
+			if (( position < count ) && ( compare( position, objectId, 20 ) == 0 )) {
+				return offsetAt( position );
+			}
+			return -1;
+		}
+	}
+
+	// Default constructor
+	public ScaGitObjects( Path workTreeGitDir, Path repositoryCommonDir ) {
+		gitDir = workTreeGitDir;
+		commonDir = repositoryCommonDir;
+	}
+
+	/**
+	 * resolve
+	 *
+	 * Resolves a revision to the object id of a commit.
+	 *
+	 * @return The object id of the commit, in hex.
+	 */
+	public String resolve( String revision ) throws IOException {
+		// Split the revision in a name and the suffix operators
+		int suffixStart = revision.length();
+		for ( int index = 0; index < revision.length(); index++ ) {
+			char character = revision.charAt( index );
+			if (( character == '^' ) || ( character == '~' )) {
+				suffixStart = index;
+				break;
+			}
+		}
+		String objectId = peelToCommit( resolveName( revision.substring( 0, suffixStart )));
+		// Apply the suffix operators
+		int index = suffixStart;
+		while ( index < revision.length()) {
+			char operator = revision.charAt( index++ );
+			int numberStart = index;
+			while (( index < revision.length()) && Character.isDigit( revision.charAt( index ))) {
+				index++;
+			}
+			int number = ( index > numberStart ) ? Integer.parseInt( revision.substring( numberStart, index )) : 1;
+			if ( operator == '^' ) {
+				// The n-th parent (0 is the commit itself)
+				if ( number > 0 ) {
+					objectId = parent( objectId, number, revision );
+				}
+			}
+			else if ( operator == '~' ) {
+				// The n-th first parent
+				for ( int generation = 0; generation < number; generation++ ) {
+					objectId = parent( objectId, 1, revision );
+				}
+			}
+			else {
+				throw new IOException( "Unknown revision \"" + revision + "\"" );
+			}
+		}
+		return objectId;
+	}
+
+	// Retrieve the n-th parent of a commit
+	private String parent( String commitId, int number, String revision ) throws IOException {
+		int found = 0;
+		for ( String line : headerLines( read( commitId ))) {
+			if ( line.startsWith( "parent " ) && ( ++found == number )) {
+				return line.substring( 7, 47 );
+			}
+		}
+		throw new IOException( "Unknown revision \"" + revision + "\" (no such parent)" );
+	}
+
+	// Resolve a name to an object id
+	private String resolveName( String name ) throws IOException {
+		// Is it a full object id?
+		if ( name.matches( "[0-9a-fA-F]{40}" )) {
+			return name.toLowerCase();
+		}
+		// Is it a reference?
+		String candidates[] = { name, "refs/" + name, "refs/tags/" + name, "refs/heads/" + name, "refs/remotes/" + name, "refs/remotes/" + name + "/HEAD" };
+		for ( String candidate : candidates ) {
+			String objectId = resolveReference( candidate, 0 );
+			if ( objectId != null ) {
+				return objectId;
+			}
+		}
+		// Is it an abbreviated object id?
+		if ( name.matches( "[0-9a-fA-F]{4,39}" )) {
+			String objectId = findAbbreviated( name.toLowerCase());
+			if ( objectId != null ) {
+				return objectId;
+			}
+		}
+		throw new IOException( "Unknown revision \"" + name + "\"" );
+	}
+
+	// Resolve a reference to an object id, or null
+	private String resolveReference( String reference, int depth ) throws IOException {
+		if ( depth > 10 ) {
+			throw new IOException( "Reference loop at \"" + reference + "\"" );
+		}
+		// Look for a loose reference in the git directory and in the common directory
+		Path directories[] = { gitDir, commonDir };
+		for ( Path directory : directories ) {
+			Path file = directory.resolve( reference );
+			if ( Files.isRegularFile( file )) {
+				String content = new String( Files.readAllBytes( file ), StandardCharsets.UTF_8 ).trim();
+				if ( content.startsWith( "ref:" )) {
+					return resolveReference( content.substring( 4 ).trim(), depth + 1 );
+				}
+				if ( content.matches( "[0-9a-f]{40}" )) {
+					return content;
+				}
+			}
+		}
+		// Look for a packed reference
+		Path packedRefsFile = commonDir.resolve( "packed-refs" );
+		if ( Files.isRegularFile( packedRefsFile )) {
+			for ( String line : Files.readAllLines( packedRefsFile, StandardCharsets.UTF_8 )) {
+				if (( line.length() > 41 ) && ( line.charAt( 40 ) == ' ' ) && line.substring( 41 ).equals( reference )) {
+					return line.substring( 0, 40 );
+				}
+			}
+		}
+		return null;
+	}
+
+	// Find the object id starting with an abbreviation, or null
+	private String findAbbreviated( String abbreviation ) throws IOException {
+		String found = null;
+		// Look at the loose objects
+		Path directory = commonDir.resolve( "objects" ).resolve( abbreviation.substring( 0, 2 ));
+		if ( Files.isDirectory( directory )) {
+			try ( DirectoryStream <Path> stream = Files.newDirectoryStream( directory )) {
+				for ( Path file : stream ) {
+					String objectId = abbreviation.substring( 0, 2 ) + file.getFileName().toString();
+					if ( objectId.startsWith( abbreviation )) {
+						found = ambiguous( found, objectId, abbreviation );
+					}
+				}
+			}
+		}
+		// Look at the pack files
+		byte prefix[] = fromHex( abbreviation.length() % 2 == 0 ? abbreviation : abbreviation.substring( 0, abbreviation.length() - 1 ));
+		for ( packFile pack : getPacks()) {
+			for ( int position = pack.lowerBound( prefix, prefix.length ); ( position < pack.count ) && ( pack.compare( position, prefix, prefix.length ) == 0 ); position++ ) {
+				String objectId = ScaGitIndex.toHex( pack.objectIdAt( position ));
+				if ( objectId.startsWith( abbreviation )) {
+					found = ambiguous( found, objectId, abbreviation );
+				}
+			}
+		}
+		return found;
+	}
+
+	// Check an abbreviation is not ambiguous
+	private static String ambiguous( String found, String objectId, String abbreviation ) throws IOException {
+		if (( found != null ) && !found.equals( objectId )) {
+			throw new IOException( "Ambiguous revision \"" + abbreviation + "\"" );
+		}
+		return objectId;
+	}
+
+	// Peel annotated tags until a commit is found
+	private String peelToCommit( String objectId ) throws IOException {
+		for ( int depth = 0; depth < 10; depth++ ) {
+			gitObject object = read( objectId );
+			if ( object.type == OBJ_COMMIT ) {
+				return objectId;
+			}
+			if ( object.type != OBJ_TAG ) {
+				throw new IOException( "Object " + objectId + " is not a commit" );
+			}
+			objectId = headerLines( object ).get( 0 ).substring( 7, 47 );
+		}
+		throw new IOException( "Tag chain too long at " + objectId );
+	}
+
+	/**
+	 * readCommitFiles
+	 *
+	 * Lists the files of the tree of a commit.
+	 *
+	 * @return The object ids of the files (in hex), by path relative to the work tree.
+	 */
+	public HashMap <String, String> readCommitFiles( String commitId ) throws IOException {
+		// Get the tree of the commit
+		String treeId = null;
+		for ( String line : headerLines( read( commitId ))) {
+			if ( line.startsWith( "tree " )) {
+				treeId = line.substring( 5, 45 );
+				break;
+			}
+		}
+		if ( treeId == null ) {
+			throw new IOException( "Commit " + commitId + " has no tree" );
+		}
+		// Collect the files
+		HashMap <String, String> files = new HashMap <String, String> ();
+		collectTree( treeId, "", files );
+		return files;
+	}
+
+	// Collect the files of a tree
+	private void collectTree( String treeId, String prefix, HashMap <String, String> files ) throws IOException {
+		gitObject tree = read( treeId );
+		if ( tree.type != OBJ_TREE ) {
+			throw new IOException( "Object " + treeId + " is not a tree" );
+		}
+		byte data[] = tree.data;
+		int index = 0;
+		while ( index < data.length ) {
+			// Read the mode
+			int mode = 0;
+			while ( data[index] != ' ' ) {
+				mode = ( mode << 3 ) + ( data[index++] - '0' );
+			}
+			index++;
+			// Read the name
+			int nameStart = index;
+			while ( data[index] != 0 ) {
+				index++;
+			}
+			String name = new String( data, nameStart, index - nameStart, StandardCharsets.UTF_8 );
+			index++;
+			// Read the object id
+			byte objectId[] = new byte[20];
+			System.arraycopy( data, index, objectId, 0, 20 );
+			index += 20;
+			// Add the entry
+			int type = mode & MODE_TYPE_MASK;
+			if ( type == MODE_TREE ) {
+				collectTree( ScaGitIndex.toHex( objectId ), prefix + name + "/", files );
+			}
+			else if ( type != MODE_GITLINK ) {
+				files.put( prefix + name, ScaGitIndex.toHex( objectId ));
+			}
+		}
+	}
+
+	// Split the header of a commit or tag into lines
+	private static ArrayList <String> headerLines( gitObject object ) {
+		ArrayList <String> lines = new ArrayList <String> ();
+		String text = new String( object.data, StandardCharsets.UTF_8 );
+		for ( String line : text.split( "\n" )) {
+			// The header ends at the first empty line
+			if ( line.length() == 0 ) {
+				break;
+			}
+			lines.add( line );
+		}
+		return lines;
+	}
+
+	// Read an object
+	private gitObject read( String objectId ) throws IOException {
+		// Is it a loose object?
+		Path loose = commonDir.resolve( "objects" ).resolve( objectId.substring( 0, 2 )).resolve( objectId.substring( 2 ));
+		if ( Files.isRegularFile( loose )) {
+			byte content[];
+			try ( InputStream input = new InflaterInputStream( Files.newInputStream( loose ))) {
+				content = readAll( input );
+			}
+			// Split the header ("<type> <size>\0") from the data
+			int headerEnd = 0;
+			while ( content[headerEnd] != 0 ) {
+				headerEnd++;
+			}
+			String header = new String( content, 0, headerEnd, StandardCharsets.US_ASCII );
+			byte data[] = new byte[ content.length - headerEnd - 1 ];
+			System.arraycopy( content, headerEnd + 1, data, 0, data.length );
+			return new gitObject( typeOf( header.substring( 0, header.indexOf( ' ' ))), data );
+		}
+		// Look in the pack files
+		byte id[] = fromHex( objectId );
+		for ( packFile pack : getPacks()) {
+			long offset = pack.find( id );
+			if ( offset >= 0 ) {
+				try ( FileChannel channel = FileChannel.open( pack.pack, StandardOpenOption.READ )) {
+					return readPacked( pack, channel, offset, 0 );
+				}
+			}
+		}
+		throw new IOException( "Object " + objectId + " not found" );
+	}
+
+	// Read an object from a pack file
+	private gitObject readPacked( packFile pack, FileChannel channel, long offset, int depth ) throws IOException {
+		if ( depth > 64 ) {
+			throw new IOException( "Delta chain too long in " + pack.pack );
+		}
+		// Read the object header
+		ByteBuffer header = ByteBuffer.allocate( 32 );
+		channel.read( header, offset );
+		header.flip();
+		int value = header.get() & 0xFF;
+		int type = ( value >> 4 ) & 7;
+		long size = value & 0x0F;
+		int shift = 4;
+		while (( value & 0x80 ) != 0 ) {
+			value = header.get() & 0xFF;
+			size |= (long)( value & 0x7F ) << shift;
+			shift += 7;
+		}
+		// Read the base of a delta
+		gitObject base = null;
+		if ( type == OBJ_OFS_DELTA ) {
+			value = header.get() & 0xFF;
+			long baseDistance = value & 0x7F;
+			while (( value & 0x80 ) != 0 ) {
+				value = header.get() & 0xFF;
+				baseDistance = (( baseDistance + 1 ) << 7 ) | ( value & 0x7F );
+			}
+			base = readPacked( pack, channel, offset - baseDistance, depth + 1 );
+		}
+		else if ( type == OBJ_REF_DELTA ) {
+			byte baseId[] = new byte[20];
+			header.get( baseId );
+			base = read( ScaGitIndex.toHex( baseId ));
+		}
+		// Inflate the data
+		byte data[] = inflate( channel, offset + header.position(), ( int ) size );
+		// Apply the delta
+		if ( base != null ) {
+			return new gitObject( base.type, applyDelta( base.data, data ));
+		}
+		return new gitObject( type, data );
+	}
+
+	// Inflate compressed data at an offset of a pack file
+	private static byte[] inflate( FileChannel channel, long offset, int size ) throws IOException {
+		byte data[] = new byte[ size ];
+		Inflater inflater = new Inflater();
+		try {
+			InputStream input = Channels.newInputStream( channel.position( offset ));
+			byte buffer[] = new byte[ 8192 ];
+			int inflated = 0;
+			while ( inflated < size ) {
+				if ( inflater.needsInput()) {
+					int read = input.read( buffer );
+					if ( read < 0 ) {
+						throw new IOException( "Unexpected end of pack file" );
+					}
+					inflater.setInput( buffer, 0, read );
+				}
+				int count = inflater.inflate( data, inflated, size - inflated );
+				if (( count == 0 ) && inflater.finished()) {
+					break;
+				}
+				inflated += count;
+			}
+		}
+		catch ( DataFormatException e ) {
+			throw new IOException( "Damaged pack file", e );
+		}
+		finally {
+			inflater.end();
+		}
+		return data;
+	}
+
+	// Apply a delta to a base object
+	private static byte[] applyDelta( byte base[], byte delta[] ) throws IOException {
+		int index[] = { 0 };
+		// Skip the size of the base
+		readSize( delta, index );
+		// Create the result
+		byte result[] = new byte[ ( int ) readSize( delta, index ) ];
+		int position = 0;
+		while ( index[0] < delta.length ) {
+			int instruction = delta[ index[0]++ ] & 0xFF;
+			if (( instruction & 0x80 ) != 0 ) {
+				// Copy from the base
+				long copyOffset = 0;
+				int copySize = 0;
+				for ( int bit = 0; bit < 4; bit++ ) {
+					if (( instruction & ( 1 << bit )) != 0 ) {
+						copyOffset |= (long)( delta[ index[0]++ ] & 0xFF ) << ( bit * 8 );
+					}
+				}
+				for ( int bit = 0; bit < 3; bit++ ) {
+					if (( instruction & ( 0x10 << bit )) != 0 ) {
+						copySize |= ( delta[ index[0]++ ] & 0xFF ) << ( bit * 8 );
+					}
+				}
+				if ( copySize == 0 ) {
+					copySize = 0x10000;
+				}
+				System.arraycopy( base, ( int ) copyOffset, result, position, copySize );
+				position += copySize;
+			}
+			else if ( instruction != 0 ) {
+				// Insert the literal data
+				System.arraycopy( delta, index[0], result, position, instruction );
+				index[0] += instruction;
+				position += instruction;
+			}
+			else {
+				throw new IOException( "Damaged delta" );
+			}
+		}
+		return result;
+	}
+
+	// Read a size of a delta
+	private static long readSize( byte delta[], int index[] ) {
+		long size = 0;
+		int shift = 0;
+		int value;
+		do {
+			value = delta[ index[0]++ ] & 0xFF;
+			size |= (long)( value & 0x7F ) << shift;
+			shift += 7;
+		} while (( value & 0x80 ) != 0 );
+		return size;
+	}
+
+	// Load the pack indexes
+	private ArrayList <packFile> getPacks() throws IOException {
+		if ( packs == null ) {
+			packs = new ArrayList <packFile> ();
+			Path packDirectory = commonDir.resolve( "objects" ).resolve( "pack" );
+			if ( Files.isDirectory( packDirectory )) {
+				try ( DirectoryStream <Path> stream = Files.newDirectoryStream( packDirectory, "*.idx" )) {
+					for ( Path indexFile : stream ) {
+						String name = indexFile.getFileName().toString();
+						Path packPath = indexFile.resolveSibling( name.substring( 0, name.length() - 4 ) + ".pack" );
+						try ( FileChannel channel = FileChannel.open( indexFile, StandardOpenOption.READ )) {
+							MappedByteBuffer index = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size());
+							if (( index.getInt( 0 ) == PACK_INDEX_SIGNATURE ) && ( index.getInt( 4 ) == 2 ) && Files.isRegularFile( packPath )) {
+								packs.add( new packFile( packPath, index ));
+							}
+						}
+					}
+				}
+			}
+		}
+		return packs;
+	}
+
+	// Convert an object type name to a type
+	private static int typeOf( String name ) throws IOException {
+		if ( name.equals( "commit" )) {
+			return OBJ_COMMIT;
+		}
+		if ( name.equals( "tree" )) {
+			return OBJ_TREE;
+		}
+		if ( name.equals( "blob" )) {
+			return OBJ_BLOB;
+		}
+		if ( name.equals( "tag" )) {
+			return OBJ_TAG;
+		}
+		throw new IOException( "Unknown object type \"" + name + "\"" );
+	}
+
+	// Read a stream completely
+	private static byte[] readAll( InputStream input ) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte buffer[] = new byte[ 8192 ];
+		int read;
+		while (( read = input.read( buffer )) > 0 ) {
+			output.write( buffer, 0, read );
+		}
+		return output.toByteArray();
+	}
+
+	// Convert hex to bytes
+	private static byte[] fromHex( String hex ) {
+		byte bytes[] = new byte[ hex.length() / 2 ];
+		for ( int index = 0; index < bytes.length; index++ ) {
+			bytes[index] = ( byte ) Integer.parseInt( hex.substring( index * 2, index * 2 + 2 ), 16 );
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,323 @@
+package com.fortify.ps;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ScaIoGovernor
+ *
+ * Limits the number of I/O operations (directory listings and file reads) in flight, and
+ *   optionally the bytes read per second, for scans of network file systems. The scanning
+ *   threads ask for a permit before every operation and return it afterwards, with the
+ *   bytes read and the time it took. In adaptive mode the limit follows an AIMD feedback
+ *   loop, evaluated once per control window:
+ *   - the latency of the window is the time per cost unit (an operation plus one unit per
+ *     64 KB read), compared to a baseline, the lowest latency seen (slowly forgotten);
+ *   - when the latency exceeds the baseline by LATENCY_TOLERANCE the file server is taken
+ *     as overloaded and the limit is cut to DECREASE_FACTOR of its value;
+ *   - when the latency rose above the headroom and the throughput fell, more operations
+ *     no longer pay off and the limit is lowered by one;
+ *   - when threads waited for a permit and the latency stayed within the headroom, the
+ *     limit is raised by one, up to the hard cap;
+ *   - otherwise the limit is kept.
+ *   Every change is kept, so the decisions can be reported. The counts of a scan do not
+ *   depend on the limit. The governor may be shared by multiple threads; it waits on a
+ *   lock rather than a monitor, so waiting virtual threads release their carrier thread.
+ */
+public class ScaIoGovernor {
+
+	// Duration of a control window, in nanoseconds
+	private static final long WINDOW_NANOS = 200 * 1000000L;
+	// Minimum number of operations in a control window
+	private static final int WINDOW_OPERATIONS = 8;
+	// Bytes read per cost unit
+	private static final long UNIT_BYTES = 64 * 1024;
+	// Latency, relative to the baseline, above which the limit is cut
+	private static final double LATENCY_TOLERANCE = 2.0;
+	// Latency, relative to the baseline, below which the limit may grow
+	private static final double LATENCY_HEADROOM = 1.25;
+	// Throughput, relative to the previous window, below which the throughput fell
+	private static final double THROUGHPUT_LOSS = 0.95;
+	// Factor of the limit after a cut
+	private static final double DECREASE_FACTOR = 0.75;
+	// Share of the distance to the latency of a window the baseline moves up per window
+	private static final double BASELINE_DRIFT = 0.01;
+	// Maximum number of decisions kept
+	private static final int MAX_DECISIONS = 1000;
+	// Burst of the byte rate limit, in nanoseconds of reading
+	private static final long RATE_BURST_NANOS = 1000000000L;
+	// Nanoseconds per millisecond
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	// Lock of the state of the governor
+	private final ReentrantLock lock = new ReentrantLock();
+	// Signalled when a permit may be free
+	private final Condition permitFree = lock.newCondition();
+	// Adjust the limit to the latency?
+	private final boolean adaptive;
+	// Hard cap of the limit
+	private final int maxLimit;
+	// Maximum bytes read per second, or 0 without a limit
+	private final long bytesPerSecond;
+	// Start of the governor
+	private final long startNanos = System.nanoTime();
+	// Number of operations allowed in flight
+	private int limit;
+	// Number of operations in flight
+	private int inFlight = 0;
+	// Lowest and highest limit used
+	private int lowestLimit;
+	private int highestLimit;
+	// Did a thread wait for a permit in the current window?
+	private boolean waited = false;
+	// Start of the current window
+	private long windowStart = startNanos;
+	// Operations, cost units, bytes and busy nanoseconds of the current window
+	private long windowOperations = 0;
+	private long windowUnits = 0;
+	private long windowBytes = 0;
+	private long windowNanos = 0;
+	// Baseline latency per cost unit, or 0 before the first window
+	private double baseline = 0;
+	// Throughput of the previous window, in cost units per second
+	private double previousThroughput = 0;
+	// Totals of all operations
+	private long operations = 0;
+	private long bytes = 0;
+	private long waits = 0;
+	// Virtual clock of the byte rate limit
+	private long rateClock = startNanos;
+	// Nanoseconds spent waiting for the byte rate limit
+	private long rateWaitNanos = 0;
+	// Changes of the limit
+	private final ArrayList <decision> decisions = new ArrayList <decision> ();
+	// Number of changes not kept
+	private long droppedDecisions = 0;
+
+	/**
+	 * decision
+	 *
+	 * A change of the limit, with the measurements it was based on.
+	 */
+	public static class decision {
+		// Time since the start of the governor, in nanoseconds
+		private final long elapsedNanos;
+		// Limit before and after the change
+		private final int oldLimit;
+		private final int newLimit;
+		// Latency per cost unit of the window and the baseline, in nanoseconds
+		private final double latency;
+		private final double baseline;
+		// Bytes read per second in the window
+		private final double bytesPerSecond;
+		// Default constructor
+		decision( long decisionElapsedNanos, int decisionOldLimit, int decisionNewLimit, double decisionLatency, double decisionBaseline, double decisionBytesPerSecond ) {
+			elapsedNanos = decisionElapsedNanos;
+			oldLimit = decisionOldLimit;
+			newLimit = decisionNewLimit;
+			latency = decisionLatency;
+			baseline = decisionBaseline;
+			bytesPerSecond = decisionBytesPerSecond;
+		}
+		// Describe the decision for humans
+		@Override
+		public String toString() {
+			return String.format( Locale.ROOT, "%8.3f s  limit %3d -> %3d  (latency %.3f ms, baseline %.3f ms, %.1f MB/s)", elapsedNanos / 1e9, oldLimit, newLimit, latency / NANOS_PER_MILLI, baseline / NANOS_PER_MILLI, bytesPerSecond / ( 1024 * 1024 ));
+		}
+	}
+
+	/**
+	 * ScaIoGovernor
+	 *
+	 * Creates a governor. A fixed governor keeps the limit at the hard cap; an adaptive
+	 *   governor starts at the initial limit.
+	 */
+	public ScaIoGovernor( boolean adaptiveLimit, int initialLimit, int hardCap, long maxBytesPerSecond ) {
+		adaptive = adaptiveLimit;
+		maxLimit = Math.max( hardCap, 1 );
+		limit = adaptive ? Math.max( 1, Math.min( initialLimit, maxLimit )) : maxLimit;
+		lowestLimit = limit;
+		highestLimit = limit;
+		bytesPerSecond = Math.max( maxBytesPerSecond, 0 );
+	}
+
+	/**
+	 * acquire
+	 *
+	 * Waits until an operation may start, and for the byte rate limit when the operation
+	 *   reads the given number of bytes.
+	 */
+	public void acquire( long readBytes ) {
+		// Wait for the byte rate limit first, so no permit is held while sleeping
+		if (( bytesPerSecond > 0 ) && ( readBytes > 0 )) {
+			waitForRate( readBytes );
+		}
+		// Wait for a permit
+		lock.lock();
+		try {
+			while ( inFlight >= limit ) {
+				waited = true;
+				waits++;
+				permitFree.awaitUninterruptibly();
+			}
+			inFlight++;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	// Reserve the time to read bytes on the virtual clock, and sleep until it comes
+	private void waitForRate( long readBytes ) {
+		long now = System.nanoTime();
+		long start;
+		lock.lock();
+		try {
+			// Let an idle governor build up a burst, but no more
+			start = Math.max( rateClock, now - RATE_BURST_NANOS );
+			rateClock = start + ( long ) ( readBytes * 1e9 / bytesPerSecond );
+		}
+		finally {
+			lock.unlock();
+		}
+		long sleepNanos = start - now;
+		if ( sleepNanos > 0 ) {
+			try {
+				Thread.sleep( sleepNanos / 1000000, ( int ) ( sleepNanos % 1000000 ));
+			}
+			catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+			lock.lock();
+			try {
+				rateWaitNanos += sleepNanos;
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * release
+	 *
+	 * Ends an operation, with the bytes it read and the time it took, and adjusts the limit
+	 *   at the end of a control window.
+	 */
+	public void release( long readBytes, long nanos ) {
+		lock.lock();
+		try {
+			inFlight--;
+			operations++;
+			bytes += readBytes;
+			windowOperations++;
+			windowUnits += 1 + readBytes / UNIT_BYTES;
+			windowBytes += readBytes;
+			windowNanos += nanos;
+			// Is the control window over?
+			long now = System.nanoTime();
+			if ( adaptive && ( now - windowStart >= WINDOW_NANOS ) && ( windowOperations >= WINDOW_OPERATIONS )) {
+				adjust( now );
+			}
+			permitFree.signal();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	// Adjust the limit to the measurements of the window, and start the next window
+	private void adjust( long now ) {
+		double latency = ( double ) windowNanos / windowUnits;
+		double seconds = ( now - windowStart ) / 1e9;
+		double throughput = windowUnits / seconds;
+		// Update the baseline: the lowest latency, slowly forgetting it
+		if (( baseline == 0 ) || ( latency < baseline )) {
+			baseline = latency;
+		}
+		else {
+			baseline += ( latency - baseline ) * BASELINE_DRIFT;
+		}
+		// Decide on the limit
+		int newLimit = limit;
+		if ( latency > baseline * LATENCY_TOLERANCE ) {
+			newLimit = Math.max( 1, ( int ) ( limit * DECREASE_FACTOR ));
+		}
+		else if ( latency > baseline * LATENCY_HEADROOM ) {
+			if ( throughput < previousThroughput * THROUGHPUT_LOSS ) {
+				newLimit = Math.max( 1, limit - 1 );
+			}
+		}
+		else if ( waited && ( limit < maxLimit )) {
+			newLimit = limit + 1;
+		}
+		if ( newLimit != limit ) {
+			if ( decisions.size() < MAX_DECISIONS ) {
+				decisions.add( new decision( now - startNanos, limit, newLimit, latency, baseline, windowBytes / seconds ));
+			}
+			else {
+				droppedDecisions++;
+			}
+			// Wake up the threads waiting for the new permits
+			if ( newLimit > limit ) {
+				permitFree.signalAll();
+			}
+			limit = newLimit;
+			lowestLimit = Math.min( lowestLimit, limit );
+			highestLimit = Math.max( highestLimit, limit );
+		}
+		// Start the next window
+		previousThroughput = throughput;
+		waited = false;
+		windowStart = now;
+		windowOperations = 0;
+		windowUnits = 0;
+		windowBytes = 0;
+		windowNanos = 0;
+	}
+
+	// Retrieve the current limit
+	public int getLimit() {
+		lock.lock();
+		try {
+			return limit;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * getSummary
+	 *
+	 * Describes the settings, the limits used and the decisions for humans, one line per
+	 *   element.
+	 */
+	public List <String> getSummary() {
+		lock.lock();
+		try {
+			return describe();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	// Describe the governor, holding the lock
+	private List <String> describe() {
+		ArrayList <String> lines = new ArrayList <String> ();
+		String mode = adaptive ? "adaptive, limit " + lowestLimit + " to " + highestLimit + " of at most " + maxLimit + ", now " + limit : "fixed limit of " + maxLimit;
+		String rate = ( bytesPerSecond > 0 ) ? String.format( Locale.ROOT, ", %.1f MB/s byte limit (%.3f s waited, summed over the threads)", bytesPerSecond / ( 1024.0 * 1024 ), rateWaitNanos / 1e9 ) : "";
+		lines.add( "I/O governor: " + mode + " operations in flight" + rate + "; " + operations + " operations, " + bytes + " bytes read, " + waits + " waits for a permit, " + ( decisions.size() + droppedDecisions ) + " changes of the limit." );
+		for ( decision change : decisions ) {
+			lines.add( "  " + change );
+		}
+		if ( droppedDecisions > 0 ) {
+			lines.add( "  ... " + droppedDecisions + " more changes." );
+		}
+		return lines;
+	}
+}
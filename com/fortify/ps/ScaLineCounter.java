@@ -0,0 +1,785 @@
+package com.fortify.ps;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * ScaLineCounter
+ *
+ * Counts the lines of a file by scanning the raw bytes for line terminators, without
+ *   decoding them to characters. A line is terminated by LF, CR or CRLF, and a last line
+ *   without a terminator is counted as well, the same way LineNumberReader counts them.
+ *   Files starting with a UTF-16 byte order mark are scanned per 16 bit code unit.
+ *   Small files are read into a reused direct buffer, large files are memory mapped.
+ *   Given a comment syntax, the same pass also splits the lines in code, comment and blank
+ *   lines, with a small state machine per syntax. A line holding any code is a code line,
+ *   a line holding only comment text is a comment line, and any other line is blank.
+ *   Words without a byte of interest to the current state are still skipped eight bytes
+ *   at a time. Given a prefix size, the same pass also takes a SHA-256 digest of the
+ *   first bytes of the file, to find duplicate files without reading them again. An
+ *   instance is not thread safe; use one instance per thread.
+ */
+public class ScaLineCounter {
+
+	// Size of the reused read buffer
+	private static final int BUFFER_SIZE = 256 * 1024;
+	// Files of at least this size are memory mapped
+	private static final long MAP_THRESHOLD = 8L * 1024 * 1024;
+	// Size of a single memory mapped region
+	private static final long MAP_REGION_SIZE = 64L * 1024 * 1024;
+	// Line feed character
+	private static final int LF = '\n';
+	// Carriage return character
+	private static final int CR = '\r';
+	// Every byte set to 0x01
+	private static final long ONES = 0x0101010101010101L;
+	// Every byte set to 0x80
+	private static final long HIGHS = 0x8080808080808080L;
+	// Every byte set to the line feed character
+	private static final long LFS = ONES * LF;
+	// Every byte set to the carriage return character
+	private static final long CRS = ONES * CR;
+	// Text encoding: single byte units (ASCII, ISO-8859-x, UTF-8, ...)
+	private static final int ENCODING_BYTE = 0;
+	// Text encoding: UTF-16 big endian
+	private static final int ENCODING_UTF16BE = 1;
+	// Text encoding: UTF-16 little endian
+	private static final int ENCODING_UTF16LE = 2;
+	// Comment syntax: none, lines are only counted
+	public static final int SYNTAX_NONE = 0;
+	// Comment syntax: // and /* */, strings in " and ' with \ escapes (Java, JavaScript, C, C#, PHP, ...)
+	public static final int SYNTAX_C = 1;
+	// Comment syntax: <!-- --> (XML, HTML, JSP, ...)
+	public static final int SYNTAX_XML = 2;
+	// Comment syntax: -- and /* */, strings in '
+	public static final int SYNTAX_SQL = 3;
+	// Comment syntax: #, strings in " and ' with \ escapes (Python, properties, ...)
+	public static final int SYNTAX_HASH = 4;
+	// Comment syntax: ', strings in " (Visual Basic)
+	public static final int SYNTAX_VB = 5;
+	// Comment syntax: no comments, lines are code or blank
+	public static final int SYNTAX_TEXT = 6;
+	// State: in code
+	private static final int STATE_CODE = 0;
+	// State: in a comment up to the end of the line
+	private static final int STATE_LINE_COMMENT = 1;
+	// State: in a block comment
+	private static final int STATE_BLOCK_COMMENT = 2;
+	// State: in a string
+	private static final int STATE_STRING = 3;
+	// Opening of an XML comment
+	private static final String XML_COMMENT_OPEN = "<!--";
+	// Fortify SCA interpretations by comment syntax
+	private static final String SYNTAX_INTERPRETATIONS[][] = {
+		{},
+		{ "ACTIONSCRIPT", "APEX", "C", "CPP", "CSHARP", "DART", "FLEX", "GO", "JAVA", "JAVASCRIPT", "KOTLIN", "OBJC", "PHP", "RUST", "SCALA", "SOLIDITY", "SWIFT", "TYPESCRIPT" },
+		{ "ASP", "CFML", "HTML", "JSP", "MXML", "XAML", "XML" },
+		{ "PLSQL", "SQL", "TSQL" },
+		{ "DOCKERFILE", "JAVA_PROPERTIES", "PERL", "PYTHON", "RUBY", "SHELL", "YAML" },
+		{ "VB6", "VBNET", "VBSCRIPT" }
+	};
+
+	// Reused read buffer
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+	// Reused read buffer for streams, created on first use
+	private ByteBuffer streamBuffer = null;
+	// Number of bytes in the last stream counted
+	private long streamBytes = 0;
+	// Encoding of the current file
+	private int encoding = ENCODING_BYTE;
+	// Number of terminated lines found so far
+	private long lines = 0;
+	// Was the last unit a carriage return?
+	private boolean lastWasCR = false;
+	// Was the last unit a line terminator (or is there no data yet)?
+	private boolean lastWasTerminator = true;
+	// Has the encoding been determined?
+	private boolean encodingKnown = false;
+	// Comment syntax of the current file
+	private int syntax = SYNTAX_NONE;
+	// State of the comment syntax
+	private int state = STATE_CODE;
+	// Pending start of a comment marker: its first character, or the number of characters of "<!--" seen
+	private int pending = 0;
+	// Progress in the end of a block comment: 1 after "*", or the number of "-" seen
+	private int closeMatch = 0;
+	// Quote of the current string
+	private int quote = 0;
+	// Was the last unit in a string an escape?
+	private boolean escaped = false;
+	// Does the current line hold code?
+	private boolean lineHasCode = false;
+	// Does the current line hold comment text?
+	private boolean lineHasComment = false;
+	// Number of code lines
+	private long codeLines = 0;
+	// Number of comment lines
+	private long commentLines = 0;
+	// Number of blank lines
+	private long blankLines = 0;
+	// Patterns of the bytes of interest, per state of the current syntax
+	private long skipPatterns[][] = null;
+	// Bytes of interest to every state, besides the line terminators
+	private boolean interestingBytes[][] = null;
+	// Number of bytes of the prefix digest, or 0 without a prefix digest
+	private int prefixSize = 0;
+	// Digest of the prefix, created on first use
+	private MessageDigest prefixDigest = null;
+	// Bytes of the prefix still to digest
+	private long prefixRemaining = 0;
+	// Prefix digest of the last file counted, or null
+	private byte prefixHash[] = null;
+
+	/**
+	 * countLines
+	 *
+	 * Counts the lines of a file.
+	 *
+	 * @return The number of lines in the file.
+	 */
+	public long countLines( Path path ) throws IOException {
+		return countLines( path, SYNTAX_NONE );
+	}
+
+	/**
+	 * countLines
+	 *
+	 * Counts the lines of a file, splitting them in code, comment and blank lines by a
+	 *   comment syntax (see getCodeLines, getCommentLines and getBlankLines).
+	 *
+	 * @return The number of lines in the file.
+	 */
+	public long countLines( Path path, int commentSyntax ) throws IOException {
+		// Time the read for the flight recorder, once it is initialized
+		ScaScanEvents.fileReadEvent event = ScaScanEvents.isEnabled() ? new ScaScanEvents.fileReadEvent() : null;
+		if ( event != null ) {
+			event.begin();
+		}
+		// Start a new file
+		reset();
+		setSyntax( commentSyntax );
+		prefixHash = null;
+		if ( prefixSize > 0 ) {
+			prefixDigest.reset();
+			prefixRemaining = prefixSize;
+		}
+		// Size of the file
+		long size = 0;
+		// Open the file
+		try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.READ )) {
+			// Get the size of the file
+			size = channel.size();
+			// Is the file large enough to map it?
+			if ( size >= MAP_THRESHOLD ) {
+				// Scan the file one mapped region at a time
+				for ( long position = 0; position < size; position += MAP_REGION_SIZE ) {
+					MappedByteBuffer region = channel.map( FileChannel.MapMode.READ_ONLY, position, Math.min( MAP_REGION_SIZE, size - position ));
+					if ( prefixRemaining > 0 ) {
+						digestPrefix( region, 0, region.limit());
+					}
+					scan( region );
+				}
+			}
+			else {
+				// Read the file through the reused buffer
+				buffer.clear();
+				int start = 0;
+				while ( channel.read( buffer ) > 0 ) {
+					// Digest the bytes just read, as far as they belong to the prefix
+					if ( prefixRemaining > 0 ) {
+						digestPrefix( buffer, start, buffer.position());
+					}
+					buffer.flip();
+					scan( buffer );
+					// Keep an unprocessed half of a 16 bit unit
+					buffer.compact();
+					start = buffer.position();
+				}
+				// Scan a single byte file, too short to hold a byte order mark
+				buffer.flip();
+				if ( !encodingKnown && buffer.hasRemaining()) {
+					encodingKnown = true;
+					scan( buffer );
+				}
+			}
+		}
+		// Get the result
+		long lineCount = finish();
+		if ( prefixSize > 0 ) {
+			prefixHash = prefixDigest.digest();
+		}
+		// Record the read, when a recording asks for it
+		if ( event != null ) {
+			event.end();
+		}
+		if (( event != null ) && event.shouldCommit()) {
+			event.file = path.toString();
+			event.size = size;
+			event.lines = lineCount;
+			event.commit();
+		}
+		// Return the result
+		return lineCount;
+	}
+
+	/**
+	 * countLines
+	 *
+	 * Counts the lines of a stream, such as an entry of an archive. The stream is read
+	 *   through a reused buffer and is not closed.
+	 *
+	 * @return The number of lines in the stream.
+	 */
+	public long countLines( InputStream input ) throws IOException {
+		// Start a new stream
+		reset();
+		streamBytes = 0;
+		if ( streamBuffer == null ) {
+			streamBuffer = ByteBuffer.allocate( BUFFER_SIZE );
+		}
+		byte array[] = streamBuffer.array();
+		streamBuffer.clear();
+		// Read the stream through the reused buffer
+		int read;
+		while (( read = input.read( array, streamBuffer.position(), streamBuffer.remaining())) >= 0 ) {
+			streamBytes += read;
+			streamBuffer.position( streamBuffer.position() + read );
+			streamBuffer.flip();
+			scan( streamBuffer );
+			// Keep an unprocessed half of a 16 bit unit
+			streamBuffer.compact();
+		}
+		// Scan a single byte stream, too short to hold a byte order mark
+		streamBuffer.flip();
+		if ( !encodingKnown && streamBuffer.hasRemaining()) {
+			encodingKnown = true;
+			scan( streamBuffer );
+		}
+		// Return the result
+		return finish();
+	}
+
+	/**
+	 * setPrefixSize
+	 *
+	 * Sets the number of bytes of the prefix digest taken of every file counted, or 0 to
+	 *   take no prefix digest.
+	 */
+	public void setPrefixSize( int newPrefixSize ) {
+		prefixSize = Math.max( newPrefixSize, 0 );
+		if (( prefixSize > 0 ) && ( prefixDigest == null )) {
+			try {
+				prefixDigest = MessageDigest.getInstance( "SHA-256" );
+			}
+			catch ( NoSuchAlgorithmException e ) {
+				// Every Java runtime has SHA-256
+				throw new IllegalStateException( e );
+			}
+		}
+	}
+
+	// Retrieve the prefix digest of the last file counted, or null without a prefix size
+	public byte[] getPrefixDigest() {
+		return prefixHash;
+	}
+
+	// Digest the bytes of a buffer between two positions, as far as they belong to the prefix
+	private void digestPrefix( ByteBuffer data, int from, int to ) {
+		int length = ( int ) Math.min( prefixRemaining, to - from );
+		ByteBuffer view = data.duplicate();
+		view.limit( from + length );
+		view.position( from );
+		prefixDigest.update( view );
+		prefixRemaining -= length;
+	}
+
+	// Retrieve the number of bytes in the last stream counted
+	public long getStreamBytes() {
+		return streamBytes;
+	}
+
+	// Retrieve the number of code lines of the last file counted with a comment syntax
+	public long getCodeLines() {
+		return codeLines;
+	}
+
+	// Retrieve the number of comment lines of the last file counted with a comment syntax
+	public long getCommentLines() {
+		return commentLines;
+	}
+
+	// Retrieve the number of blank lines of the last file counted with a comment syntax
+	public long getBlankLines() {
+		return blankLines;
+	}
+
+	/**
+	 * syntaxOf
+	 *
+	 * Finds the comment syntax of a Fortify SCA interpretation.
+	 *
+	 * @return The comment syntax, or SYNTAX_TEXT for an unknown interpretation.
+	 */
+	public static int syntaxOf( String interpretation ) {
+		for ( int commentSyntax = 1; commentSyntax < SYNTAX_INTERPRETATIONS.length; commentSyntax++ ) {
+			for ( String known : SYNTAX_INTERPRETATIONS[ commentSyntax ] ) {
+				if ( known.equalsIgnoreCase( interpretation )) {
+					return commentSyntax;
+				}
+			}
+		}
+		return SYNTAX_TEXT;
+	}
+
+	// Start counting a new file
+	void reset() {
+		encoding = ENCODING_BYTE;
+		lines = 0;
+		lastWasCR = false;
+		lastWasTerminator = true;
+		encodingKnown = false;
+		syntax = SYNTAX_NONE;
+		state = STATE_CODE;
+		pending = 0;
+		closeMatch = 0;
+		escaped = false;
+		lineHasCode = false;
+		lineHasComment = false;
+		codeLines = 0;
+		commentLines = 0;
+		blankLines = 0;
+	}
+
+	// Set the comment syntax of the file, after the reset
+	private void setSyntax( int commentSyntax ) {
+		syntax = commentSyntax;
+		if ( syntax != SYNTAX_NONE ) {
+			// Get the bytes of interest to every state
+			String code = ( syntax == SYNTAX_C ) ? "/\"'" : ( syntax == SYNTAX_XML ) ? "<" : ( syntax == SYNTAX_SQL ) ? "-/'" : ( syntax == SYNTAX_HASH ) ? "#\"'" : ( syntax == SYNTAX_VB ) ? "'\"" : "";
+			String block = ( syntax == SYNTAX_XML ) ? "->" : "*/";
+			String string = ( syntax == SYNTAX_C ) || ( syntax == SYNTAX_HASH ) ? "\"'\\" : ( syntax == SYNTAX_SQL ) ? "'" : "\"";
+			skipPatterns = new long[][] { patterns( code ), patterns( "" ), patterns( block ), patterns( string ) };
+			interestingBytes = new boolean[][] { interesting( code ), interesting( "" ), interesting( block ), interesting( string ) };
+		}
+	}
+
+	// Get the patterns of the line terminators and of the characters
+	private static long[] patterns( String characters ) {
+		long result[] = new long[ characters.length() + 2 ];
+		result[0] = LFS;
+		result[1] = CRS;
+		for ( int index = 0; index < characters.length(); index++ ) {
+			result[ index + 2 ] = ONES * characters.charAt( index );
+		}
+		return result;
+	}
+
+	// Get the table of the line terminators and of the characters
+	private static boolean[] interesting( String characters ) {
+		boolean result[] = new boolean[256];
+		result[LF] = true;
+		result[CR] = true;
+		for ( int index = 0; index < characters.length(); index++ ) {
+			result[ characters.charAt( index ) ] = true;
+		}
+		return result;
+	}
+
+	// Finish counting a file and return the number of lines
+	long finish() {
+		// Is the last line not terminated?
+		if ( lastWasTerminator ) {
+			return lines;
+		}
+		if ( syntax != SYNTAX_NONE ) {
+			endLine();
+		}
+		return lines + 1;
+	}
+
+	/**
+	 * scan
+	 *
+	 * Scans the bytes from the position to the limit of the buffer. On return the position
+	 *   is at the first byte not scanned, which is only the case for a trailing half of a
+	 *   16 bit unit.
+	 */
+	void scan( ByteBuffer bytes ) {
+		// Is the encoding still unknown?
+		if ( !encodingKnown ) {
+			// Wait for enough bytes to see a byte order mark
+			if ( bytes.remaining() < 2 ) {
+				return;
+			}
+			// Look for a UTF-16 byte order mark
+			int first = bytes.get( bytes.position()) & 0xFF;
+			int second = bytes.get( bytes.position() + 1 ) & 0xFF;
+			if (( first == 0xFE ) && ( second == 0xFF )) {
+				encoding = ENCODING_UTF16BE;
+			}
+			else if (( first == 0xFF ) && ( second == 0xFE )) {
+				encoding = ENCODING_UTF16LE;
+			}
+			encodingKnown = true;
+		}
+		// Scan the bytes using the encoding
+		if (( encoding == ENCODING_BYTE ) && ( syntax != SYNTAX_NONE )) {
+			scanBytesSyntax( bytes );
+		}
+		else if ( encoding == ENCODING_BYTE ) {
+			scanBytes( bytes );
+		}
+		else {
+			scanUtf16( bytes, encoding == ENCODING_UTF16BE );
+		}
+	}
+
+	// Scan single byte units, skipping words without any terminator
+	private void scanBytes( ByteBuffer bytes ) {
+		int index = bytes.position();
+		int limit = bytes.limit();
+		// Copy the state into locals
+		long count = lines;
+		boolean wasCR = lastWasCR;
+		boolean wasTerminator = lastWasTerminator;
+		// Scan eight bytes at a time
+		while ( index + 8 <= limit ) {
+			long word = bytes.getLong( index );
+			// Does the word hold a line feed or a carriage return?
+			if ( !hasByte( word, LFS ) && !hasByte( word, CRS )) {
+				wasCR = false;
+				wasTerminator = false;
+				index += 8;
+			}
+			else {
+				// Scan the word byte by byte
+				for ( int end = index + 8; index < end; index++ ) {
+					int unit = bytes.get( index );
+					if ( unit == LF ) {
+						// A line feed directly after a carriage return ends the same line
+						if ( !wasCR ) {
+							count++;
+						}
+						wasCR = false;
+						wasTerminator = true;
+					}
+					else if ( unit == CR ) {
+						count++;
+						wasCR = true;
+						wasTerminator = true;
+					}
+					else {
+						wasCR = false;
+						wasTerminator = false;
+					}
+				}
+			}
+		}
+		// Scan the remaining bytes
+		for ( ; index < limit; index++ ) {
+			int unit = bytes.get( index );
+			if ( unit == LF ) {
+				if ( !wasCR ) {
+					count++;
+				}
+				wasCR = false;
+				wasTerminator = true;
+			}
+			else if ( unit == CR ) {
+				count++;
+				wasCR = true;
+				wasTerminator = true;
+			}
+			else {
+				wasCR = false;
+				wasTerminator = false;
+			}
+		}
+		// Save the state
+		lines = count;
+		lastWasCR = wasCR;
+		lastWasTerminator = wasTerminator;
+		bytes.position( limit );
+	}
+
+	// Scan single byte units with a comment syntax, skipping words without any byte of interest
+	private void scanBytesSyntax( ByteBuffer bytes ) {
+		int index = bytes.position();
+		int limit = bytes.limit();
+		while ( index < limit ) {
+			// Can a word without any byte of interest to the state be skipped?
+			if (( index + 8 <= limit ) && canSkip() && !hasAnyByte( bytes.getLong( index ), skipPatterns[ state ] )) {
+				lastWasCR = false;
+				lastWasTerminator = false;
+				closeMatch = 0;
+				index += 8;
+				continue;
+			}
+			// Scan the next word byte by byte, passing over the bytes of no interest while the state allows it
+			boolean skipping = canSkip();
+			for ( int end = Math.min( index + 8, limit ); index < end; index++ ) {
+				int unit = bytes.get( index ) & 0xFF;
+				if ( skipping && !interestingBytes[ state ][ unit ] ) {
+					lastWasCR = false;
+					lastWasTerminator = false;
+					closeMatch = 0;
+					continue;
+				}
+				if ( unit == LF ) {
+					// A line feed directly after a carriage return ends the same line
+					if ( !lastWasCR ) {
+						lines++;
+						endLine();
+					}
+					lastWasCR = false;
+					lastWasTerminator = true;
+				}
+				else if ( unit == CR ) {
+					lines++;
+					endLine();
+					lastWasCR = true;
+					lastWasTerminator = true;
+				}
+				else {
+					lastWasCR = false;
+					lastWasTerminator = false;
+					scanUnit( unit );
+				}
+				skipping = canSkip();
+			}
+		}
+		bytes.position( limit );
+	}
+
+	// Can the bytes without interest to the state be skipped, without changing the class of the line?
+	private boolean canSkip() {
+		switch ( state ) {
+			case STATE_CODE:
+				return lineHasCode && ( pending == 0 );
+			case STATE_LINE_COMMENT:
+				return true;
+			case STATE_BLOCK_COMMENT:
+				return lineHasComment;
+			default:
+				return !escaped;
+		}
+	}
+
+	/**
+	 * scanUnit
+	 *
+	 * Moves the state machine of the comment syntax over a unit, which is not a line
+	 *   terminator.
+	 */
+	private void scanUnit( int unit ) {
+		boolean whitespace = ( unit == ' ' ) || ( unit == '\t' ) || ( unit == '\f' ) || ( unit == 0x0B );
+		switch ( state ) {
+			case STATE_CODE:
+				scanCodeUnit( unit, whitespace );
+				break;
+			case STATE_LINE_COMMENT:
+				lineHasComment = true;
+				break;
+			case STATE_BLOCK_COMMENT:
+				if ( !whitespace ) {
+					lineHasComment = true;
+				}
+				// Is it the end of the block comment?
+				if ( syntax == SYNTAX_XML ) {
+					if (( unit == '>' ) && ( closeMatch >= 2 )) {
+						state = STATE_CODE;
+					}
+					closeMatch = ( unit == '-' ) ? closeMatch + 1 : 0;
+				}
+				else {
+					if (( unit == '/' ) && ( closeMatch == 1 )) {
+						state = STATE_CODE;
+					}
+					closeMatch = ( unit == '*' ) ? 1 : 0;
+				}
+				break;
+			default:
+				lineHasCode = true;
+				// Is it the end of the string?
+				if ( escaped ) {
+					escaped = false;
+				}
+				else if (( unit == '\\' ) && (( syntax == SYNTAX_C ) || ( syntax == SYNTAX_HASH ))) {
+					escaped = true;
+				}
+				else if ( unit == quote ) {
+					state = STATE_CODE;
+				}
+				break;
+		}
+	}
+
+	// Move the state machine over a unit in code
+	private void scanCodeUnit( int unit, boolean whitespace ) {
+		// Does the unit complete a pending comment marker?
+		if ( pending != 0 ) {
+			if ( syntax == SYNTAX_XML ) {
+				if ( unit == XML_COMMENT_OPEN.charAt( pending )) {
+					if ( ++pending == XML_COMMENT_OPEN.length()) {
+						startBlockComment();
+					}
+					return;
+				}
+			}
+			else if (( unit == pending ) && ( unit == (( syntax == SYNTAX_SQL ) ? '-' : '/' ))) {
+				pending = 0;
+				state = STATE_LINE_COMMENT;
+				lineHasComment = true;
+				return;
+			}
+			else if (( pending == '/' ) && ( unit == '*' )) {
+				startBlockComment();
+				return;
+			}
+			// The pending characters were code
+			pending = 0;
+			lineHasCode = true;
+		}
+		// Skip white space, and a UTF-8 byte order mark before the first line holds anything
+		if ( whitespace || (( unit >= 0xBB ) && ( lines == 0 ) && !lineHasCode && !lineHasComment && (( unit == 0xEF ) || ( unit == 0xBB ) || ( unit == 0xBF )))) {
+			return;
+		}
+		switch ( syntax ) {
+			case SYNTAX_C:
+			case SYNTAX_SQL:
+				if (( unit == '/' ) || (( unit == '-' ) && ( syntax == SYNTAX_SQL ))) {
+					pending = unit;
+					return;
+				}
+				if (( unit == '\'' ) || (( unit == '"' ) && ( syntax == SYNTAX_C ))) {
+					startString( unit );
+					return;
+				}
+				break;
+			case SYNTAX_XML:
+				if ( unit == '<' ) {
+					pending = 1;
+					return;
+				}
+				break;
+			case SYNTAX_TEXT:
+				break;
+			default:
+				if ( unit == (( syntax == SYNTAX_HASH ) ? '#' : '\'' )) {
+					state = STATE_LINE_COMMENT;
+					lineHasComment = true;
+					return;
+				}
+				if (( unit == '"' ) || (( unit == '\'' ) && ( syntax == SYNTAX_HASH ))) {
+					startString( unit );
+					return;
+				}
+				break;
+		}
+		lineHasCode = true;
+	}
+
+	// Start a block comment
+	private void startBlockComment() {
+		pending = 0;
+		closeMatch = 0;
+		state = STATE_BLOCK_COMMENT;
+		lineHasComment = true;
+	}
+
+	// Start a string
+	private void startString( int unit ) {
+		state = STATE_STRING;
+		quote = unit;
+		escaped = false;
+		lineHasCode = true;
+	}
+
+	// End a line, counting it as a code, comment or blank line
+	private void endLine() {
+		// Pending characters of a comment marker were code
+		if ( pending != 0 ) {
+			lineHasCode = true;
+			pending = 0;
+		}
+		if ( lineHasCode ) {
+			codeLines++;
+		}
+		else if ( lineHasComment ) {
+			commentLines++;
+		}
+		else {
+			blankLines++;
+		}
+		lineHasCode = false;
+		lineHasComment = false;
+		closeMatch = 0;
+		// Line comments end with the line, and so do strings except in SQL
+		if (( state == STATE_LINE_COMMENT ) || (( state == STATE_STRING ) && ( syntax != SYNTAX_SQL ))) {
+			state = STATE_CODE;
+			escaped = false;
+		}
+	}
+
+	// Scan 16 bit units
+	private void scanUtf16( ByteBuffer bytes, boolean bigEndian ) {
+		int index = bytes.position();
+		int limit = bytes.limit();
+		// Scan complete units only
+		for ( ; index + 2 <= limit; index += 2 ) {
+			int high = bytes.get( bigEndian ? index : index + 1 ) & 0xFF;
+			int low = bytes.get( bigEndian ? index + 1 : index ) & 0xFF;
+			int unit = ( high << 8 ) | low;
+			if ( unit == LF ) {
+				if ( !lastWasCR ) {
+					lines++;
+					if ( syntax != SYNTAX_NONE ) {
+						endLine();
+					}
+				}
+				lastWasCR = false;
+				lastWasTerminator = true;
+			}
+			else if ( unit == CR ) {
+				lines++;
+				if ( syntax != SYNTAX_NONE ) {
+					endLine();
+				}
+				lastWasCR = true;
+				lastWasTerminator = true;
+			}
+			// The byte order mark itself is not part of a line
+			else if ( unit != 0xFEFF ) {
+				lastWasCR = false;
+				lastWasTerminator = false;
+				if ( syntax != SYNTAX_NONE ) {
+					scanUnit( unit );
+				}
+			}
+		}
+		bytes.position( index );
+	}
+
+	// Does any byte of the word equal a byte repeated in one of the patterns?
+	private static boolean hasAnyByte( long word, long patterns[] ) {
+		for ( int index = 0; index < patterns.length; index++ ) {
+			if ( hasByte( word, patterns[index] )) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Does any byte of the word equal the byte repeated in the pattern?
+	private static boolean hasByte( long word, long pattern ) {
+		long value = word ^ pattern;
+		return (( value - ONES ) & ~value & HIGHS ) != 0;
+	}
+}
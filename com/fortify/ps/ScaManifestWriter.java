@@ -0,0 +1,163 @@
+package com.fortify.ps;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ScaManifestWriter
+ *
+ * Writes a manifest of the files counted, one record per file: the path, the file
+ *   extension, the Fortify SCA type, the size in bytes and the line count (only for the
+ *   configured file extensions). Records are written as they are produced through a large
+ *   buffered writer, so the memory used does not depend on the number of files. Formats:
+ *   - jsonl: one JSON object per line
+ *   - csv:   a header line, then one comma separated line per file
+ *   - text:  one table row per file, in the layout of the report
+ *   A file name ending with ".gz" is compressed with gzip. The writer may be shared by
+ *   multiple threads.
+ */
+public class ScaManifestWriter {
+
+	// Format: one JSON object per line
+	public static final String FORMAT_JSONL = "jsonl";
+	// Format: comma separated values
+	public static final String FORMAT_CSV = "csv";
+	// Format: table rows
+	public static final String FORMAT_TEXT = "text";
+	// Size of the write buffer, in characters
+	private static final int BUFFER_SIZE = 1024 * 1024;
+	// Size of the gzip buffer, in bytes
+	private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+	// Width of the size column of the text format
+	private static final int TEXT_SIZE_LEN = 12;
+	// Width of the line count column of the text format
+	private static final int TEXT_LINES_LEN = 9;
+	// Width of the type column of the text format
+	private static final int TEXT_TYPE_LEN = 16;
+
+	// Format of the records
+	private final String format;
+	// Buffered writer of the records
+	private final Writer writer;
+	// Number of records written
+	private long records = 0;
+
+	/**
+	 * ScaManifestWriter
+	 *
+	 * Creates the manifest file. Without a format, the format follows from the file name
+	 *   (".csv" or ".txt", otherwise jsonl).
+	 */
+	public ScaManifestWriter( Path file, String manifestFormat ) throws IOException {
+		// Get the file name without the compression suffix
+		String name = file.getFileName().toString().toLowerCase();
+		boolean compress = name.endsWith( ".gz" );
+		if ( compress ) {
+			name = name.substring( 0, name.length() - 3 );
+		}
+		// Get the format
+		if ( manifestFormat == null ) {
+			manifestFormat = name.endsWith( ".csv" ) ? FORMAT_CSV : name.endsWith( ".txt" ) ? FORMAT_TEXT : FORMAT_JSONL;
+		}
+		format = manifestFormat;
+		// Open the file
+		OutputStream output = Files.newOutputStream( file );
+		if ( compress ) {
+			output = new GZIPOutputStream( output, GZIP_BUFFER_SIZE );
+		}
+		writer = new BufferedWriter( new OutputStreamWriter( output, StandardCharsets.UTF_8 ), BUFFER_SIZE );
+		// Write the header
+		if ( format.equals( FORMAT_CSV )) {
+			writer.write( "path,extension,type,bytes,lines\n" );
+		}
+		else if ( format.equals( FORMAT_TEXT )) {
+			writer.write( stretch( "Bytes", TEXT_SIZE_LEN, true ) + " |" + stretch( "Lines", TEXT_LINES_LEN, true ) + " | " + stretch( "Type", TEXT_TYPE_LEN, false ) + "| Path\n" );
+		}
+	}
+
+	// Is it a known format?
+	public static boolean isFormat( String format ) {
+		return format.equals( FORMAT_JSONL ) || format.equals( FORMAT_CSV ) || format.equals( FORMAT_TEXT );
+	}
+
+	/**
+	 * writeFile
+	 *
+	 * Writes the record of a single file. The type is null and the line count negative for
+	 *   the non configured file extensions. The record is formatted before the lock is
+	 *   taken, so threads only wait for the copy into the buffer.
+	 */
+	public void writeFile( Path path, String extension, String type, long bytes, long lines ) throws IOException {
+		// Format the record
+		StringBuilder record = new StringBuilder( 128 );
+		String pathText = path.toString();
+		if ( format.equals( FORMAT_CSV )) {
+			record.append( csvString( pathText )).append( ',' ).append( csvString( extension )).append( ',' );
+			record.append(( type != null ) ? type : "" ).append( ',' ).append( bytes ).append( ',' );
+			if ( lines >= 0 ) {
+				record.append( lines );
+			}
+		}
+		else if ( format.equals( FORMAT_TEXT )) {
+			record.append( stretch( Long.toString( bytes ), TEXT_SIZE_LEN, true )).append( " |" );
+			record.append( stretch(( lines >= 0 ) ? Long.toString( lines ) : "", TEXT_LINES_LEN, true )).append( " | " );
+			record.append( stretch(( type != null ) ? type : "", TEXT_TYPE_LEN, false )).append( "| " ).append( pathText );
+		}
+		else {
+			record.append( "{\"path\":" ).append( ScaServer.jsonString( pathText ));
+			record.append( ",\"extension\":" ).append( ScaServer.jsonString( extension ));
+			record.append( ",\"type\":" ).append(( type != null ) ? ScaServer.jsonString( type ) : "null" );
+			record.append( ",\"bytes\":" ).append( bytes );
+			record.append( ",\"lines\":" ).append(( lines >= 0 ) ? Long.toString( lines ) : "null" ).append( '}' );
+		}
+		record.append( '\n' );
+		// Write it
+		synchronized ( this ) {
+			writer.append( record );
+			records++;
+		}
+	}
+
+	// Retrieve the number of records written
+	public synchronized long getRecords() {
+		return records;
+	}
+
+	// Flush and close the manifest
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+
+	// Quote a CSV value when needed
+	private static String csvString( String text ) {
+		for ( int index = 0; index < text.length(); index++ ) {
+			char character = text.charAt( index );
+			if (( character == ',' ) || ( character == '"' ) || ( character == '\n' ) || ( character == '\r' )) {
+				return "\"" + text.replace( "\"", "\"\"" ) + "\"";
+			}
+		}
+		return text;
+	}
+
+	// Pad a value to the width of its column
+	private static String stretch( String text, int length, boolean atFront ) {
+		StringBuilder stretched = new StringBuilder( Math.max( length, text.length()));
+		if ( !atFront ) {
+			stretched.append( text );
+		}
+		for ( int index = text.length(); index < length; index++ ) {
+			stretched.append( ' ' );
+		}
+		if ( atFront ) {
+			stretched.append( text );
+		}
+		return stretched.toString();
+	}
+}
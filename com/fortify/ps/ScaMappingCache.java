@@ -0,0 +1,236 @@
+package com.fortify.ps;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * ScaMappingCache
+ *
+ * An on-disk cache of the resolved Fortify SCA file extension mapping, so a run does not
+ *   search the PATH for the properties files and parse them again. The cache is valid for
+ *   the PATH and working directory it was written with, as long as the properties files
+ *   it was read from keep their size and modification time; validating it costs one
+ *   attribute read per properties file. The cache file is a small binary file:
+ *
+ *   - int    magic ("SFMM")
+ *   - int    version
+ *   - string search key (PATH and working directory)
+ *   - string location of the Fortify SCA properties file ("" when not found),
+ *            followed by long size and long modification time
+ *   - string location of the Fortify SCA match properties file ("" when not found),
+ *            followed by long size and long modification time
+ *   - int    number of file extension mappings, followed by the mappings
+ *            (extension, interpretation)
+ *
+ *   Strings are written as an int length followed by UTF-8 bytes. A properties file added
+ *   to a directory of the PATH later on is only found once the cache is deleted or the
+ *   PATH changes.
+ */
+public class ScaMappingCache {
+
+	// Magic number of a mapping cache file
+	private static final int CACHE_MAGIC = 0x53464D4D;
+	// Version of the mapping cache file format
+	private static final int CACHE_VERSION = 1;
+
+	// Location of the cache file
+	private final Path cacheFile;
+	// Search key of the current run
+	private final String searchKey;
+	// Location of the Fortify SCA properties file, or null
+	private String propertiesFilePath = null;
+	// Location of the Fortify SCA match properties file, or null
+	private String matchPropertiesFilePath = null;
+	// Resolved file extension mapping
+	private HashMap <String, String> extensionMapping = null;
+
+	// Default constructor
+	public ScaMappingCache( Path cacheFilePath ) {
+		cacheFile = cacheFilePath;
+		searchKey = System.getenv( "PATH" ) + System.getProperty( "path.separator" ) + System.getProperty( "user.dir" );
+	}
+
+	// Get the default location of the cache file, in the temporary directory of the user
+	public static String getDefaultFilePath() {
+		return Paths.get( System.getProperty( "java.io.tmpdir" ), "ScaFileMatch-" + System.getProperty( "user.name" ) + ".mapping" ).toString();
+	}
+
+	// Retrieve the location of the Fortify SCA properties file, or null
+	public String getPropertiesFilePath() {
+		return propertiesFilePath;
+	}
+
+	// Retrieve the location of the Fortify SCA match properties file, or null
+	public String getMatchPropertiesFilePath() {
+		return matchPropertiesFilePath;
+	}
+
+	// Retrieve the resolved file extension mapping
+	public HashMap <String, String> getMapping() {
+		return extensionMapping;
+	}
+
+	/**
+	 * load
+	 *
+	 * Loads the cache file, if there is one. A cache file of another version, of another
+	 *   search key, of changed properties files, or a damaged cache file, is ignored.
+	 *
+	 * @return Whether or not a valid mapping was loaded.
+	 */
+	public boolean load() {
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap( Files.readAllBytes( cacheFile ));
+			// Is it a cache file of this version, written with the same search key?
+			if (( buffer.getInt() != CACHE_MAGIC ) || ( buffer.getInt() != CACHE_VERSION ) || !readString( buffer ).equals( searchKey )) {
+				return false;
+			}
+			// Are the properties files unchanged?
+			String propertiesPath = readString( buffer );
+			if ( !isUnchanged( propertiesPath, buffer.getLong(), buffer.getLong())) {
+				return false;
+			}
+			String matchPropertiesPath = readString( buffer );
+			if ( !isUnchanged( matchPropertiesPath, buffer.getLong(), buffer.getLong())) {
+				return false;
+			}
+			// Read the file extension mapping
+			HashMap <String, String> mapping = new HashMap <String, String> ();
+			int mappings = buffer.getInt();
+			for ( int index = 0; index < mappings; index++ ) {
+				String extension = readString( buffer );
+				mapping.put( extension, readString( buffer ));
+			}
+			propertiesFilePath = ( propertiesPath.length() > 0 ) ? propertiesPath : null;
+			matchPropertiesFilePath = ( matchPropertiesPath.length() > 0 ) ? matchPropertiesPath : null;
+			extensionMapping = mapping;
+			return true;
+		}
+		catch ( NoSuchFileException e ) {
+			// There is no cache yet
+		}
+		catch ( IOException | RuntimeException e ) {
+			System.out.println("Ignoring the mapping cache file \"" + cacheFile + "\" (could not be read).");
+		}
+		return false;
+	}
+
+	// Does a properties file still have the size and modification time it was read with?
+	private static boolean isUnchanged( String path, long size, long modified ) {
+		if ( path.length() == 0 ) {
+			return true;
+		}
+		try {
+			BasicFileAttributes attributes = Files.readAttributes( Paths.get( path ), BasicFileAttributes.class );
+			return ( attributes.size() == size ) && ( attributes.lastModifiedTime().toMillis() == modified );
+		}
+		catch ( IOException e ) {
+			return false;
+		}
+	}
+
+	/**
+	 * save
+	 *
+	 * Writes the resolved mapping, together with the properties files it was read from, to a
+	 *   new temporary file of its own, created exclusively, which then replaces the cache file
+	 *   atomically. Concurrent runs never write to the same file, and no existing file or link
+	 *   is written through.
+	 *
+	 * @return Whether or not the cache file was written.
+	 */
+	public boolean save( String propertiesPath, String matchPropertiesPath, Map <String, String> mapping ) {
+		// Set the default result
+		boolean saved = false;
+		// Create a new temporary file next to the cache file
+		Path temporaryFile = null;
+		try {
+			temporaryFile = Files.createTempFile( cacheFile.toAbsolutePath().getParent(), cacheFile.getFileName() + ".", ".tmp" );
+		}
+		catch ( IOException e ) {
+			System.out.println("Could not write the mapping cache file \"" + cacheFile + "\" (maybe you have no write access).");
+			return false;
+		}
+		// Write the temporary file
+		try ( DataOutputStream output = new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( temporaryFile )))) {
+			// Write the header
+			output.writeInt( CACHE_MAGIC );
+			output.writeInt( CACHE_VERSION );
+			writeString( output, searchKey );
+			// Write the properties files
+			writeSource( output, propertiesPath );
+			writeSource( output, matchPropertiesPath );
+			// Write the file extension mapping
+			output.writeInt( mapping.size());
+			for ( Map.Entry <String, String> entry : mapping.entrySet()) {
+				writeString( output, entry.getKey());
+				writeString( output, entry.getValue());
+			}
+			saved = true;
+		}
+		catch ( IOException e ) {
+			System.out.println("Could not write the mapping cache file \"" + temporaryFile + "\" (maybe you have no write access).");
+		}
+		// Replace the cache file
+		if ( saved ) {
+			try {
+				Files.move( temporaryFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			}
+			catch ( IOException e ) {
+				System.out.println("Could not replace the mapping cache file \"" + cacheFile + "\".");
+				saved = false;
+			}
+		}
+		// Remove the temporary file when it was not moved
+		if ( !saved ) {
+			try {
+				Files.deleteIfExists( temporaryFile );
+			}
+			catch ( IOException e ) {
+				// Leave it
+			}
+		}
+		// Return the result
+		return saved;
+	}
+
+	// Write the location, size and modification time of a properties file
+	private static void writeSource( DataOutputStream output, String path ) throws IOException {
+		long size = -1;
+		long modified = -1;
+		if ( path != null ) {
+			BasicFileAttributes attributes = Files.readAttributes( Paths.get( path ), BasicFileAttributes.class );
+			size = attributes.size();
+			modified = attributes.lastModifiedTime().toMillis();
+		}
+		writeString( output, ( path != null ) ? path : "" );
+		output.writeLong( size );
+		output.writeLong( modified );
+	}
+
+	// Read a string from a buffer
+	private static String readString( ByteBuffer buffer ) {
+		byte bytes[] = new byte[ buffer.getInt() ];
+		buffer.get( bytes );
+		return new String( bytes, StandardCharsets.UTF_8 );
+	}
+
+	// Write a string to a stream
+	private static void writeString( DataOutputStream output, String text ) throws IOException {
+		byte bytes[] = text.getBytes( StandardCharsets.UTF_8 );
+		output.writeInt( bytes.length );
+		output.write( bytes );
+	}
+}
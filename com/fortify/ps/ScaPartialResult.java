@@ -0,0 +1,202 @@
+package com.fortify.ps;
+
+import java.util.Map;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * ScaPartialResult
+ *
+ * The counts of a single shard of a project, as written by a shard scan and read back by
+ *   the merge. The file is a small UTF-8 text file, one record per line, with the fields
+ *   separated by tabs (tabs, line breaks and backslashes in a field are escaped with a
+ *   backslash):
+ *
+ *   - ScaFileMatch-partial  version
+ *   - root                  project root directory
+ *   - shard                 shard number (1 to count), number of shards
+ *   - lineKinds             true or false, whether the code, comment and blank lines were counted
+ *   - configured            extension, interpretation, files, lines, bytes, code, comment, blank
+ *   - nonConfigured         extension, files, bytes
+ *   - end
+ *
+ *   A file without the end record was not written completely and is rejected.
+ */
+public class ScaPartialResult {
+
+	// Magic of the first record
+	private static final String MAGIC = "ScaFileMatch-partial";
+	// Version of the file format
+	private static final int VERSION = 1;
+
+	// Project root directory of the shard
+	private final String root;
+	// Shard number, from 1 to the number of shards
+	private final int shard;
+	// Number of shards
+	private final int shardCount;
+	// Were the code, comment and blank lines counted?
+	private final boolean lineKinds;
+	// Counts of the shard
+	private final ScaStatistics.snapshot statistics;
+
+	// Default constructor
+	public ScaPartialResult( String shardRoot, int shardNumber, int numberOfShards, boolean countedLineKinds, ScaStatistics.snapshot shardStatistics ) {
+		root = shardRoot;
+		shard = shardNumber;
+		shardCount = numberOfShards;
+		lineKinds = countedLineKinds;
+		statistics = shardStatistics;
+	}
+
+	// Retrieve the project root directory of the shard
+	public String getRoot() {
+		return root;
+	}
+
+	// Retrieve the shard number, from 1 to the number of shards
+	public int getShard() {
+		return shard;
+	}
+
+	// Retrieve the number of shards
+	public int getShardCount() {
+		return shardCount;
+	}
+
+	// Were the code, comment and blank lines counted?
+	public boolean hasLineKinds() {
+		return lineKinds;
+	}
+
+	// Retrieve the counts of the shard
+	public ScaStatistics.snapshot getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * write
+	 *
+	 * Writes the partial result to a file.
+	 */
+	public void write( Path file ) throws IOException {
+		try ( PrintWriter writer = new PrintWriter( new BufferedWriter( Files.newBufferedWriter( file, StandardCharsets.UTF_8 )))) {
+			writer.print( MAGIC + "\t" + VERSION + "\n" );
+			writer.print( "root\t" + escape( root ) + "\n" );
+			writer.print( "shard\t" + shard + "\t" + shardCount + "\n" );
+			writer.print( "lineKinds\t" + lineKinds + "\n" );
+			for ( Map.Entry <String, ScaStatistics.totals> entry : statistics.getConfigured().entrySet()) {
+				ScaStatistics.totals totals = entry.getValue();
+				writer.print( "configured\t" + escape( entry.getKey()) + "\t" + escape( statistics.getInterpretation( entry.getKey())) + "\t" + totals.getFiles() + "\t" + totals.getLines() + "\t" + totals.getBytes() + "\t" + totals.getCode() + "\t" + totals.getComment() + "\t" + totals.getBlank() + "\n" );
+			}
+			for ( Map.Entry <String, ScaStatistics.totals> entry : statistics.getNonConfigured().entrySet()) {
+				writer.print( "nonConfigured\t" + escape( entry.getKey()) + "\t" + entry.getValue().getFiles() + "\t" + entry.getValue().getBytes() + "\n" );
+			}
+			writer.print( "end\n" );
+			if ( writer.checkError()) {
+				throw new IOException( "write failed" );
+			}
+		}
+	}
+
+	/**
+	 * read
+	 *
+	 * Reads a partial result from a file.
+	 *
+	 * @return The partial result.
+	 * @throws IOException When the file could not be read or is not a complete partial result.
+	 */
+	public static ScaPartialResult read( Path file ) throws IOException {
+		String root = null;
+		int shard = 0;
+		int shardCount = 0;
+		boolean lineKinds = false;
+		boolean ended = false;
+		ScaStatistics.snapshot statistics = new ScaStatistics.snapshot();
+		try ( BufferedReader reader = Files.newBufferedReader( file, StandardCharsets.UTF_8 )) {
+			// Check the header
+			String line = reader.readLine();
+			if (( line == null ) || !line.equals( MAGIC + "\t" + VERSION )) {
+				throw new IOException( "not a partial result of version " + VERSION );
+			}
+			// Read the records
+			while (( line = reader.readLine()) != null ) {
+				String fields[] = line.split( "\t", -1 );
+				try {
+					if ( fields[0].equals( "root" ) && ( fields.length == 2 )) {
+						root = unescape( fields[1] );
+					}
+					else if ( fields[0].equals( "shard" ) && ( fields.length == 3 )) {
+						shard = Integer.parseInt( fields[1] );
+						shardCount = Integer.parseInt( fields[2] );
+					}
+					else if ( fields[0].equals( "lineKinds" ) && ( fields.length == 2 )) {
+						lineKinds = Boolean.parseBoolean( fields[1] );
+					}
+					else if ( fields[0].equals( "configured" ) && ( fields.length == 9 )) {
+						statistics.addConfigured( unescape( fields[1] ), unescape( fields[2] ), new ScaStatistics.totals( Long.parseLong( fields[3] ), Long.parseLong( fields[4] ), Long.parseLong( fields[5] ), Long.parseLong( fields[6] ), Long.parseLong( fields[7] ), Long.parseLong( fields[8] )));
+					}
+					else if ( fields[0].equals( "nonConfigured" ) && ( fields.length == 4 )) {
+						statistics.addNonConfigured( unescape( fields[1] ), Long.parseLong( fields[2] ), Long.parseLong( fields[3] ));
+					}
+					else if ( fields[0].equals( "end" )) {
+						ended = true;
+						break;
+					}
+					else {
+						throw new IOException( "unknown record \"" + fields[0] + "\"" );
+					}
+				}
+				catch ( NumberFormatException e ) {
+					throw new IOException( "invalid number in record \"" + fields[0] + "\"" );
+				}
+			}
+		}
+		if ( !ended || ( root == null ) || ( shard < 1 ) || ( shard > shardCount )) {
+			throw new IOException( "incomplete partial result" );
+		}
+		return new ScaPartialResult( root, shard, shardCount, lineKinds, statistics );
+	}
+
+	// Escape the tabs, line breaks and backslashes of a field
+	private static String escape( String text ) {
+		if ( text == null ) {
+			return "";
+		}
+		StringBuilder escaped = new StringBuilder( text.length());
+		for ( int index = 0; index < text.length(); index++ ) {
+			char character = text.charAt( index );
+			switch ( character ) {
+				case '\\': escaped.append( "\\\\" ); break;
+				case '\t': escaped.append( "\\t" ); break;
+				case '\n': escaped.append( "\\n" ); break;
+				case '\r': escaped.append( "\\r" ); break;
+				default: escaped.append( character );
+			}
+		}
+		return escaped.toString();
+	}
+
+	// Undo the escapes of a field
+	private static String unescape( String text ) {
+		StringBuilder unescaped = new StringBuilder( text.length());
+		for ( int index = 0; index < text.length(); index++ ) {
+			char character = text.charAt( index );
+			if (( character == '\\' ) && ( index + 1 < text.length())) {
+				char next = text.charAt( ++index );
+				unescaped.append(( next == 't' ) ? '\t' : ( next == 'n' ) ? '\n' : ( next == 'r' ) ? '\r' : next );
+			}
+			else {
+				unescaped.append( character );
+			}
+		}
+		return unescaped.toString();
+	}
+}
@@ -0,0 +1,388 @@
+package com.fortify.ps;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * ScaResourceEstimator
+ *
+ * Estimates the resources of a Fortify SCA (sourceanalyzer) translation and scan from the
+ *   line and byte totals per Fortify SCA interpretation. Every interpretation has a cost
+ *   model:
+ *   - heap: megabytes of heap per 1000 lines;
+ *   - translate: seconds of translation per 1000 lines;
+ *   - scan: seconds of analysis per 1000 lines;
+ *   - bytesPerLine: the typical line length, so files with few very long lines (minified
+ *     JavaScript, generated XML) are charged by their bytes rather than their lines.
+ *   The lines charged of an interpretation are its lines, or its bytes divided by the
+ *   typical line length when that is more. The suggested heap is the base heap plus the
+ *   heap of every interpretation, rounded up to the heap step. The scan time grows faster
+ *   than the lines: it is multiplied by (lines / reference) to the power of the scan
+ *   exponent minus one, once the project is larger than the reference. A project whose
+ *   heap exceeds the maximum heap should be split into several scans.
+ *
+ *   The model is read from a properties file (see MODEL_FILE); every key is prefixed with
+ *   "com.fortify.ps.estimate." and missing keys keep their internal value:
+ *
+ *   - heap.base, heap.max, heap.step      megabytes
+ *   - scan.exponent, scan.reference       growth of the scan time, reference in 1000 lines
+ *   - <INTERPRETATION>.heap, .translate, .scan, .bytesPerLine
+ *   - default.heap, .translate, .scan, .bytesPerLine   for the other interpretations
+ *
+ *   The internal values are rules of thumb; calibrate them against the logs of your own
+ *   sourceanalyzer runs.
+ */
+public class ScaResourceEstimator {
+
+	// Name of the model properties file
+	public static final String MODEL_FILE = "ScaFileMatch-estimate.properties";
+	// Prefix of the keys of the model
+	private static final String KEY_PREFIX = "com.fortify.ps.estimate.";
+	// Name of the cost model of the other interpretations
+	private static final String DEFAULT_LANGUAGE = "default";
+	// Internal cost models: interpretation, and heap, translate, scan and bytesPerLine
+	private static final String DEFAULT_LANGUAGES[] = {
+		DEFAULT_LANGUAGE, "JAVA", "KOTLIN", "SCALA", "CSHARP", "VBNET", "VB6", "VBSCRIPT", "JAVASCRIPT", "TYPESCRIPT", "PYTHON", "PHP", "RUBY", "GO", "SWIFT", "OBJC", "C", "C++",
+		"ABAP", "COBOL", "SQL", "PLSQL", "TSQL", "JSP", "ASP", "CFML", "HTML", "XML", "JAVA_PROPERTIES", "YAML", "DOCKERFILE"
+	};
+	private static final double DEFAULT_COSTS[][] = {
+		{  8.0, 0.5, 2.0, 40 },		// default
+		{ 12.0, 0.6, 3.0, 40 },		// JAVA
+		{ 14.0, 0.8, 3.5, 40 },		// KOTLIN
+		{ 16.0, 1.0, 4.0, 40 },		// SCALA
+		{ 12.0, 0.8, 3.0, 40 },		// CSHARP
+		{ 12.0, 0.8, 3.0, 40 },		// VBNET
+		{  8.0, 0.5, 2.0, 35 },		// VB6
+		{  8.0, 0.4, 2.0, 35 },		// VBSCRIPT
+		{ 20.0, 0.4, 5.0, 50 },		// JAVASCRIPT
+		{ 20.0, 0.6, 5.0, 45 },		// TYPESCRIPT
+		{ 16.0, 0.5, 4.0, 35 },		// PYTHON
+		{ 16.0, 0.5, 4.0, 40 },		// PHP
+		{ 16.0, 0.5, 4.0, 35 },		// RUBY
+		{ 12.0, 0.8, 3.0, 35 },		// GO
+		{ 14.0, 1.0, 3.5, 40 },		// SWIFT
+		{ 14.0, 2.0, 4.0, 40 },		// OBJC
+		{ 10.0, 1.5, 3.0, 35 },		// C
+		{ 14.0, 2.0, 4.0, 40 },		// C++
+		{  8.0, 0.5, 2.0, 45 },		// ABAP
+		{  8.0, 0.5, 2.0, 72 },		// COBOL
+		{  6.0, 0.3, 1.5, 45 },		// SQL
+		{  6.0, 0.3, 1.5, 45 },		// PLSQL
+		{  6.0, 0.3, 1.5, 45 },		// TSQL
+		{ 14.0, 0.8, 3.5, 45 },		// JSP
+		{ 10.0, 0.5, 2.5, 45 },		// ASP
+		{ 10.0, 0.5, 2.5, 45 },		// CFML
+		{  4.0, 0.2, 1.0, 60 },		// HTML
+		{  2.0, 0.1, 0.3, 60 },		// XML
+		{  1.0, 0.1, 0.2, 50 },		// JAVA_PROPERTIES
+		{  2.0, 0.1, 0.3, 40 },		// YAML
+		{  2.0, 0.1, 0.3, 40 }		// DOCKERFILE
+	};
+	// Names of the cost model values, in the order of DEFAULT_COSTS
+	private static final String COST_NAMES[] = { "heap", "translate", "scan", "bytesPerLine" };
+
+	// Heap of the analyzer without any code, in megabytes
+	private double baseHeap = 2048;
+	// Largest heap of a single scan, in megabytes
+	private double maxHeap = 32768;
+	// Step the suggested heap is rounded up to, in megabytes
+	private double heapStep = 1024;
+	// Growth of the scan time with the size of the project
+	private double scanExponent = 1.1;
+	// Size from which the scan time grows faster than the lines, in 1000 lines
+	private double scanReference = 100;
+	// Cost models, by interpretation in upper case
+	private final TreeMap <String, double[]> costs = new TreeMap <String, double[]> ();
+	// Location of the model properties file, or null for the internal model
+	private String modelFilePath = null;
+
+	/**
+	 * language
+	 *
+	 * The estimate of a single interpretation.
+	 */
+	public static class language {
+		// Fortify SCA interpretation
+		private final String interpretation;
+		// Number of files, lines and bytes
+		private long files = 0;
+		private long lines = 0;
+		private long bytes = 0;
+		// Lines charged, in 1000 lines
+		private double kloc = 0;
+		// Heap in megabytes, and translation and scan time in seconds
+		private double heap = 0;
+		private double translateSeconds = 0;
+		private double scanSeconds = 0;
+		// Default constructor
+		language( String languageInterpretation ) {
+			interpretation = languageInterpretation;
+		}
+		// Retrieve the interpretation
+		public String getInterpretation() {
+			return interpretation;
+		}
+	}
+
+	/**
+	 * estimate
+	 *
+	 * The estimate of a project.
+	 */
+	public static class estimate {
+		// Estimates per interpretation, sorted by interpretation
+		private final List <language> languages = new ArrayList <language> ();
+		// Lines charged, in 1000 lines
+		private double kloc = 0;
+		// Heap of all code, in megabytes
+		private double heap = 0;
+		// Suggested heap, in megabytes
+		private long suggestedHeap = 0;
+		// Translation and scan time, in seconds
+		private double translateSeconds = 0;
+		private double scanSeconds = 0;
+		// Suggested number of scans
+		private int scans = 1;
+		// Largest heap of a single scan, in megabytes
+		private double maxHeap = 0;
+		// Location of the model properties file, or null for the internal model
+		private String model = null;
+
+		// Retrieve the suggested heap, in megabytes
+		public long getSuggestedHeap() {
+			return suggestedHeap;
+		}
+
+		// Retrieve the suggested number of scans
+		public int getScans() {
+			return scans;
+		}
+
+		/**
+		 * getReport
+		 *
+		 * Describes the estimate for humans, one line per element.
+		 */
+		public List <String> getReport() {
+			ArrayList <String> lines = new ArrayList <String> ();
+			int width = 3;
+			for ( language entry : languages ) {
+				width = Math.max( width, entry.interpretation.length());
+			}
+			for ( language entry : languages ) {
+				lines.add( String.format( Locale.ROOT, "%-" + width + "s|%9.1f kloc |%8.0f MB heap |%8s translation |%8s scan", entry.interpretation, entry.kloc, entry.heap, duration( entry.translateSeconds ), duration( entry.scanSeconds )));
+			}
+			StringBuilder separator = new StringBuilder();
+			while ( separator.length() < width ) {
+				separator.append( '-' );
+			}
+			lines.add( separator + "+---------------+-----------------+---------------------+-------------" );
+			lines.add( String.format( Locale.ROOT, "%-" + width + "s|%9.1f kloc |%8.0f MB heap |%8s translation |%8s scan", "Tot", kloc, heap, duration( translateSeconds ), duration( scanSeconds )));
+			lines.add( "" );
+			lines.add( "Suggested heap: -Xmx" + heapOption( suggestedHeap ) + " (" + suggestedHeap + " MB)." );
+			lines.add( "Expected time: " + duration( translateSeconds ) + " translation, " + duration( scanSeconds ) + " scan." );
+			if ( scans > 1 ) {
+				lines.add( String.format( Locale.ROOT, "Split: the heap exceeds the maximum of %.0f MB; split the project into %d scans of about %.0f kloc each.", maxHeap, scans, kloc / scans ));
+			}
+			else {
+				lines.add( String.format( Locale.ROOT, "Split: not needed (maximum heap of %.0f MB).", maxHeap ));
+			}
+			lines.add( "Model: " + (( model != null ) ? "\"" + model + "\"" : "internal" ) + "." );
+			return lines;
+		}
+
+		/**
+		 * toJson
+		 *
+		 * Describes the estimate as a JSON object. Heaps are in megabytes, times in seconds.
+		 */
+		public String toJson() {
+			StringBuilder json = new StringBuilder();
+			json.append( "{\"model\":" ).append(( model != null ) ? ScaServer.jsonString( model ) : "null" );
+			json.append( ",\"kloc\":" ).append( number( kloc ));
+			json.append( ",\"heapMB\":" ).append( number( heap ));
+			json.append( ",\"suggestedHeapMB\":" ).append( suggestedHeap );
+			json.append( ",\"xmx\":" ).append( ScaServer.jsonString( "-Xmx" + heapOption( suggestedHeap )));
+			json.append( ",\"translateSeconds\":" ).append( number( translateSeconds ));
+			json.append( ",\"scanSeconds\":" ).append( number( scanSeconds ));
+			json.append( ",\"maxHeapMB\":" ).append( number( maxHeap ));
+			json.append( ",\"scans\":" ).append( scans );
+			json.append( ",\"split\":" ).append( scans > 1 );
+			json.append( ",\"languages\":[" );
+			String separator = "";
+			for ( language entry : languages ) {
+				json.append( separator ).append( "{\"interpretation\":" ).append( ScaServer.jsonString( entry.interpretation ));
+				json.append( ",\"files\":" ).append( entry.files );
+				json.append( ",\"lines\":" ).append( entry.lines );
+				json.append( ",\"bytes\":" ).append( entry.bytes );
+				json.append( ",\"kloc\":" ).append( number( entry.kloc ));
+				json.append( ",\"heapMB\":" ).append( number( entry.heap ));
+				json.append( ",\"translateSeconds\":" ).append( number( entry.translateSeconds ));
+				json.append( ",\"scanSeconds\":" ).append( number( entry.scanSeconds ));
+				json.append( "}" );
+				separator = ",";
+			}
+			json.append( "]}" );
+			return json.toString();
+		}
+	}
+
+	// Default constructor, with the internal model
+	public ScaResourceEstimator() {
+		for ( int index = 0; index < DEFAULT_LANGUAGES.length; index++ ) {
+			costs.put( DEFAULT_LANGUAGES[ index ], DEFAULT_COSTS[ index ].clone());
+		}
+	}
+
+	/**
+	 * load
+	 *
+	 * Reads the model properties file over the internal model.
+	 *
+	 * @return Whether or not the file could be read.
+	 */
+	public boolean load( String filePath ) {
+		Properties model = new Properties();
+		try ( InputStream input = new FileInputStream( filePath )) {
+			model.load( input );
+		}
+		catch ( IOException e ) {
+			System.out.println( "Could not read file: \"" + filePath + "\"" );
+			return false;
+		}
+		// Read the global values
+		baseHeap = getValue( model, "heap.base", baseHeap );
+		maxHeap = getValue( model, "heap.max", maxHeap );
+		heapStep = Math.max( getValue( model, "heap.step", heapStep ), 1 );
+		scanExponent = getValue( model, "scan.exponent", scanExponent );
+		scanReference = Math.max( getValue( model, "scan.reference", scanReference ), 1 );
+		// Read the cost models
+		for ( String key : model.stringPropertyNames()) {
+			if ( !key.startsWith( KEY_PREFIX )) {
+				continue;
+			}
+			String name = key.substring( KEY_PREFIX.length());
+			int dot = name.lastIndexOf( '.' );
+			if (( dot <= 0 ) || name.startsWith( "heap." ) || name.startsWith( "scan." )) {
+				continue;
+			}
+			String interpretation = name.substring( 0, dot );
+			interpretation = interpretation.equalsIgnoreCase( DEFAULT_LANGUAGE ) ? DEFAULT_LANGUAGE : interpretation.toUpperCase( Locale.ROOT );
+			for ( int index = 0; index < COST_NAMES.length; index++ ) {
+				if ( COST_NAMES[ index ].equals( name.substring( dot + 1 ))) {
+					double cost[] = costs.get( interpretation );
+					if ( cost == null ) {
+						cost = costs.get( DEFAULT_LANGUAGE ).clone();
+						costs.put( interpretation, cost );
+					}
+					cost[ index ] = getValue( model, name, cost[ index ] );
+				}
+			}
+		}
+		modelFilePath = filePath;
+		return true;
+	}
+
+	// Get a number of the model, or the current value when it is missing or invalid
+	private static double getValue( Properties model, String name, double current ) {
+		String value = model.getProperty( KEY_PREFIX + name );
+		if ( value == null ) {
+			return current;
+		}
+		try {
+			return Double.parseDouble( value.trim());
+		}
+		catch ( NumberFormatException e ) {
+			System.out.println( "Invalid value of \"" + KEY_PREFIX + name + "\": \"" + value.trim() + "\" (using " + current + ")." );
+			return current;
+		}
+	}
+
+	/**
+	 * estimate
+	 *
+	 * Estimates the resources of a scan of the configured files of a snapshot.
+	 *
+	 * @return The estimate.
+	 */
+	public estimate estimate( ScaStatistics.snapshot statistics ) {
+		// Add up the totals per interpretation
+		TreeMap <String, language> languages = new TreeMap <String, language> ();
+		for ( Map.Entry <String, ScaStatistics.totals> entry : statistics.getConfigured().entrySet()) {
+			String interpretation = String.valueOf( statistics.getInterpretation( entry.getKey())).toUpperCase( Locale.ROOT );
+			language totals = languages.get( interpretation );
+			if ( totals == null ) {
+				totals = new language( interpretation );
+				languages.put( interpretation, totals );
+			}
+			totals.files += entry.getValue().getFiles();
+			totals.lines += entry.getValue().getLines();
+			totals.bytes += entry.getValue().getBytes();
+		}
+		// Apply the cost models
+		estimate result = new estimate();
+		for ( language totals : languages.values()) {
+			double cost[] = costs.get( totals.interpretation );
+			if ( cost == null ) {
+				cost = costs.get( DEFAULT_LANGUAGE );
+			}
+			double chargedLines = ( cost[3] > 0 ) ? Math.max( totals.lines, totals.bytes / cost[3] ) : totals.lines;
+			totals.kloc = chargedLines / 1000;
+			totals.heap = totals.kloc * cost[0];
+			totals.translateSeconds = totals.kloc * cost[1];
+			totals.scanSeconds = totals.kloc * cost[2];
+			result.languages.add( totals );
+			result.kloc += totals.kloc;
+			result.heap += totals.heap;
+			result.translateSeconds += totals.translateSeconds;
+			result.scanSeconds += totals.scanSeconds;
+		}
+		// The scan time grows faster than the lines of a large project
+		if ( result.kloc > scanReference ) {
+			double growth = Math.pow( result.kloc / scanReference, scanExponent - 1 );
+			result.scanSeconds *= growth;
+			for ( language totals : result.languages ) {
+				totals.scanSeconds *= growth;
+			}
+		}
+		// Round the heap up to the step
+		result.suggestedHeap = ( long ) ( Math.ceil(( baseHeap + result.heap ) / heapStep ) * heapStep );
+		// Split the project when a single scan would need more than the maximum heap
+		result.maxHeap = maxHeap;
+		if (( result.suggestedHeap > maxHeap ) && ( maxHeap > baseHeap )) {
+			result.scans = ( int ) Math.ceil( result.heap / ( maxHeap - baseHeap ));
+		}
+		result.model = modelFilePath;
+		return result;
+	}
+
+	// Write a heap size as the value of -Xmx
+	private static String heapOption( long megabytes ) {
+		return (( megabytes % 1024 ) == 0 ) ? ( megabytes / 1024 ) + "G" : megabytes + "M";
+	}
+
+	// Write a time for humans
+	private static String duration( double seconds ) {
+		long total = Math.round( seconds );
+		if ( total < 60 ) {
+			return total + "s";
+		}
+		if ( total < 3600 ) {
+			return ( total / 60 ) + "m" + String.format( Locale.ROOT, "%02ds", total % 60 );
+		}
+		return ( total / 3600 ) + "h" + String.format( Locale.ROOT, "%02dm", ( total % 3600 ) / 60 );
+	}
+
+	// Write a number for JSON
+	private static String number( double value ) {
+		return String.format( Locale.ROOT, "%.1f", value );
+	}
+}
@@ -0,0 +1,450 @@
+package com.fortify.ps;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * ScaScanCache
+ *
+ * An on-disk cache of line counts, keyed on the path of a file and validated by its size
+ *   and modification time, so unchanged files are not read again on the next run. The
+ *   cache file is a compact binary file, which is memory mapped when it is loaded:
+ *
+ *   - int    magic ("SFMC")
+ *   - int    version
+ *   - int    number of file extension mappings, followed by the mappings
+ *            (extension, interpretation) the line counts were made with
+ *   - int    number of entries, followed by the entries
+ *            (path, size, modification time, lines, code lines, comment lines, blank lines;
+ *            the last three are -1 when the lines were not split)
+ *
+ *   Strings are written as an int length followed by UTF-8 bytes. When the extension
+ *   mapping changed since the cache was written, the entries of the file extensions whose
+ *   interpretation changed are dropped. The entries of the files a run did not see are
+ *   dropped when the run walked its whole root directory, except below the entries the walk
+ *   skipped (excluded directories and files), and kept while their file exists when the run
+ *   only visited part of it. When another run replaced the cache file in the meantime, its
+ *   entries are merged in before the cache file is replaced again, so runs over different
+ *   parts of a tree, such as the shards of a scan, keep each other's entries. The cache may
+ *   be used by multiple threads.
+ */
+public class ScaScanCache {
+
+	// Magic number of a cache file
+	private static final int CACHE_MAGIC = 0x53464D43;
+	// Version of the cache file format
+	private static final int CACHE_VERSION = 2;
+
+	// Location of the cache file
+	private final Path cacheFile;
+	// File extension mapping of the current run
+	private final Map <String, String> extensionMapping;
+	// Entries loaded from the cache file, by path
+	private final HashMap <String, entry> loaded = new HashMap <String, entry> ();
+	// Size and modification time of the cache file when it was loaded, or -1
+	private long loadedSize = -1;
+	private long loadedModified = -1;
+	// Entries of the files seen in the current run, by path
+	private final ConcurrentHashMap <String, entry> current = new ConcurrentHashMap <String, entry> ();
+	// Root directories the current run walks completely
+	private final ArrayList <String> scanRoots = new ArrayList <String> ();
+	// Root directories of which the current run only visits part of the files
+	private final ArrayList <String> partialScanRoots = new ArrayList <String> ();
+	// Directories and files the walk of the current run skipped, by path
+	private final Set <String> skippedPaths = ConcurrentHashMap.newKeySet();
+	// Number of line counts taken from the cache
+	private final LongAdder hits = new LongAdder();
+	// Number of line counts not found in the cache
+	private final LongAdder misses = new LongAdder();
+
+	// A cached line count
+	private static class entry {
+		// Size of the file
+		private final long size;
+		// Modification time of the file
+		private final long modified;
+		// Number of lines in the file
+		private final long lines;
+		// Number of code, comment and blank lines in the file, or null
+		private final long lineKinds[];
+		// Default constructor
+		entry( long entrySize, long entryModified, long entryLines, long entryLineKinds[] ) {
+			size = entrySize;
+			modified = entryModified;
+			lines = entryLines;
+			lineKinds = entryLineKinds;
+		}
+	}
+
+	// Default constructor
+	public ScaScanCache( Path cacheFilePath, Map <String, String> fileExtensionMapping ) {
+		cacheFile = cacheFilePath;
+		extensionMapping = fileExtensionMapping;
+	}
+
+	// Add a root directory the current run walks completely, before the scan
+	public void addScanRoot( String root ) {
+		scanRoots.add( root );
+	}
+
+	// Add a root directory of which the current run only visits part of the files, before the scan
+	public void addPartialScanRoot( String root ) {
+		partialScanRoots.add( root );
+	}
+
+	// Keep the entries of a directory or file the walk skips, such as an excluded one, during the scan
+	public void keepSkipped( String path ) {
+		skippedPaths.add( path );
+	}
+
+	// Retrieve the number of line counts taken from the cache
+	public long getHits() {
+		return hits.sum();
+	}
+
+	// Retrieve the number of line counts not found in the cache
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * load
+	 *
+	 * Loads the cache file, if there is one. A cache file of another version, or a damaged
+	 *   cache file, is ignored.
+	 *
+	 * @return Whether or not the cache file was loaded.
+	 */
+	public boolean load() {
+		// Set the default result
+		boolean cacheLoaded = false;
+		try {
+			// Remember the version of the cache file that is loaded
+			BasicFileAttributes attributes = Files.readAttributes( cacheFile, BasicFileAttributes.class );
+			loadedSize = attributes.size();
+			loadedModified = attributes.lastModifiedTime().toMillis();
+			// Read the entries
+			cacheLoaded = readEntries( loaded );
+			if ( !cacheLoaded ) {
+				System.out.println("Ignoring the cache file \"" + cacheFile + "\" (other version).");
+			}
+		}
+		catch ( NoSuchFileException e ) {
+			// There is no cache yet
+		}
+		catch ( IOException | RuntimeException e ) {
+			System.out.println("Ignoring the cache file \"" + cacheFile + "\" (could not be read).");
+			loaded.clear();
+		}
+		// Return the result
+		return cacheLoaded;
+	}
+
+	// Read the entries of the cache file whose file extension kept its interpretation, returning whether or not it is a cache file of this version
+	private boolean readEntries( Map <String, entry> target ) throws IOException {
+		try ( FileChannel channel = FileChannel.open( cacheFile, StandardOpenOption.READ )) {
+			// Map the cache file
+			MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			// Is it a cache file of this version?
+			if (( buffer.getInt() != CACHE_MAGIC ) || ( buffer.getInt() != CACHE_VERSION )) {
+				return false;
+			}
+			// Read the file extension mapping of the cache
+			HashMap <String, String> cachedMapping = new HashMap <String, String> ();
+			int mappings = buffer.getInt();
+			for ( int index = 0; index < mappings; index++ ) {
+				String extension = readString( buffer );
+				cachedMapping.put( extension, readString( buffer ));
+			}
+			// Read the entries
+			int entries = buffer.getInt();
+			for ( int index = 0; index < entries; index++ ) {
+				String path = readString( buffer );
+				long size = buffer.getLong();
+				long modified = buffer.getLong();
+				long lines = buffer.getLong();
+				long lineKinds[] = { buffer.getLong(), buffer.getLong(), buffer.getLong() };
+				entry cached = new entry( size, modified, lines, ( lineKinds[0] >= 0 ) ? lineKinds : null );
+				// Is the interpretation of the file extension unchanged?
+				if ( cachedMapping.equals( extensionMapping ) || !isMappingChanged( path, cachedMapping )) {
+					target.put( path, cached );
+				}
+			}
+			return true;
+		}
+	}
+
+	// Was the cache file replaced since it was loaded?
+	private boolean isReplaced() {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes( cacheFile, BasicFileAttributes.class );
+			return ( attributes.size() != loadedSize ) || ( attributes.lastModifiedTime().toMillis() != loadedModified );
+		}
+		catch ( IOException e ) {
+			return false;
+		}
+	}
+
+	// Did the interpretation of the file extension of a path change?
+	private boolean isMappingChanged( String path, Map <String, String> cachedMapping ) {
+		// Get the file name
+		int nameStart = Math.max( path.lastIndexOf( '/' ), path.lastIndexOf( '\\' )) + 1;
+		String fileName = path.substring( nameStart );
+		// Get the file extension
+		int start = ScaExtensionClassifier.extensionStart( fileName );
+		if ( start == ScaExtensionClassifier.NO_EXTENSION ) {
+			return false;
+		}
+		String fileExtension = fileName.substring( start, ScaExtensionClassifier.extensionEnd( fileName )).toLowerCase();
+		// Compare the interpretations
+		String cachedInterpretation = cachedMapping.get( fileExtension );
+		String interpretation = extensionMapping.get( fileExtension );
+		return ( cachedInterpretation == null ) ? ( interpretation != null ) : !cachedInterpretation.equals( interpretation );
+	}
+
+	/**
+	 * getLines
+	 *
+	 * Looks up the line count of a file.
+	 *
+	 * @return The number of lines, or -1 if the file is not in the cache or has changed.
+	 */
+	public long getLines( String path, long size, long modified ) {
+		return getLines( path, size, modified, null );
+	}
+
+	/**
+	 * getLines
+	 *
+	 * Looks up the line count of a file, together with its code, comment and blank lines,
+	 *   which are copied into the array.
+	 *
+	 * @return The number of lines, or -1 if the file is not in the cache, has changed, or its lines were not split.
+	 */
+	public long getLines( String path, long size, long modified, long lineKinds[] ) {
+		// Look up the file
+		entry cached = loaded.get( path );
+		if (( cached != null ) && ( cached.size == size ) && ( cached.modified == modified ) && (( lineKinds == null ) || ( cached.lineKinds != null ))) {
+			// Copy the code, comment and blank lines
+			if ( lineKinds != null ) {
+				System.arraycopy( cached.lineKinds, 0, lineKinds, 0, 3 );
+			}
+			// Keep the entry
+			current.put( path, cached );
+			hits.increment();
+			return cached.lines;
+		}
+		misses.increment();
+		return -1;
+	}
+
+	// Save the line count of a file
+	public void putLines( String path, long size, long modified, long lines ) {
+		current.put( path, new entry( size, modified, lines, null ));
+	}
+
+	// Save the line count of a file, together with its code, comment and blank lines
+	public void putLines( String path, long size, long modified, long lines, long code, long comment, long blank ) {
+		current.put( path, new entry( size, modified, lines, new long[] { code, comment, blank } ));
+	}
+
+	/**
+	 * save
+	 *
+	 * Writes the entries of the files seen in this run, together with the loaded entries
+	 *   that are kept, to a temporary file of its own, which then replaces the cache file.
+	 *   Runs sharing a cache file never write to the same file; the entries another run
+	 *   wrote since the cache file was loaded are kept the same way as the loaded ones. The
+	 *   runs take turns through a lock on <cache file>.lock, which stays in place.
+	 *
+	 * @return Whether or not the cache file was written.
+	 */
+	public boolean save() {
+		// Wait until no other run replaces the cache file
+		FileChannel lockChannel = null;
+		try {
+			lockChannel = FileChannel.open( cacheFile.resolveSibling( cacheFile.getFileName() + ".lock" ), StandardOpenOption.CREATE, StandardOpenOption.WRITE );
+			lockChannel.lock();
+		}
+		catch ( IOException e ) {
+			// Replace the cache file without the lock
+			closeQuietly( lockChannel );
+			lockChannel = null;
+		}
+		try {
+			return write();
+		}
+		finally {
+			// Release the lock
+			closeQuietly( lockChannel );
+		}
+	}
+
+	// Merge the entries and replace the cache file, returning whether or not it was written
+	private boolean write() {
+		// Set the default result
+		boolean saved = false;
+		// Collect the entries to write
+		HashMap <String, entry> entries = new HashMap <String, entry> ( current );
+		if ( isReplaced()) {
+			// Merge the entries of the cache file written by another run
+			HashMap <String, entry> written = new HashMap <String, entry> ();
+			try {
+				readEntries( written );
+			}
+			catch ( IOException | RuntimeException e ) {
+				written.clear();
+			}
+			for ( Map.Entry <String, entry> cached : written.entrySet()) {
+				if ( !entries.containsKey( cached.getKey()) && isKept( cached.getKey())) {
+					entries.put( cached.getKey(), cached.getValue());
+				}
+			}
+		}
+		for ( Map.Entry <String, entry> cached : loaded.entrySet()) {
+			if ( !entries.containsKey( cached.getKey()) && isKept( cached.getKey())) {
+				entries.put( cached.getKey(), cached.getValue());
+			}
+		}
+		// Create a new temporary file next to the cache file
+		Path temporaryFile = null;
+		try {
+			temporaryFile = Files.createTempFile( cacheFile.toAbsolutePath().getParent(), cacheFile.getFileName() + ".", ".tmp" );
+		}
+		catch ( IOException e ) {
+			System.out.println("Could not write the cache file \"" + cacheFile + "\" (maybe you have no write access).");
+			return false;
+		}
+		// Write the temporary file
+		try ( DataOutputStream output = new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( temporaryFile ), 1 << 16 ))) {
+			// Write the header
+			output.writeInt( CACHE_MAGIC );
+			output.writeInt( CACHE_VERSION );
+			// Write the file extension mapping
+			output.writeInt( extensionMapping.size());
+			for ( Map.Entry <String, String> mapping : extensionMapping.entrySet()) {
+				writeString( output, mapping.getKey());
+				writeString( output, mapping.getValue());
+			}
+			// Write the entries
+			output.writeInt( entries.size());
+			for ( Map.Entry <String, entry> cached : entries.entrySet()) {
+				writeString( output, cached.getKey());
+				output.writeLong( cached.getValue().size );
+				output.writeLong( cached.getValue().modified );
+				output.writeLong( cached.getValue().lines );
+				long lineKinds[] = cached.getValue().lineKinds;
+				for ( int index = 0; index < 3; index++ ) {
+					output.writeLong(( lineKinds != null ) ? lineKinds[index] : -1 );
+				}
+			}
+			saved = true;
+		}
+		catch ( IOException e ) {
+			System.out.println("Could not write the cache file \"" + temporaryFile + "\" (maybe you have no write access).");
+		}
+		// Replace the cache file
+		if ( saved ) {
+			try {
+				Files.move( temporaryFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			}
+			catch ( IOException e ) {
+				System.out.println("Could not replace the cache file \"" + cacheFile + "\".");
+				saved = false;
+			}
+		}
+		// Remove the temporary file when it was not moved
+		if ( !saved ) {
+			try {
+				Files.deleteIfExists( temporaryFile );
+			}
+			catch ( IOException e ) {
+				// Leave it
+			}
+		}
+		// Return the result
+		return saved;
+	}
+
+	// Is the loaded entry of a file the current run did not see kept?
+	private boolean isKept( String path ) {
+		// Was the file in a root directory walked completely?
+		if ( isBelowRoot( path, scanRoots )) {
+			return isSkipped( path );
+		}
+		// Does the file, which the current run may have skipped, still exist?
+		if ( isBelowRoot( path, partialScanRoots )) {
+			return Files.isRegularFile( Paths.get( path ));
+		}
+		return true;
+	}
+
+	// Is a path, or one of its parent directories, skipped by the walk?
+	private boolean isSkipped( String path ) {
+		if ( skippedPaths.isEmpty()) {
+			return false;
+		}
+		for ( int end = path.length(); end > 0; end = path.lastIndexOf( File.separatorChar, end - 1 )) {
+			if ( skippedPaths.contains( path.substring( 0, end ))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Is a path below one of the root directories?
+	private static boolean isBelowRoot( String path, List <String> roots ) {
+		for ( String root : roots ) {
+			if ( path.startsWith( root )) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Close a channel, if any, ignoring errors
+	private static void closeQuietly( FileChannel channel ) {
+		if ( channel != null ) {
+			try {
+				channel.close();
+			}
+			catch ( IOException e ) {
+				// Nothing left to do
+			}
+		}
+	}
+
+	// Read a string from a buffer
+	private static String readString( MappedByteBuffer buffer ) {
+		byte bytes[] = new byte[ buffer.getInt() ];
+		buffer.get( bytes );
+		return new String( bytes, StandardCharsets.UTF_8 );
+	}
+
+	// Write a string to a stream
+	private static void writeString( DataOutputStream output, String text ) throws IOException {
+		byte bytes[] = text.getBytes( StandardCharsets.UTF_8 );
+		output.writeInt( bytes.length );
+		output.write( bytes );
+	}
+}
@@ -0,0 +1,74 @@
+package com.fortify.ps;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * ScaScanEvents
+ *
+ * Custom JDK Flight Recorder events of a scan. They are only recorded while a recording is
+ *   running (for example with -XX:StartFlightRecording) and cost next to nothing otherwise:
+ *   the fields are only filled in when the event will be committed. The event classes are
+ *   only loaded once the flight recorder is initialized, since registering them starts the
+ *   flight recorder and costs more than a short scan. Operations shorter than
+ *   the threshold are not recorded; lower it in the recording settings to see them all, as
+ *   in "com.fortify.ps.FileRead#threshold=0 ms".
+ */
+public class ScaScanEvents {
+
+	// Is the flight recorder initialized, so the events may be recorded?
+	static boolean isEnabled() {
+		return FlightRecorder.isInitialized();
+	}
+
+	/**
+	 * directoryListEvent
+	 *
+	 * Listing a single directory, including reading the attributes of its entries.
+	 */
+	@Name( "com.fortify.ps.DirectoryList" )
+	@Label( "Directory List" )
+	@Category({ "Fortify", "ScaFileMatch" })
+	@Description( "Listing a directory and reading the attributes of its entries" )
+	@StackTrace( false )
+	@Threshold( "1 ms" )
+	static class directoryListEvent extends Event {
+		// Directory listed
+		@Label( "Directory" )
+		String directory;
+		// Number of entries in the directory
+		@Label( "Entries" )
+		int entries;
+	}
+
+	/**
+	 * fileReadEvent
+	 *
+	 * Reading a single file to count its lines.
+	 */
+	@Name( "com.fortify.ps.FileRead" )
+	@Label( "File Read" )
+	@Category({ "Fortify", "ScaFileMatch" })
+	@Description( "Reading a file to count its lines" )
+	@StackTrace( false )
+	@Threshold( "1 ms" )
+	static class fileReadEvent extends Event {
+		// File read
+		@Label( "File" )
+		String file;
+		// Size of the file
+		@Label( "Size" )
+		@DataAmount
+		long size;
+		// Number of lines in the file
+		@Label( "Lines" )
+		long lines;
+	}
+}
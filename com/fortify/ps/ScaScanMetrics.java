@@ -0,0 +1,285 @@
+package com.fortify.ps;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * ScaScanMetrics
+ *
+ * Counters and timers of a single scan: the directories listed and the files visited, the
+ *   bytes read to count lines, the time spent listing directories, reading attributes and
+ *   counting lines (summed over all scanning threads), the wall time of every phase of the
+ *   run, and the slowest directories and largest files. The counters keep a separate cell
+ *   per thread, so the scanning threads do not contend. Only created with the option
+ *   "--metrics"; without it the scan code skips every measurement.
+ */
+public class ScaScanMetrics {
+
+	// Number of slowest directories and largest files kept
+	private static final int TOP_SIZE = 10;
+	// Nanoseconds per millisecond
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	// Number of directories listed
+	private final LongAdder directories = new LongAdder();
+	// Number of entries in the directories listed
+	private final LongAdder entries = new LongAdder();
+	// Time spent listing directories, without reading the attributes, in nanoseconds
+	private final LongAdder listNanos = new LongAdder();
+	// Time spent reading the attributes of the entries, in nanoseconds
+	private final LongAdder statNanos = new LongAdder();
+	// Number of files visited
+	private final LongAdder files = new LongAdder();
+	// Bytes in the files visited
+	private final LongAdder bytesVisited = new LongAdder();
+	// Number of files read to count their lines
+	private final LongAdder filesRead = new LongAdder();
+	// Bytes in the files read
+	private final LongAdder bytesRead = new LongAdder();
+	// Number of line counts taken from the scan cache
+	private final LongAdder filesCached = new LongAdder();
+	// Time spent in getlineCount, in nanoseconds
+	private final LongAdder lineCountNanos = new LongAdder();
+	// Wall time of the phases of the run, in nanoseconds, in the order run
+	private final LinkedHashMap <String, Long> phaseNanos = new LinkedHashMap <String, Long> ();
+	// Directories that took the longest to list
+	private final topList slowestDirectories = new topList();
+	// Largest files visited
+	private final topList largestFiles = new topList();
+	// Start of the current phase
+	private long phaseStart = 0;
+	// Name of the current phase, or null
+	private String phaseName = null;
+
+	/**
+	 * topList
+	 *
+	 * Keeps the entries with the highest values seen, for any number of threads. A value
+	 *   below the lowest kept value is rejected without taking the lock, so once the list
+	 *   is full nearly all values pass without contention.
+	 */
+	static class topList {
+		// The entries kept, as name and value
+		private final ArrayList <Map.Entry <String, Long>> entries = new ArrayList <Map.Entry <String, Long>> ();
+		// Lowest value kept, once the list is full
+		private volatile long floor = Long.MIN_VALUE;
+		// Offer an entry, whose name is only taken when the value is kept
+		void offer( Object name, long value ) {
+			if ( value <= floor ) {
+				return;
+			}
+			synchronized ( this ) {
+				if ( value <= floor ) {
+					return;
+				}
+				// Replace the lowest entry once the list is full
+				if ( entries.size() >= TOP_SIZE ) {
+					entries.remove( lowest());
+				}
+				entries.add( new AbstractMap.SimpleImmutableEntry <String, Long> ( name.toString(), value ));
+				if ( entries.size() >= TOP_SIZE ) {
+					floor = entries.get( lowest()).getValue();
+				}
+			}
+		}
+		// Find the index of the lowest entry
+		private int lowest() {
+			int lowest = 0;
+			for ( int index = 1; index < entries.size(); index++ ) {
+				if ( entries.get( index ).getValue() < entries.get( lowest ).getValue()) {
+					lowest = index;
+				}
+			}
+			return lowest;
+		}
+		// Retrieve the entries, highest value first
+		synchronized List <Map.Entry <String, Long>> getEntries() {
+			ArrayList <Map.Entry <String, Long>> sorted = new ArrayList <Map.Entry <String, Long>> ( entries );
+			Collections.sort( sorted, Collections.reverseOrder( Comparator.comparingLong( Map.Entry::getValue )));
+			return sorted;
+		}
+	}
+
+	/**
+	 * startPhase
+	 *
+	 * Ends the current phase of the run, if any, and starts timing the next one.
+	 */
+	public void startPhase( String name ) {
+		long now = System.nanoTime();
+		endPhase( now );
+		phaseName = name;
+		phaseStart = now;
+	}
+
+	// End the current phase of the run
+	public void endPhase() {
+		endPhase( System.nanoTime());
+	}
+
+	// End the current phase of the run at a given time
+	private void endPhase( long now ) {
+		if ( phaseName != null ) {
+			Long previous = phaseNanos.get( phaseName );
+			phaseNanos.put( phaseName, (( previous != null ) ? previous : 0 ) + now - phaseStart );
+			phaseName = null;
+		}
+	}
+
+	// Count a directory listed, with the time spent listing it and reading the attributes of its entries
+	public void addDirectory( Object directory, int directoryEntries, long nanos, long attributeNanos ) {
+		directories.increment();
+		entries.add( directoryEntries );
+		listNanos.add( nanos - attributeNanos );
+		statNanos.add( attributeNanos );
+		slowestDirectories.offer( directory, nanos );
+	}
+
+	// Count a file visited
+	public void addFile( Object file, long size ) {
+		files.increment();
+		bytesVisited.add( size );
+		largestFiles.offer( file, size );
+	}
+
+	// Count a line count, read from the file or taken from the scan cache, and the time spent on it
+	public void addLineCount( long size, boolean read, long nanos ) {
+		if ( read ) {
+			filesRead.increment();
+			bytesRead.add( size );
+		}
+		else {
+			filesCached.increment();
+		}
+		lineCountNanos.add( nanos );
+	}
+
+	// Retrieve the wall time of a phase in nanoseconds
+	private long getPhaseNanos( String name ) {
+		Long nanos = phaseNanos.get( name );
+		return ( nanos != null ) ? nanos : 0;
+	}
+
+	// Count per second over the scan phase
+	private double perSecond( long count ) {
+		long nanos = getPhaseNanos( "scan" );
+		return ( nanos > 0 ) ? count * 1000000000.0 / nanos : 0;
+	}
+
+	// Format nanoseconds as milliseconds
+	private static String millis( long nanos ) {
+		return String.format( Locale.ROOT, "%.3f", nanos / NANOS_PER_MILLI );
+	}
+
+	// Format a rate
+	private static String rate( double value ) {
+		return String.format( Locale.ROOT, "%.1f", value );
+	}
+
+	// Format a number of bytes for humans
+	private static String bytes( double value ) {
+		return String.format( Locale.ROOT, "%.1f MB", value / ( 1024 * 1024 ));
+	}
+
+	/**
+	 * getSummary
+	 *
+	 * Describes the metrics for humans, one line per element.
+	 */
+	public List <String> getSummary() {
+		ArrayList <String> lines = new ArrayList <String> ();
+		lines.add( "Metrics: " + directories.sum() + " directories (" + rate( perSecond( directories.sum())) + "/s), " + files.sum() + " files (" + rate( perSecond( files.sum())) + "/s), " + filesRead.sum() + " files read, " + bytes( bytesRead.sum()) + " read (" + bytes( perSecond( bytesRead.sum())) + "/s)." );
+		lines.add( "  Thread time: " + millis( listNanos.sum()) + " ms listing directories, " + millis( statNanos.sum()) + " ms reading attributes, " + millis( lineCountNanos.sum()) + " ms in getlineCount (" + filesCached.sum() + " line counts from the scan cache)." );
+		StringBuilder phases = new StringBuilder( "  Phases:" );
+		String separator = " ";
+		for ( Map.Entry <String, Long> phase : phaseNanos.entrySet()) {
+			phases.append( separator ).append( phase.getKey()).append( " " ).append( millis( phase.getValue())).append( " ms" );
+			separator = ", ";
+		}
+		lines.add( phases.append( "." ).toString());
+		lines.add( "  Slowest directories:" );
+		for ( Map.Entry <String, Long> entry : slowestDirectories.getEntries()) {
+			lines.add( "    " + millis( entry.getValue()) + " ms  " + entry.getKey());
+		}
+		lines.add( "  Largest files:" );
+		for ( Map.Entry <String, Long> entry : largestFiles.getEntries()) {
+			lines.add( "    " + entry.getValue() + " bytes  " + entry.getKey());
+		}
+		return lines;
+	}
+
+	/**
+	 * toJson
+	 *
+	 * Describes the metrics as a JSON object. Times are in milliseconds, rates per second
+	 *   of the scan phase.
+	 */
+	public String toJson( String project, int threads ) {
+		StringBuilder json = new StringBuilder();
+		json.append( "{\n  \"project\": " ).append( ScaServer.jsonString( project ));
+		json.append( ",\n  \"threads\": " ).append( threads );
+		json.append( ",\n  \"phasesMillis\": {" );
+		String separator = "";
+		for ( Map.Entry <String, Long> phase : phaseNanos.entrySet()) {
+			json.append( separator ).append( ScaServer.jsonString( phase.getKey())).append( ": " ).append( millis( phase.getValue()));
+			separator = ", ";
+		}
+		json.append( "}" );
+		json.append( ",\n  \"directories\": " ).append( directories.sum());
+		json.append( ",\n  \"directoryEntries\": " ).append( entries.sum());
+		json.append( ",\n  \"files\": " ).append( files.sum());
+		json.append( ",\n  \"bytes\": " ).append( bytesVisited.sum());
+		json.append( ",\n  \"filesRead\": " ).append( filesRead.sum());
+		json.append( ",\n  \"bytesRead\": " ).append( bytesRead.sum());
+		json.append( ",\n  \"filesCached\": " ).append( filesCached.sum());
+		json.append( ",\n  \"directoriesPerSecond\": " ).append( rate( perSecond( directories.sum())));
+		json.append( ",\n  \"filesPerSecond\": " ).append( rate( perSecond( files.sum())));
+		json.append( ",\n  \"bytesReadPerSecond\": " ).append( rate( perSecond( bytesRead.sum())));
+		json.append( ",\n  \"listMillis\": " ).append( millis( listNanos.sum()));
+		json.append( ",\n  \"attributesMillis\": " ).append( millis( statNanos.sum()));
+		json.append( ",\n  \"lineCountMillis\": " ).append( millis( lineCountNanos.sum()));
+		json.append( ",\n  \"slowestDirectories\": [" );
+		separator = "";
+		for ( Map.Entry <String, Long> entry : slowestDirectories.getEntries()) {
+			json.append( separator ).append( "\n    {\"path\": " ).append( ScaServer.jsonString( entry.getKey())).append( ", \"millis\": " ).append( millis( entry.getValue())).append( "}" );
+			separator = ",";
+		}
+		json.append( "\n  ],\n  \"largestFiles\": [" );
+		separator = "";
+		for ( Map.Entry <String, Long> entry : largestFiles.getEntries()) {
+			json.append( separator ).append( "\n    {\"path\": " ).append( ScaServer.jsonString( entry.getKey())).append( ", \"bytes\": " ).append( entry.getValue()).append( "}" );
+			separator = ",";
+		}
+		json.append( "\n  ]\n}\n" );
+		return json.toString();
+	}
+
+	/**
+	 * write
+	 *
+	 * Writes the metrics as JSON to a file.
+	 *
+	 * @return Whether or not the file was written.
+	 */
+	public boolean write( String fileName, String project, int threads ) {
+		try ( PrintWriter writer = new PrintWriter( new FileWriter( fileName ))) {
+			writer.print( toJson( project, threads ));
+			return true;
+		}
+		catch ( IOException e ) {
+			System.out.println( "Could not create the file \"" + fileName + "\" (maybe you have no write access)." );
+			return false;
+		}
+	}
+}
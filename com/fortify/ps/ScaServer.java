@@ -0,0 +1,488 @@
+package com.fortify.ps;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * ScaServer
+ *
+ * Answers scan requests over a local HTTP endpoint, returning JSON. The extension mapping,
+ *   the worker pool and a result cache stay warm between requests. The result cache holds
+ *   the counts of the files directly inside every directory scanned, together with a
+ *   fingerprint of the names, sizes and modification times of its entries; a directory
+ *   whose fingerprint did not change is not read again, so a repeated scan only lists the
+ *   directories and reads the changed ones. The result cache holds a limited number of
+ *   directories; the ones used least recently are evicted first, and are read again when
+ *   they are scanned next. The number of scans running at once is limited.
+ *   The server only listens on the loopback address.
+ *
+ *   GET /scan?path=<directory>   Scan a directory tree.
+ *   GET /status                  Report the number of running scans, cached and evicted directories.
+ */
+public class ScaServer {
+
+	// How long a request waits for a free scan slot, in seconds
+	private static final int SCAN_WAIT_SECONDS = 30;
+	// Default maximum number of directories in the result cache
+	public static final int MAX_CACHED_DIRECTORIES = 200000;
+
+	// Classifier of the file names
+	private final ScaExtensionClassifier classifier;
+	// Follow symbolic links?
+	private final boolean followLinks;
+	// Glob patterns of the excluded directories and files
+	private final List <String> excludePatterns;
+	// Honor the .gitignore files?
+	private final boolean useGitIgnore;
+	// Worker pool shared by all scans
+	private final ForkJoinPool pool;
+	// Limits the number of scans running at once
+	private final Semaphore scanSlots;
+	// Maximum number of scans running at once
+	private final int maxScans;
+	// Estimator of the resources of a Fortify SCA scan, or null
+	private ScaResourceEstimator resourceEstimator = null;
+	// Maximum number of directories in the result cache
+	private volatile int maxCachedDirectories = MAX_CACHED_DIRECTORIES;
+	// Number of directories evicted from the result cache
+	private final LongAdder evictedDirectories = new LongAdder();
+	// Counts of the directories scanned, by absolute path, the least recently used first; guarded by itself
+	private final LinkedHashMap <Path, directoryResult> resultCache = new LinkedHashMap <Path, directoryResult> ( 1024, 0.75f, true ) {
+		// Serialization version
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry( Map.Entry <Path, directoryResult> eldest ) {
+			if ( size() > maxCachedDirectories ) {
+				evictedDirectories.increment();
+				return true;
+			}
+			return false;
+		}
+	};
+	// Line counter of every worker thread
+	private final ThreadLocal <ScaLineCounter> lineCounter = new ThreadLocal <ScaLineCounter> () {
+		@Override
+		protected ScaLineCounter initialValue() {
+			return new ScaLineCounter();
+		}
+	};
+
+	// The counts of the files directly inside a directory
+	private static class directoryResult {
+		// Fingerprint of the entries of the directory
+		private final long fingerprint;
+		// Counts of the files of the directory
+		private final ScaStatistics.snapshot files;
+		// Sub directories of the directory
+		private final List <Path> directories;
+		// Default constructor
+		directoryResult( long resultFingerprint, ScaStatistics.snapshot resultFiles, List <Path> resultDirectories ) {
+			fingerprint = resultFingerprint;
+			files = resultFiles;
+			directories = resultDirectories;
+		}
+	}
+
+	// The progress of a single scan request
+	private static class scanRequest {
+		// Walker of the request
+		private final ScaDirectoryWalker walker;
+		// Number of directories listed
+		private final LongAdder directories = new LongAdder();
+		// Number of directories taken from the result cache
+		private final LongAdder cachedDirectories = new LongAdder();
+		// Number of files read
+		private final LongAdder filesRead = new LongAdder();
+		// Default constructor
+		scanRequest( ScaDirectoryWalker requestWalker ) {
+			walker = requestWalker;
+		}
+	}
+
+	/**
+	 * directoryScanTask
+	 *
+	 * Scans a directory and, as forked tasks, its sub directories. The counts of the files of
+	 *   the directory come from the result cache when its fingerprint did not change.
+	 */
+	private class directoryScanTask extends RecursiveTask <ScaStatistics.snapshot> {
+		// Serialization version
+		private static final long serialVersionUID = 1L;
+		// The scan request
+		private final scanRequest request;
+		// Directory to scan
+		private final Path directory;
+		// Default constructor
+		directoryScanTask( scanRequest scanRequest, Path scanDirectory ) {
+			request = scanRequest;
+			directory = scanDirectory;
+		}
+		@Override
+		protected ScaStatistics.snapshot compute() {
+			// The counts of the directory tree
+			ScaStatistics.snapshot result = new ScaStatistics.snapshot();
+			// List the directory
+			ArrayList <Path> directories = new ArrayList <Path> ();
+			ArrayList <ScaDirectoryWalker.fileEntry> files = new ArrayList <ScaDirectoryWalker.fileEntry> ();
+			if ( !request.walker.listDirectory( directory, directories, files )) {
+				return result;
+			}
+			request.directories.increment();
+			// Is the directory unchanged since it was scanned last?
+			long fingerprint = getFingerprint( directories, files );
+			directoryResult cached = getCached( directory );
+			if (( cached != null ) && ( cached.fingerprint == fingerprint )) {
+				request.cachedDirectories.increment();
+				result.merge( cached.files );
+			}
+			else {
+				// Count the files of the directory
+				ScaStatistics.snapshot counted = countFiles( request, files );
+				putCached( directory, new directoryResult( fingerprint, counted, directories ));
+				// Forget the sub directories that are gone
+				if ( cached != null ) {
+					for ( Path oldDirectory : cached.directories ) {
+						if ( !directories.contains( oldDirectory )) {
+							forget( oldDirectory );
+						}
+					}
+				}
+				result.merge( counted );
+			}
+			// Scan the sub directories
+			ArrayList <directoryScanTask> tasks = new ArrayList <directoryScanTask> ();
+			for ( Path subDirectory : directories ) {
+				tasks.add( new directoryScanTask( request, subDirectory ));
+			}
+			invokeAll( tasks );
+			for ( directoryScanTask task : tasks ) {
+				result.merge( task.join());
+			}
+			return result;
+		}
+	}
+
+	// Default constructor
+	public ScaServer( ScaExtensionClassifier extensionClassifier, boolean followSymbolicLinks, List <String> exclusionPatterns, boolean honorGitIgnore, int scanThreads, int maxConcurrentScans ) {
+		classifier = extensionClassifier;
+		followLinks = followSymbolicLinks;
+		excludePatterns = exclusionPatterns;
+		useGitIgnore = honorGitIgnore;
+		pool = new ForkJoinPool( Math.max( scanThreads, 1 ));
+		maxScans = Math.max( maxConcurrentScans, 1 );
+		scanSlots = new Semaphore( maxScans, true );
+	}
+
+	// Set the maximum number of directories in the result cache
+	public void setMaxCachedDirectories( int newMaxCachedDirectories ) {
+		maxCachedDirectories = ( newMaxCachedDirectories > 0 ) ? newMaxCachedDirectories : 1;
+	}
+
+	// Set the estimator of the resources of a Fortify SCA scan, or null to answer without an estimate
+	public void setResourceEstimator( ScaResourceEstimator estimator ) {
+		resourceEstimator = estimator;
+	}
+
+	/**
+	 * start
+	 *
+	 * Starts listening on a port of the loopback address. The requests are handled on
+	 *   threads of the server; the scans themselves run on the shared worker pool.
+	 *
+	 * @return Whether or not the server could be started.
+	 */
+	public boolean start( int port ) {
+		// Set the default result
+		boolean started = false;
+		try {
+			HttpServer server = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress(), port ), 0 );
+			server.createContext( "/scan", new HttpHandler() {
+				public void handle( HttpExchange exchange ) throws IOException {
+					handleScan( exchange );
+				}
+			});
+			server.createContext( "/status", new HttpHandler() {
+				public void handle( HttpExchange exchange ) throws IOException {
+					handleStatus( exchange );
+				}
+			});
+			// Leave room for the requests waiting on a scan slot
+			ExecutorService executor = Executors.newFixedThreadPool( maxScans * 2 + 1 );
+			server.setExecutor( executor );
+			server.start();
+			System.out.println("Listening on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/scan?path=<directory>");
+			started = true;
+		}
+		catch ( IOException e ) {
+			System.out.println("Could not listen on port " + port + " (" + e.getMessage() + ").");
+		}
+		// Return the result
+		return started;
+	}
+
+	// Handle a scan request
+	private void handleScan( HttpExchange exchange ) throws IOException {
+		try {
+			// Only GET is supported
+			if ( !"GET".equals( exchange.getRequestMethod())) {
+				sendError( exchange, 405, "Method not allowed" );
+				return;
+			}
+			// Get the directory
+			String path = getQueryParameter( exchange.getRequestURI().getRawQuery(), "path" );
+			if (( path == null ) || ( path.length() == 0 )) {
+				sendError( exchange, 400, "Missing parameter \"path\"" );
+				return;
+			}
+			Path root = Paths.get( path ).toAbsolutePath().normalize();
+			if ( !Files.isDirectory( root )) {
+				sendError( exchange, 404, "Not a directory: " + root );
+				return;
+			}
+			// Wait for a scan slot
+			if ( !scanSlots.tryAcquire( SCAN_WAIT_SECONDS, TimeUnit.SECONDS )) {
+				sendError( exchange, 503, "Too many scans running" );
+				return;
+			}
+			try {
+				sendJson( exchange, 200, scan( root ));
+			}
+			finally {
+				scanSlots.release();
+			}
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			sendError( exchange, 503, "Interrupted" );
+		}
+		catch ( RuntimeException e ) {
+			sendError( exchange, 500, String.valueOf( e.getMessage()));
+		}
+	}
+
+	// Handle a status request
+	private void handleStatus( HttpExchange exchange ) throws IOException {
+		StringBuilder json = new StringBuilder();
+		json.append( "{\"runningScans\":" ).append( maxScans - scanSlots.availablePermits());
+		json.append( ",\"maxScans\":" ).append( maxScans );
+		synchronized ( resultCache ) {
+			json.append( ",\"cachedDirectories\":" ).append( resultCache.size());
+		}
+		json.append( ",\"maxCachedDirectories\":" ).append( maxCachedDirectories );
+		json.append( ",\"evictedDirectories\":" ).append( evictedDirectories.sum());
+		json.append( "}" );
+		sendJson( exchange, 200, json.toString());
+	}
+
+	/**
+	 * scan
+	 *
+	 * Scans a directory tree on the worker pool.
+	 *
+	 * @return The counts, as JSON.
+	 */
+	String scan( Path root ) {
+		long start = System.nanoTime();
+		// Create the walker of this request
+		ScaDirectoryWalker walker = new ScaDirectoryWalker( followLinks );
+		if ( !excludePatterns.isEmpty() || useGitIgnore ) {
+			walker.setExclusionMatcher( new ScaExclusionMatcher( excludePatterns, useGitIgnore ));
+		}
+		scanRequest request = new scanRequest( walker );
+		ScaStatistics.snapshot statistics = new ScaStatistics.snapshot();
+		if ( walker.enterRoot( root )) {
+			statistics = pool.invoke( new directoryScanTask( request, root ));
+		}
+		long elapsed = ( System.nanoTime() - start ) / 1000000;
+		// Write the counts
+		StringBuilder json = new StringBuilder();
+		json.append( "{\"path\":" ).append( jsonString( root.toString()));
+		json.append( ",\"directories\":" ).append( request.directories.sum());
+		json.append( ",\"cachedDirectories\":" ).append( request.cachedDirectories.sum());
+		json.append( ",\"filesRead\":" ).append( request.filesRead.sum());
+		json.append( ",\"elapsedMillis\":" ).append( elapsed );
+		json.append( ",\"configured\":[" );
+		String separator = "";
+		for ( Map.Entry <String, ScaStatistics.totals> entry : statistics.getConfigured().entrySet()) {
+			json.append( separator ).append( "{\"extension\":" ).append( jsonString( entry.getKey()));
+			json.append( ",\"interpretation\":" ).append( jsonString( statistics.getInterpretation( entry.getKey()))).append( "," );
+			appendTotals( json, entry.getValue(), true );
+			json.append( "}" );
+			separator = ",";
+		}
+		json.append( "],\"configuredTotal\":{" );
+		appendTotals( json, ScaStatistics.snapshot.sum( statistics.getConfigured()), true );
+		json.append( "},\"nonConfigured\":[" );
+		separator = "";
+		for ( Map.Entry <String, ScaStatistics.totals> entry : statistics.getNonConfigured().entrySet()) {
+			json.append( separator ).append( "{\"extension\":" ).append( jsonString( entry.getKey())).append( "," );
+			appendTotals( json, entry.getValue(), false );
+			json.append( "}" );
+			separator = ",";
+		}
+		json.append( "],\"nonConfiguredTotal\":{" );
+		appendTotals( json, ScaStatistics.snapshot.sum( statistics.getNonConfigured()), false );
+		json.append( "}" );
+		if ( resourceEstimator != null ) {
+			json.append( ",\"estimate\":" ).append( resourceEstimator.estimate( statistics ).toJson());
+		}
+		json.append( "}" );
+		return json.toString();
+	}
+
+	// Count the files of a single directory
+	private ScaStatistics.snapshot countFiles( scanRequest request, List <ScaDirectoryWalker.fileEntry> files ) {
+		ScaStatistics.snapshot counted = new ScaStatistics.snapshot();
+		for ( ScaDirectoryWalker.fileEntry file : files ) {
+			String fileName = file.getPath().getFileName().toString();
+			BasicFileAttributes attributes = file.getAttributes();
+			int extensionId = classifier.classify( fileName );
+			if ( extensionId >= 0 ) {
+				long lines = 0;
+				try {
+					lines = lineCounter.get().countLines( file.getPath());
+					request.filesRead.increment();
+				}
+				catch ( IOException e ) {
+					System.out.println("Could not read file \"" + file.getPath() + "\" (maybe you do not have read access).");
+				}
+				counted.addConfigured( classifier.getExtension( extensionId ), classifier.getInterpretation( extensionId ), 1, lines, attributes.size());
+			}
+			else if ( extensionId == ScaExtensionClassifier.NOT_CONFIGURED ) {
+				counted.addNonConfigured( fileName.substring( ScaExtensionClassifier.extensionStart( fileName ), ScaExtensionClassifier.extensionEnd( fileName )).toLowerCase(), 1, attributes.size());
+			}
+		}
+		return counted;
+	}
+
+	// Get the counts of a directory from the result cache, or null
+	private directoryResult getCached( Path directory ) {
+		synchronized ( resultCache ) {
+			return resultCache.get( directory );
+		}
+	}
+
+	// Put the counts of a directory in the result cache, evicting the least recently used directory when it is full
+	private void putCached( Path directory, directoryResult result ) {
+		synchronized ( resultCache ) {
+			resultCache.put( directory, result );
+		}
+	}
+
+	// Remove a directory and everything below it from the result cache; the directories below an evicted one are left to the eviction
+	private void forget( Path directory ) {
+		directoryResult removed;
+		synchronized ( resultCache ) {
+			removed = resultCache.remove( directory );
+		}
+		if ( removed != null ) {
+			for ( Path subDirectory : removed.directories ) {
+				forget( subDirectory );
+			}
+		}
+	}
+
+	// Compute the fingerprint of the entries of a directory
+	private static long getFingerprint( List <Path> directories, List <ScaDirectoryWalker.fileEntry> files ) {
+		long fingerprint = directories.size() * 31L + files.size();
+		for ( Path directory : directories ) {
+			fingerprint = mix( fingerprint ^ directory.getFileName().toString().hashCode());
+		}
+		for ( ScaDirectoryWalker.fileEntry file : files ) {
+			BasicFileAttributes attributes = file.getAttributes();
+			fingerprint = mix( fingerprint ^ file.getPath().getFileName().toString().hashCode());
+			fingerprint = mix( fingerprint ^ attributes.size());
+			fingerprint = mix( fingerprint ^ attributes.lastModifiedTime().toMillis());
+		}
+		return fingerprint;
+	}
+
+	// Mix the bits of a 64 bit value
+	private static long mix( long value ) {
+		value = ( value ^ ( value >>> 33 )) * 0xff51afd7ed558ccdL;
+		value = ( value ^ ( value >>> 33 )) * 0xc4ceb9fe1a85ec53L;
+		return value ^ ( value >>> 33 );
+	}
+
+	// Append the totals of a file extension
+	private static void appendTotals( StringBuilder json, ScaStatistics.totals totals, boolean withLines ) {
+		json.append( "\"files\":" ).append( totals.getFiles());
+		if ( withLines ) {
+			json.append( ",\"lines\":" ).append( totals.getLines());
+		}
+		json.append( ",\"bytes\":" ).append( totals.getBytes());
+	}
+
+	// Get a parameter of a raw query string
+	private static String getQueryParameter( String query, String name ) throws UnsupportedEncodingException {
+		if ( query == null ) {
+			return null;
+		}
+		for ( String parameter : query.split( "&" )) {
+			int equals = parameter.indexOf( '=' );
+			if (( equals > 0 ) && parameter.substring( 0, equals ).equals( name )) {
+				return URLDecoder.decode( parameter.substring( equals + 1 ), "UTF-8" );
+			}
+		}
+		return null;
+	}
+
+	// Quote a string for JSON
+	static String jsonString( String text ) {
+		StringBuilder quoted = new StringBuilder( text.length() + 2 );
+		quoted.append( '"' );
+		for ( int index = 0; index < text.length(); index++ ) {
+			char character = text.charAt( index );
+			if (( character == '"' ) || ( character == '\\' )) {
+				quoted.append( '\\' ).append( character );
+			}
+			else if ( character < 0x20 ) {
+				quoted.append( String.format( "\\u%04x", ( int ) character ));
+			}
+			else {
+				quoted.append( character );
+			}
+		}
+		return quoted.append( '"' ).toString();
+	}
+
+	// Send an error
+	private static void sendError( HttpExchange exchange, int status, String message ) throws IOException {
+		sendJson( exchange, status, "{\"error\":" + jsonString( message ) + "}" );
+	}
+
+	// Send a JSON response
+	private static void sendJson( HttpExchange exchange, int status, String json ) throws IOException {
+		byte body[] = json.getBytes( StandardCharsets.UTF_8 );
+		exchange.getResponseHeaders().set( "Content-Type", "application/json; charset=utf-8" );
+		exchange.sendResponseHeaders( status, body.length );
+		try ( OutputStream output = exchange.getResponseBody()) {
+			output.write( body );
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package com.fortify.ps;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ScaStatistics
+ *
+ * Keeps the file, line and byte counts per file extension, for the Fortify SCA configured
+ *   file extensions (by classifier id) and for the non configured file extensions (by name).
+ *   The lines of the configured file extensions can be split in code, comment and blank lines.
+ *   All counters are 64 bit LongAdders, so the store can be updated by many threads at
+ *   once without locking, boxing or remove/put cycles. Counted files can be removed again,
+ *   to follow the changes of a watched tree. A snapshot copies the counters into
+ *   plain totals, keyed by file extension, which can be merged with snapshots of other
+ *   workers or runs.
+ */
+public class ScaStatistics {
+
+	// Classifier assigning the ids of the configured file extensions
+	private final ScaExtensionClassifier classifier;
+	// Number of files, per configured file extension id
+	private final LongAdder configuredFiles[];
+	// Number of lines, per configured file extension id
+	private final LongAdder configuredLines[];
+	// Number of bytes, per configured file extension id
+	private final LongAdder configuredBytes[];
+	// Number of code lines, per configured file extension id
+	private final LongAdder configuredCode[];
+	// Number of comment lines, per configured file extension id
+	private final LongAdder configuredComment[];
+	// Number of blank lines, per configured file extension id
+	private final LongAdder configuredBlank[];
+	// Counters of the non configured file extensions
+	private final ConcurrentHashMap <String, nonConfiguredCounter> nonConfigured = new ConcurrentHashMap <String, nonConfiguredCounter> ();
+
+	// Counters of a single non configured file extension
+	private static class nonConfiguredCounter {
+		// Number of files
+		private final LongAdder files = new LongAdder();
+		// Number of bytes
+		private final LongAdder bytes = new LongAdder();
+	}
+
+	/**
+	 * totals
+	 *
+	 * The totals of a single file extension, as copied by a snapshot.
+	 */
+	public static class totals {
+		// Number of files
+		private long files = 0;
+		// Number of lines
+		private long lines = 0;
+		// Number of bytes
+		private long bytes = 0;
+		// Number of code lines
+		private long code = 0;
+		// Number of comment lines
+		private long comment = 0;
+		// Number of blank lines
+		private long blank = 0;
+		// Default constructor
+		totals( long initFiles, long initLines, long initBytes ) {
+			files = initFiles;
+			lines = initLines;
+			bytes = initBytes;
+		}
+		// Constructor with the code, comment and blank lines
+		totals( long initFiles, long initLines, long initBytes, long initCode, long initComment, long initBlank ) {
+			this( initFiles, initLines, initBytes );
+			code = initCode;
+			comment = initComment;
+			blank = initBlank;
+		}
+		// Retrieve the number of files
+		public long getFiles() {
+			return files;
+		}
+		// Retrieve the number of lines
+		public long getLines() {
+			return lines;
+		}
+		// Retrieve the number of bytes
+		public long getBytes() {
+			return bytes;
+		}
+		// Retrieve the number of code lines
+		public long getCode() {
+			return code;
+		}
+		// Retrieve the number of comment lines
+		public long getComment() {
+			return comment;
+		}
+		// Retrieve the number of blank lines
+		public long getBlank() {
+			return blank;
+		}
+		// Add other totals
+		void add( totals other ) {
+			files += other.files;
+			lines += other.lines;
+			bytes += other.bytes;
+			code += other.code;
+			comment += other.comment;
+			blank += other.blank;
+		}
+	}
+
+	/**
+	 * snapshot
+	 *
+	 * A copy of the statistics, keyed and sorted by file extension. Snapshots of different
+	 *   workers or runs can be merged.
+	 */
+	public static class snapshot {
+		// Totals of the configured file extensions
+		private final TreeMap <String, totals> configured = new TreeMap <String, totals> ();
+		// Fortify SCA interpretation of the configured file extensions
+		private final TreeMap <String, String> interpretations = new TreeMap <String, String> ();
+		// Totals of the non configured file extensions
+		private final TreeMap <String, totals> nonConfigured = new TreeMap <String, totals> ();
+
+		// Retrieve the totals of the configured file extensions
+		public TreeMap <String, totals> getConfigured() {
+			return configured;
+		}
+		// Retrieve the Fortify SCA interpretation of a configured file extension
+		public String getInterpretation( String fileExtension ) {
+			return interpretations.get( fileExtension );
+		}
+		// Retrieve the totals of the non configured file extensions
+		public TreeMap <String, totals> getNonConfigured() {
+			return nonConfigured;
+		}
+		// Add the totals of a configured file extension
+		public void addConfigured( String fileExtension, String interpretation, long files, long lines, long bytes ) {
+			addConfigured( fileExtension, interpretation, new totals( files, lines, bytes ));
+		}
+		// Add the totals of a configured file extension, with the code, comment and blank lines
+		public void addConfigured( String fileExtension, String interpretation, totals addTotals ) {
+			add( configured, fileExtension, addTotals );
+			interpretations.put( fileExtension, interpretation );
+		}
+		// Add the totals of a non configured file extension
+		public void addNonConfigured( String fileExtension, long files, long bytes ) {
+			add( nonConfigured, fileExtension, new totals( files, 0, bytes ));
+		}
+		// Merge another snapshot into this one
+		public void merge( snapshot other ) {
+			for ( Map.Entry <String, totals> entry : other.configured.entrySet()) {
+				add( configured, entry.getKey(), entry.getValue());
+			}
+			interpretations.putAll( other.interpretations );
+			for ( Map.Entry <String, totals> entry : other.nonConfigured.entrySet()) {
+				add( nonConfigured, entry.getKey(), entry.getValue());
+			}
+		}
+		// Add totals to a map of totals
+		private static void add( TreeMap <String, totals> map, String fileExtension, totals addTotals ) {
+			totals existing = map.get( fileExtension );
+			if ( existing != null ) {
+				existing.add( addTotals );
+			}
+			else {
+				map.put( fileExtension, new totals( addTotals.files, addTotals.lines, addTotals.bytes, addTotals.code, addTotals.comment, addTotals.blank ));
+			}
+		}
+		// Sum the totals of a map of totals
+		public static totals sum( Map <String, totals> map ) {
+			totals sum = new totals( 0, 0, 0 );
+			for ( totals value : map.values()) {
+				sum.add( value );
+			}
+			return sum;
+		}
+	}
+
+	// Default constructor
+	public ScaStatistics( ScaExtensionClassifier extensionClassifier ) {
+		classifier = extensionClassifier;
+		int count = classifier.getExtensionCount();
+		configuredFiles = new LongAdder[ count ];
+		configuredLines = new LongAdder[ count ];
+		configuredBytes = new LongAdder[ count ];
+		configuredCode = new LongAdder[ count ];
+		configuredComment = new LongAdder[ count ];
+		configuredBlank = new LongAdder[ count ];
+		for ( int id = 0; id < count; id++ ) {
+			configuredFiles[id] = new LongAdder();
+			configuredLines[id] = new LongAdder();
+			configuredBytes[id] = new LongAdder();
+			configuredCode[id] = new LongAdder();
+			configuredComment[id] = new LongAdder();
+			configuredBlank[id] = new LongAdder();
+		}
+	}
+
+	// Count a file with a configured file extension
+	public void addConfigured( int extensionId, long lines, long bytes ) {
+		configuredFiles[ extensionId ].increment();
+		configuredLines[ extensionId ].add( lines );
+		configuredBytes[ extensionId ].add( bytes );
+	}
+
+	// Count the code, comment and blank lines of a file with a configured file extension
+	public void addLineKinds( int extensionId, long code, long comment, long blank ) {
+		configuredCode[ extensionId ].add( code );
+		configuredComment[ extensionId ].add( comment );
+		configuredBlank[ extensionId ].add( blank );
+	}
+
+	// Count a file with a non configured file extension
+	public void addNonConfigured( String fileExtension, long bytes ) {
+		// Get or create the counter of the file extension
+		nonConfiguredCounter counter = nonConfigured.get( fileExtension );
+		if ( counter == null ) {
+			nonConfiguredCounter newCounter = new nonConfiguredCounter();
+			counter = nonConfigured.putIfAbsent( fileExtension, newCounter );
+			if ( counter == null ) {
+				counter = newCounter;
+			}
+		}
+		counter.files.increment();
+		counter.bytes.add( bytes );
+	}
+
+	// Remove a counted file with a configured file extension
+	public void removeConfigured( int extensionId, long lines, long bytes ) {
+		configuredFiles[ extensionId ].decrement();
+		configuredLines[ extensionId ].add( -lines );
+		configuredBytes[ extensionId ].add( -bytes );
+	}
+
+	// Remove a counted file with a non configured file extension
+	public void removeNonConfigured( String fileExtension, long bytes ) {
+		nonConfiguredCounter counter = nonConfigured.get( fileExtension );
+		if ( counter != null ) {
+			counter.files.decrement();
+			counter.bytes.add( -bytes );
+		}
+	}
+
+	/**
+	 * takeSnapshot
+	 *
+	 * Copies the counters into a snapshot. File extensions without files are left out.
+	 *
+	 * @return The snapshot.
+	 */
+	public snapshot takeSnapshot() {
+		snapshot copy = new snapshot();
+		// Copy the configured file extensions
+		for ( int id = 0; id < configuredFiles.length; id++ ) {
+			long files = configuredFiles[id].sum();
+			if ( files > 0 ) {
+				copy.addConfigured( classifier.getExtension( id ), classifier.getInterpretation( id ), new totals( files, configuredLines[id].sum(), configuredBytes[id].sum(), configuredCode[id].sum(), configuredComment[id].sum(), configuredBlank[id].sum()));
+			}
+		}
+		// Copy the non configured file extensions
+		for ( Map.Entry <String, nonConfiguredCounter> entry : nonConfigured.entrySet()) {
+			long files = entry.getValue().files.sum();
+			if ( files > 0 ) {
+				copy.addNonConfigured( entry.getKey(), files, entry.getValue().bytes.sum());
+			}
+		}
+		// Return the result
+		return copy;
+	}
+}
@@ -0,0 +1,300 @@
+package com.fortify.ps;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * ScaTreeGenerator
+ *
+ * Builds a synthetic source tree of a chosen shape, for benchmarks: the number of files,
+ *   the depth and fan out of the directories, the mix of file extensions (with weights),
+ *   the distribution of the file sizes (log uniform between a minimum and a maximum), the
+ *   share of files with CRLF line ends and the average line length. The same seed always
+ *   gives the same tree, byte for byte.
+ *
+ *   java -cp ScaFileMatch.jar com.fortify.ps.ScaTreeGenerator [options] <directory>
+ */
+public class ScaTreeGenerator {
+
+	// Default mix of file extensions
+	private static final String DEFAULT_MIX = "java=30,xml=15,js=10,jsp=5,properties=5,sql=5,html=5,py=5,c=5,cpp=5,css=4,png=3,txt=3";
+	// Characters of the generated lines
+	private static final byte LINE_CHARACTERS[] = "abcdefghijklmnopqrstuvwxyz ABCDEFGHIJKLMNOPQRSTUVWXYZ 0123456789 ;(){}=+-*/<>\"'.,".getBytes();
+
+	// Number of files
+	private int files = 1000;
+	// Depth of the directory tree (0 puts all files in the root)
+	private int depth = 3;
+	// Number of sub directories per directory
+	private int fanOut = 4;
+	// File extensions and their weights
+	private final LinkedHashMap <String, Integer> extensionMix = new LinkedHashMap <String, Integer> ();
+	// Minimum file size in bytes
+	private long minSize = 256;
+	// Maximum file size in bytes
+	private long maxSize = 64 * 1024;
+	// Share of the files with CRLF line ends (0 to 1)
+	private double crlfShare = 0.1;
+	// Average line length in characters
+	private int lineLength = 40;
+	// Seed of the random generator
+	private long seed = 42;
+
+	// Default constructor
+	public ScaTreeGenerator() {
+		setExtensionMix( DEFAULT_MIX );
+	}
+
+	// Set the number of files
+	public void setFiles( int newFiles ) {
+		files = Math.max( newFiles, 0 );
+	}
+
+	// Set the depth and fan out of the directory tree
+	public void setShape( int newDepth, int newFanOut ) {
+		depth = Math.max( newDepth, 0 );
+		fanOut = Math.max( newFanOut, 1 );
+	}
+
+	// Set the file extensions and their weights, as "ext=weight,ext=weight"
+	public void setExtensionMix( String mix ) {
+		extensionMix.clear();
+		for ( String part : mix.split( "," )) {
+			String pair[] = part.trim().split( "=" );
+			if ( pair[0].length() > 0 ) {
+				extensionMix.put( pair[0], ( pair.length > 1 ) ? Integer.parseInt( pair[1].trim()) : 1 );
+			}
+		}
+	}
+
+	// Set the range of the file sizes in bytes
+	public void setSizes( long newMinSize, long newMaxSize ) {
+		minSize = Math.max( newMinSize, 1 );
+		maxSize = Math.max( newMaxSize, minSize );
+	}
+
+	// Set the share of the files with CRLF line ends
+	public void setCrlfShare( double newCrlfShare ) {
+		crlfShare = Math.min( Math.max( newCrlfShare, 0 ), 1 );
+	}
+
+	// Set the average line length in characters
+	public void setLineLength( int newLineLength ) {
+		lineLength = Math.max( newLineLength, 1 );
+	}
+
+	// Set the seed of the random generator
+	public void setSeed( long newSeed ) {
+		seed = newSeed;
+	}
+
+	/**
+	 * generate
+	 *
+	 * Builds the tree below a directory, which is created when needed.
+	 *
+	 * @return The total number of bytes written.
+	 */
+	public long generate( Path root ) throws IOException {
+		SplittableRandom random = new SplittableRandom( seed );
+		// Create the directories, breadth first
+		ArrayList <Path> directories = new ArrayList <Path> ();
+		directories.add( root );
+		Files.createDirectories( root );
+		int levelStart = 0;
+		for ( int level = 0; level < depth; level++ ) {
+			int levelEnd = directories.size();
+			for ( int parent = levelStart; parent < levelEnd; parent++ ) {
+				for ( int child = 0; child < fanOut; child++ ) {
+					Path directory = directories.get( parent ).resolve( "d" + level + "_" + child );
+					Files.createDirectories( directory );
+					directories.add( directory );
+				}
+			}
+			levelStart = levelEnd;
+		}
+		// Get the cumulative weights of the file extensions
+		String extensions[] = extensionMix.keySet().toArray( new String[ extensionMix.size() ] );
+		int cumulativeWeights[] = new int[ extensions.length ];
+		int totalWeight = 0;
+		for ( int index = 0; index < extensions.length; index++ ) {
+			totalWeight += extensionMix.get( extensions[index] );
+			cumulativeWeights[index] = totalWeight;
+		}
+		// Write the files
+		long totalBytes = 0;
+		byte line[] = new byte[ lineLength * 2 + 2 ];
+		for ( int number = 0; number < files; number++ ) {
+			// Pick the directory, the file extension, the size and the line ends
+			Path directory = directories.get( random.nextInt( directories.size()));
+			int pick = random.nextInt( Math.max( totalWeight, 1 ));
+			int extension = 0;
+			while (( extension < extensions.length - 1 ) && ( pick >= cumulativeWeights[ extension ] )) {
+				extension++;
+			}
+			long size = ( long ) Math.exp( Math.log( minSize ) + random.nextDouble() * ( Math.log( maxSize ) - Math.log( minSize )));
+			boolean crlf = random.nextDouble() < crlfShare;
+			Path file = directory.resolve( "f" + number + "." + extensions[ extension ] );
+			totalBytes += writeFile( file, size, crlf, random, line );
+		}
+		return totalBytes;
+	}
+
+	// Write a file of lines of random characters
+	private long writeFile( Path file, long size, boolean crlf, SplittableRandom random, byte line[] ) throws IOException {
+		long written = 0;
+		try ( OutputStream output = new BufferedOutputStream( Files.newOutputStream( file ), 1 << 16 )) {
+			while ( written < size ) {
+				int length = ( int ) Math.min( 1 + random.nextInt( lineLength * 2 ), size - written );
+				for ( int index = 0; index < length; index++ ) {
+					line[index] = LINE_CHARACTERS[ random.nextInt( LINE_CHARACTERS.length ) ];
+				}
+				output.write( line, 0, length );
+				written += length;
+				if ( written < size ) {
+					if ( crlf ) {
+						output.write( '\r' );
+						written++;
+					}
+					output.write( '\n' );
+					written++;
+				}
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * writeFile
+	 *
+	 * Writes a single file of a given size with lines of a fixed length, for the line counting
+	 *   benchmarks.
+	 */
+	public static void writeFile( Path file, long size, int lineLength, boolean crlf ) throws IOException {
+		byte line[] = new byte[ lineLength + 2 ];
+		for ( int index = 0; index < lineLength; index++ ) {
+			line[index] = LINE_CHARACTERS[ index % LINE_CHARACTERS.length ];
+		}
+		int length = lineLength;
+		if ( crlf ) {
+			line[ length++ ] = '\r';
+		}
+		line[ length++ ] = '\n';
+		try ( OutputStream output = new BufferedOutputStream( Files.newOutputStream( file ), 1 << 16 )) {
+			for ( long written = 0; written < size; written += length ) {
+				output.write( line, 0, ( int ) Math.min( length, size - written ));
+			}
+		}
+	}
+
+	// Describe the shape of the tree
+	@Override
+	public String toString() {
+		return "files=" + files + ", depth=" + depth + ", fanOut=" + fanOut + ", sizes=" + minSize + ".." + maxSize + ", crlf=" + crlfShare + ", lineLength=" + lineLength + ", seed=" + seed + ", mix=" + extensionMix;
+	}
+
+	// Describe the shape of the tree as benchmark parameters
+	public Map <String, String> getParameters() {
+		LinkedHashMap <String, String> parameters = new LinkedHashMap <String, String> ();
+		parameters.put( "files", String.valueOf( files ));
+		parameters.put( "depth", String.valueOf( depth ));
+		parameters.put( "fanOut", String.valueOf( fanOut ));
+		parameters.put( "seed", String.valueOf( seed ));
+		return parameters;
+	}
+
+	/**
+	 * parseOption
+	 *
+	 * Applies a command line option of the generator.
+	 *
+	 * @return The number of arguments used, or 0 if the option is not a generator option.
+	 */
+	public int parseOption( String args[], int index ) {
+		if ( index + 1 >= args.length ) {
+			return 0;
+		}
+		String value = args[ index + 1 ];
+		switch ( args[index] ) {
+			case "--files":
+				setFiles( Integer.parseInt( value ));
+				return 2;
+			case "--depth":
+				setShape( Integer.parseInt( value ), fanOut );
+				return 2;
+			case "--fan-out":
+				setShape( depth, Integer.parseInt( value ));
+				return 2;
+			case "--mix":
+				setExtensionMix( value );
+				return 2;
+			case "--min-size":
+				setSizes( Long.parseLong( value ), maxSize );
+				return 2;
+			case "--max-size":
+				setSizes( minSize, Long.parseLong( value ));
+				return 2;
+			case "--crlf":
+				setCrlfShare( Double.parseDouble( value ));
+				return 2;
+			case "--line-length":
+				setLineLength( Integer.parseInt( value ));
+				return 2;
+			case "--seed":
+				setSeed( Long.parseLong( value ));
+				return 2;
+			default:
+				return 0;
+		}
+	}
+
+	public static void main( String args[] ) {
+		ScaTreeGenerator generator = new ScaTreeGenerator();
+		int index = 0;
+		try {
+			// Process the options
+			while (( index < args.length ) && args[index].startsWith( "--" )) {
+				int used = generator.parseOption( args, index );
+				if ( used == 0 ) {
+					System.out.println( "Unknown option: \"" + args[index] + "\"" );
+					return;
+				}
+				index += used;
+			}
+		}
+		catch ( NumberFormatException e ) {
+			System.out.println( "Invalid value for option \"" + args[index] + "\": \"" + args[ index + 1 ] + "\"" );
+			return;
+		}
+		if ( index >= args.length ) {
+			System.out.println("ScaTreeGenerator - Builds a synthetic source tree for benchmarks.");
+			System.out.println("Usage:   java -cp ScaFileMatch.jar com.fortify.ps.ScaTreeGenerator [options] <directory>");
+			System.out.println("Options: --files <n>                Number of files (default 1000).");
+			System.out.println("         --depth <n>                Depth of the directory tree (default 3).");
+			System.out.println("         --fan-out <n>              Sub directories per directory (default 4).");
+			System.out.println("         --mix <ext=weight,...>     File extensions and their weights (default " + DEFAULT_MIX + ").");
+			System.out.println("         --min-size <bytes>         Minimum file size (default 256).");
+			System.out.println("         --max-size <bytes>         Maximum file size, sizes are log uniform (default 65536).");
+			System.out.println("         --crlf <share>             Share of the files with CRLF line ends, 0 to 1 (default 0.1).");
+			System.out.println("         --line-length <n>          Average line length (default 40).");
+			System.out.println("         --seed <n>                 Seed, the same seed gives the same tree (default 42).");
+			return;
+		}
+		try {
+			long bytes = generator.generate( Paths.get( args[index] ));
+			System.out.println( "Generated " + bytes + " bytes in \"" + args[index] + "\" (" + generator + ")." );
+		}
+		catch ( IOException e ) {
+			System.out.println( "Could not generate the tree in \"" + args[index] + "\" (" + e.getMessage() + ")." );
+		}
+	}
+}
@@ -0,0 +1,404 @@
+package com.fortify.ps;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * ScaWatcher
+ *
+ * Keeps the counts of a directory tree current. After one full scan every directory is
+ *   registered with a WatchService, and the counts are updated from the create, modify and
+ *   delete events: a file is only read again when its size or modification time changed,
+ *   and a deleted file or directory is subtracted using the counts kept per file. Events
+ *   are collected until the tree is quiet for a moment (or a maximum delay passed), so a
+ *   storm of events is applied as one batch. When events were lost (OVERFLOW), only the
+ *   directory tree of the affected directory is scanned again. A directory whose watch key
+ *   became invalid (deleted, maybe created again within the same batch) loses its counts
+ *   and is scanned and registered again when it exists. A watcher is used by a single
+ *   thread.
+ */
+public class ScaWatcher {
+
+	// Time without events that ends a batch, in milliseconds
+	private static final long DEBOUNCE_MILLIS = 250;
+	// Maximum time a batch collects events, in milliseconds
+	private static final long MAX_BATCH_MILLIS = 2000;
+
+	// Root of the watched tree
+	private final Path root;
+	// Classifier of the file names
+	private final ScaExtensionClassifier classifier;
+	// The counts of the watched tree
+	private final ScaStatistics statistics;
+	// Follow symbolic links?
+	private final boolean followLinks;
+	// Matcher of the excluded entries, or null
+	private final ScaExclusionMatcher exclusionMatcher;
+	// Reads the attributes of single files
+	private final ScaDirectoryWalker attributeReader;
+	// Line counter of the watcher
+	private final ScaLineCounter lineCounter = new ScaLineCounter();
+	// The counted files
+	private final HashMap <Path, fileRecord> files = new HashMap <Path, fileRecord> ();
+	// The registered directories, by watch key
+	private final HashMap <WatchKey, Path> watchedDirectories = new HashMap <WatchKey, Path> ();
+	// The watch keys, by registered directory
+	private final HashMap <Path, WatchKey> watchKeys = new HashMap <Path, WatchKey> ();
+	// The watch service
+	private WatchService watchService = null;
+	// Number of files read since the full scan
+	private long filesRead = 0;
+	// Number of directory trees scanned again after lost events
+	private long rescans = 0;
+
+	/**
+	 * reportWriter
+	 *
+	 * Receives the counts whenever a refreshed report is due.
+	 */
+	public interface reportWriter {
+		// Write a report of the counts
+		void writeReport( ScaStatistics.snapshot statistics );
+	}
+
+	// The counts of a single file
+	private static class fileRecord {
+		// Id of the configured file extension, or NOT_CONFIGURED
+		private final int extensionId;
+		// The non configured file extension, or null
+		private final String extension;
+		// Number of lines
+		private final long lines;
+		// Size in bytes
+		private final long size;
+		// Modification time
+		private final long modified;
+		// Default constructor
+		fileRecord( int recordExtensionId, String recordExtension, long recordLines, long recordSize, long recordModified ) {
+			extensionId = recordExtensionId;
+			extension = recordExtension;
+			lines = recordLines;
+			size = recordSize;
+			modified = recordModified;
+		}
+	}
+
+	// Default constructor
+	public ScaWatcher( Path watchRoot, ScaExtensionClassifier extensionClassifier, ScaStatistics watchStatistics, boolean followSymbolicLinks, ScaExclusionMatcher matcher ) {
+		root = watchRoot;
+		classifier = extensionClassifier;
+		statistics = watchStatistics;
+		followLinks = followSymbolicLinks;
+		exclusionMatcher = matcher;
+		attributeReader = new ScaDirectoryWalker( followSymbolicLinks );
+	}
+
+	// Retrieve the number of files read since the full scan
+	public long getFilesRead() {
+		return filesRead;
+	}
+
+	// Retrieve the number of directory trees scanned again after lost events
+	public long getRescans() {
+		return rescans;
+	}
+
+	/**
+	 * seed
+	 *
+	 * Scans the whole tree and registers every directory with the watch service.
+	 *
+	 * @return Whether or not the tree could be scanned.
+	 */
+	public boolean seed() {
+		try {
+			watchService = root.getFileSystem().newWatchService();
+		}
+		catch ( IOException e ) {
+			System.out.println("Could not watch the directory: \"" + root + "\" (" + e.getMessage() + ").");
+			return false;
+		}
+		boolean scanned = scanTree( root );
+		filesRead = 0;
+		return scanned;
+	}
+
+	/**
+	 * watch
+	 *
+	 * Applies the events of the watch service to the counts until the thread is interrupted,
+	 *   and passes the counts to the report writer at every interval in which they changed.
+	 */
+	public void watch( long reportIntervalMillis, reportWriter writer ) throws InterruptedException {
+		long nextReport = System.currentTimeMillis() + reportIntervalMillis;
+		boolean changed = false;
+		while ( !watchedDirectories.isEmpty()) {
+			// Wait for the first event of a batch, or the next report
+			WatchKey key = watchService.poll( Math.max( nextReport - System.currentTimeMillis(), 1 ), TimeUnit.MILLISECONDS );
+			if ( key != null ) {
+				// Collect events until the tree is quiet
+				LinkedHashSet <Path> changedPaths = new LinkedHashSet <Path> ();
+				LinkedHashSet <Path> overflowedDirectories = new LinkedHashSet <Path> ();
+				LinkedHashSet <Path> droppedDirectories = new LinkedHashSet <Path> ();
+				long batchEnd = System.currentTimeMillis() + MAX_BATCH_MILLIS;
+				while ( key != null ) {
+					collectEvents( key, changedPaths, overflowedDirectories, droppedDirectories );
+					// Events after the maximum delay go into the next batch
+					long remaining = batchEnd - System.currentTimeMillis();
+					key = ( remaining > 0 ) ? watchService.poll( Math.min( DEBOUNCE_MILLIS, remaining ), TimeUnit.MILLISECONDS ) : null;
+				}
+				// Apply the batch
+				applyEvents( changedPaths, overflowedDirectories, droppedDirectories );
+				changed = true;
+			}
+			// Is a report due?
+			if ( System.currentTimeMillis() >= nextReport ) {
+				if ( changed ) {
+					writer.writeReport( statistics.takeSnapshot());
+					changed = false;
+				}
+				nextReport = System.currentTimeMillis() + reportIntervalMillis;
+			}
+		}
+	}
+
+	// Collect the events of a watch key
+	private void collectEvents( WatchKey key, LinkedHashSet <Path> changedPaths, LinkedHashSet <Path> overflowedDirectories, LinkedHashSet <Path> droppedDirectories ) {
+		Path directory = watchedDirectories.get( key );
+		if ( directory != null ) {
+			for ( WatchEvent <?> event : key.pollEvents()) {
+				if ( event.kind() == StandardWatchEventKinds.OVERFLOW ) {
+					overflowedDirectories.add( directory );
+				}
+				else {
+					changedPaths.add( directory.resolve(( Path ) event.context()));
+				}
+			}
+		}
+		// Is the directory gone? Its counts are removed when the batch is applied.
+		if ( !key.reset()) {
+			watchedDirectories.remove( key );
+			if ( directory != null ) {
+				watchKeys.remove( directory, key );
+				droppedDirectories.add( directory );
+			}
+		}
+	}
+
+	// Apply a batch of events to the counts
+	private void applyEvents( LinkedHashSet <Path> changedPaths, LinkedHashSet <Path> overflowedDirectories, LinkedHashSet <Path> droppedDirectories ) {
+		// Scan the directory trees with lost events again
+		for ( Path directory : overflowedDirectories ) {
+			removeTree( directory );
+			scanTree( directory );
+			rescans++;
+		}
+		// Remove the counts of the directories no longer watched; the ones that exist again are scanned as new directories
+		for ( Path directory : droppedDirectories ) {
+			if ( !isBelowAny( directory, overflowedDirectories )) {
+				removeTree( directory );
+				changedPaths.add( directory );
+			}
+		}
+		// Exclusion contexts of the parent directories of this batch
+		HashMap <Path, ScaExclusionMatcher.context> exclusionContexts = new HashMap <Path, ScaExclusionMatcher.context> ();
+		// Apply the changes
+		for ( Path path : changedPaths ) {
+			// Already scanned again?
+			if ( isBelowAny( path, overflowedDirectories )) {
+				continue;
+			}
+			BasicFileAttributes attributes = attributeReader.readAttributes( path );
+			// Is it gone?
+			if ( attributes == null ) {
+				fileRecord removed = files.remove( path );
+				if ( removed != null ) {
+					subtract( removed );
+				}
+				else if ( watchKeys.containsKey( path )) {
+					removeTree( path );
+				}
+				continue;
+			}
+			// Was a counted file replaced by a directory of the same name?
+			if ( attributes.isDirectory()) {
+				fileRecord replaced = files.remove( path );
+				if ( replaced != null ) {
+					subtract( replaced );
+				}
+			}
+			// Was a watched directory replaced by a file of the same name?
+			else if ( watchKeys.containsKey( path )) {
+				removeTree( path );
+			}
+			// Is it excluded?
+			if (( exclusionMatcher != null ) && isExcluded( path, attributes.isDirectory(), exclusionContexts )) {
+				continue;
+			}
+			// Is it a new directory?
+			if ( attributes.isDirectory()) {
+				// Is it a directory created again whose invalid watch key was not collected yet?
+				WatchKey key = watchKeys.get( path );
+				if (( key != null ) && !key.isValid()) {
+					removeTree( path );
+					key = null;
+				}
+				if ( key == null ) {
+					scanTree( path );
+				}
+			}
+			// Is it a regular file?
+			else if ( attributes.isRegularFile()) {
+				countFile( path, attributes );
+			}
+		}
+	}
+
+	// Is a path excluded?
+	private boolean isExcluded( Path path, boolean isDirectory, HashMap <Path, ScaExclusionMatcher.context> exclusionContexts ) {
+		Path parent = path.getParent();
+		ScaExclusionMatcher.context parentContext = exclusionContexts.get( parent );
+		if ( parentContext == null ) {
+			parentContext = exclusionMatcher.subtreeContext( root, parent );
+			exclusionContexts.put( parent, parentContext );
+		}
+		return exclusionMatcher.isExcluded( parentContext, path.getFileName().toString(), isDirectory );
+	}
+
+	// Is a path below (or equal to) any of the directories?
+	private static boolean isBelowAny( Path path, Iterable <Path> directories ) {
+		for ( Path directory : directories ) {
+			if ( path.startsWith( directory )) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Scan a directory tree, registering its directories and counting its files
+	private boolean scanTree( Path directory ) {
+		// A new walker for the directory tree
+		ScaDirectoryWalker walker = new ScaDirectoryWalker( followLinks );
+		walker.setExclusionMatcher( exclusionMatcher );
+		if ( !walker.enterSubtree( root, directory )) {
+			return false;
+		}
+		ArrayDeque <Path> pending = new ArrayDeque <Path> ();
+		pending.push( directory );
+		ArrayList <Path> directories = new ArrayList <Path> ();
+		ArrayList <ScaDirectoryWalker.fileEntry> entries = new ArrayList <ScaDirectoryWalker.fileEntry> ();
+		while ( !pending.isEmpty()) {
+			Path current = pending.pop();
+			// Register the directory before listing it, so no new entry is missed
+			register( current );
+			directories.clear();
+			entries.clear();
+			if ( walker.listDirectory( current, directories, entries )) {
+				for ( int index = 0; index < entries.size(); index++ ) {
+					countFile( entries.get( index ).getPath(), entries.get( index ).getAttributes());
+				}
+				for ( int index = directories.size() - 1; index >= 0; index-- ) {
+					pending.push( directories.get( index ));
+				}
+			}
+		}
+		return true;
+	}
+
+	// Register a directory with the watch service
+	private void register( Path directory ) {
+		if ( !watchKeys.containsKey( directory )) {
+			try {
+				WatchKey key = directory.register( watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY );
+				watchedDirectories.put( key, directory );
+				watchKeys.put( directory, key );
+			}
+			catch ( IOException e ) {
+				System.out.println("Could not watch the directory: \"" + directory + "\" (" + e.getMessage() + ").");
+			}
+		}
+	}
+
+	// Remove the counts and registrations of a directory tree
+	private void removeTree( Path directory ) {
+		for ( Iterator <Map.Entry <Path, fileRecord>> iterator = files.entrySet().iterator(); iterator.hasNext(); ) {
+			Map.Entry <Path, fileRecord> entry = iterator.next();
+			if ( entry.getKey().startsWith( directory )) {
+				subtract( entry.getValue());
+				iterator.remove();
+			}
+		}
+		for ( Iterator <Map.Entry <Path, WatchKey>> iterator = watchKeys.entrySet().iterator(); iterator.hasNext(); ) {
+			Map.Entry <Path, WatchKey> entry = iterator.next();
+			if ( entry.getKey().startsWith( directory )) {
+				entry.getValue().cancel();
+				watchedDirectories.remove( entry.getValue());
+				iterator.remove();
+			}
+		}
+	}
+
+	// Count a new or changed file
+	private void countFile( Path path, BasicFileAttributes attributes ) {
+		long modified = attributes.lastModifiedTime().toMillis();
+		fileRecord existing = files.get( path );
+		// Is the file unchanged?
+		if (( existing != null ) && ( existing.size == attributes.size()) && ( existing.modified == modified )) {
+			return;
+		}
+		if ( existing != null ) {
+			subtract( existing );
+		}
+		// Classify the file by its file extension
+		String fileName = path.getFileName().toString();
+		int extensionId = classifier.classify( fileName );
+		fileRecord record = null;
+		if ( extensionId >= 0 ) {
+			long lines = 0;
+			try {
+				lines = lineCounter.countLines( path );
+				filesRead++;
+			}
+			catch ( IOException e ) {
+				System.out.println("Could not read file \"" + path + "\" (maybe you do not have read access).");
+			}
+			record = new fileRecord( extensionId, null, lines, attributes.size(), modified );
+			statistics.addConfigured( extensionId, lines, attributes.size());
+		}
+		else if ( extensionId == ScaExtensionClassifier.NOT_CONFIGURED ) {
+			String extension = fileName.substring( ScaExtensionClassifier.extensionStart( fileName ), ScaExtensionClassifier.extensionEnd( fileName )).toLowerCase();
+			record = new fileRecord( extensionId, extension, 0, attributes.size(), modified );
+			statistics.addNonConfigured( extension, attributes.size());
+		}
+		// Keep the counts of the file
+		if ( record != null ) {
+			files.put( path, record );
+		}
+		else {
+			files.remove( path );
+		}
+	}
+
+	// Subtract the counts of a file
+	private void subtract( fileRecord record ) {
+		if ( record.extension == null ) {
+			statistics.removeConfigured( record.extensionId, record.lines, record.size );
+		}
+		else {
+			statistics.removeNonConfigured( record.extension, record.size );
+		}
+	}
+}